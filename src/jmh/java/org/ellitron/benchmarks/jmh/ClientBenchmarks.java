@@ -0,0 +1,110 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+
+import org.ellitron.benchmarks.ElementResources;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.WebResource;
+
+/**
+ * ClientBenchmarks measures the cost of getting a Jersey request ready to
+ * send, without sending it: creating a new Client per request (as most of
+ * the harness loops used to do), creating a WebResource per request from a
+ * shared Client, deriving one from a base resource with
+ * WebResource.path(), building one from the collection URI with
+ * {@link ElementResources}, as the ID-addressed benchmarks now do, and
+ * reusing a WebResource built once.
+ *
+ * @author Jonathan Ellithorpe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientBenchmarks {
+	private static final String NODES_URI = "http://192.168.1.101:7474/db/data/node";
+	private static final String NODE_URI = NODES_URI + "/12345";
+	private static final long NODE_ID = 12345;
+
+	/**
+	 * Read from a non-final field, so that it cannot be constant folded.
+	 */
+	private long nodeId = NODE_ID;
+
+	private Client client;
+	private WebResource resource;
+	private WebResource nodesBase;
+	private ElementResources nodes;
+
+	@Setup
+	public void setup() {
+		client = Client.create();
+		resource = client.resource(NODE_URI);
+		nodesBase = client.resource(NODES_URI);
+		nodes = new ElementResources(client, NODES_URI);
+	}
+
+	@TearDown
+	public void tearDown() {
+		client.destroy();
+	}
+
+	@Benchmark
+	public WebResource.Builder newClientPerRequest() {
+		Client c = Client.create();
+		WebResource.Builder builder = c.resource(NODE_URI).accept(MediaType.APPLICATION_JSON);
+		c.destroy();
+		return builder;
+	}
+
+	@Benchmark
+	public WebResource.Builder newResourcePerRequest() {
+		return client.resource(NODE_URI).accept(MediaType.APPLICATION_JSON);
+	}
+
+	@Benchmark
+	public WebResource.Builder pathResourcePerRequest() {
+		return nodesBase.path(Long.toString(nodeId)).accept(MediaType.APPLICATION_JSON);
+	}
+
+	@Benchmark
+	public WebResource.Builder elementResourcePerRequest() {
+		return nodes.get(nodeId).accept(MediaType.APPLICATION_JSON);
+	}
+
+	@Benchmark
+	public WebResource.Builder reusedResource() {
+		return resource.accept(MediaType.APPLICATION_JSON);
+	}
+}
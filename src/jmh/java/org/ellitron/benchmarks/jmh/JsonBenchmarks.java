@@ -0,0 +1,130 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JsonBenchmarks measures the client side cost of building request bodies
+ * and parsing responses the way the benchmark harness does, against cheaper
+ * replacements.
+ * <p>
+ * Request bodies are the relationship create body of run06, built by string
+ * concatenation (as the harness does), with JSONObject (as the GraphClient
+ * implementations do), and with a reused StringBuilder. Responses are a
+ * Neo4j REST node representation, parsed in full with JSONObject to get the
+ * node URI (as the harness does), and scanned for just the "self" field.
+ *
+ * @author Jonathan Ellithorpe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmarks {
+	private static final String NODE_URI = "http://192.168.1.101:7474/db/data/node/12345";
+
+	/**
+	 * Response to POST /db/data/node in Neo4j 2.1.
+	 */
+	private static final String NODE_RESPONSE = "{\n"
+			+ "  \"extensions\" : { },\n"
+			+ "  \"paged_traverse\" : \"" + NODE_URI + "/paged/traverse/{returnType}{?pageSize,leaseTime}\",\n"
+			+ "  \"labels\" : \"" + NODE_URI + "/labels\",\n"
+			+ "  \"outgoing_relationships\" : \"" + NODE_URI + "/relationships/out\",\n"
+			+ "  \"traverse\" : \"" + NODE_URI + "/traverse/{returnType}\",\n"
+			+ "  \"all_typed_relationships\" : \"" + NODE_URI + "/relationships/all/{-list|&|types}\",\n"
+			+ "  \"all_relationships\" : \"" + NODE_URI + "/relationships/all\",\n"
+			+ "  \"property\" : \"" + NODE_URI + "/properties/{key}\",\n"
+			+ "  \"self\" : \"" + NODE_URI + "\",\n"
+			+ "  \"outgoing_typed_relationships\" : \"" + NODE_URI + "/relationships/out/{-list|&|types}\",\n"
+			+ "  \"properties\" : \"" + NODE_URI + "/properties\",\n"
+			+ "  \"incoming_relationships\" : \"" + NODE_URI + "/relationships/in\",\n"
+			+ "  \"incoming_typed_relationships\" : \"" + NODE_URI + "/relationships/in/{-list|&|types}\",\n"
+			+ "  \"create_relationship\" : \"" + NODE_URI + "/relationships\",\n"
+			+ "  \"data\" : {\n"
+			+ "    \"prop\" : 42\n"
+			+ "  }\n"
+			+ "}";
+
+	/**
+	 * The inputs are read from non-final fields of the benchmark state, so
+	 * that they cannot be constant folded: javac would compile the
+	 * concatenation of constants in buildConcatenated to a single literal,
+	 * and the JIT could treat the others as constants.
+	 */
+	private String nodeUri = NODE_URI;
+	private String nodeResponse = NODE_RESPONSE;
+
+	private final StringBuilder sb = new StringBuilder(256);
+
+	@Benchmark
+	public String buildConcatenated() {
+		return "{ \"to\" : \"" + nodeUri + "\", \"type\" : \"KNOWS\" }";
+	}
+
+	@Benchmark
+	public String buildJSONObject() {
+		JSONObject request = new JSONObject();
+		request.put("to", nodeUri);
+		request.put("type", "KNOWS");
+		return request.toString();
+	}
+
+	@Benchmark
+	public String buildStringBuilder() {
+		sb.setLength(0);
+		sb.append("{\"to\":\"").append(nodeUri).append("\",\"type\":\"KNOWS\"}");
+		return sb.toString();
+	}
+
+	@Benchmark
+	public String parseJSONObject() {
+		return new JSONObject(nodeResponse).getString("self");
+	}
+
+	@Benchmark
+	public String parseSelfOnly() {
+		return stringField(nodeResponse, "self");
+	}
+
+	/**
+	 * Returns the value of a top level string field of a JSON object without
+	 * parsing the rest of it. The value must not contain escapes, which holds
+	 * for the URIs Neo4j returns.
+	 */
+	static String stringField(String json, String name) {
+		String key = "\"" + name + "\"";
+		int i = json.indexOf(key);
+		if (i < 0)
+			return null;
+		int start = json.indexOf('"', json.indexOf(':', i + key.length()) + 1) + 1;
+		return json.substring(start, json.indexOf('"', start));
+	}
+}
@@ -0,0 +1,242 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import org.apache.commons.math3.distribution.BinomialDistribution;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+
+/**
+ * AdaptiveSampler decides when a measurement has enough samples, instead of
+ * taking a fixed number. Sampling stops as soon as the confidence interval on
+ * a target percentile (e.g. p99) is narrower than a given fraction of the
+ * percentile itself, or when a time budget runs out, whichever comes first.
+ * Stable operations then finish after a few thousand samples, while noisy ones
+ * keep going until their tail is pinned down.
+ * <p>
+ * The interval is the percentile bootstrap interval, computed exactly rather
+ * than by resampling: the p-th percentile of a bootstrap resample is at most
+ * the j-th smallest sample exactly when at least ceil(p*n) of the n draws are,
+ * which is a binomial tail probability. This makes a check cheap enough to run
+ * while the benchmark is in progress. Checks happen every time the number of
+ * samples has grown by about 10%.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class AdaptiveSampler {
+	/**
+	 * Why sampling stopped.
+	 */
+	public enum StopReason {
+		/**
+		 * Still sampling, or stopped by the benchmark's own limit on the
+		 * number of samples.
+		 */
+		NONE,
+		/**
+		 * The confidence interval got narrow enough.
+		 */
+		CONVERGED,
+		/**
+		 * The time budget ran out first.
+		 */
+		TIME_BUDGET
+	}
+
+	/**
+	 * Interval on a percentile, in ms.
+	 */
+	public static class ConfidenceInterval {
+		public final double estimate;
+		public final double lower;
+		public final double upper;
+
+		ConfidenceInterval(double estimate, double lower, double upper) {
+			this.estimate = estimate;
+			this.lower = lower;
+			this.upper = upper;
+		}
+
+		/**
+		 * Returns the width of the interval relative to the estimate.
+		 */
+		public double getRelativeWidth() {
+			return (upper - lower)/estimate;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.6f [%.6f, %.6f]", estimate, lower, upper);
+		}
+	}
+
+	public static final double DEFAULT_CONFIDENCE = 0.95;
+
+	/**
+	 * Percentiles reported with confidence intervals when sampling stops.
+	 */
+	private static final double[] REPORTED_PERCENTILES = { 50, 99, 99.9 };
+
+	private final double percentile;
+	private final double relativeWidth;
+	private final long timeBudget;
+	private double confidence = DEFAULT_CONFIDENCE;
+	private int minSamples;
+
+	private long startTime;
+	private long nextCheck;
+	private StopReason stopReason;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param percentile
+	 *            The target percentile, between 0 and 100, e.g. 99.
+	 * @param relativeWidth
+	 *            Width of the confidence interval, as a fraction of the
+	 *            percentile, below which sampling stops, e.g. 0.05.
+	 * @param timeBudget
+	 *            Time, in ms, after which sampling stops regardless.
+	 */
+	public AdaptiveSampler(double percentile, double relativeWidth, long timeBudget) {
+		this.percentile = percentile;
+		this.relativeWidth = relativeWidth;
+		this.timeBudget = timeBudget;
+		// Enough samples to have a few beyond the target percentile.
+		this.minSamples = Math.max(100, (int) Math.ceil(10/(1 - percentile/100)));
+	}
+
+	/**
+	 * Sets the confidence level of the intervals, e.g. 0.95.
+	 */
+	public void setConfidence(double confidence) {
+		this.confidence = confidence;
+	}
+
+	/**
+	 * Sets the number of samples below which the interval isn't checked.
+	 */
+	public void setMinSamples(int minSamples) {
+		this.minSamples = minSamples;
+	}
+
+	/**
+	 * Starts the time budget for a new measurement.
+	 */
+	public void start() {
+		startTime = System.nanoTime();
+		nextCheck = minSamples;
+		stopReason = StopReason.NONE;
+	}
+
+	/**
+	 * Returns whether the measurement has enough samples. Cheap enough to call
+	 * after every sample.
+	 * 
+	 * @param stats
+	 *            Latencies, in ms, of the samples so far.
+	 */
+	public boolean isDone(DescriptiveStatistics stats) {
+		if (stopReason != StopReason.NONE)
+			return true;
+
+		if ((System.nanoTime() - startTime)/1000000 >= timeBudget) {
+			stopReason = StopReason.TIME_BUDGET;
+			return true;
+		}
+
+		long n = stats.getN();
+		if (n < nextCheck)
+			return false;
+		nextCheck = n + Math.max(100, n/10);
+
+		ConfidenceInterval ci = percentileInterval(stats.getSortedValues(), percentile, confidence);
+		if (ci.getRelativeWidth() <= relativeWidth) {
+			stopReason = StopReason.CONVERGED;
+			return true;
+		}
+		return false;
+	}
+
+	public StopReason getStopReason() {
+		return stopReason;
+	}
+
+	/**
+	 * Prints why sampling stopped and the confidence intervals on the
+	 * reported percentiles.
+	 * 
+	 * @param stats
+	 *            Latencies, in ms, of all samples taken.
+	 */
+	public void printStatistics(DescriptiveStatistics stats) {
+		System.out.printf("adaptive sampling: %d samples, stopped: %s, target: p%s within %.1f%% in %d ms\n",
+				stats.getN(), stopReason == StopReason.NONE ? "sample limit" : stopReason.name().toLowerCase(), formatPercentile(percentile),
+				100*relativeWidth, timeBudget);
+		if (stats.getN() == 0)
+			return;
+
+		double[] sorted = stats.getSortedValues();
+		StringBuilder sb = new StringBuilder();
+		for (double p : REPORTED_PERCENTILES)
+			sb.append("p").append(formatPercentile(p)).append(": ").append(percentileInterval(sorted, p, confidence)).append(" ");
+		sb.append("(").append(formatPercentile(100*confidence)).append("% CI)");
+		System.out.println(sb);
+	}
+
+	private static String formatPercentile(double p) {
+		return p == Math.rint(p) ? Long.toString((long) p) : Double.toString(p);
+	}
+
+	/**
+	 * Computes the percentile bootstrap confidence interval on a percentile.
+	 * 
+	 * @param sorted
+	 *            The samples, sorted in ascending order.
+	 * @param percentile
+	 *            The percentile, between 0 and 100.
+	 * @param confidence
+	 *            The confidence level, e.g. 0.95.
+	 * @return The interval, with the sample percentile as its estimate.
+	 */
+	public static ConfidenceInterval percentileInterval(double[] sorted, double percentile, double confidence) {
+		int n = sorted.length;
+		int k = Math.max(1, (int) Math.ceil(percentile/100*n));
+		double alpha = 1 - confidence;
+		int lower = smallestRankWithProbability(n, k, alpha/2);
+		int upper = smallestRankWithProbability(n, k, 1 - alpha/2);
+		return new ConfidenceInterval(sorted[k - 1], sorted[lower - 1], sorted[upper - 1]);
+	}
+
+	/**
+	 * Returns the smallest rank j such that the k-th smallest of n draws from
+	 * the samples is at most the j-th smallest sample with at least the given
+	 * probability.
+	 */
+	private static int smallestRankWithProbability(int n, int k, double probability) {
+		int lo = 1;
+		int hi = n;
+		while (lo < hi) {
+			int j = (lo + hi) >>> 1;
+			// P(at least k of n draws are <= the j-th smallest sample)
+			double p = j == n ? 1 : 1 - new BinomialDistribution(n, (double) j/n).cumulativeProbability(k - 1);
+			if (p >= probability)
+				hi = j;
+			else
+				lo = j + 1;
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,301 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BaselineStore keeps the results of past benchmark runs under names (e.g.
+ * "neo4j-2.1.0-M01"), so later runs can be compared against them with
+ * {@link RegressionDetector}. A baseline is a directory under the store's root
+ * holding, for each benchmark, the files a run wrote, with the timestamp
+ * prefix dropped:
+ * <ul>
+ * <li>benchmarkName_benchmarkSpec.bin: raw latencies, as written by
+ * {@link BinaryLatencyWriter}, or
+ * benchmarkName_benchmarkSpec.out: latencies in ms, one per line, as written
+ * by older runs and {@link LatencyFileConverter}</li>
+ * <li>benchmarkName_benchmarkSpec.intervals: per interval statistics, as
+ * written by {@link IntervalReporter}, used for throughput</li>
+ * </ul>
+ * Results are also loaded straight from a run directory, where files carry
+ * their "yyyyMMdd_HHmmss_" prefix; when a benchmark was run more than once the
+ * latest run is used.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class BaselineStore {
+	/**
+	 * Matches result files, with an optional timestamp prefix.
+	 */
+	private static final Pattern RESULT_FILE = Pattern.compile("(?:(\\d{8}_\\d{6})_)?(.+)\\.(bin|out|intervals)");
+
+	/**
+	 * Results of one benchmark in one run.
+	 */
+	public static class Result {
+		/**
+		 * benchmarkName_benchmarkSpec.
+		 */
+		public final String key;
+
+		/**
+		 * Latencies, in ms, in the order they were recorded.
+		 */
+		public double[] latencies;
+
+		/**
+		 * Throughput, in ops/s, of each full reporting interval, or null if
+		 * there was no intervals file.
+		 */
+		public double[] intervalThroughputs;
+
+		/**
+		 * Throughput, in ops/s, over the whole run, or NaN if there was no
+		 * intervals file.
+		 */
+		public double throughput = Double.NaN;
+
+		Result(String key) {
+			this.key = key;
+		}
+	}
+
+	private final File root;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param root
+	 *            Directory baselines are kept in. Created on first save.
+	 */
+	public BaselineStore(File root) {
+		this.root = root;
+	}
+
+	/**
+	 * Saves the latest results of each benchmark in a run directory as a
+	 * baseline, replacing any results of the same benchmarks already saved
+	 * under that name.
+	 * 
+	 * @param name
+	 *            Name of the baseline.
+	 * @param runDir
+	 *            Directory the benchmarks were run in.
+	 * @return The number of files saved.
+	 * @throws IOException
+	 */
+	public int save(String name, File runDir) throws IOException {
+		File dir = new File(root, name);
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create " + dir);
+
+		int numFiles = 0;
+		for (Map.Entry<String, File> entry : latestFiles(runDir).entrySet()) {
+			copy(entry.getValue(), new File(dir, entry.getKey()));
+			numFiles++;
+		}
+		return numFiles;
+	}
+
+	/**
+	 * Loads a saved baseline.
+	 * 
+	 * @param name
+	 *            Name of the baseline.
+	 * @return The results, by benchmarkName_benchmarkSpec.
+	 * @throws IOException
+	 */
+	public Map<String, Result> load(String name) throws IOException {
+		File dir = new File(root, name);
+		if (!dir.isDirectory())
+			throw new IOException("No baseline named " + name + " in " + root);
+		return loadRun(dir);
+	}
+
+	/**
+	 * Returns the names of the saved baselines.
+	 */
+	public List<String> list() {
+		List<String> names = new ArrayList<String>();
+		File[] dirs = root.listFiles();
+		if (dirs != null)
+			for (File dir : dirs)
+				if (dir.isDirectory())
+					names.add(dir.getName());
+		return names;
+	}
+
+	/**
+	 * Loads the latest results of each benchmark in a directory, which may be
+	 * a run directory or a baseline.
+	 * 
+	 * @param dir
+	 *            The directory.
+	 * @return The results, by benchmarkName_benchmarkSpec. Benchmarks with no
+	 *         latency file are left out.
+	 * @throws IOException
+	 */
+	public static Map<String, Result> loadRun(File dir) throws IOException {
+		Map<String, Result> results = new TreeMap<String, Result>();
+		for (Map.Entry<String, File> entry : latestFiles(dir).entrySet()) {
+			Matcher m = RESULT_FILE.matcher(entry.getKey());
+			m.matches();
+			String key = m.group(2);
+			Result result = results.get(key);
+			if (result == null) {
+				result = new Result(key);
+				results.put(key, result);
+			}
+
+			String path = entry.getValue().getPath();
+			if (m.group(3).equals("bin")) {
+				long[] nanos = LatencyFileConverter.read(path);
+				result.latencies = new double[nanos.length];
+				for (int i = 0; i < nanos.length; i++)
+					result.latencies[i] = nanos[i]/1e6;
+			} else if (m.group(3).equals("out")) {
+				// Prefer the raw file if a run has both.
+				if (result.latencies == null)
+					result.latencies = readOut(path);
+			} else {
+				readIntervals(path, result);
+			}
+		}
+
+		for (String key : new ArrayList<String>(results.keySet()))
+			if (results.get(key).latencies == null)
+				results.remove(key);
+		return results;
+	}
+
+	/**
+	 * Returns the latest file of each kind for each benchmark in a
+	 * directory, keyed by the file name without its timestamp prefix. A .out
+	 * file from an older run than the latest .bin file is left out.
+	 */
+	private static Map<String, File> latestFiles(File dir) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null)
+			throw new IOException("Could not list " + dir);
+
+		Map<String, File> latest = new TreeMap<String, File>();
+		Map<String, String> timestamps = new TreeMap<String, String>();
+		for (File file : files) {
+			Matcher m = RESULT_FILE.matcher(file.getName());
+			if (!file.isFile() || !m.matches())
+				continue;
+			String name = m.group(2) + "." + m.group(3);
+			String timestamp = m.group(1) == null ? "" : m.group(1);
+			String previous = timestamps.get(name);
+			if (previous == null || timestamp.compareTo(previous) > 0) {
+				latest.put(name, file);
+				timestamps.put(name, timestamp);
+			}
+		}
+
+		for (String name : new ArrayList<String>(latest.keySet())) {
+			if (!name.endsWith(".out"))
+				continue;
+			String bin = name.substring(0, name.length() - 4) + ".bin";
+			if (timestamps.containsKey(bin) && timestamps.get(bin).compareTo(timestamps.get(name)) > 0)
+				latest.remove(name);
+		}
+		return latest;
+	}
+
+	/**
+	 * Reads a text latency file, one latency in ms per line.
+	 */
+	private static double[] readOut(String path) throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(path));
+		double[] latencies = new double[1024];
+		int n = 0;
+		String line;
+		while ((line = br.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty())
+				continue;
+			if (n == latencies.length)
+				latencies = Arrays.copyOf(latencies, 2*n);
+			latencies[n++] = Double.parseDouble(line);
+		}
+		br.close();
+		return Arrays.copyOf(latencies, n);
+	}
+
+	/**
+	 * Reads an intervals file into the throughput fields of a result. The
+	 * last interval is partial, so it counts towards the overall throughput
+	 * but is not kept as an interval of its own.
+	 */
+	private static void readIntervals(String path, Result result) throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(path));
+		List<double[]> intervals = new ArrayList<double[]>();
+		String line;
+		while ((line = br.readLine()) != null) {
+			if (line.startsWith("#") || line.trim().isEmpty())
+				continue;
+			// timestamp epochMillis intervalMs count throughput p50 p99 max errors
+			String[] fields = line.trim().split(" ");
+			intervals.add(new double[] { Double.parseDouble(fields[2]), Double.parseDouble(fields[3]) });
+		}
+		br.close();
+
+		double totalMs = 0;
+		double totalCount = 0;
+		for (double[] interval : intervals) {
+			totalMs += interval[0];
+			totalCount += interval[1];
+		}
+		result.throughput = totalMs > 0 ? totalCount/(totalMs/1e3) : Double.NaN;
+
+		int numFull = intervals.size() > 1 ? intervals.size() - 1 : intervals.size();
+		result.intervalThroughputs = new double[numFull];
+		for (int i = 0; i < numFull; i++) {
+			double[] interval = intervals.get(i);
+			result.intervalThroughputs[i] = interval[0] > 0 ? interval[1]/(interval[0]/1e3) : 0;
+		}
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		FileInputStream in = new FileInputStream(from);
+		FileOutputStream out = new FileOutputStream(to);
+		FileChannel inChannel = in.getChannel();
+		FileChannel outChannel = out.getChannel();
+		long position = 0;
+		long size = inChannel.size();
+		while (position < size)
+			position += inChannel.transferTo(position, size - position, outChannel);
+		outChannel.close();
+		inChannel.close();
+		out.close();
+		in.close();
+	}
+}
@@ -0,0 +1,37 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package org.ellitron.benchmarks;
+
+import java.util.List;
+
+/**
+ * BatchGraphClient is a {@link GraphClient} that can also apply many writes
+ * in a single request, committed in a single transaction.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public interface BatchGraphClient extends GraphClient {
+	/**
+	 * Applies writes in a single request and transaction. Either all of them
+	 * are committed or, if the request fails, none are.
+	 * 
+	 * @param writes
+	 *            The writes, applied in order.
+	 * @return For each write, the ID of the element it created (a Long for
+	 *         vertices, a String for edges), or null for updates and
+	 *         deletes.
+	 */
+	public Object[] writeBatch(List<GraphWrite> writes);
+}
@@ -0,0 +1,250 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BinaryLatencyWriter records raw latency samples, in nanoseconds, to a
+ * binary file. The file is simply a sequence of big-endian 8 byte longs, one
+ * per sample, in the order they were recorded. Use
+ * {@link LatencyFileConverter} to turn it into text or CSV for analysis.
+ * <p>
+ * Samples are collected into fixed size chunks on the benchmark thread. Full
+ * chunks are handed off to a background thread which writes them out through
+ * a {@link FileChannel}, so the benchmark thread does no formatting and no
+ * file I/O.
+ * <p>
+ * If writing fails, the writer thread reports the failure and exits, and
+ * samples recorded from then on are dropped rather than blocking the
+ * benchmark thread.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class BinaryLatencyWriter implements Runnable {
+	/**
+	 * Number of samples per chunk handed to the writer thread.
+	 */
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * Number of chunks in circulation. The benchmark thread only blocks if
+	 * the writer thread falls this many chunks behind.
+	 */
+	private static final int NUM_CHUNKS = 8;
+
+	/**
+	 * Time, in ms, between checks for a failure of the writer thread while
+	 * waiting for it.
+	 */
+	private static final long FAILURE_CHECK_INTERVAL = 100;
+
+	/**
+	 * A block of samples, of which the first length are valid.
+	 */
+	private static class Chunk {
+		final long[] samples;
+		int length = 0;
+
+		Chunk(int capacity) {
+			samples = new long[capacity];
+		}
+	}
+
+	/**
+	 * Marks the end of the sample stream in the full queue.
+	 */
+	private static final Chunk END_OF_STREAM = new Chunk(0);
+
+	/**
+	 * Name of the file samples are written to.
+	 */
+	private final String filename;
+
+	/**
+	 * Chunks waiting to be written, and chunks available for reuse.
+	 */
+	private final BlockingQueue<Chunk> fullChunks = new ArrayBlockingQueue<Chunk>(NUM_CHUNKS + 1);
+	private final BlockingQueue<Chunk> freeChunks = new ArrayBlockingQueue<Chunk>(NUM_CHUNKS);
+
+	/**
+	 * Chunk currently being filled by the benchmark thread.
+	 */
+	private Chunk chunk;
+
+	/**
+	 * Why the writer thread stopped early, or null.
+	 */
+	private volatile IOException failure = null;
+
+	/**
+	 * Background thread doing the writing.
+	 */
+	private final Thread thread;
+
+	/**
+	 * Constructor. Starts the background writer thread.
+	 *
+	 * @param filename
+	 *            The file to write samples to.
+	 */
+	public BinaryLatencyWriter(String filename) {
+		this.filename = filename;
+
+		for (int i = 0; i < NUM_CHUNKS - 1; i++)
+			freeChunks.add(new Chunk(CHUNK_SIZE));
+		chunk = new Chunk(CHUNK_SIZE);
+
+		thread = new Thread(this, "BinaryLatencyWriter");
+		thread.start();
+	}
+
+	/**
+	 * Records a single latency sample.
+	 *
+	 * @param latency
+	 *            The latency in nanoseconds.
+	 */
+	public void record(long latency) {
+		if (failure != null)
+			return;
+		chunk.samples[chunk.length++] = latency;
+		if (chunk.length == CHUNK_SIZE) {
+			Chunk c = handOff(chunk) ? takeFreeChunk() : null;
+			if (c == null) {
+				// The writer thread failed, so the chunk can be reused.
+				chunk.length = 0;
+			} else {
+				chunk = c;
+			}
+		}
+	}
+
+	/**
+	 * Hands any remaining samples to the writer thread and tells it to close
+	 * the file once they are written. Returns without waiting for the write
+	 * to complete; see {@link #awaitCompletion()}.
+	 */
+	public void close() {
+		if (chunk.length > 0)
+			handOff(chunk);
+		chunk = null;
+		handOff(END_OF_STREAM);
+	}
+
+	/**
+	 * Waits until all samples have been written and the file is closed.
+	 */
+	public void awaitCompletion() {
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns why writing failed, or null if it hasn't.
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Hands a chunk to the writer thread, waiting while it is behind.
+	 * 
+	 * @return False if the writer thread failed, in which case the chunk
+	 *         was not handed off.
+	 */
+	private boolean handOff(Chunk c) {
+		try {
+			while (!fullChunks.offer(c, FAILURE_CHECK_INTERVAL, TimeUnit.MILLISECONDS))
+				if (failure != null)
+					return false;
+			return true;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Takes a chunk written out by the writer thread, waiting while it is
+	 * behind.
+	 * 
+	 * @return The chunk, or null if the writer thread failed.
+	 */
+	private Chunk takeFreeChunk() {
+		try {
+			Chunk c;
+			while ((c = freeChunks.poll(FAILURE_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) == null)
+				if (failure != null)
+					return null;
+			c.length = 0;
+			return c;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return new Chunk(CHUNK_SIZE);
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			FileOutputStream out = new FileOutputStream(filename);
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE * 8);
+
+			while (true) {
+				Chunk c = fullChunks.take();
+				if (c == END_OF_STREAM)
+					break;
+
+				buffer.clear();
+				buffer.asLongBuffer().put(c.samples, 0, c.length);
+				buffer.limit(c.length * 8);
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+
+				freeChunks.offer(c);
+			}
+
+			channel.force(false);
+			channel.close();
+			out.close();
+		} catch (IOException e) {
+			fail(e);
+		} catch (InterruptedException ex) {
+			fail(new InterruptedIOException("writer thread interrupted"));
+		}
+	}
+
+	/**
+	 * Records why the writer thread is stopping early, so that the benchmark
+	 * thread drops samples instead of waiting for it.
+	 */
+	private void fail(IOException e) {
+		failure = e;
+		System.err.println("Writing " + filename + " failed, dropping further samples: " + e);
+	}
+}
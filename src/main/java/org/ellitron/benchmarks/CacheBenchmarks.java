@@ -0,0 +1,307 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package org.ellitron.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.json.JSONObject;
+
+/**
+ * CacheBenchmarks measures what a {@link CachingGraphClient} in front of the
+ * database buys, and what it costs in staleness. A mix of vertex reads and
+ * updates is run over a fixed set of vertices, with the vertex for each
+ * operation chosen uniformly or from a skewed (Zipf) distribution, first
+ * without a cache and then behind caches with increasing times to live.
+ * <p>
+ * Some of the updates go through the cache, which invalidates the vertex.
+ * The rest go directly to the database, standing in for writes made by other
+ * application servers, which the cache only sees once the entry expires.
+ * Every update writes a new version number, so each read can be checked
+ * against the latest version: a read returning an older version is stale,
+ * and its staleness is the time since that version was superseded, i.e.
+ * since the first newer version of the vertex was written.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class CacheBenchmarks {
+	public enum Workload {
+		UNIFORM, SKEWED
+	}
+
+	/**
+	 * Default times to live, in ms, of the caches to run behind. 0 runs
+	 * without a cache.
+	 */
+	public static final long[] DEFAULT_TTLS = { 0, 100, 1000, 10000 };
+
+	/**
+	 * Zipf exponent of the skewed workload.
+	 */
+	private static final double ZIPF_EXPONENT = 0.99;
+
+	/**
+	 * The versions written to one vertex, in increasing order, and when each
+	 * write completed.
+	 */
+	private static class WriteHistory {
+		private long[] versions = new long[4];
+		private long[] times = new long[4];
+		private int size = 0;
+
+		void add(long version, long time) {
+			if (size == versions.length) {
+				versions = Arrays.copyOf(versions, 2*size);
+				times = Arrays.copyOf(times, 2*size);
+			}
+			versions[size] = version;
+			times[size] = time;
+			size++;
+		}
+
+		/**
+		 * Returns when the first version newer than the given one was
+		 * written, or -1 if there is none.
+		 */
+		long supersededAt(long version) {
+			int i = Arrays.binarySearch(versions, 0, size, version);
+			i = i >= 0 ? i + 1 : -i - 1;
+			return i < size ? times[i] : -1;
+		}
+	}
+
+	private final GraphClient client;
+
+	/**
+	 * Length, in ms, of the intervals over which latency statistics are
+	 * reported.
+	 */
+	private final long reportingInterval;
+
+	/**
+	 * Fraction of operations that are reads.
+	 */
+	private double readFraction = 0.9;
+
+	/**
+	 * Fraction of updates that bypass the cache.
+	 */
+	private double externalWriteFraction = 0.5;
+
+	/**
+	 * Cache capacity as a fraction of the number of vertices.
+	 */
+	private double capacityFraction = 0.1;
+
+	/**
+	 * Summary lines for every configuration, printed at the end.
+	 */
+	private final List<String> summary = new ArrayList<String>();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param client
+	 *            Client for the database under test, without a cache.
+	 * @param reportingInterval
+	 *            Length, in ms, of the intervals over which latency
+	 *            statistics are reported.
+	 */
+	public CacheBenchmarks(GraphClient client, long reportingInterval) {
+		this.client = client;
+		this.reportingInterval = reportingInterval;
+	}
+
+	/**
+	 * Sets the fraction of operations that are reads (default 0.9).
+	 */
+	public void setReadFraction(double readFraction) {
+		this.readFraction = readFraction;
+	}
+
+	/**
+	 * Sets the fraction of updates that bypass the cache (default 0.5).
+	 */
+	public void setExternalWriteFraction(double externalWriteFraction) {
+		this.externalWriteFraction = externalWriteFraction;
+	}
+
+	/**
+	 * Sets the cache capacity as a fraction of the number of vertices
+	 * (default 0.1).
+	 */
+	public void setCapacityFraction(double capacityFraction) {
+		this.capacityFraction = capacityFraction;
+	}
+
+	/**
+	 * Runs both workloads without a cache and behind caches with the default
+	 * times to live.
+	 * 
+	 * @param numVertices
+	 *            The number of vertices to operate on.
+	 * @param numOps
+	 *            The number of operations per configuration.
+	 */
+	public void run(final int numVertices, final int numOps) {
+		run(numVertices, numOps, DEFAULT_TTLS);
+	}
+
+	/**
+	 * Runs both workloads without a cache and behind caches with the given
+	 * times to live, and prints a summary table of hit rate, read latency and
+	 * staleness.
+	 * 
+	 * @param numVertices
+	 *            The number of vertices to operate on.
+	 * @param numOps
+	 *            The number of operations per configuration.
+	 * @param ttls
+	 *            Times to live, in ms, of the caches. 0 runs without a cache.
+	 */
+	public void run(final int numVertices, final int numOps, long[] ttls) {
+		summary.clear();
+
+		client.clearDatabase();
+		long[] vIdArray = new long[numVertices];
+		for (int i = 0; i < numVertices; i++)
+			vIdArray[i] = client.createVertex(new JSONObject().put("version", 0));
+
+		for (Workload workload : Workload.values())
+			for (long ttl : ttls)
+				run(vIdArray, numOps, workload, ttl);
+
+		client.clearDatabase();
+
+		System.out.println("Cache benchmark summary (latencies in ms):");
+		System.out.printf("%-8s %7s %8s %11s %11s %11s %9s %11s %11s %9s\n", "workload", "ttl", "hitRate", "read mean", "read p50", "read p99", "stale", "stale mean", "stale max", "evictions");
+		for (String line : summary)
+			System.out.println(line);
+	}
+
+	private void run(long[] vIdArray, final int numOps, Workload workload, long ttl) {
+		String spec = "numOps=" + numOps + "_workload=" + workload.name().toLowerCase() + "_ttl=" + ttl;
+		System.out.println("Running cache benchmark... " + spec);
+
+		int capacity = Math.max(1, (int) (capacityFraction*vIdArray.length));
+		CachingGraphClient cache = ttl > 0 ? new CachingGraphClient(client, capacity, ttl) : null;
+		GraphClient reader = cache != null ? cache : client;
+
+		// Latest version of each vertex, and the versions written to it.
+		// Vertices are reset to version 0 for every configuration.
+		long[] latestVersion = new long[vIdArray.length];
+		WriteHistory[] history = new WriteHistory[vIdArray.length];
+		long nextVersion = 0;
+		for (int i = 0; i < vIdArray.length; i++) {
+			client.updateVertex(vIdArray[i], new JSONObject().put("version", 0));
+			history[i] = new WriteHistory();
+		}
+
+		double[] cumulative = workload == Workload.SKEWED ? zipfCumulative(vIdArray.length) : null;
+		Random random = new Random(42);
+		SummaryStatistics stalenessStats = new SummaryStatistics();
+		long numReads = 0;
+
+		LatencyMeasurement reads = new LatencyMeasurement("cacheRead", spec, reportingInterval);
+		LatencyMeasurement writes = new LatencyMeasurement("cacheWrite", spec, reportingInterval);
+		for (int op = 0; op < numOps; op++) {
+			int i = cumulative != null ? sample(cumulative, random) : random.nextInt(vIdArray.length);
+			if (random.nextDouble() < readFraction) {
+				long allocatedBefore = reads.allocatedBytes();
+				long startTime = System.nanoTime();
+				JSONObject properties = null;
+				try {
+					properties = reader.readVertex(vIdArray[i]);
+				} catch (GraphClientException e) {
+					// Recorded as an error below.
+				}
+				long endTime = System.nanoTime();
+				reads.recordAllocation(allocatedBefore, reads.allocatedBytes());
+				reads.record(startTime, endTime, properties == null);
+				if (properties != null) {
+					numReads++;
+					long version = properties.optLong("version");
+					if (version < latestVersion[i])
+						stalenessStats.addValue((endTime - history[i].supersededAt(version))/1e6);
+				}
+			} else {
+				GraphClient writer = random.nextDouble() < externalWriteFraction ? client : reader;
+				long version = ++nextVersion;
+				long allocatedBefore = writes.allocatedBytes();
+				long startTime = System.nanoTime();
+				boolean error = false;
+				try {
+					writer.updateVertex(vIdArray[i], new JSONObject().put("version", version));
+				} catch (GraphClientException e) {
+					error = true;
+				}
+				long endTime = System.nanoTime();
+				writes.recordAllocation(allocatedBefore, writes.allocatedBytes());
+				writes.record(startTime, endTime, error);
+				if (!error) {
+					latestVersion[i] = version;
+					history[i].add(version, endTime);
+				}
+			}
+		}
+		reads.finish();
+		writes.finish();
+
+		System.out.println("Timings statistics for reads:");
+		reads.printStatistics();
+		System.out.println("Timings statistics for writes:");
+		writes.printStatistics();
+		if (cache != null)
+			cache.printStatistics();
+		double staleFraction = numReads == 0 ? 0 : (double) stalenessStats.getN()/numReads;
+		System.out.printf("stale reads: %d (%.4f) staleness mean: %11.6f max: %11.6f ms\n", stalenessStats.getN(), staleFraction,
+				stalenessStats.getN() > 0 ? stalenessStats.getMean() : 0, stalenessStats.getN() > 0 ? stalenessStats.getMax() : 0);
+
+		summary.add(String.format("%-8s %7s %8.4f %11.6f %11.6f %11.6f %9.4f %11.6f %11.6f %9d",
+				workload.name().toLowerCase(), ttl > 0 ? Long.toString(ttl) : "none",
+				cache != null ? cache.getHitRate() : 0.0, reads.getStatistics().getMean(),
+				reads.getStatistics().getPercentile(50), reads.getStatistics().getPercentile(99),
+				staleFraction, stalenessStats.getN() > 0 ? stalenessStats.getMean() : 0,
+				stalenessStats.getN() > 0 ? stalenessStats.getMax() : 0,
+				cache != null ? cache.getEvictions() : 0));
+	}
+
+	/**
+	 * Returns the cumulative probabilities of a Zipf distribution over n
+	 * ranks, the first rank being the most popular.
+	 */
+	private static double[] zipfCumulative(int n) {
+		double[] cumulative = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += 1/Math.pow(i + 1, ZIPF_EXPONENT);
+			cumulative[i] = sum;
+		}
+		for (int i = 0; i < n; i++)
+			cumulative[i] /= sum;
+		return cumulative;
+	}
+
+	/**
+	 * Draws an index from cumulative probabilities.
+	 */
+	private static int sample(double[] cumulative, Random random) {
+		int i = Arrays.binarySearch(cumulative, random.nextDouble());
+		return Math.min(i < 0 ? -i - 1 : i, cumulative.length - 1);
+	}
+}
@@ -0,0 +1,384 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package org.ellitron.benchmarks;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.json.JSONObject;
+
+/**
+ * CachingGraphClient puts a bounded read-through cache of vertices and edges
+ * in front of another {@link GraphClient}, the way application servers put a
+ * cache in front of the database. Reads are answered from the cache when
+ * possible. Entries are evicted in least recently used order once the cache
+ * is full, and expire a fixed time after they were loaded. Updates and
+ * deletes made through this client invalidate the affected entries. Writes
+ * made by anyone else are only picked up once the entry expires, so reads
+ * may be stale up to the time to live.
+ * <p>
+ * The cache is split into independently locked segments, each an access
+ * ordered LinkedHashMap, so that threads reading different elements rarely
+ * contend. Returned properties are shared with the cache and must not be
+ * modified.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class CachingGraphClient implements GraphClient {
+	/**
+	 * Number of segments for caches large enough to be worth splitting.
+	 */
+	private static final int NUM_SEGMENTS = 16;
+
+	private final GraphClient client;
+
+	/**
+	 * Time, in ns, after which an entry expires.
+	 */
+	private final long ttlNanos;
+
+	private final Segment[] vertexSegments;
+	private final Segment[] edgeSegments;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	/**
+	 * Age, in ms, of the entries that reads were answered with.
+	 */
+	private final SummaryStatistics hitAgeStats = new SummaryStatistics();
+
+	/**
+	 * A cached element's properties and when they were loaded.
+	 */
+	private static class Entry {
+		final JSONObject properties;
+		final long loadTime;
+
+		Entry(JSONObject properties, long loadTime) {
+			this.properties = properties;
+			this.loadTime = loadTime;
+		}
+	}
+
+	/**
+	 * Reads of one key that went to the server and haven't returned yet, and
+	 * how many times the key was invalidated while any were in flight.
+	 */
+	private static class Loads {
+		int count = 0;
+		long generation = 0;
+	}
+
+	/**
+	 * One independently locked part of the cache. Keys with reads in flight
+	 * are tracked, and their generation bumped on every invalidation, so that
+	 * a read that went to the server while its entry was being invalidated
+	 * doesn't put the old value back. Reads of other keys are unaffected.
+	 */
+	private class Segment extends LinkedHashMap<Object, Entry> {
+		private static final long serialVersionUID = 1L;
+
+		final int capacity;
+		final Map<Object, Loads> loads = new HashMap<Object, Loads>();
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+			if (size() > capacity) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param client
+	 *            The client to cache reads of.
+	 * @param capacity
+	 *            Maximum number of vertices, and separately of edges, to
+	 *            cache.
+	 * @param ttl
+	 *            Time, in ms, after which a cached entry expires.
+	 */
+	public CachingGraphClient(GraphClient client, int capacity, long ttl) {
+		this.client = client;
+		this.ttlNanos = ttl*1000000;
+		int numSegments = capacity >= 64*NUM_SEGMENTS ? NUM_SEGMENTS : 1;
+		vertexSegments = createSegments(numSegments, capacity);
+		edgeSegments = createSegments(numSegments, capacity);
+	}
+
+	private Segment[] createSegments(int numSegments, int capacity) {
+		Segment[] segments = new Segment[numSegments];
+		for (int i = 0; i < numSegments; i++)
+			segments[i] = new Segment((capacity + numSegments - 1)/numSegments);
+		return segments;
+	}
+
+	private static Segment segmentFor(Segment[] segments, Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[(h & 0x7fffffff) % segments.length];
+	}
+
+	/**
+	 * Answers a read from the cache, or returns null on a miss.
+	 */
+	private JSONObject lookup(Segment segment, Object key) {
+		long now = System.nanoTime();
+		synchronized (segment) {
+			Entry entry = segment.get(key);
+			if (entry != null && now - entry.loadTime > ttlNanos) {
+				segment.remove(key);
+				expirations.incrementAndGet();
+				entry = null;
+			}
+			if (entry == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			hits.incrementAndGet();
+			synchronized (hitAgeStats) {
+				hitAgeStats.addValue((now - entry.loadTime)/1e6);
+			}
+			return entry.properties;
+		}
+	}
+
+	/**
+	 * Notes that a read of a key is going to the server.
+	 * 
+	 * @return The key's generation, to pass to
+	 *         {@link #endLoad(Segment, Object, JSONObject, long, long)}.
+	 */
+	private static long beginLoad(Segment segment, Object key) {
+		synchronized (segment) {
+			Loads loads = segment.loads.get(key);
+			if (loads == null) {
+				loads = new Loads();
+				segment.loads.put(key, loads);
+			}
+			loads.count++;
+			return loads.generation;
+		}
+	}
+
+	/**
+	 * Caches properties read from the server, unless the key was invalidated
+	 * since the read was issued, and notes that the read has returned.
+	 * 
+	 * @param properties
+	 *            The properties read, or null if the read failed.
+	 */
+	private static void endLoad(Segment segment, Object key, JSONObject properties, long generation, long loadTime) {
+		synchronized (segment) {
+			Loads loads = segment.loads.get(key);
+			if (properties != null && loads.generation == generation)
+				segment.put(key, new Entry(properties, loadTime));
+			if (--loads.count == 0)
+				segment.loads.remove(key);
+		}
+	}
+
+	private void invalidate(Segment segment, Object key) {
+		synchronized (segment) {
+			Loads loads = segment.loads.get(key);
+			if (loads != null)
+				loads.generation++;
+			if (segment.remove(key) != null)
+				invalidations.incrementAndGet();
+		}
+	}
+
+	@Override
+	public long createVertex(JSONObject properties) {
+		return client.createVertex(properties);
+	}
+
+	@Override
+	public JSONObject readVertex(long vId) {
+		Segment segment = segmentFor(vertexSegments, vId);
+		JSONObject properties = lookup(segment, vId);
+		if (properties == null) {
+			long generation = beginLoad(segment, vId);
+			long loadTime = System.nanoTime();
+			try {
+				properties = client.readVertex(vId);
+			} finally {
+				endLoad(segment, vId, properties, generation, loadTime);
+			}
+		}
+		return properties;
+	}
+
+	@Override
+	public void updateVertex(long vId, JSONObject properties) {
+		Segment segment = segmentFor(vertexSegments, vId);
+		invalidate(segment, vId);
+		try {
+			client.updateVertex(vId, properties);
+		} finally {
+			invalidate(segment, vId);
+		}
+	}
+
+	@Override
+	public void deleteVertex(long vId) {
+		Segment segment = segmentFor(vertexSegments, vId);
+		try {
+			client.deleteVertex(vId);
+		} finally {
+			invalidate(segment, vId);
+		}
+	}
+
+	@Override
+	public String createEdge(long outVId, long inVId, String label, JSONObject properties) {
+		return client.createEdge(outVId, inVId, label, properties);
+	}
+
+	@Override
+	public JSONObject readEdge(String eId) {
+		Segment segment = segmentFor(edgeSegments, eId);
+		JSONObject properties = lookup(segment, eId);
+		if (properties == null) {
+			long generation = beginLoad(segment, eId);
+			long loadTime = System.nanoTime();
+			try {
+				properties = client.readEdge(eId);
+			} finally {
+				endLoad(segment, eId, properties, generation, loadTime);
+			}
+		}
+		return properties;
+	}
+
+	@Override
+	public void updateEdge(String eId, JSONObject properties) {
+		Segment segment = segmentFor(edgeSegments, eId);
+		invalidate(segment, eId);
+		try {
+			client.updateEdge(eId, properties);
+		} finally {
+			invalidate(segment, eId);
+		}
+	}
+
+	@Override
+	public void deleteEdge(String eId) {
+		Segment segment = segmentFor(edgeSegments, eId);
+		try {
+			client.deleteEdge(eId);
+		} finally {
+			invalidate(segment, eId);
+		}
+	}
+
+	/**
+	 * Neighborhoods change with every edge written anywhere around a vertex,
+	 * so they are not cached.
+	 */
+	@Override
+	public List<JSONObject> readNeighbors(long vId) {
+		return client.readNeighbors(vId);
+	}
+
+	@Override
+	public void clearDatabase() {
+		try {
+			client.clearDatabase();
+		} finally {
+			for (Segment[] segments : new Segment[][] { vertexSegments, edgeSegments }) {
+				for (Segment segment : segments) {
+					synchronized (segment) {
+						for (Loads loads : segment.loads.values())
+							loads.generation++;
+						segment.clear();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the fraction of reads answered from the cache.
+	 */
+	public double getHitRate() {
+		long numHits = hits.get();
+		long numReads = numHits + misses.get();
+		return numReads == 0 ? 0 : (double) numHits/numReads;
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getExpirations() {
+		return expirations.get();
+	}
+
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	/**
+	 * Returns the age, in ms, of the entries that reads were answered with.
+	 */
+	public SummaryStatistics getHitAgeStatistics() {
+		synchronized (hitAgeStats) {
+			return hitAgeStats.copy();
+		}
+	}
+
+	/**
+	 * Clears the hit, miss, eviction, expiration and invalidation counts.
+	 */
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+		expirations.set(0);
+		invalidations.set(0);
+		synchronized (hitAgeStats) {
+			hitAgeStats.clear();
+		}
+	}
+
+	/**
+	 * Prints cache statistics.
+	 */
+	public void printStatistics() {
+		SummaryStatistics age = getHitAgeStatistics();
+		System.out.printf("cache: hits: %d misses: %d hitRate: %.4f evictions: %d expirations: %d invalidations: %d\n",
+				hits.get(), misses.get(), getHitRate(), evictions.get(), expirations.get(), invalidations.get());
+		if (age.getN() > 0)
+			System.out.printf("cache: hit age mean: %11.6f max: %11.6f ms\n", age.getMean(), age.getMax());
+	}
+}
@@ -0,0 +1,237 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package org.ellitron.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+/**
+ * CoalescingBenchmarks measures what coalescing single element writes into
+ * batches (see {@link CoalescingGraphClient}) does to per-write latency and
+ * to aggregate write throughput. Many threads create vertices, update them,
+ * create edges between them and update the edges, one element per call,
+ * first with every write sent as its own request and then through
+ * coalescing clients with a range of batch sizes and flush deadlines.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class CoalescingBenchmarks {
+	/**
+	 * Default largest numbers of writes per batch.
+	 */
+	public static final int[] DEFAULT_BATCH_SIZES = { 10, 100 };
+
+	/**
+	 * Default flush deadlines, in ms.
+	 */
+	public static final long[] DEFAULT_MAX_DELAYS = { 0, 1, 10 };
+
+	private final BatchGraphClient client;
+
+	/**
+	 * Length, in ms, of the intervals over which latency statistics are
+	 * reported.
+	 */
+	private final long reportingInterval;
+
+	/**
+	 * Summary lines for every configuration and phase, printed at the end.
+	 */
+	private final List<String> summary = new ArrayList<String>();
+
+	/**
+	 * A single write of one phase, on element i.
+	 */
+	private interface Write {
+		void run(GraphClient client, int i);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param client
+	 *            Client for the database under test.
+	 * @param reportingInterval
+	 *            Length, in ms, of the intervals over which latency
+	 *            statistics are reported.
+	 */
+	public CoalescingBenchmarks(BatchGraphClient client, long reportingInterval) {
+		this.client = client;
+		this.reportingInterval = reportingInterval;
+	}
+
+	/**
+	 * Runs the benchmarks without coalescing and with the default batch sizes
+	 * and flush deadlines.
+	 * 
+	 * @param numThreads
+	 *            The number of threads writing.
+	 * @param numWrites
+	 *            The number of writes per phase, over all threads.
+	 */
+	public void run(final int numThreads, final int numWrites) {
+		run(numThreads, numWrites, DEFAULT_BATCH_SIZES, DEFAULT_MAX_DELAYS);
+	}
+
+	/**
+	 * Runs the benchmarks without coalescing and then with every combination
+	 * of the given batch sizes and flush deadlines, and prints a summary
+	 * table of per-write latency against throughput.
+	 * 
+	 * @param numThreads
+	 *            The number of threads writing.
+	 * @param numWrites
+	 *            The number of writes per phase, over all threads.
+	 * @param batchSizes
+	 *            Largest numbers of writes per batch.
+	 * @param maxDelays
+	 *            Flush deadlines, in ms.
+	 */
+	public void run(final int numThreads, final int numWrites, int[] batchSizes, long[] maxDelays) {
+		summary.clear();
+		client.clearDatabase();
+
+		runPhases(client, "direct", numThreads, numWrites);
+		for (int batchSize : batchSizes) {
+			for (long maxDelay : maxDelays) {
+				CoalescingGraphClient coalescing = new CoalescingGraphClient(client, batchSize, maxDelay);
+				coalescing.start();
+				runPhases(coalescing, "batch=" + batchSize + "_delay=" + maxDelay, numThreads, numWrites);
+				coalescing.stop();
+			}
+		}
+
+		System.out.println("Coalescing benchmark summary (latencies in ms):");
+		System.out.printf("%-22s %-12s %11s %11s %11s %10s %7s %9s\n", "config", "phase", "mean", "p50", "p99", "ops/s", "errors", "batch");
+		for (String line : summary)
+			System.out.println(line);
+	}
+
+	/**
+	 * Creates numWrites vertices, updates them, creates an edge between each
+	 * pair of them and updates the edges, through the given client.
+	 */
+	private void runPhases(GraphClient writer, String config, final int numThreads, final int numWrites) {
+		String spec = "numThreads=" + numThreads + "_numWrites=" + numWrites + "_" + config;
+		System.out.println("Running coalescing benchmark... " + spec);
+
+		final long[] vIdArray = new long[numWrites];
+		final String[] eIdArray = new String[numWrites/2];
+
+		runPhase(writer, "coalescedVertexCreate", spec, config, numThreads, numWrites, new Write() {
+			@Override
+			public void run(GraphClient client, int i) {
+				vIdArray[i] = client.createVertex(new JSONObject().put("name", i));
+			}
+		});
+		runPhase(writer, "coalescedVertexUpdate", spec, config, numThreads, numWrites, new Write() {
+			@Override
+			public void run(GraphClient client, int i) {
+				client.updateVertex(vIdArray[i], new JSONObject().put("age", i));
+			}
+		});
+		runPhase(writer, "coalescedEdgeCreate", spec, config, numThreads, eIdArray.length, new Write() {
+			@Override
+			public void run(GraphClient client, int i) {
+				eIdArray[i] = client.createEdge(vIdArray[2*i], vIdArray[2*i+1], "friend", new JSONObject());
+			}
+		});
+		runPhase(writer, "coalescedEdgeUpdate", spec, config, numThreads, eIdArray.length, new Write() {
+			@Override
+			public void run(GraphClient client, int i) {
+				client.updateEdge(eIdArray[i], new JSONObject().put("weight", i));
+			}
+		});
+
+		client.clearDatabase();
+	}
+
+	/**
+	 * Runs numWrites writes, split between numThreads threads all released at
+	 * once, measuring the latency of each.
+	 */
+	private void runPhase(final GraphClient writer, String benchmarkName, String spec, String config, final int numThreads, final int numWrites, final Write write) {
+		if (writer instanceof CoalescingGraphClient)
+			((CoalescingGraphClient) writer).resetStatistics();
+
+		final LatencyMeasurement m = new LatencyMeasurement(benchmarkName, spec, reportingInterval);
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+		for (int t = 0; t < numThreads; t++) {
+			final int threadId = t;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						startLatch.await();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+
+					for (int i = threadId; i < numWrites; i += numThreads) {
+						long allocatedBefore = m.allocatedBytes();
+						long startTime = System.nanoTime();
+						boolean error = false;
+						try {
+							write.run(writer, i);
+						} catch (GraphClientException e) {
+							error = true;
+						} catch (RuntimeException e) {
+							// Connection refused or reset, unparseable
+							// response, ..., possibly rethrown from the
+							// batch that carried this write: count it and
+							// carry on.
+							error = true;
+						}
+						long endTime = System.nanoTime();
+						m.recordAllocation(allocatedBefore, m.allocatedBytes());
+						m.record(startTime, endTime, error);
+					}
+				}
+			});
+		}
+
+		startLatch.countDown();
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		m.finish();
+
+		System.out.println("Timings statistics for " + benchmarkName + ":");
+		m.printStatistics();
+		String batch = "-";
+		if (writer instanceof CoalescingGraphClient) {
+			CoalescingGraphClient coalescing = (CoalescingGraphClient) writer;
+			coalescing.printStatistics();
+			batch = String.format("%.1f", coalescing.getMeanBatchSize());
+		}
+
+		summary.add(String.format("%-22s %-12s %11.6f %11.6f %11.6f %10.1f %7d %9s",
+				config, benchmarkName.substring("coalesced".length()), m.getStatistics().getMean(),
+				m.getStatistics().getPercentile(50), m.getStatistics().getPercentile(99),
+				m.getThroughput(), m.getNumErrors(), batch));
+	}
+}
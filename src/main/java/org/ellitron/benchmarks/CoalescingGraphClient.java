@@ -0,0 +1,341 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package org.ellitron.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.json.JSONObject;
+
+/**
+ * CoalescingGraphClient turns single element writes from many threads into
+ * batch requests. Each write is put on a queue, and background flusher
+ * threads take writes off the queue and send them to a
+ * {@link BatchGraphClient} as one batch, either once maxBatchSize writes
+ * have been collected or once the oldest write in the batch has waited
+ * maxDelay, whichever comes first. Each write's future completes when its
+ * batch has been committed, or fails with the batch's exception.
+ * <p>
+ * The {@link GraphClient} write methods block until the write is committed,
+ * so existing benchmarks can run through this client unchanged.
+ * {@link #submit(GraphWrite)} returns the future instead. Reads go straight
+ * to the underlying client.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class CoalescingGraphClient implements GraphClient {
+	private final BatchGraphClient client;
+
+	private final int maxBatchSize;
+
+	/**
+	 * Longest time, in ns, a write waits for others to join its batch.
+	 */
+	private final long maxDelayNanos;
+
+	private int numFlushers = 1;
+
+	private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<PendingWrite>();
+
+	private Thread[] flushers;
+
+	private volatile boolean running = false;
+
+	private final AtomicLong sizeFlushes = new AtomicLong();
+	private final AtomicLong deadlineFlushes = new AtomicLong();
+	private final AtomicLong failedBatches = new AtomicLong();
+
+	/**
+	 * Number of writes per batch, and time in ms taken by each batch request.
+	 */
+	private final SummaryStatistics batchSizeStats = new SummaryStatistics();
+	private final SummaryStatistics batchTimeStats = new SummaryStatistics();
+
+	/**
+	 * A queued write, completed by a flusher.
+	 */
+	private static class PendingWrite extends FutureTask<Object> {
+		private static final Callable<Object> NOTHING = new Callable<Object>() {
+			@Override
+			public Object call() {
+				return null;
+			}
+		};
+
+		final GraphWrite write;
+		final long enqueueTime = System.nanoTime();
+
+		PendingWrite(GraphWrite write) {
+			super(NOTHING);
+			this.write = write;
+		}
+
+		void complete(Object result) {
+			set(result);
+		}
+
+		void fail(Throwable t) {
+			setException(t);
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param client
+	 *            The client to send batches to.
+	 * @param maxBatchSize
+	 *            The largest number of writes per batch.
+	 * @param maxDelay
+	 *            The longest time, in ms, a write waits for others to join
+	 *            its batch. With 0, a batch is whatever has been queued by
+	 *            the time a flusher gets to it.
+	 */
+	public CoalescingGraphClient(BatchGraphClient client, int maxBatchSize, long maxDelay) {
+		this.client = client;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = maxDelay*1000000;
+	}
+
+	/**
+	 * Sets the number of flusher threads, and so the number of batch
+	 * requests that can be in flight at once (default 1). Call before
+	 * {@link #start()}.
+	 */
+	public void setNumFlushers(int numFlushers) {
+		this.numFlushers = numFlushers;
+	}
+
+	/**
+	 * Starts the flusher threads.
+	 */
+	public void start() {
+		running = true;
+		flushers = new Thread[numFlushers];
+		for (int i = 0; i < numFlushers; i++) {
+			flushers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					flushLoop();
+				}
+			}, "CoalescingGraphClient-" + i);
+			flushers[i].setDaemon(true);
+			flushers[i].start();
+		}
+	}
+
+	/**
+	 * Flushes the writes still queued and stops the flusher threads.
+	 */
+	public void stop() {
+		running = false;
+		for (Thread flusher : flushers) {
+			flusher.interrupt();
+			try {
+				flusher.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Queues a write.
+	 * 
+	 * @param write
+	 *            The write.
+	 * @return A future that completes when the write's batch has been
+	 *         committed, with the ID of the element created (see
+	 *         {@link BatchGraphClient#writeBatch(List)}).
+	 */
+	public Future<Object> submit(GraphWrite write) {
+		if (!running)
+			throw new IllegalStateException("CoalescingGraphClient is not running");
+		PendingWrite pending = new PendingWrite(write);
+		queue.add(pending);
+		return pending;
+	}
+
+	/**
+	 * Queues a write and waits for its batch to be committed.
+	 */
+	private Object await(GraphWrite write) {
+		try {
+			return submit(write).get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new GraphClientException(0, e.getCause().toString());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GraphClientException(0, "interrupted waiting for batch");
+		}
+	}
+
+	private void flushLoop() {
+		List<PendingWrite> batch = new ArrayList<PendingWrite>(maxBatchSize);
+		while (running || !queue.isEmpty()) {
+			PendingWrite first;
+			try {
+				first = queue.poll(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex) {
+				// Woken up by stop(), flush what's left.
+				continue;
+			}
+			if (first == null)
+				continue;
+
+			batch.add(first);
+			long deadline = first.enqueueTime + maxDelayNanos;
+			while (batch.size() < maxBatchSize) {
+				queue.drainTo(batch, maxBatchSize - batch.size());
+				long remaining = deadline - System.nanoTime();
+				if (batch.size() == maxBatchSize || remaining <= 0)
+					break;
+				try {
+					PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if (next == null)
+						break;
+					batch.add(next);
+				} catch (InterruptedException ex) {
+					break;
+				}
+			}
+
+			if (batch.size() == maxBatchSize)
+				sizeFlushes.incrementAndGet();
+			else
+				deadlineFlushes.incrementAndGet();
+			flush(batch);
+			batch.clear();
+		}
+	}
+
+	private void flush(List<PendingWrite> batch) {
+		List<GraphWrite> writes = new ArrayList<GraphWrite>(batch.size());
+		for (PendingWrite pending : batch)
+			writes.add(pending.write);
+
+		long startTime = System.nanoTime();
+		try {
+			Object[] results = client.writeBatch(writes);
+			for (int i = 0; i < batch.size(); i++)
+				batch.get(i).complete(results[i]);
+		} catch (RuntimeException e) {
+			failedBatches.incrementAndGet();
+			for (PendingWrite pending : batch)
+				pending.fail(e);
+		}
+		long endTime = System.nanoTime();
+
+		synchronized (batchSizeStats) {
+			batchSizeStats.addValue(batch.size());
+			batchTimeStats.addValue((endTime - startTime)/1e6);
+		}
+	}
+
+	@Override
+	public long createVertex(JSONObject properties) {
+		return (Long) await(GraphWrite.createVertex(properties));
+	}
+
+	@Override
+	public JSONObject readVertex(long vId) {
+		return client.readVertex(vId);
+	}
+
+	@Override
+	public void updateVertex(long vId, JSONObject properties) {
+		await(GraphWrite.updateVertex(vId, properties));
+	}
+
+	@Override
+	public void deleteVertex(long vId) {
+		await(GraphWrite.deleteVertex(vId));
+	}
+
+	@Override
+	public String createEdge(long outVId, long inVId, String label, JSONObject properties) {
+		return (String) await(GraphWrite.createEdge(outVId, inVId, label, properties));
+	}
+
+	@Override
+	public JSONObject readEdge(String eId) {
+		return client.readEdge(eId);
+	}
+
+	@Override
+	public void updateEdge(String eId, JSONObject properties) {
+		await(GraphWrite.updateEdge(eId, properties));
+	}
+
+	@Override
+	public void deleteEdge(String eId) {
+		await(GraphWrite.deleteEdge(eId));
+	}
+
+	@Override
+	public List<JSONObject> readNeighbors(long vId) {
+		return client.readNeighbors(vId);
+	}
+
+	@Override
+	public void clearDatabase() {
+		client.clearDatabase();
+	}
+
+	/**
+	 * Returns the mean number of writes per batch.
+	 */
+	public double getMeanBatchSize() {
+		synchronized (batchSizeStats) {
+			return batchSizeStats.getN() == 0 ? 0 : batchSizeStats.getMean();
+		}
+	}
+
+	/**
+	 * Clears the batching statistics.
+	 */
+	public void resetStatistics() {
+		synchronized (batchSizeStats) {
+			sizeFlushes.set(0);
+			deadlineFlushes.set(0);
+			failedBatches.set(0);
+			batchSizeStats.clear();
+			batchTimeStats.clear();
+		}
+	}
+
+	/**
+	 * Prints batching statistics.
+	 */
+	public void printStatistics() {
+		synchronized (batchSizeStats) {
+			System.out.printf("batches: %d (full: %d deadline: %d failed: %d) batch size mean: %.1f max: %.0f batch time mean: %11.6f ms\n",
+					batchSizeStats.getN(), sizeFlushes.get(), deadlineFlushes.get(), failedBatches.get(),
+					getMeanBatchSize(), batchSizeStats.getN() == 0 ? 0 : batchSizeStats.getMax(),
+					batchTimeStats.getN() == 0 ? 0 : batchTimeStats.getMean());
+		}
+	}
+}
@@ -0,0 +1,256 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.json.JSONObject;
+
+/**
+ * ColdStartBenchmarks measures first-touch latency after a restart, which
+ * warming the database up beforehand hides. The graph is loaded once; then,
+ * in each round, the database is restarted, optionally with its files
+ * dropped from the operating system's page cache, and the first numTouches
+ * reads of a working set of vertices are measured ("coldRead"). The working
+ * set is then read through once more, unmeasured, and numTouches reads are
+ * measured again on the now warm database ("warmRead").
+ * <p>
+ * Time-to-warm is the time from the first cold read until the database is
+ * as fast as when warm: the end of the last window of cold reads whose
+ * median latency is more than {@link #WARM_TOLERANCE} above the warm median.
+ * If the last window of cold reads is still slower than that, the database
+ * did not warm up within numTouches reads.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class ColdStartBenchmarks {
+	/**
+	 * Relative difference from the warm median latency within which the
+	 * database is considered warm.
+	 */
+	public static final double WARM_TOLERANCE = 0.1;
+
+	/**
+	 * Smallest number of reads over which the median is taken to decide
+	 * whether the database is warm.
+	 */
+	private static final int MIN_WARM_WINDOW = 10;
+
+	private final RestartableDatabase database;
+
+	/**
+	 * Length, in ms, of the intervals over which latency statistics are
+	 * reported.
+	 */
+	private final long reportingInterval;
+
+	/**
+	 * Summary lines for every round, printed at the end.
+	 */
+	private final List<String> summary = new ArrayList<String>();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param database
+	 *            The database under test, not yet started.
+	 * @param reportingInterval
+	 *            Length, in ms, of the intervals over which latency
+	 *            statistics are reported.
+	 */
+	public ColdStartBenchmarks(RestartableDatabase database, long reportingInterval) {
+		this.database = database;
+		this.reportingInterval = reportingInterval;
+	}
+
+	/**
+	 * Runs the benchmark and prints a summary table with one line per round.
+	 * The database is started and cleared before and cleared and stopped
+	 * after.
+	 * 
+	 * @param numVertices
+	 *            The number of vertices to load.
+	 * @param workingSetSize
+	 *            The number of vertices the reads are spread over, at most
+	 *            numVertices.
+	 * @param numTouches
+	 *            The number of cold reads, and of warm reads, per round.
+	 * @param numRounds
+	 *            The number of restarts.
+	 * @param dropPageCache
+	 *            Whether to drop the database's files from the page cache on
+	 *            every restart.
+	 * @throws IOException
+	 *             If the database could not be started.
+	 */
+	public void run(int numVertices, int workingSetSize, int numTouches, int numRounds, boolean dropPageCache) throws IOException {
+		summary.clear();
+		database.start();
+		GraphClient client = database.newClient();
+		client.clearDatabase();
+
+		System.out.print("Loading " + numVertices + " vertices... ");
+		long[] vIdArray = new long[numVertices];
+		for (int i = 0; i < numVertices; i++)
+			vIdArray[i] = client.createVertex(new JSONObject().put("name", i));
+		System.out.println("done.");
+		long[] workingSet = Arrays.copyOf(vIdArray, Math.min(workingSetSize, numVertices));
+
+		for (int round = 0; round < numRounds; round++) {
+			String spec = "numVertices=" + numVertices + "_workingSet=" + workingSet.length
+					+ "_dropPageCache=" + dropPageCache + "_round=" + round;
+			System.out.println("Running cold start benchmark... " + spec);
+
+			long restartStart = System.nanoTime();
+			database.stop();
+			boolean dropped = dropPageCache && database.dropPageCache();
+			if (dropPageCache && !dropped)
+				System.out.println("WARNING: could not drop the page cache, measuring a restart with a warm page cache");
+			database.start();
+			double restartMs = (System.nanoTime() - restartStart)/1e6;
+			client = database.newClient();
+
+			// Both phases read the same sequence of vertices.
+			long[] sequence = new long[numTouches];
+			Random random = new Random(round);
+			for (int i = 0; i < numTouches; i++)
+				sequence[i] = workingSet[random.nextInt(workingSet.length)];
+
+			long[] startTimes = new long[numTouches];
+			long[] endTimes = new long[numTouches];
+			LatencyMeasurement cold = touch(client, "coldRead", spec, sequence, startTimes, endTimes);
+
+			for (long vId : workingSet)
+				client.readVertex(vId);
+			LatencyMeasurement warm = touch(client, "warmRead", spec, sequence, null, null);
+
+			double warmMedian = warm.getStatistics().getPercentile(50);
+			int touchesToWarm = touchesToWarm(startTimes, endTimes, warmMedian*(1 + WARM_TOLERANCE));
+			double timeToWarm = Double.NaN;
+			if (touchesToWarm == 0)
+				timeToWarm = 0;
+			else if (touchesToWarm > 0)
+				timeToWarm = (endTimes[touchesToWarm - 1] - startTimes[0])/1e6;
+
+			double firstTouch = (endTimes[0] - startTimes[0])/1e6;
+			System.out.printf("restart: %.1f ms first touch: %.6f ms time to warm: %s\n", restartMs, firstTouch,
+					touchesToWarm < 0 ? "not warm after " + numTouches + " touches" : String.format("%.3f ms (%d touches)", timeToWarm, touchesToWarm));
+
+			summary.add(String.format("%5d %8s %10.1f %11.6f %11.6f %11.6f %11.6f %11.6f %8s %12s",
+					round, dropped ? "yes" : "no", restartMs, firstTouch,
+					cold.getStatistics().getPercentile(50), cold.getStatistics().getPercentile(99),
+					warm.getStatistics().getPercentile(50), warm.getStatistics().getPercentile(99),
+					touchesToWarm < 0 ? ">" + numTouches : Integer.toString(touchesToWarm),
+					touchesToWarm < 0 ? "-" : String.format("%.3f", timeToWarm)));
+		}
+
+		client.clearDatabase();
+		database.stop();
+
+		System.out.println("Cold start benchmark summary (latencies in ms):");
+		System.out.printf("%5s %8s %10s %11s %11s %11s %11s %11s %8s %12s\n", "round", "dropped", "restart",
+				"firstTouch", "cold p50", "cold p99", "warm p50", "warm p99", "touches", "timeToWarm");
+		for (String line : summary)
+			System.out.println(line);
+	}
+
+	/**
+	 * Reads each vertex of a sequence in turn, measuring the latency of each
+	 * read, and optionally keeping the start and end time of each.
+	 */
+	private LatencyMeasurement touch(GraphClient client, String benchmarkName, String spec, long[] sequence, long[] startTimes, long[] endTimes) {
+		LatencyMeasurement m = new LatencyMeasurement(benchmarkName, spec, reportingInterval);
+		for (int i = 0; i < sequence.length; i++) {
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				client.readVertex(sequence[i]);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+			if (startTimes != null) {
+				startTimes[i] = startTime;
+				endTimes[i] = endTime;
+			}
+		}
+		m.finish();
+
+		System.out.println("Timings statistics for " + benchmarkName + ":");
+		m.printStatistics();
+		return m;
+	}
+
+	/**
+	 * Returns the number of cold reads after which every window of reads
+	 * has a median latency at or below the threshold, or -1 if the last
+	 * window is still above it.
+	 */
+	private static int touchesToWarm(long[] startTimes, long[] endTimes, double thresholdMs) {
+		int n = startTimes.length;
+		int window = Math.min(n, Math.max(MIN_WARM_WINDOW, n/100));
+		DescriptiveStatistics stats = new DescriptiveStatistics(window);
+		int lastSlowWindowEnd = -1;
+		for (int i = 0; i < n; i++) {
+			stats.addValue((endTimes[i] - startTimes[i])/1e6);
+			if (i >= window - 1 && stats.getPercentile(50) > thresholdMs)
+				lastSlowWindowEnd = i;
+		}
+		if (lastSlowWindowEnd == n - 1)
+			return -1;
+		return lastSlowWindowEnd + 1;
+	}
+
+	/**
+	 * Evicts a file, or every file under a directory, from the operating
+	 * system's page cache. This uses GNU dd, which calls
+	 * posix_fadvise(POSIX_FADV_DONTNEED) on the whole file when asked to copy
+	 * nothing with "iflag=nocache".
+	 * 
+	 * @param file
+	 *            The file or directory.
+	 * @return Whether every file was evicted.
+	 */
+	public static boolean dropFromPageCache(File file) {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			boolean dropped = children != null;
+			for (File child : children == null ? new File[0] : children)
+				dropped &= dropFromPageCache(child);
+			return dropped;
+		}
+		try {
+			Process dd = new ProcessBuilder("dd", "if=" + file.getPath(), "iflag=nocache", "count=0", "status=none")
+					.redirectErrorStream(true).start();
+			dd.getInputStream().close();
+			return dd.waitFor() == 0;
+		} catch (IOException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
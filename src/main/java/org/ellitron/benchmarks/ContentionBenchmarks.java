@@ -0,0 +1,276 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+/**
+ * ContentionBenchmarks measures writes under lock contention. A number of
+ * worker threads each either update the properties of a vertex picked at
+ * random from a small set of hot vertices, or add an edge from a vertex of
+ * their own to a single shared supernode. Contention is raised by adding
+ * workers and by shrinking the hot set.
+ * <p>
+ * Writes that fail because of a lock conflict (e.g. a deadlock detected by
+ * Neo4j, or a locking failure in Titan) are retried up to a bounded number
+ * of times, and the retries are counted. The recorded latency of a write
+ * includes all of its attempts.
+ * <p>
+ * The benchmarks are written against {@link GraphClient}, so the same
+ * workload runs unchanged against every backend.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class ContentionBenchmarks {
+	/**
+	 * Default numbers of concurrent workers.
+	 */
+	public static final int[] DEFAULT_NUM_THREADS = { 1, 4, 16, 64 };
+
+	/**
+	 * Default sizes of the hot vertex set.
+	 */
+	public static final int[] DEFAULT_HOT_SET_SIZES = { 1000, 100, 10, 1 };
+
+	private final GraphClient client;
+
+	/**
+	 * Length, in ms, of the intervals over which latency statistics are
+	 * reported.
+	 */
+	private final long reportingInterval;
+
+	/**
+	 * Fraction of writes that add an edge to the supernode rather than
+	 * update a hot vertex.
+	 */
+	private double edgeFraction = 0.5;
+
+	/**
+	 * Maximum number of times a write failing on a lock conflict is retried.
+	 */
+	private int maxRetries = 5;
+
+	/**
+	 * Summary lines for every measured operation, printed at the end.
+	 */
+	private final List<String> summary = new ArrayList<String>();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param client
+	 *            Client for the database under test. It is shared by all
+	 *            workers.
+	 * @param reportingInterval
+	 *            Length, in ms, of the intervals over which latency
+	 *            statistics are reported.
+	 */
+	public ContentionBenchmarks(GraphClient client, long reportingInterval) {
+		this.client = client;
+		this.reportingInterval = reportingInterval;
+	}
+
+	/**
+	 * Sets the fraction of writes that add an edge to the supernode rather
+	 * than update a hot vertex.
+	 */
+	public void setEdgeFraction(double edgeFraction) {
+		this.edgeFraction = edgeFraction;
+	}
+
+	/**
+	 * Sets the maximum number of times a write failing on a lock conflict is
+	 * retried. Zero disables retries.
+	 */
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * Runs the benchmarks over the default worker counts and hot set sizes.
+	 * 
+	 * @param numSamples
+	 *            The number of writes each worker makes per configuration.
+	 */
+	public void run(final int numSamples) {
+		run(numSamples, DEFAULT_NUM_THREADS, DEFAULT_HOT_SET_SIZES);
+	}
+
+	/**
+	 * Runs the benchmarks over every combination of the given worker counts
+	 * and hot set sizes, and prints a summary table of latency, retries and
+	 * throughput against contention.
+	 * 
+	 * @param numSamples
+	 *            The number of writes each worker makes per configuration.
+	 * @param numThreadsList
+	 *            Numbers of concurrent workers.
+	 * @param hotSetSizes
+	 *            Sizes of the hot vertex set.
+	 */
+	public void run(final int numSamples, int[] numThreadsList, int[] hotSetSizes) {
+		summary.clear();
+
+		for (int numThreads : numThreadsList)
+			for (int hotSetSize : hotSetSizes)
+				runContention(numSamples, numThreads, hotSetSize);
+
+		System.out.println("Contention benchmark summary (latencies in ms):");
+		System.out.printf("%-8s %8s %8s %11s %11s %11s %10s %8s %9s %7s\n", "op", "threads", "hotSet", "mean", "p50", "p99", "ops/s", "retries", "conflicts", "errors");
+		for (String line : summary)
+			System.out.println(line);
+	}
+
+	/**
+	 * Runs one configuration. Creates the hot vertices, the supernode and
+	 * one edge source vertex per worker, then starts all workers at once.
+	 */
+	private void runContention(final int numSamples, final int numThreads, final int hotSetSize) {
+		String spec = "numSamples=" + numSamples + "_numThreads=" + numThreads + "_hotSetSize=" + hotSetSize;
+		System.out.println("Running contention benchmark... " + spec);
+
+		final long[] hotVIds = new long[hotSetSize];
+		for (int i = 0; i < hotSetSize; i++)
+			hotVIds[i] = client.createVertex(new JSONObject().put("counter", 0));
+		final long supernodeVId = client.createVertex(new JSONObject());
+		final long[] sourceVIds = new long[numThreads];
+		for (int i = 0; i < numThreads; i++)
+			sourceVIds[i] = client.createVertex(new JSONObject());
+
+		final LatencyMeasurement updates = new LatencyMeasurement("contentionVertexUpdate", spec, reportingInterval);
+		final LatencyMeasurement edges = new LatencyMeasurement("contentionSupernodeEdgeCreate", spec, reportingInterval);
+		final AtomicLong[] retries = { new AtomicLong(), new AtomicLong() };
+		final AtomicLong[] conflicts = { new AtomicLong(), new AtomicLong() };
+		final CountDownLatch startLatch = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		for (int t = 0; t < numThreads; t++) {
+			final int threadId = t;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(threadId);
+
+					try {
+						startLatch.await();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+
+					for (int i = 0; i < numSamples; i++) {
+						boolean edge = random.nextDouble() < edgeFraction;
+						int op = edge ? 1 : 0;
+						long vId = hotVIds[random.nextInt(hotSetSize)];
+						JSONObject properties = new JSONObject();
+						properties.put("counter", i);
+						properties.put("worker", threadId);
+
+						LatencyMeasurement m = edge ? edges : updates;
+						long allocatedBefore = m.allocatedBytes();
+						long startTime = System.nanoTime();
+						boolean error = false;
+						for (int attempt = 0; ; attempt++) {
+							try {
+								if (edge)
+									client.createEdge(sourceVIds[threadId], supernodeVId, "follows", properties);
+								else
+									client.updateVertex(vId, properties);
+								break;
+							} catch (GraphClientException e) {
+								if (!isLockConflict(e)) {
+									error = true;
+									break;
+								}
+								conflicts[op].incrementAndGet();
+								if (attempt == maxRetries) {
+									error = true;
+									break;
+								}
+								retries[op].incrementAndGet();
+								backoff(random, attempt);
+							}
+						}
+						long endTime = System.nanoTime();
+						m.recordAllocation(allocatedBefore, m.allocatedBytes());
+						m.record(startTime, endTime, error);
+					}
+				}
+			});
+		}
+
+		startLatch.countDown();
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+
+		finish(updates, "update", numThreads, hotSetSize, retries[0].get(), conflicts[0].get());
+		finish(edges, "edge", numThreads, hotSetSize, retries[1].get(), conflicts[1].get());
+
+		client.clearDatabase();
+	}
+
+	/**
+	 * Returns whether the request failed because of a lock conflict, and so
+	 * may succeed if retried. Neo4j reports a DeadlockDetectedException, and
+	 * Titan a PermanentLockingException or TemporaryLockingException.
+	 */
+	public static boolean isLockConflict(GraphClientException e) {
+		return StatusClass.isLockConflict(e.getMessage());
+	}
+
+	/**
+	 * Sleeps for a random time up to 2^attempt ms before a retry, so that
+	 * conflicting workers don't retry in lock step.
+	 */
+	private static void backoff(Random random, int attempt) {
+		try {
+			Thread.sleep(random.nextInt(1 << Math.min(attempt + 1, 10)));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Ends a measurement, prints its statistics and adds it to the summary.
+	 */
+	private void finish(LatencyMeasurement m, String op, int numThreads, int hotSetSize, long numRetries, long numConflicts) {
+		m.finish();
+
+		System.out.println("Timings statistics for " + op + ":");
+		m.printStatistics();
+		System.out.printf("retries: %d conflicts: %d\n", numRetries, numConflicts);
+
+		summary.add(String.format("%-8s %8d %8d %11.6f %11.6f %11.6f %10.1f %8d %9d %7d",
+				op, numThreads, hotSetSize, m.getStatistics().getMean(),
+				m.getStatistics().getPercentile(50),
+				m.getStatistics().getPercentile(99), m.getThroughput(),
+				numRetries, numConflicts, m.getNumErrors()));
+	}
+}
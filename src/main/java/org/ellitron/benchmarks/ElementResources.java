@@ -0,0 +1,89 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.net.URI;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.WebResource;
+
+/**
+ * ElementResources hands out WebResource handles for elements (vertices,
+ * nodes, edges, relationships) addressed by ID under a common base resource,
+ * e.g. "vertices/{id}". Handles are built on a shared Client, which is where
+ * most of the saving over setting up a new Client per request lies. A
+ * handle for a numeric ID is built straight from the collection URI string
+ * with the ID appended, which costs a single URI parse; deriving it from the
+ * base resource with WebResource.path() would re-parse the base URI through
+ * a UriBuilder as well.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class ElementResources {
+	private final Client client;
+	private final WebResource base;
+
+	/**
+	 * URI of the collection, ending in '/', to which IDs are appended.
+	 */
+	private final String prefix;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param client
+	 *            Client shared by all handles.
+	 * @param baseUri
+	 *            URI of the collection the elements live under, e.g.
+	 *            server_root_uri + "vertices".
+	 */
+	public ElementResources(Client client, String baseUri) {
+		this.client = client;
+		this.base = client.resource(baseUri);
+		this.prefix = baseUri.endsWith("/") ? baseUri : baseUri + "/";
+	}
+
+	/**
+	 * Returns the resource of the collection itself.
+	 */
+	public WebResource getBase() {
+		return base;
+	}
+
+	/**
+	 * Returns the resource of the element with the given numeric ID.
+	 */
+	public WebResource get(long id) {
+		return client.resource(URI.create(prefix + id));
+	}
+
+	/**
+	 * Returns the resource of the element with the given ID, for databases
+	 * whose IDs are not numeric. The ID is appended as an encoded path
+	 * segment, so it may contain any characters.
+	 */
+	public WebResource get(String id) {
+		return base.path(id);
+	}
+
+	/**
+	 * Returns the numeric ID at the end of an element URI, such as the "self"
+	 * URI Neo4j returns for a new node.
+	 */
+	public static long idOf(String uri) {
+		return Long.parseLong(uri.substring(uri.lastIndexOf('/') + 1));
+	}
+}
@@ -0,0 +1,127 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.util.List;
+
+import org.json.JSONObject;
+
+/**
+ * GraphClient is the set of basic CRUD operations on a remote graph database
+ * that the backend independent benchmarks are written against. Each call is
+ * a single request to the server, and implementations must be safe to use
+ * from many threads at once.
+ * <p>
+ * Vertices are identified by their numeric ID. Edges are identified by a
+ * string, since some backends (e.g. TitanDB) use non-numeric edge IDs.
+ * Operations that fail throw {@link GraphClientException}.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public interface GraphClient {
+	/**
+	 * Creates a vertex.
+	 * 
+	 * @param properties
+	 *            Properties to set on the vertex (may be empty).
+	 * @return The ID of the new vertex.
+	 */
+	public long createVertex(JSONObject properties);
+
+	/**
+	 * Reads a vertex.
+	 * 
+	 * @param vId
+	 *            ID of the vertex.
+	 * @return The properties of the vertex.
+	 */
+	public JSONObject readVertex(long vId);
+
+	/**
+	 * Sets properties on a vertex, leaving any other properties unchanged.
+	 * 
+	 * @param vId
+	 *            ID of the vertex.
+	 * @param properties
+	 *            Properties to set.
+	 */
+	public void updateVertex(long vId, JSONObject properties);
+
+	/**
+	 * Deletes a vertex. The vertex must not have any edges.
+	 * 
+	 * @param vId
+	 *            ID of the vertex.
+	 */
+	public void deleteVertex(long vId);
+
+	/**
+	 * Creates an edge.
+	 * 
+	 * @param outVId
+	 *            ID of the vertex the edge goes out of.
+	 * @param inVId
+	 *            ID of the vertex the edge goes into.
+	 * @param label
+	 *            Edge label (relationship type).
+	 * @param properties
+	 *            Properties to set on the edge (may be empty).
+	 * @return The ID of the new edge.
+	 */
+	public String createEdge(long outVId, long inVId, String label, JSONObject properties);
+
+	/**
+	 * Reads an edge.
+	 * 
+	 * @param eId
+	 *            ID of the edge.
+	 * @return The properties of the edge.
+	 */
+	public JSONObject readEdge(String eId);
+
+	/**
+	 * Sets properties on an edge, leaving any other properties unchanged.
+	 * 
+	 * @param eId
+	 *            ID of the edge.
+	 * @param properties
+	 *            Properties to set.
+	 */
+	public void updateEdge(String eId, JSONObject properties);
+
+	/**
+	 * Deletes an edge.
+	 * 
+	 * @param eId
+	 *            ID of the edge.
+	 */
+	public void deleteEdge(String eId);
+
+	/**
+	 * Reads the vertices adjacent to a vertex, over edges in either
+	 * direction, in a single request.
+	 * 
+	 * @param vId
+	 *            ID of the vertex.
+	 * @return The properties of each neighboring vertex.
+	 */
+	public List<JSONObject> readNeighbors(long vId);
+
+	/**
+	 * Clears the database of all edges and vertices.
+	 */
+	public void clearDatabase();
+}
@@ -0,0 +1,48 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+/**
+ * GraphClientException is thrown by a {@link GraphClient} when the server
+ * rejects a request.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class GraphClientException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * HTTP status code returned by the server.
+	 */
+	private final int status;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param status
+	 *            HTTP status code returned by the server.
+	 * @param message
+	 *            Response body or other description of the failure.
+	 */
+	public GraphClientException(int status, String message) {
+		super("HTTP " + status + ": " + message);
+		this.status = status;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+}
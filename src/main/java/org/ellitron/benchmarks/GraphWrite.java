@@ -0,0 +1,91 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package org.ellitron.benchmarks;
+
+import org.json.JSONObject;
+
+/**
+ * GraphWrite is a single create, update or delete of a vertex or edge, as
+ * queued by a {@link CoalescingGraphClient} and applied in a batch by a
+ * {@link BatchGraphClient}. Only the fields relevant to the kind of write are
+ * set.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class GraphWrite {
+	public enum Kind {
+		CREATE_VERTEX, UPDATE_VERTEX, DELETE_VERTEX, CREATE_EDGE, UPDATE_EDGE, DELETE_EDGE
+	}
+
+	public final Kind kind;
+
+	/**
+	 * ID of the vertex written, or of the vertex a new edge goes out of.
+	 */
+	public final long vId;
+
+	/**
+	 * ID of the vertex a new edge goes into.
+	 */
+	public final long inVId;
+
+	/**
+	 * ID of the edge written.
+	 */
+	public final String eId;
+
+	/**
+	 * Label of a new edge.
+	 */
+	public final String label;
+
+	/**
+	 * Properties to set, for creates and updates.
+	 */
+	public final JSONObject properties;
+
+	private GraphWrite(Kind kind, long vId, long inVId, String eId, String label, JSONObject properties) {
+		this.kind = kind;
+		this.vId = vId;
+		this.inVId = inVId;
+		this.eId = eId;
+		this.label = label;
+		this.properties = properties;
+	}
+
+	public static GraphWrite createVertex(JSONObject properties) {
+		return new GraphWrite(Kind.CREATE_VERTEX, -1, -1, null, null, properties);
+	}
+
+	public static GraphWrite updateVertex(long vId, JSONObject properties) {
+		return new GraphWrite(Kind.UPDATE_VERTEX, vId, -1, null, null, properties);
+	}
+
+	public static GraphWrite deleteVertex(long vId) {
+		return new GraphWrite(Kind.DELETE_VERTEX, vId, -1, null, null, null);
+	}
+
+	public static GraphWrite createEdge(long outVId, long inVId, String label, JSONObject properties) {
+		return new GraphWrite(Kind.CREATE_EDGE, outVId, inVId, null, label, properties);
+	}
+
+	public static GraphWrite updateEdge(String eId, JSONObject properties) {
+		return new GraphWrite(Kind.UPDATE_EDGE, -1, -1, eId, null, properties);
+	}
+
+	public static GraphWrite deleteEdge(String eId) {
+		return new GraphWrite(Kind.DELETE_EDGE, -1, -1, eId, null, null);
+	}
+}
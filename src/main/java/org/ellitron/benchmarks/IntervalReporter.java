@@ -0,0 +1,212 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * IntervalReporter collects latency samples as they are measured and, on a
+ * background thread, writes one line of statistics per reporting interval to
+ * a file. Each line carries the absolute wall clock time of the interval so
+ * that latency spikes can be lined up against server side logs (GC logs,
+ * compaction logs, etc.).
+ * <p>
+ * The benchmark thread only ever appends a sample to an in-memory buffer, so
+ * it never blocks on file I/O.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class IntervalReporter implements Runnable {
+	/**
+	 * Name of the file to which interval statistics are written.
+	 */
+	private final String filename;
+
+	/**
+	 * Length of a reporting interval in milliseconds.
+	 */
+	private final long intervalMillis;
+
+	/**
+	 * Wall clock time, in milliseconds since the epoch, and the corresponding
+	 * value of System.nanoTime(), captured together when the reporter is
+	 * created. Used to translate nanoTime() values into absolute timestamps.
+	 */
+	private final long epochMillisBase;
+	private final long nanoTimeBase;
+
+	/**
+	 * Latencies, in ms, recorded so far in the current interval.
+	 */
+	private double[] samples = new double[1024];
+	private int numSamples = 0;
+	private int numErrors = 0;
+
+	/**
+	 * Guards the current interval's samples. A lock rather than a monitor,
+	 * so that virtual threads recording samples are not pinned.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Background thread doing the reporting.
+	 */
+	private Thread thread;
+
+	private volatile boolean running;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param filename
+	 *            The file to write interval statistics to.
+	 * @param intervalMillis
+	 *            The length of a reporting interval in milliseconds.
+	 */
+	public IntervalReporter(String filename, long intervalMillis) {
+		this.filename = filename;
+		this.intervalMillis = intervalMillis;
+		this.epochMillisBase = System.currentTimeMillis();
+		this.nanoTimeBase = System.nanoTime();
+	}
+
+	/**
+	 * Starts the background reporting thread.
+	 */
+	public void start() {
+		running = true;
+		thread = new Thread(this, "IntervalReporter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the background reporting thread, writing out the final (partial)
+	 * interval before returning.
+	 */
+	public void stop() {
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Records a single sample.
+	 *
+	 * @param startTime
+	 *            Value of System.nanoTime() when the operation started.
+	 * @param endTime
+	 *            Value of System.nanoTime() when the operation completed.
+	 * @param error
+	 *            Whether or not the operation failed.
+	 */
+	public void record(long startTime, long endTime, boolean error) {
+		lock.lock();
+		try {
+			if (numSamples == samples.length)
+				samples = Arrays.copyOf(samples, 2*samples.length);
+			samples[numSamples++] = (endTime - startTime)/1e6;
+			if (error)
+				numErrors++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Translates a System.nanoTime() value into milliseconds since the epoch.
+	 */
+	private long toEpochMillis(long nanoTime) {
+		return epochMillisBase + (nanoTime - nanoTimeBase)/1000000;
+	}
+
+	@Override
+	public void run() {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+		double[] intervalSamples = new double[1024];
+
+		try {
+			BufferedWriter br = new BufferedWriter(new FileWriter(filename));
+			br.write("# timestamp epochMillis intervalMs count throughput(ops/s) p50(ms) p99(ms) max(ms) errors\n");
+
+			long intervalStart = System.nanoTime();
+			long nextDeadline = intervalStart;
+			boolean done = false;
+			while (!done) {
+				// Sleep to a fixed schedule so intervals don't drift.
+				nextDeadline += intervalMillis*1000000;
+				try {
+					long sleepNanos = nextDeadline - System.nanoTime();
+					if (sleepNanos > 0)
+						Thread.sleep(sleepNanos/1000000, (int)(sleepNanos%1000000));
+				} catch (InterruptedException ex) {
+					// Woken up by stop().
+				}
+				done = !running;
+
+				// Swap out the current interval's samples.
+				int count;
+				int errors;
+				long intervalEnd;
+				lock.lock();
+				try {
+					intervalEnd = System.nanoTime();
+					double[] tmp = samples;
+					samples = intervalSamples;
+					intervalSamples = tmp;
+					count = numSamples;
+					errors = numErrors;
+					numSamples = 0;
+					numErrors = 0;
+				} finally {
+					lock.unlock();
+				}
+
+				double intervalMs = (intervalEnd - intervalStart)/1e6;
+				double p50 = 0, p99 = 0, max = 0;
+				if (count > 0) {
+					Arrays.sort(intervalSamples, 0, count);
+					p50 = intervalSamples[(int)Math.ceil(0.50*count) - 1];
+					p99 = intervalSamples[(int)Math.ceil(0.99*count) - 1];
+					max = intervalSamples[count - 1];
+				}
+
+				long timestamp = toEpochMillis(intervalEnd);
+				br.write(String.format("%s %d %.3f %d %.1f %.6f %.6f %.6f %d\n",
+						dateFormat.format(new Date(timestamp)), timestamp,
+						intervalMs, count, count/(intervalMs/1e3), p50, p99,
+						max, errors));
+				br.flush();
+
+				intervalStart = intervalEnd;
+			}
+
+			br.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,234 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package org.ellitron.benchmarks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+/**
+ * JvmMonitor watches the benchmark's own JVM, so that latency spikes caused
+ * by the client can be told apart from those caused by the server. It
+ * subscribes to garbage collection notifications and keeps the time span of
+ * every stop-the-world pause, and reads the number of bytes allocated by the
+ * calling thread from the ThreadMXBean.
+ * <p>
+ * The JVM reports pause times with millisecond resolution, so pauses are
+ * widened by {@link #PAUSE_MARGIN_NANOS} on each side when checking whether a
+ * sample overlapped one. Concurrent collection cycles (e.g. "ZGC Cycles")
+ * don't stop the application and are ignored.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class JvmMonitor implements NotificationListener {
+	/**
+	 * Margin added to each side of a pause to cover the resolution of the
+	 * reported times.
+	 */
+	public static final long PAUSE_MARGIN_NANOS = 1000000;
+
+	/**
+	 * How long to wait, in ms, for notifications of pauses that have just
+	 * ended, which are delivered asynchronously.
+	 */
+	private static final long NOTIFICATION_DELAY = 20;
+
+	/**
+	 * Value of System.nanoTime() when the JVM started, for translating the
+	 * JVM uptime based times of GC pauses.
+	 */
+	private final long jvmStartNanos;
+
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	/**
+	 * Start and end times, as System.nanoTime() values, of every pause seen,
+	 * in the order they were reported.
+	 */
+	private long[] pauseStarts = new long[64];
+	private long[] pauseEnds = new long[64];
+	private int numPauses = 0;
+
+	private final List<NotificationEmitter> emitters = new ArrayList<NotificationEmitter>();
+
+	public JvmMonitor() {
+		jvmStartNanos = System.nanoTime() - ManagementFactory.getRuntimeMXBean().getUptime()*1000000;
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			threadBean = (com.sun.management.ThreadMXBean) bean;
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			threadBean = null;
+		}
+	}
+
+	/**
+	 * Subscribes to garbage collection notifications.
+	 */
+	public void start() {
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (bean instanceof NotificationEmitter) {
+				((NotificationEmitter) bean).addNotificationListener(this, null, null);
+				emitters.add((NotificationEmitter) bean);
+			}
+		}
+	}
+
+	/**
+	 * Unsubscribes from garbage collection notifications.
+	 */
+	public void stop() {
+		for (NotificationEmitter emitter : emitters) {
+			try {
+				emitter.removeNotificationListener(this);
+			} catch (ListenerNotFoundException e) {
+				// Already removed.
+			}
+		}
+		emitters.clear();
+	}
+
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+			return;
+		GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+		if (info.getGcName().contains("Cycles") || info.getGcName().contains("Concurrent") || info.getGcAction().contains("cycle"))
+			return;
+		GcInfo gcInfo = info.getGcInfo();
+		synchronized (this) {
+			if (numPauses == pauseStarts.length) {
+				pauseStarts = Arrays.copyOf(pauseStarts, 2*numPauses);
+				pauseEnds = Arrays.copyOf(pauseEnds, 2*numPauses);
+			}
+			pauseStarts[numPauses] = jvmStartNanos + gcInfo.getStartTime()*1000000 - PAUSE_MARGIN_NANOS;
+			pauseEnds[numPauses] = jvmStartNanos + gcInfo.getEndTime()*1000000 + PAUSE_MARGIN_NANOS;
+			numPauses++;
+		}
+	}
+
+	/**
+	 * Returns whether per thread allocation counts are available.
+	 */
+	public boolean isAllocationSupported() {
+		return threadBean != null;
+	}
+
+	/**
+	 * Returns the number of bytes allocated so far by the calling thread, or
+	 * -1 if not supported.
+	 */
+	public long allocatedBytes() {
+		if (threadBean == null)
+			return -1;
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Pauses seen between two points in time, sorted by start time.
+	 */
+	public static class Pauses {
+		private final long[] starts;
+		private final long[] ends;
+
+		/**
+		 * Latest end of the pauses up to and including each one, so that
+		 * overlapping pauses are handled.
+		 */
+		private final long[] maxEnds;
+
+		Pauses(long[] starts, long[] ends) {
+			this.starts = starts;
+			this.ends = ends;
+			this.maxEnds = new long[ends.length];
+			for (int i = 0; i < ends.length; i++)
+				maxEnds[i] = i == 0 ? ends[i] : Math.max(maxEnds[i-1], ends[i]);
+		}
+
+		public int size() {
+			return starts.length;
+		}
+
+		/**
+		 * Returns the total length of the pauses, in ms, without the margins.
+		 */
+		public double getTotalMillis() {
+			long total = 0;
+			for (int i = 0; i < starts.length; i++)
+				total += ends[i] - starts[i] - 2*PAUSE_MARGIN_NANOS;
+			return total/1e6;
+		}
+
+		/**
+		 * Returns whether the span from startTime to endTime (System.nanoTime()
+		 * values) overlapped any of the pauses.
+		 */
+		public boolean overlaps(long startTime, long endTime) {
+			int i = Arrays.binarySearch(starts, endTime);
+			if (i < 0)
+				i = -i - 2;
+			return i >= 0 && maxEnds[i] >= startTime;
+		}
+	}
+
+	/**
+	 * Returns the pauses that overlapped the span from startTime to endTime
+	 * (System.nanoTime() values). Waits briefly first, if the span has only
+	 * just ended, for notifications of pauses still being delivered.
+	 */
+	public Pauses getPauses(long startTime, long endTime) {
+		long wait = NOTIFICATION_DELAY - (System.nanoTime() - endTime)/1000000;
+		if (wait > 0) {
+			try {
+				Thread.sleep(wait);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		List<long[]> selected = new ArrayList<long[]>();
+		synchronized (this) {
+			for (int i = 0; i < numPauses; i++)
+				if (pauseEnds[i] >= startTime && pauseStarts[i] <= endTime)
+					selected.add(new long[] { pauseStarts[i], pauseEnds[i] });
+		}
+		long[][] sorted = selected.toArray(new long[selected.size()][]);
+		Arrays.sort(sorted, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+			}
+		});
+		long[] starts = new long[sorted.length];
+		long[] ends = new long[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			starts[i] = sorted[i][0];
+			ends[i] = sorted[i][1];
+		}
+		return new Pauses(starts, ends);
+	}
+}
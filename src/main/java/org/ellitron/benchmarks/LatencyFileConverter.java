@@ -0,0 +1,247 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * LatencyFileConverter converts the binary files written by
+ * {@link BinaryLatencyWriter} into text for analysis. Two output formats are
+ * supported:
+ * <ul>
+ * <li>txt: one latency per line in milliseconds with six decimal places
+ * (the format historically written by dumpLatencyMeasurements)</li>
+ * <li>csv: "sample,latency_ns,latency_ms" with a header line, followed by
+ * a "gc_tainted" column (1 for samples that overlapped a client GC pause) if
+ * a "name.tainted" file written by {@link LatencyMeasurement} is next to
+ * the input</li>
+ * </ul>
+ * Usage: LatencyFileConverter [txt|csv] input.bin [input.bin ...]
+ * <p>
+ * Each input file "name.bin" is converted to "name.out" (txt) or "name.csv"
+ * (csv) in the same directory.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class LatencyFileConverter {
+	/**
+	 * Number of samples read from the input file at a time.
+	 */
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	public static void main(String[] args) {
+		if (args.length < 2 || !(args[0].equals("txt") || args[0].equals("csv"))) {
+			System.out.println("Usage: LatencyFileConverter [txt|csv] input.bin [input.bin ...]");
+			System.exit(1);
+		}
+
+		boolean csv = args[0].equals("csv");
+
+		for (int i = 1; i < args.length; i++) {
+			String input = args[i];
+			String base = input.endsWith(".bin") ? input.substring(0, input.length() - 4) : input;
+			String output = base + (csv ? ".csv" : ".out");
+
+			System.out.print("Converting " + input + " to " + output + "... ");
+			try {
+				long numSamples = convert(input, output, csv);
+				System.out.println("done (" + numSamples + " samples).");
+			} catch (IOException e) {
+				System.out.println("failed.");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Converts a single binary latency file.
+	 *
+	 * @param input
+	 *            The binary file to read.
+	 * @param output
+	 *            The text file to write.
+	 * @param csv
+	 *            Write CSV rather than plain text.
+	 * @return The number of samples converted.
+	 * @throws IOException
+	 */
+	public static long convert(String input, String output, boolean csv) throws IOException {
+		long[] tainted = csv ? readTainted(input) : null;
+		int nextTainted = 0;
+		FileInputStream in = new FileInputStream(input);
+		FileChannel channel = in.getChannel();
+		BufferedWriter br = new BufferedWriter(new FileWriter(output), 1 << 20);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE * 8);
+		StringBuilder sb = new StringBuilder(64);
+
+		if (csv)
+			br.write(tainted == null ? "sample,latency_ns,latency_ms\n" : "sample,latency_ns,latency_ms,gc_tainted\n");
+
+		long sample = 0;
+		while (channel.read(buffer) != -1 || buffer.position() > 0) {
+			buffer.flip();
+			LongBuffer longs = buffer.asLongBuffer();
+			while (longs.hasRemaining()) {
+				long latency = longs.get();
+				sb.setLength(0);
+				if (csv)
+					sb.append(sample).append(',').append(latency).append(',');
+				appendMillis(sb, latency);
+				if (tainted != null) {
+					while (nextTainted < tainted.length && tainted[nextTainted] < sample)
+						nextTainted++;
+					sb.append(nextTainted < tainted.length && tainted[nextTainted] == sample ? ",1" : ",0");
+				}
+				sb.append('\n');
+				br.write(sb.toString());
+				sample++;
+			}
+			// Keep any trailing partial long for the next read.
+			buffer.position(longs.position() * 8);
+			buffer.compact();
+			if (buffer.position() > 0 && buffer.position() < 8 && channel.position() == channel.size())
+				break;
+		}
+
+		br.flush();
+		br.close();
+		channel.close();
+		in.close();
+
+		return sample;
+	}
+
+	/**
+	 * Reads the positions of the GC tainted samples of a binary latency file
+	 * from the ".tainted" file next to it.
+	 *
+	 * @param input
+	 *            The binary file.
+	 * @return The sorted positions, or null if there is no ".tainted" file.
+	 * @throws IOException
+	 */
+	public static long[] readTainted(String input) throws IOException {
+		String base = input.endsWith(".bin") ? input.substring(0, input.length() - 4) : input;
+		File file = new File(base + ".tainted");
+		if (!file.exists())
+			return null;
+
+		long[] positions = new long[1024];
+		int n = 0;
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty())
+					continue;
+				if (n == positions.length)
+					positions = Arrays.copyOf(positions, 2*n);
+				positions[n++] = Long.parseLong(line.trim());
+			}
+		} finally {
+			reader.close();
+		}
+		positions = Arrays.copyOf(positions, n);
+		Arrays.sort(positions);
+		return positions;
+	}
+
+	/**
+	 * Reads all samples of a binary latency file into memory. A trailing
+	 * partial sample is ignored.
+	 *
+	 * @param input
+	 *            The binary file to read.
+	 * @return The latencies, in ns, in the order they were recorded.
+	 * @throws IOException
+	 */
+	public static long[] read(String input) throws IOException {
+		FileInputStream in = new FileInputStream(input);
+		FileChannel channel = in.getChannel();
+		ByteBuffer buffer = ByteBuffer.allocate((int) (channel.size() / 8 * 8));
+		while (buffer.hasRemaining() && channel.read(buffer) != -1)
+			;
+		channel.close();
+		in.close();
+
+		buffer.flip();
+		long[] samples = new long[buffer.remaining() / 8];
+		buffer.asLongBuffer().get(samples);
+		return samples;
+	}
+
+	/**
+	 * Streams a binary latency file into a histogram a block at a time, so
+	 * files of any size are read in constant memory. A trailing partial
+	 * sample is ignored.
+	 *
+	 * @param input
+	 *            The binary file to read.
+	 * @param histogram
+	 *            The histogram to record the latencies in.
+	 * @return The number of samples read.
+	 * @throws IOException
+	 */
+	public static long readInto(String input, LatencyHistogram histogram) throws IOException {
+		FileInputStream in = new FileInputStream(input);
+		FileChannel channel = in.getChannel();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE * 8);
+
+		long numSamples = 0;
+		while (channel.read(buffer) != -1) {
+			buffer.flip();
+			LongBuffer longs = buffer.asLongBuffer();
+			while (longs.hasRemaining()) {
+				histogram.record(longs.get());
+				numSamples++;
+			}
+			buffer.position(longs.position() * 8);
+			buffer.compact();
+		}
+
+		channel.close();
+		in.close();
+
+		return numSamples;
+	}
+
+	/**
+	 * Appends a nanosecond value formatted as milliseconds with six decimal
+	 * places, equivalent to String.format("%.6f", nanos/1e6) but without the
+	 * formatting overhead.
+	 */
+	static void appendMillis(StringBuilder sb, long nanos) {
+		if (nanos < 0) {
+			sb.append('-');
+			nanos = -nanos;
+		}
+		sb.append(nanos / 1000000).append('.');
+		long frac = nanos % 1000000;
+		for (long d = 100000; d > frac && d > 1; d /= 10)
+			sb.append('0');
+		sb.append(frac);
+	}
+}
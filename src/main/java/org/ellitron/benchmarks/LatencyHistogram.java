@@ -0,0 +1,190 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * LatencyHistogram counts latency samples, in ns, in log-linear buckets: 64
+ * linear buckets per power of two, for a relative error of at most 1/64
+ * (values below 64 ns are kept exactly). Unlike DescriptiveStatistics it
+ * takes constant space however many samples are recorded, and histograms
+ * recorded separately (e.g. on different machines) can be merged and then
+ * queried for percentiles as if they had been recorded together.
+ * <p>
+ * Histograms are not thread-safe.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS + 1)*SUB_BUCKETS;
+
+	private final long[] counts = new long[NUM_BUCKETS];
+	private long totalCount = 0;
+	private long min = Long.MAX_VALUE;
+	private long max = 0;
+	private double sum = 0;
+
+	/**
+	 * Records a single sample.
+	 *
+	 * @param latency
+	 *            The latency in ns.
+	 */
+	public void record(long latency) {
+		if (latency < 0)
+			latency = 0;
+		counts[bucket(latency)]++;
+		totalCount++;
+		sum += latency;
+		if (latency < min)
+			min = latency;
+		if (latency > max)
+			max = latency;
+	}
+
+	/**
+	 * Adds all samples recorded in another histogram to this one.
+	 */
+	public void merge(LatencyHistogram other) {
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			counts[i] += other.counts[i];
+		totalCount += other.totalCount;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Clears all recorded samples.
+	 */
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			counts[i] = 0;
+		totalCount = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	public long getCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Returns the smallest recorded latency in ns, or 0 if there are none.
+	 */
+	public long getMin() {
+		return totalCount == 0 ? 0 : min;
+	}
+
+	/**
+	 * Returns the largest recorded latency in ns.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the mean latency in ns, or NaN if there are no samples.
+	 */
+	public double getMean() {
+		return totalCount == 0 ? Double.NaN : sum/totalCount;
+	}
+
+	/**
+	 * Returns an estimate of the given percentile in ns, or 0 if there are
+	 * no samples.
+	 *
+	 * @param p
+	 *            The percentile, between 0 and 100.
+	 */
+	public long getPercentile(double p) {
+		if (totalCount == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(p/100*totalCount));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.max(min, Math.min(max, bucketValue(i)));
+		}
+		return max;
+	}
+
+	/**
+	 * Writes the histogram, skipping empty buckets.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		int numNonEmpty = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			if (counts[i] != 0)
+				numNonEmpty++;
+
+		out.writeLong(totalCount);
+		out.writeLong(min);
+		out.writeLong(max);
+		out.writeDouble(sum);
+		out.writeInt(numNonEmpty);
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			if (counts[i] != 0) {
+				out.writeShort(i);
+				out.writeLong(counts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads a histogram written by {@link #writeTo(DataOutput)}.
+	 */
+	public static LatencyHistogram readFrom(DataInput in) throws IOException {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.totalCount = in.readLong();
+		histogram.min = in.readLong();
+		histogram.max = in.readLong();
+		histogram.sum = in.readDouble();
+		int numNonEmpty = in.readInt();
+		for (int i = 0; i < numNonEmpty; i++) {
+			int bucket = in.readShort();
+			histogram.counts[bucket] = in.readLong();
+		}
+		return histogram;
+	}
+
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1)*SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Returns the midpoint of the range of values counted in a bucket.
+	 */
+	private static long bucketValue(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = bucket/SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + bucket%SUB_BUCKETS) << shift;
+		return lower + ((1L << shift) >>> 1);
+	}
+}
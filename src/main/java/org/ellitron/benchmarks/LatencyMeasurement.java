@@ -0,0 +1,603 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+
+/**
+ * LatencyMeasurement is a single measured phase of a benchmark. Samples
+ * recorded in it are streamed to a raw binary file by a
+ * {@link BinaryLatencyWriter} and summarized per interval by an
+ * {@link IntervalReporter}, both writing in the background to files named
+ * "yyyyMMdd_HHmmss_benchmarkName_benchmarkSpec.{bin,intervals}". Samples are
+ * also kept in memory for end of phase statistics, with successful and failed
+ * requests kept apart so that fast failures don't skew the results. Failures
+ * are counted per HTTP status code and per {@link StatusClass}, and a
+ * measurement whose error rate is above a threshold is flagged.
+ * <p>
+ * If a {@link JvmMonitor} has been set with
+ * {@link #setJvmMonitor(JvmMonitor, boolean)}, measurements created
+ * afterwards also record the bytes allocated by the client per operation,
+ * for benchmarks that pass readings of {@link #allocatedBytes()} taken
+ * around each operation to {@link #recordAllocation(long, long)}, and when
+ * they finish, flag the successful samples that overlapped a
+ * garbage collection pause in the client JVM. Those samples can optionally
+ * be left out of the statistics, and their positions in the ".bin" file are
+ * written to a ".tainted" file next to it, one per line.
+ * <p>
+ * If {@link ServerMetrics} have been set with
+ * {@link #setServerMetrics(ServerMetrics, long)}, measurements created
+ * afterwards also poll them for their duration with a
+ * {@link ServerMetricsCollector}, writing to a ".metrics" file next to the
+ * others.
+ * <p>
+ * Samples may be recorded from several threads at once. They are serialized
+ * with a {@link ReentrantLock} rather than a monitor, so that virtual
+ * threads waiting to record, or recording while the background writer is
+ * behind, park instead of pinning their carrier thread.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class LatencyMeasurement {
+	private final String benchmarkName;
+	private final String filename;
+	private final IntervalReporter intervalReporter;
+	private final BinaryLatencyWriter latencyWriter;
+
+	/**
+	 * Guards the statistics below while samples are recorded.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Default error rate above which a measurement is flagged.
+	 */
+	public static final double DEFAULT_ERROR_RATE_THRESHOLD = 0.01;
+
+	/**
+	 * Latencies in ms of successful and failed operations.
+	 */
+	private final DescriptiveStatistics stats = new DescriptiveStatistics();
+	private final DescriptiveStatistics errorStats = new DescriptiveStatistics();
+
+	/**
+	 * Number of operations per HTTP status code and per status class, for
+	 * operations recorded with a status.
+	 */
+	private final Map<Integer, Long> statusCounts = new TreeMap<Integer, Long>();
+	private final Map<StatusClass, Long> statusClassCounts = new EnumMap<StatusClass, Long>(StatusClass.class);
+
+	private long numErrors = 0;
+
+	private double errorRateThreshold = DEFAULT_ERROR_RATE_THRESHOLD;
+
+	/**
+	 * Earliest start and latest end time of all samples, for throughput.
+	 */
+	private long firstStartTime = Long.MAX_VALUE;
+	private long lastEndTime = Long.MIN_VALUE;
+
+	/**
+	 * Monitor of the client JVM for measurements created from now on, and
+	 * whether they leave samples overlapping a GC pause out of their
+	 * statistics.
+	 */
+	private static JvmMonitor defaultJvmMonitor = null;
+	private static boolean defaultExcludeGcTainted = false;
+
+	private final JvmMonitor jvmMonitor;
+	private final boolean excludeGcTainted;
+
+	/**
+	 * Start and end times of successful samples, in the same order as their
+	 * latencies in stats, and their positions among all samples written to
+	 * the ".bin" file, kept only when the JVM is monitored.
+	 */
+	private long[] sampleStarts;
+	private long[] sampleEnds;
+	private long[] samplePositions;
+
+	/**
+	 * Bytes allocated by the client per operation.
+	 */
+	private final DescriptiveStatistics allocationStats = new DescriptiveStatistics();
+
+	/**
+	 * GC pauses during the measurement and latencies of the successful
+	 * samples that didn't overlap any, set when the measurement finishes.
+	 */
+	private JvmMonitor.Pauses gcPauses = null;
+	private DescriptiveStatistics untaintedStats = null;
+
+	/**
+	 * Server metrics polled by measurements created from now on, and the
+	 * time between polls in ms.
+	 */
+	private static ServerMetrics defaultServerMetrics = null;
+	private static long defaultServerMetricsInterval = 1000;
+
+	private final ServerMetricsCollector serverMetricsCollector;
+
+	/**
+	 * Constructor. Starts the background writers.
+	 *
+	 * @param benchmarkName
+	 *            Name to give the benchmark.
+	 * @param benchmarkSpec
+	 *            Description of benchmark parameters to include in output
+	 *            filenames.
+	 * @param reportingInterval
+	 *            Length, in ms, of the intervals over which latency
+	 *            statistics are reported.
+	 */
+	public LatencyMeasurement(String benchmarkName, String benchmarkSpec, long reportingInterval) {
+		this.benchmarkName = benchmarkName;
+		synchronized (LatencyMeasurement.class) {
+			this.jvmMonitor = defaultJvmMonitor;
+			this.excludeGcTainted = defaultExcludeGcTainted;
+		}
+		if (jvmMonitor != null) {
+			sampleStarts = new long[1024];
+			sampleEnds = new long[1024];
+			samplePositions = new long[1024];
+		}
+
+		String dateString = new SimpleDateFormat("yyyyMMdd'_'HHmmss").format(new Date());
+		filename = dateString + "_" + benchmarkName + "_" + benchmarkSpec;
+		intervalReporter = new IntervalReporter(filename + ".intervals", reportingInterval);
+		intervalReporter.start();
+		latencyWriter = new BinaryLatencyWriter(filename + ".bin");
+		synchronized (LatencyMeasurement.class) {
+			if (defaultServerMetrics != null) {
+				serverMetricsCollector = new ServerMetricsCollector(defaultServerMetrics, filename + ".metrics", defaultServerMetricsInterval);
+				serverMetricsCollector.start();
+			} else {
+				serverMetricsCollector = null;
+			}
+		}
+	}
+
+	/**
+	 * Records a single sample.
+	 *
+	 * @param startTime
+	 *            Value of System.nanoTime() when the operation started.
+	 * @param endTime
+	 *            Value of System.nanoTime() when the operation completed.
+	 * @param error
+	 *            Whether or not the operation failed.
+	 */
+	public void record(long startTime, long endTime, boolean error) {
+		lock.lock();
+		try {
+			intervalReporter.record(startTime, endTime, error);
+			latencyWriter.record(endTime - startTime);
+			if (error) {
+				errorStats.addValue((endTime - startTime)/1e6);
+				numErrors++;
+			} else {
+				if (jvmMonitor != null) {
+					int n = (int) stats.getN();
+					if (n == sampleStarts.length) {
+						sampleStarts = Arrays.copyOf(sampleStarts, 2*n);
+						sampleEnds = Arrays.copyOf(sampleEnds, 2*n);
+						samplePositions = Arrays.copyOf(samplePositions, 2*n);
+					}
+					sampleStarts[n] = startTime;
+					sampleEnds[n] = endTime;
+					samplePositions[n] = n + numErrors;
+				}
+				stats.addValue((endTime - startTime)/1e6);
+			}
+			if (startTime < firstStartTime)
+				firstStartTime = startTime;
+			if (endTime > lastEndTime)
+				lastEndTime = endTime;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes allocated so far by the calling thread, or
+	 * -1 unless the JVM is monitored (or the thread is virtual). Cheap
+	 * enough to read right before and after each timed operation.
+	 */
+	public long allocatedBytes() {
+		return jvmMonitor == null ? -1 : jvmMonitor.allocatedBytes();
+	}
+
+	/**
+	 * Records the bytes the calling thread allocated during one operation.
+	 * The readings of {@link #allocatedBytes()} should be taken next to the
+	 * System.nanoTime() calls that time the operation, so that work done
+	 * between operations (building requests, closing responses, recording)
+	 * is not counted. Does nothing if either reading is unavailable.
+	 * 
+	 * @param allocatedBefore
+	 *            Reading taken before the operation started.
+	 * @param allocatedAfter
+	 *            Reading taken after the operation completed.
+	 */
+	public void recordAllocation(long allocatedBefore, long allocatedAfter) {
+		if (allocatedBefore < 0 || allocatedAfter < 0)
+			return;
+		lock.lock();
+		try {
+			allocationStats.addValue(allocatedAfter - allocatedBefore);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the monitor of the client JVM for measurements created from now
+	 * on, or null to stop monitoring.
+	 * 
+	 * @param jvmMonitor
+	 *            The monitor, already started.
+	 * @param excludeGcTainted
+	 *            Whether samples that overlapped a GC pause are left out of
+	 *            the statistics of a finished measurement, rather than only
+	 *            counted. They are kept in the raw output files either way.
+	 */
+	public static synchronized void setJvmMonitor(JvmMonitor jvmMonitor, boolean excludeGcTainted) {
+		defaultJvmMonitor = jvmMonitor;
+		defaultExcludeGcTainted = excludeGcTainted;
+	}
+
+	/**
+	 * Sets the server metrics polled by measurements created from now on,
+	 * or null to stop polling.
+	 * 
+	 * @param serverMetrics
+	 *            The server metrics.
+	 * @param pollInterval
+	 *            Time between polls in ms.
+	 */
+	public static synchronized void setServerMetrics(ServerMetrics serverMetrics, long pollInterval) {
+		defaultServerMetrics = serverMetrics;
+		defaultServerMetricsInterval = pollInterval;
+	}
+
+	/**
+	 * Records a single sample of an HTTP request. Requests of any class
+	 * other than {@link StatusClass#SUCCESS} count as errors.
+	 *
+	 * @param startTime
+	 *            Value of System.nanoTime() when the operation started.
+	 * @param endTime
+	 *            Value of System.nanoTime() when the operation completed.
+	 * @param status
+	 *            HTTP status code of the response.
+	 * @param statusClass
+	 *            Class of the response.
+	 */
+	public void record(long startTime, long endTime, int status, StatusClass statusClass) {
+		lock.lock();
+		try {
+			record(startTime, endTime, statusClass != StatusClass.SUCCESS);
+			Long count = statusCounts.get(status);
+			statusCounts.put(status, count == null ? 1 : count + 1);
+			count = statusClassCounts.get(statusClass);
+			statusClassCounts.put(statusClass, count == null ? 1 : count + 1);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the error rate above which the measurement is flagged.
+	 */
+	public void setErrorRateThreshold(double errorRateThreshold) {
+		this.errorRateThreshold = errorRateThreshold;
+	}
+
+	/**
+	 * Ends the measurement. Remaining samples are handed off to the
+	 * background writer, which finishes on its own.
+	 */
+	public void finish() {
+		intervalReporter.stop();
+		latencyWriter.close();
+		if (serverMetricsCollector != null)
+			serverMetricsCollector.stop();
+		if (jvmMonitor != null)
+			findGcTaintedSamples();
+	}
+
+	/**
+	 * Finds the successful samples that overlapped a GC pause, and writes
+	 * their positions in the ".bin" file to the ".tainted" file.
+	 */
+	private void findGcTaintedSamples() {
+		lock.lock();
+		try {
+			if (stats.getN() == 0)
+				return;
+			gcPauses = jvmMonitor.getPauses(firstStartTime, lastEndTime);
+			double[] latencies = stats.getValues();
+			untaintedStats = new DescriptiveStatistics();
+			long[] tainted = new long[latencies.length];
+			int numTainted = 0;
+			for (int i = 0; i < latencies.length; i++) {
+				if (gcPauses.overlaps(sampleStarts[i], sampleEnds[i]))
+					tainted[numTainted++] = samplePositions[i];
+				else
+					untaintedStats.addValue(latencies[i]);
+			}
+			writeTaintedSamples(tainted, numTainted);
+			sampleStarts = null;
+			sampleEnds = null;
+			samplePositions = null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the positions of tainted samples in the ".bin" file to the
+	 * ".tainted" file, one per line in increasing order.
+	 */
+	private void writeTaintedSamples(long[] positions, int numPositions) {
+		try {
+			BufferedWriter out = new BufferedWriter(new FileWriter(filename + ".tainted"));
+			try {
+				for (int i = 0; i < numPositions; i++) {
+					out.write(Long.toString(positions[i]));
+					out.newLine();
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Failed to write " + filename + ".tainted: " + e);
+		}
+	}
+
+	public String getBenchmarkName() {
+		return benchmarkName;
+	}
+
+	/**
+	 * Returns the latencies, in ms, of successful operations. Once the
+	 * measurement has finished, this leaves out samples that overlapped a
+	 * GC pause in the client if the JVM monitor was set to exclude them.
+	 */
+	public DescriptiveStatistics getStatistics() {
+		if (excludeGcTainted && untaintedStats != null)
+			return untaintedStats;
+		return stats;
+	}
+
+	/**
+	 * Returns the bytes allocated by the client per operation, which is
+	 * empty unless the JVM was monitored.
+	 */
+	public DescriptiveStatistics getAllocationStatistics() {
+		return allocationStats;
+	}
+
+	/**
+	 * Returns the number of successful samples that overlapped a GC pause in
+	 * the client, or 0 unless the JVM was monitored.
+	 */
+	public long getNumGcTainted() {
+		return untaintedStats == null ? 0 : stats.getN() - untaintedStats.getN();
+	}
+
+	/**
+	 * Returns the summary of the server metrics polled during the
+	 * measurement, or null unless they were set.
+	 */
+	public ServerMetricsCollector.Summary getServerMetricsSummary() {
+		return serverMetricsCollector == null ? null : serverMetricsCollector.getSummary();
+	}
+
+	/**
+	 * Returns a summary of the measurement, which unlike the measurement
+	 * itself doesn't hold on to every sample. Call after {@link #finish()}.
+	 */
+	public Summary summarize() {
+		DescriptiveStatistics latency = getStatistics();
+		return new Summary(benchmarkName, latency.getN(), latency.getMean(), latency.getPercentile(50),
+				latency.getPercentile(99), allocationStats.getMean(), allocationStats.getPercentile(99),
+				getNumGcTainted());
+	}
+
+	/**
+	 * Returns the latencies, in ms, of failed operations.
+	 */
+	public DescriptiveStatistics getErrorStatistics() {
+		return errorStats;
+	}
+
+	public long getNumErrors() {
+		return numErrors;
+	}
+
+	/**
+	 * Returns the fraction of operations that failed.
+	 */
+	public double getErrorRate() {
+		lock.lock();
+		try {
+			long numSamples = stats.getN() + numErrors;
+			return numSamples == 0 ? 0 : (double) numErrors/numSamples;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns whether the error rate is above the threshold, in which case
+	 * the results should not be trusted.
+	 */
+	public boolean isErrorRateExceeded() {
+		return getErrorRate() > errorRateThreshold;
+	}
+
+	/**
+	 * Returns the throughput, in successful operations per second, over the
+	 * span from the start of the first sample to the end of the last.
+	 */
+	public double getThroughput() {
+		if (stats.getN() == 0)
+			return 0;
+		return stats.getN()/((lastEndTime - firstStartTime)/1e9);
+	}
+
+	/**
+	 * Prints summary statistics for the measurement.
+	 */
+	public void printStatistics() {
+		DescriptiveStatistics stats = getStatistics();
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", stats.getN(), stats.getMin(), stats.getMax(), stats.getMean(), stats.getStandardDeviation());
+		System.out.printf("p50: %11.6f p99: %11.6f throughput: %.1f ops/s errors: %d\n", stats.getPercentile(50), stats.getPercentile(99), getThroughput(), numErrors);
+		printErrorStatistics();
+		printJvmStatistics();
+		printServerStatistics();
+	}
+
+	/**
+	 * Prints the summary of the server metrics polled during the
+	 * measurement. Prints nothing unless they were set.
+	 */
+	public void printServerStatistics() {
+		if (serverMetricsCollector != null)
+			System.out.println("server: " + serverMetricsCollector.getSummary());
+	}
+
+	/**
+	 * Prints the client's allocation per operation, its GC pauses during the
+	 * measurement, and how many samples overlapped them. Prints nothing
+	 * unless the JVM was monitored and the measurement has finished.
+	 */
+	public void printJvmStatistics() {
+		lock.lock();
+		try {
+			if (untaintedStats == null)
+				return;
+			if (allocationStats.getN() > 0)
+				System.out.printf("client alloc/op: mean: %.0f B p50: %.0f B p99: %.0f B\n", allocationStats.getMean(), allocationStats.getPercentile(50), allocationStats.getPercentile(99));
+			long numTainted = getNumGcTainted();
+			System.out.printf("client gc pauses: %d total: %.1f ms tainted samples: %d (%.2f%%)%s", gcPauses.size(), gcPauses.getTotalMillis(), numTainted,
+					100.0*numTainted/stats.getN(), excludeGcTainted && numTainted > 0 ? " excluded" : "");
+			if (numTainted > 0 && untaintedStats.getN() > 0)
+				System.out.printf(" p99 with: %11.6f without: %11.6f", stats.getPercentile(99), untaintedStats.getPercentile(99));
+			System.out.println();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Prints latency statistics for failed operations, the number of
+	 * operations per status code and class, and a warning if the error rate
+	 * is above the threshold. Prints nothing if there were no errors.
+	 */
+	public void printErrorStatistics() {
+		lock.lock();
+		try {
+			if (numErrors == 0)
+				return;
+
+			System.out.printf("failures: numSamples: %d min: %11.6f max: %11.6f mean: %11.6f p50: %11.6f\n", errorStats.getN(), errorStats.getMin(), errorStats.getMax(), errorStats.getMean(), errorStats.getPercentile(50));
+			if (!statusCounts.isEmpty()) {
+				StringBuilder sb = new StringBuilder("status counts:");
+				for (Map.Entry<Integer, Long> entry : statusCounts.entrySet())
+					sb.append(" ").append(entry.getKey()).append("=").append(entry.getValue());
+				for (Map.Entry<StatusClass, Long> entry : statusClassCounts.entrySet())
+					sb.append(" ").append(entry.getKey().name().toLowerCase()).append("=").append(entry.getValue());
+				System.out.println(sb);
+			}
+			if (isErrorRateExceeded())
+				System.out.printf("WARNING: %s error rate %.2f%% exceeds %.2f%%, results are not reliable\n", benchmarkName, 100*getErrorRate(), 100*errorRateThreshold);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Summary of a finished measurement, kept for reports that compare many
+	 * benchmarks. Latencies are in ms, allocation in bytes per operation.
+	 */
+	public static class Summary {
+		private final String benchmarkName;
+		private final long numSamples;
+		private final double mean;
+		private final double p50;
+		private final double p99;
+		private final double allocationMean;
+		private final double allocationP99;
+		private final long numGcTainted;
+
+		private Summary(String benchmarkName, long numSamples, double mean, double p50, double p99,
+				double allocationMean, double allocationP99, long numGcTainted) {
+			this.benchmarkName = benchmarkName;
+			this.numSamples = numSamples;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p99 = p99;
+			this.allocationMean = allocationMean;
+			this.allocationP99 = allocationP99;
+			this.numGcTainted = numGcTainted;
+		}
+
+		public String getBenchmarkName() {
+			return benchmarkName;
+		}
+
+		public long getNumSamples() {
+			return numSamples;
+		}
+
+		public double getMean() {
+			return mean;
+		}
+
+		public double getP50() {
+			return p50;
+		}
+
+		public double getP99() {
+			return p99;
+		}
+
+		public double getAllocationMean() {
+			return allocationMean;
+		}
+
+		public double getAllocationP99() {
+			return allocationP99;
+		}
+
+		public long getNumGcTainted() {
+			return numGcTainted;
+		}
+	}
+}
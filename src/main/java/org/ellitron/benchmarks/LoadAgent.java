@@ -0,0 +1,240 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+/**
+ * LoadAgent runs the workload handed to it by a {@link LoadCoordinator} and
+ * streams the results back. The workload is one of:
+ * <ul>
+ * <li>create: create vertices with property "prop" set to 42.</li>
+ * <li>read: read vertices picked at random from a set created during
+ * setup.</li>
+ * <li>update: set property "prop" on vertices picked at random from a set
+ * created during setup.</li>
+ * </ul>
+ * Latencies are recorded in a {@link LatencyHistogram} per reporting
+ * interval, counting only successful operations; failed operations are
+ * counted separately.
+ * <p>
+ * Usage: LoadAgent coordinatorHost [coordinatorPort]
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class LoadAgent {
+	/**
+	 * Number of vertices each agent creates during setup for read and
+	 * update workloads.
+	 */
+	private static final int NUM_SETUP_VERTICES = 1000;
+
+	private final String host;
+	private final int port;
+
+	/**
+	 * Results for the interval in progress.
+	 */
+	private LatencyHistogram histogram = new LatencyHistogram();
+	private long numErrors = 0;
+	private boolean reportedUnexpected = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param host
+	 *            Host the coordinator is running on.
+	 * @param port
+	 *            Port the coordinator is listening on.
+	 */
+	public LoadAgent(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * Connects to the coordinator, runs the workload and sends back the
+	 * results.
+	 */
+	public void run() throws IOException {
+		Socket socket = new Socket(host, port);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+		out.writeInt(LoadCoordinator.MSG_HELLO);
+		out.writeUTF(ManagementFactory.getRuntimeMXBean().getName());
+		out.flush();
+
+		LoadCoordinator.expect(in, LoadCoordinator.MSG_CONFIG);
+		String clientClassName = in.readUTF();
+		String server_root_uri = in.readUTF();
+		final String op = in.readUTF();
+		int numThreads = in.readInt();
+		final int numOps = in.readInt();
+		long reportingInterval = in.readLong();
+
+		// Setup
+		final GraphClient client = createClient(clientClassName, server_root_uri);
+		final long[] vIdArray = new long[op.equals("create") ? 0 : NUM_SETUP_VERTICES];
+		for (int i = 0; i < vIdArray.length; i++)
+			vIdArray[i] = client.createVertex(new JSONObject().put("prop", 42));
+
+		out.writeInt(LoadCoordinator.MSG_READY);
+		out.flush();
+
+		// Synchronized start
+		LoadCoordinator.expect(in, LoadCoordinator.MSG_START);
+		long startTime = in.readLong();
+		sleepUntil(startTime);
+
+		final CountDownLatch doneLatch = new CountDownLatch(numThreads);
+		for (int t = 0; t < numThreads; t++) {
+			final int threadId = t;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Random random = new Random(threadId);
+						for (int i = 0; i < numOps; i++) {
+							long startTime = System.nanoTime();
+							boolean error = false;
+							try {
+								if (op.equals("create"))
+									client.createVertex(new JSONObject().put("prop", 42));
+								else if (op.equals("read"))
+									client.readVertex(vIdArray[random.nextInt(vIdArray.length)]);
+								else
+									client.updateVertex(vIdArray[random.nextInt(vIdArray.length)], new JSONObject().put("prop", i));
+							} catch (GraphClientException e) {
+								error = true;
+							} catch (RuntimeException e) {
+								// Connection refused or reset, unparseable
+								// response, ...: count it and carry on.
+								reportUnexpected(e);
+								error = true;
+							}
+							long endTime = System.nanoTime();
+							record(endTime - startTime, error);
+						}
+					} finally {
+						doneLatch.countDown();
+					}
+				}
+			}, "LoadAgent-" + t);
+			thread.start();
+		}
+
+		// Stream interval histograms, on a fixed schedule from the
+		// synchronized start, until all workers are done
+		int seq = 0;
+		long nextDeadline = startTime + reportingInterval;
+		boolean done = false;
+		while (!done) {
+			try {
+				done = doneLatch.await(nextDeadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if (!done) {
+				sendInterval(out, seq++);
+				nextDeadline += reportingInterval;
+			}
+		}
+		sendInterval(out, seq);
+		out.writeInt(LoadCoordinator.MSG_DONE);
+		out.flush();
+
+		socket.close();
+	}
+
+	/**
+	 * Prints the first unexpected exception thrown by an operation, so that
+	 * a run full of errors says why.
+	 */
+	private synchronized void reportUnexpected(RuntimeException e) {
+		if (reportedUnexpected)
+			return;
+		reportedUnexpected = true;
+		System.err.println("Operation failed unexpectedly, counting as error: " + e);
+	}
+
+	private synchronized void record(long latency, boolean error) {
+		if (error)
+			numErrors++;
+		else
+			histogram.record(latency);
+	}
+
+	/**
+	 * Sends the results of the interval in progress and starts a new one.
+	 */
+	private void sendInterval(DataOutputStream out, int seq) throws IOException {
+		LatencyHistogram h;
+		long errors;
+		synchronized (this) {
+			h = histogram;
+			errors = numErrors;
+			histogram = new LatencyHistogram();
+			numErrors = 0;
+		}
+		out.writeInt(LoadCoordinator.MSG_INTERVAL);
+		out.writeInt(seq);
+		out.writeLong(errors);
+		h.writeTo(out);
+		out.flush();
+	}
+
+	private static GraphClient createClient(String clientClassName, String server_root_uri) throws IOException {
+		try {
+			return (GraphClient) Class.forName(clientClassName).getConstructor(String.class).newInstance(server_root_uri);
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("Cannot create " + clientClassName, e);
+		}
+	}
+
+	private static void sleepUntil(long epochMillis) {
+		long sleepMillis = epochMillis - System.currentTimeMillis();
+		if (sleepMillis <= 0)
+			return;
+		try {
+			Thread.sleep(sleepMillis);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: LoadAgent coordinatorHost [coordinatorPort]");
+			System.exit(1);
+		}
+
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : LoadCoordinator.DEFAULT_PORT;
+		new LoadAgent(args[0], port).run();
+	}
+}
@@ -0,0 +1,411 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoadCoordinator runs a workload on a number of {@link LoadAgent}s at once,
+ * so that the load on the database is not limited by what a single client
+ * machine can generate, and merges their results into one report.
+ * <p>
+ * The coordinator listens on a TCP port for agents to connect. Each agent is
+ * sent the workload, sets it up (e.g. creates the vertices it will read) and
+ * reports back when ready. Once all agents are ready the coordinator tells
+ * them all to start at the same wall clock time, a short moment in the
+ * future. While running, each agent sends a {@link LatencyHistogram} for
+ * every reporting interval, and the coordinator merges the histograms of the
+ * same interval across agents. Agents on different machines need
+ * synchronized clocks (e.g. NTP) for their intervals to line up.
+ * <p>
+ * An agent that doesn't connect, get ready or report within a timeout, or
+ * whose connection fails, fails the run with an IOException naming it,
+ * rather than leaving the coordinator waiting forever.
+ * <p>
+ * For testing, the coordinator can launch its agents itself as separate
+ * JVMs on the local machine, connected over loopback.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class LoadCoordinator {
+	/**
+	 * Messages exchanged between coordinator and agents.
+	 */
+	static final int MSG_HELLO = 1;
+	static final int MSG_CONFIG = 2;
+	static final int MSG_READY = 3;
+	static final int MSG_START = 4;
+	static final int MSG_INTERVAL = 5;
+	static final int MSG_DONE = 6;
+
+	/**
+	 * Default port the coordinator listens on.
+	 */
+	public static final int DEFAULT_PORT = 9123;
+
+	/**
+	 * How far in the future, in ms, the synchronized start is scheduled, to
+	 * give the start message time to reach every agent.
+	 */
+	private static final long START_DELAY = 1000;
+
+	private final int port;
+	private final int numAgents;
+
+	/**
+	 * Name of the {@link GraphClient} class agents use, which must have a
+	 * constructor taking the server root URI.
+	 */
+	private final String clientClassName;
+	private final String server_root_uri;
+
+	private int numThreads = 4;
+	private int numOps = (int)1e4;
+	private long reportingInterval = 1000;
+	private boolean spawnLocalAgents = false;
+
+	/**
+	 * Longest time, in ms, to wait for agents to connect, for each to get
+	 * ready, and between two messages from an agent while it runs.
+	 */
+	private long agentTimeout = 10*60*1000;
+
+	/**
+	 * Merged results.
+	 */
+	private final LatencyHistogram total = new LatencyHistogram();
+	private final Map<Integer, LatencyHistogram> intervals = new TreeMap<Integer, LatencyHistogram>();
+	private long numErrors = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param port
+	 *            Port to listen on for agents.
+	 * @param numAgents
+	 *            Number of agents to wait for.
+	 * @param clientClass
+	 *            The {@link GraphClient} implementation agents use. It must
+	 *            have a public constructor taking the server root URI.
+	 * @param server_root_uri
+	 *            The root URI for all requests to the database.
+	 */
+	public LoadCoordinator(int port, int numAgents, Class<? extends GraphClient> clientClass, String server_root_uri) {
+		this.port = port;
+		this.numAgents = numAgents;
+		this.clientClassName = clientClass.getName();
+		this.server_root_uri = server_root_uri;
+	}
+
+	/**
+	 * Sets the number of worker threads on each agent.
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Sets the number of operations each worker thread makes.
+	 */
+	public void setNumOps(int numOps) {
+		this.numOps = numOps;
+	}
+
+	/**
+	 * Sets the length, in ms, of the intervals over which agents report.
+	 */
+	public void setReportingInterval(long reportingInterval) {
+		this.reportingInterval = reportingInterval;
+	}
+
+	/**
+	 * Sets whether the coordinator launches its agents itself, as JVMs on the
+	 * local machine with the same classpath.
+	 */
+	public void setSpawnLocalAgents(boolean spawnLocalAgents) {
+		this.spawnLocalAgents = spawnLocalAgents;
+	}
+
+	/**
+	 * Sets the longest time, in ms, to wait for agents to connect, for each
+	 * to get ready, and between two messages from an agent while it runs.
+	 */
+	public void setAgentTimeout(long agentTimeout) {
+		this.agentTimeout = agentTimeout;
+	}
+
+	/**
+	 * Runs a workload on all agents and prints the merged report.
+	 *
+	 * @param op
+	 *            The operation to run, one of "create", "read" or "update"
+	 *            (see {@link LoadAgent}).
+	 * @return The merged latencies of all agents.
+	 * @throws IOException
+	 *             If an agent failed or timed out.
+	 */
+	public LatencyHistogram run(final String op) throws IOException {
+		System.out.println("Running distributed benchmark... op=" + op + " numAgents=" + numAgents + " numThreads=" + numThreads + " numOps=" + numOps);
+
+		ServerSocket serverSocket = new ServerSocket(port);
+		List<Process> processes = new ArrayList<Process>();
+		if (spawnLocalAgents) {
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			for (int i = 0; i < numAgents; i++) {
+				ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+						LoadAgent.class.getName(), "localhost", Integer.toString(serverSocket.getLocalPort()));
+				pb.inheritIO();
+				processes.add(pb.start());
+			}
+		}
+
+		// Accept agents and hand out the workload. An agent that fails before
+		// getting ready still counts down, so that the failure is noticed
+		// right away. If the run is aborted before the start, the start latch
+		// is released with aborted set, so that handlers of agents that did
+		// get ready return instead of waiting forever.
+		final CountDownLatch readyLatch = new CountDownLatch(numAgents);
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final long[] startTime = new long[1];
+		final boolean[] aborted = new boolean[1];
+		final String[] agentNames = new String[numAgents];
+		final boolean[] ready = new boolean[numAgents];
+		final String[] failures = new String[numAgents];
+		List<Socket> sockets = new ArrayList<Socket>();
+		List<Thread> threads = new ArrayList<Thread>();
+		System.out.print("Waiting for " + numAgents + " agents on port " + serverSocket.getLocalPort() + "... ");
+		serverSocket.setSoTimeout((int) agentTimeout);
+		for (int i = 0; i < numAgents; i++) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (SocketTimeoutException e) {
+				serverSocket.close();
+				aborted[0] = true;
+				startLatch.countDown();
+				abort(sockets, processes);
+				throw new IOException("Timed out after " + agentTimeout + " ms with " + i + " of " + numAgents + " agents connected");
+			}
+			socket.setSoTimeout((int) agentTimeout);
+			sockets.add(socket);
+			final int agentId = i;
+			agentNames[i] = socket.getRemoteSocketAddress().toString();
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						handleAgent(socket, agentId, op, agentNames, ready, readyLatch, startLatch, startTime, aborted);
+					} catch (IOException e) {
+						synchronized (LoadCoordinator.this) {
+							if (e instanceof SocketTimeoutException)
+								failures[agentId] = "no message for " + agentTimeout + " ms";
+							else if (e instanceof EOFException)
+								failures[agentId] = "connection closed by agent";
+							else
+								failures[agentId] = e.toString();
+						}
+					} finally {
+						synchronized (LoadCoordinator.this) {
+							if (!ready[agentId]) {
+								ready[agentId] = true;
+								readyLatch.countDown();
+								if (failures[agentId] == null)
+									failures[agentId] = "failed before getting ready";
+							}
+						}
+					}
+				}
+			}, "LoadCoordinator-" + i);
+			thread.start();
+			threads.add(thread);
+		}
+		serverSocket.close();
+		System.out.println("done.");
+
+		// Synchronized start
+		boolean allReady = false;
+		try {
+			allReady = readyLatch.await(agentTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			StringBuilder missing = new StringBuilder();
+			for (int i = 0; i < numAgents; i++) {
+				if (failures[i] != null)
+					missing.append(" ").append(agentNames[i]).append(" (").append(failures[i]).append(")");
+				else if (!ready[i])
+					missing.append(" ").append(agentNames[i]).append(" (not ready after ").append(agentTimeout).append(" ms)");
+			}
+			if (!allReady || missing.length() > 0) {
+				aborted[0] = true;
+				startLatch.countDown();
+				abort(sockets, processes);
+				throw new IOException("Agents failed to get ready:" + missing);
+			}
+		}
+		startTime[0] = System.currentTimeMillis() + START_DELAY;
+		startLatch.countDown();
+
+		// Agents time out on their own if they stop reporting.
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			StringBuilder failed = new StringBuilder();
+			for (int i = 0; i < numAgents; i++)
+				if (failures[i] != null)
+					failed.append(" ").append(agentNames[i]).append(" (").append(failures[i]).append(")");
+			if (failed.length() > 0) {
+				abort(sockets, processes);
+				throw new IOException("Agents failed while running:" + failed);
+			}
+		}
+		for (Process process : processes) {
+			try {
+				process.waitFor();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		printReport();
+		return total;
+	}
+
+	/**
+	 * Closes the connections to all agents and kills the local ones.
+	 */
+	private static void abort(List<Socket> sockets, List<Process> processes) {
+		for (Socket socket : sockets) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Closing anyway.
+			}
+		}
+		for (Process process : processes)
+			process.destroy();
+	}
+
+	/**
+	 * Talks to a single agent: sends it the workload, waits for the
+	 * synchronized start, and then merges the histograms it streams back.
+	 */
+	private void handleAgent(Socket socket, int agentId, String op, String[] agentNames, boolean[] ready, CountDownLatch readyLatch, CountDownLatch startLatch, long[] startTime, boolean[] aborted) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+		expect(in, MSG_HELLO);
+		String agentName = in.readUTF();
+		synchronized (this) {
+			agentNames[agentId] = agentName + " at " + agentNames[agentId];
+		}
+
+		out.writeInt(MSG_CONFIG);
+		out.writeUTF(clientClassName);
+		out.writeUTF(server_root_uri);
+		out.writeUTF(op);
+		out.writeInt(numThreads);
+		out.writeInt(numOps);
+		out.writeLong(reportingInterval);
+		out.flush();
+
+		expect(in, MSG_READY);
+		synchronized (this) {
+			ready[agentId] = true;
+			readyLatch.countDown();
+		}
+		try {
+			startLatch.await();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if (aborted[0])
+			return;
+		out.writeInt(MSG_START);
+		out.writeLong(startTime[0]);
+		out.flush();
+
+		long agentCount = 0;
+		int msg;
+		while ((msg = in.readInt()) == MSG_INTERVAL) {
+			int seq = in.readInt();
+			long errors = in.readLong();
+			LatencyHistogram histogram = LatencyHistogram.readFrom(in);
+			agentCount += histogram.getCount();
+			synchronized (this) {
+				LatencyHistogram interval = intervals.get(seq);
+				if (interval == null) {
+					interval = new LatencyHistogram();
+					intervals.put(seq, interval);
+				}
+				interval.merge(histogram);
+				total.merge(histogram);
+				numErrors += errors;
+			}
+		}
+
+		if (msg != MSG_DONE)
+			throw new IOException("Expected message " + MSG_DONE + ", received " + msg);
+		System.out.println("Agent " + agentName + " done, numSamples: " + agentCount);
+		socket.close();
+	}
+
+	/**
+	 * Prints merged statistics per interval and over the whole run.
+	 */
+	private synchronized void printReport() {
+		System.out.println("Merged interval statistics (latencies in ms):");
+		System.out.printf("%8s %10s %12s %11s %11s %11s\n", "interval", "count", "throughput", "p50", "p99", "max");
+		for (Map.Entry<Integer, LatencyHistogram> entry : intervals.entrySet()) {
+			LatencyHistogram h = entry.getValue();
+			System.out.printf("%8d %10d %12.1f %11.6f %11.6f %11.6f\n", entry.getKey(), h.getCount(),
+					h.getCount()/(reportingInterval/1e3), h.getPercentile(50)/1e6,
+					h.getPercentile(99)/1e6, h.getMax()/1e6);
+		}
+
+		System.out.println("Merged timings statistics:");
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f\n", total.getCount(), total.getMin()/1e6, total.getMax()/1e6, total.getMean()/1e6);
+		System.out.printf("p50: %11.6f p99: %11.6f p99.9: %11.6f errors: %d\n", total.getPercentile(50)/1e6, total.getPercentile(99)/1e6, total.getPercentile(99.9)/1e6, numErrors);
+	}
+
+	static void expect(DataInputStream in, int msg) throws IOException {
+		int received = in.readInt();
+		if (received != msg)
+			throw new IOException("Expected message " + msg + ", received " + received);
+	}
+}
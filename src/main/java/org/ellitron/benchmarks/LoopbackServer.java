@@ -0,0 +1,126 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * LoopbackServer is a stand-in for a database server, listening on the
+ * loopback interface and answering every request immediately with a canned
+ * response. Running a benchmark's client code against it measures what the
+ * client (Jersey, JSON handling, the harness itself) and the loopback TCP
+ * stack cost, with no server work at all, which can then be subtracted from
+ * the latencies measured against the real server.
+ * <p>
+ * Subclasses provide responses shaped like those of the server they stand in
+ * for, so that the client code does the same parsing work as for real.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public abstract class LoopbackServer implements HttpHandler {
+	/**
+	 * Path of the root URI, e.g. "/db/data/".
+	 */
+	private final String rootPath;
+
+	private HttpServer server;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rootPath
+	 *            Path of the root URI for all requests, e.g. "/db/data/".
+	 */
+	protected LoopbackServer(String rootPath) {
+		this.rootPath = rootPath;
+	}
+
+	/**
+	 * Starts the server on a free port.
+	 */
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext(rootPath, this);
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	/**
+	 * Returns the root URI for all requests to the server.
+	 */
+	public String getRootUri() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + rootPath;
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		byte[] buf = new byte[4096];
+		while (in.read(buf) != -1)
+			;
+		in.close();
+
+		String path = exchange.getRequestURI().getPath().substring(rootPath.length());
+		respond(exchange, exchange.getRequestMethod(), path);
+	}
+
+	/**
+	 * Answers a single request, using {@link #send(HttpExchange, int, String)}.
+	 *
+	 * @param exchange
+	 *            The request.
+	 * @param method
+	 *            The HTTP method.
+	 * @param path
+	 *            The request path relative to the root URI, e.g. "node/12".
+	 */
+	protected abstract void respond(HttpExchange exchange, String method, String path) throws IOException;
+
+	/**
+	 * Sends a JSON response.
+	 *
+	 * @param exchange
+	 *            The request.
+	 * @param status
+	 *            HTTP status code.
+	 * @param body
+	 *            Response body, or null for none.
+	 */
+	protected void send(HttpExchange exchange, int status, String body) throws IOException {
+		if (body == null) {
+			exchange.sendResponseHeaders(status, -1);
+		} else {
+			byte[] bytes = body.getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(bytes);
+			out.close();
+		}
+		exchange.close();
+	}
+}
@@ -0,0 +1,393 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * PayloadBenchmarks measures how the latency and throughput of vertex and
+ * edge CRUD operations scale with the size of the properties carried by the
+ * elements. Elements are given between 1 and 100 properties, each holding
+ * either a single string or an array of strings, with values from 8 B to 64
+ * KB.
+ * <p>
+ * The benchmarks are written against {@link GraphClient}, so the same
+ * workload runs unchanged against every backend.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class PayloadBenchmarks {
+	/**
+	 * Default numbers of properties per element.
+	 */
+	public static final int[] DEFAULT_NUM_PROPERTIES = { 1, 10, 100 };
+
+	/**
+	 * Default sizes, in bytes, of each property value.
+	 */
+	public static final int[] DEFAULT_VALUE_SIZES = { 8, 256, 4096, 65536 };
+
+	/**
+	 * Number of strings in each array valued property. The value size is
+	 * split evenly between them.
+	 */
+	private static final int ARRAY_LENGTH = 8;
+
+	private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+	private final GraphClient client;
+
+	/**
+	 * Length, in ms, of the intervals over which latency statistics are
+	 * reported.
+	 */
+	private final long reportingInterval;
+
+	/**
+	 * Configurations whose total payload per element is larger than this, in
+	 * bytes, are skipped.
+	 */
+	private long maxPayloadSize = 1 << 20;
+
+	private final Random random = new Random(42);
+
+	/**
+	 * Summary lines for every measured operation, printed at the end.
+	 */
+	private final List<String> summary = new ArrayList<String>();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param client
+	 *            Client for the database under test.
+	 * @param reportingInterval
+	 *            Length, in ms, of the intervals over which latency
+	 *            statistics are reported.
+	 */
+	public PayloadBenchmarks(GraphClient client, long reportingInterval) {
+		this.client = client;
+		this.reportingInterval = reportingInterval;
+	}
+
+	/**
+	 * Sets the largest total payload per element, in bytes. Configurations
+	 * exceeding it are skipped.
+	 */
+	public void setMaxPayloadSize(long maxPayloadSize) {
+		this.maxPayloadSize = maxPayloadSize;
+	}
+
+	/**
+	 * Runs the benchmarks over the default property counts and value sizes.
+	 * 
+	 * @param numSamples
+	 *            The number of elements to create, read, update and delete
+	 *            for each configuration.
+	 */
+	public void run(final int numSamples) {
+		run(numSamples, DEFAULT_NUM_PROPERTIES, DEFAULT_VALUE_SIZES);
+	}
+
+	/**
+	 * Runs the benchmarks over every combination of the given property counts
+	 * and value sizes, for both string and string array valued properties,
+	 * and prints a summary table of latency and throughput against payload
+	 * size.
+	 * 
+	 * @param numSamples
+	 *            The number of elements to create, read, update and delete
+	 *            for each configuration.
+	 * @param numPropertiesList
+	 *            Numbers of properties per element.
+	 * @param valueSizes
+	 *            Sizes, in bytes, of each property value.
+	 */
+	public void run(final int numSamples, int[] numPropertiesList, int[] valueSizes) {
+		summary.clear();
+
+		for (boolean arrays : new boolean[] { false, true }) {
+			for (int numProperties : numPropertiesList) {
+				for (int valueSize : valueSizes) {
+					if ((long) numProperties * valueSize > maxPayloadSize) {
+						System.out.printf("Skipping numProperties=%d valueSize=%d: payload exceeds %d bytes\n", numProperties, valueSize, maxPayloadSize);
+						continue;
+					}
+					runVertices(numSamples, numProperties, valueSize, arrays);
+					runEdges(numSamples, numProperties, valueSize, arrays);
+				}
+			}
+		}
+
+		System.out.println("Payload benchmark summary (latencies in ms):");
+		System.out.printf("%-8s %-6s %-12s %8s %10s %10s %11s %11s %11s %10s %9s %7s\n", "element", "op", "type", "numProps", "valueSize", "payload", "mean", "p50", "p99", "ops/s", "MB/s", "errors");
+		for (String line : summary)
+			System.out.println(line);
+	}
+
+	/**
+	 * Creates, reads, updates and then deletes numSamples vertices carrying
+	 * the given payload, measuring the latency of each operation. Vertices
+	 * whose create failed are left out of the later operations, which would
+	 * only fail as well.
+	 */
+	private void runVertices(final int numSamples, int numProperties, int valueSize, boolean arrays) {
+		String spec = spec(numSamples, numProperties, valueSize, arrays);
+		System.out.println("Running payload benchmark... Vertices " + spec);
+
+		long[] vIdArray = new long[numSamples];
+
+		// Create
+		LatencyMeasurement m = new LatencyMeasurement("payloadVertexCreate", spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			JSONObject properties = generateProperties(numProperties, valueSize, arrays);
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				vIdArray[i] = client.createVertex(properties);
+			} catch (GraphClientException e) {
+				vIdArray[i] = -1;
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, "vertex", "create", numProperties, valueSize, arrays);
+
+		// Read
+		m = new LatencyMeasurement("payloadVertexRead", spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			if (vIdArray[i] == -1)
+				continue;
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				client.readVertex(vIdArray[i]);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, "vertex", "read", numProperties, valueSize, arrays);
+
+		// Update
+		m = new LatencyMeasurement("payloadVertexUpdate", spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			if (vIdArray[i] == -1)
+				continue;
+			JSONObject properties = generateProperties(numProperties, valueSize, arrays);
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				client.updateVertex(vIdArray[i], properties);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, "vertex", "update", numProperties, valueSize, arrays);
+
+		// Delete
+		m = new LatencyMeasurement("payloadVertexDelete", spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			if (vIdArray[i] == -1)
+				continue;
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				client.deleteVertex(vIdArray[i]);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, "vertex", "delete", numProperties, valueSize, arrays);
+
+		client.clearDatabase();
+	}
+
+	/**
+	 * Creates, reads, updates and then deletes numSamples edges carrying the
+	 * given payload, measuring the latency of each operation. Each edge
+	 * connects its own pair of otherwise empty vertices.
+	 * Edges whose create failed are left out of the later operations, which
+	 * would only fail as well.
+	 */
+	private void runEdges(final int numSamples, int numProperties, int valueSize, boolean arrays) {
+		String spec = spec(numSamples, numProperties, valueSize, arrays);
+		System.out.println("Running payload benchmark... Edges " + spec);
+
+		// Create 2*numSamples empty vertices to connect
+		long[] vIdArray = new long[2*numSamples];
+		for (int i = 0; i < 2*numSamples; i++)
+			vIdArray[i] = client.createVertex(new JSONObject());
+
+		String[] eIdArray = new String[numSamples];
+
+		// Create
+		LatencyMeasurement m = new LatencyMeasurement("payloadEdgeCreate", spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			JSONObject properties = generateProperties(numProperties, valueSize, arrays);
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				eIdArray[i] = client.createEdge(vIdArray[i], vIdArray[i+numSamples], "friend", properties);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, "edge", "create", numProperties, valueSize, arrays);
+
+		// Read
+		m = new LatencyMeasurement("payloadEdgeRead", spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			if (eIdArray[i] == null)
+				continue;
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				client.readEdge(eIdArray[i]);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, "edge", "read", numProperties, valueSize, arrays);
+
+		// Update
+		m = new LatencyMeasurement("payloadEdgeUpdate", spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			if (eIdArray[i] == null)
+				continue;
+			JSONObject properties = generateProperties(numProperties, valueSize, arrays);
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				client.updateEdge(eIdArray[i], properties);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, "edge", "update", numProperties, valueSize, arrays);
+
+		// Delete
+		m = new LatencyMeasurement("payloadEdgeDelete", spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			if (eIdArray[i] == null)
+				continue;
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				client.deleteEdge(eIdArray[i]);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, "edge", "delete", numProperties, valueSize, arrays);
+
+		client.clearDatabase();
+	}
+
+	private static String spec(int numSamples, int numProperties, int valueSize, boolean arrays) {
+		return "numSamples=" + numSamples + "_numProperties=" + numProperties + "_valueSize=" + valueSize + "_type=" + (arrays ? "stringArray" : "string");
+	}
+
+	/**
+	 * Ends a measurement, prints its statistics and adds it to the summary.
+	 */
+	private void finish(LatencyMeasurement m, String element, String op, int numProperties, int valueSize, boolean arrays) {
+		m.finish();
+
+		System.out.println("Timings statistics for " + element + " " + op + ":");
+		m.printStatistics();
+
+		long payloadSize = (long) numProperties * valueSize;
+		double throughput = m.getThroughput();
+		summary.add(String.format("%-8s %-6s %-12s %8d %10d %10d %11.6f %11.6f %11.6f %10.1f %9.2f %7d",
+				element, op, arrays ? "stringArray" : "string", numProperties,
+				valueSize, payloadSize, m.getStatistics().getMean(),
+				m.getStatistics().getPercentile(50),
+				m.getStatistics().getPercentile(99), throughput,
+				op.equals("delete") ? 0.0 : throughput*payloadSize/1e6,
+				m.getNumErrors()));
+	}
+
+	/**
+	 * Generates a set of random properties.
+	 * 
+	 * @param numProperties
+	 *            Number of properties.
+	 * @param valueSize
+	 *            Size, in bytes, of each property value.
+	 * @param arrays
+	 *            Whether each property should be an array of strings rather
+	 *            than a single string.
+	 * @return The properties.
+	 */
+	public JSONObject generateProperties(int numProperties, int valueSize, boolean arrays) {
+		JSONObject properties = new JSONObject();
+		for (int p = 0; p < numProperties; p++) {
+			if (arrays) {
+				JSONArray array = new JSONArray();
+				int elementSize = Math.max(1, valueSize/ARRAY_LENGTH);
+				for (int e = 0; e < ARRAY_LENGTH; e++)
+					array.put(randomString(elementSize));
+				properties.put("p" + p, array);
+			} else {
+				properties.put("p" + p, randomString(valueSize));
+			}
+		}
+		return properties;
+	}
+
+	private String randomString(int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+		return new String(chars);
+	}
+}
@@ -0,0 +1,377 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+import org.apache.commons.math3.stat.ranking.NaNStrategy;
+import org.apache.commons.math3.stat.ranking.NaturalRanking;
+import org.apache.commons.math3.stat.ranking.TiesStrategy;
+import org.apache.commons.math3.util.FastMath;
+import org.ellitron.benchmarks.BaselineStore.Result;
+
+/**
+ * RegressionDetector compares the results of a benchmark run against a
+ * baseline saved in a {@link BaselineStore} and flags benchmarks that got
+ * significantly slower. For each benchmark in both:
+ * <ul>
+ * <li>p50 regressed: the Mann-Whitney U test finds the latency distributions
+ * differ and the p50 went up by more than the tolerance.</li>
+ * <li>p99 regressed: the two-sample Kolmogorov-Smirnov test finds the latency
+ * distributions differ and the p99 went up by more than the tolerance. The KS
+ * test is sensitive to changes in shape, such as a longer tail, that leave the
+ * median alone.</li>
+ * <li>throughput regressed: throughput went down by more than the tolerance
+ * and, given enough reporting intervals, the Mann-Whitney U test finds the
+ * per interval throughputs differ.</li>
+ * </ul>
+ * With hundreds of thousands of samples the tests find even tiny differences
+ * significant, so the tolerance is what keeps noise from being flagged.
+ * <p>
+ * Usage:
+ * <pre>
+ * RegressionDetector list
+ * RegressionDetector save baseline [runDir]
+ * RegressionDetector compare baseline [runDir [alpha [tolerance]]]
+ * RegressionDetector selfcheck [numSamples]
+ * </pre>
+ * Baselines are kept in the "baselines" directory. runDir defaults to the
+ * current directory. compare exits with status 1 if anything regressed, so it
+ * can gate a database configuration or version upgrade. selfcheck runs both
+ * tests on two large samples from the same distribution, which must not be
+ * found to differ, and exits with status 1 if they are.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class RegressionDetector {
+	/**
+	 * Default significance level of the tests.
+	 */
+	public static final double DEFAULT_ALPHA = 0.01;
+
+	/**
+	 * Default relative change below which differences are not flagged.
+	 */
+	public static final double DEFAULT_TOLERANCE = 0.05;
+
+	/**
+	 * Fewest reporting intervals in each run for throughput to be tested.
+	 */
+	private static final int MIN_INTERVALS = 5;
+
+	/**
+	 * Outcome of comparing one benchmark against its baseline.
+	 */
+	public static class Comparison {
+		public final String key;
+		public final int baselineSamples;
+		public final int candidateSamples;
+		public final double baselineP50;
+		public final double candidateP50;
+		public final double baselineP99;
+		public final double candidateP99;
+		public final double baselineThroughput;
+		public final double candidateThroughput;
+
+		/**
+		 * p-values of the Mann-Whitney U and Kolmogorov-Smirnov tests on the
+		 * latencies, and of the Mann-Whitney U test on interval throughputs
+		 * (NaN if there were too few intervals).
+		 */
+		public final double mannWhitneyP;
+		public final double kolmogorovSmirnovP;
+		public final double throughputP;
+
+		public boolean p50Regressed;
+		public boolean p99Regressed;
+		public boolean throughputRegressed;
+		public boolean improved;
+
+		Comparison(String key, Result baseline, Result candidate) {
+			this.key = key;
+			baselineSamples = baseline.latencies.length;
+			candidateSamples = candidate.latencies.length;
+
+			Percentile percentile = new Percentile();
+			double[] x = baseline.latencies.clone();
+			double[] y = candidate.latencies.clone();
+			Arrays.sort(x);
+			Arrays.sort(y);
+			baselineP50 = percentile.evaluate(x, 50);
+			candidateP50 = percentile.evaluate(y, 50);
+			baselineP99 = percentile.evaluate(x, 99);
+			candidateP99 = percentile.evaluate(y, 99);
+			baselineThroughput = baseline.throughput;
+			candidateThroughput = candidate.throughput;
+
+			mannWhitneyP = mannWhitneyUTest(x, y);
+			kolmogorovSmirnovP = kolmogorovSmirnovTest(x, y);
+
+			if (baseline.intervalThroughputs != null && candidate.intervalThroughputs != null
+					&& baseline.intervalThroughputs.length >= MIN_INTERVALS
+					&& candidate.intervalThroughputs.length >= MIN_INTERVALS)
+				throughputP = mannWhitneyUTest(baseline.intervalThroughputs, candidate.intervalThroughputs);
+			else
+				throughputP = Double.NaN;
+		}
+
+		/**
+		 * Returns whether any metric regressed.
+		 */
+		public boolean isRegression() {
+			return p50Regressed || p99Regressed || throughputRegressed;
+		}
+	}
+
+	private double alpha = DEFAULT_ALPHA;
+	private double tolerance = DEFAULT_TOLERANCE;
+
+	/**
+	 * Sets the significance level of the tests.
+	 */
+	public void setAlpha(double alpha) {
+		this.alpha = alpha;
+	}
+
+	/**
+	 * Sets the relative change, e.g. 0.05 for 5%, below which differences
+	 * are not flagged however significant they are.
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Compares a run against a baseline.
+	 * 
+	 * @param baseline
+	 *            Baseline results, by benchmark.
+	 * @param candidate
+	 *            Results of the run, by benchmark.
+	 * @return A comparison for each benchmark with results in both.
+	 */
+	public List<Comparison> compare(Map<String, Result> baseline, Map<String, Result> candidate) {
+		List<Comparison> comparisons = new ArrayList<Comparison>();
+		for (Map.Entry<String, Result> entry : candidate.entrySet()) {
+			Result base = baseline.get(entry.getKey());
+			if (base != null && base.latencies.length > 0 && entry.getValue().latencies.length > 0)
+				comparisons.add(compare(base, entry.getValue()));
+		}
+		return comparisons;
+	}
+
+	/**
+	 * Compares one benchmark against its baseline.
+	 */
+	public Comparison compare(Result baseline, Result candidate) {
+		Comparison c = new Comparison(candidate.key, baseline, candidate);
+
+		c.p50Regressed = c.mannWhitneyP < alpha && c.candidateP50 > c.baselineP50*(1 + tolerance);
+		c.p99Regressed = c.kolmogorovSmirnovP < alpha && c.candidateP99 > c.baselineP99*(1 + tolerance);
+		c.throughputRegressed = c.candidateThroughput < c.baselineThroughput*(1 - tolerance)
+				&& (Double.isNaN(c.throughputP) || c.throughputP < alpha);
+		c.improved = !c.isRegression() && c.mannWhitneyP < alpha && c.candidateP50 < c.baselineP50*(1 - tolerance);
+
+		return c;
+	}
+
+	/**
+	 * Prints a table of comparisons, latencies in ms and throughputs in
+	 * ops/s.
+	 */
+	public static void printReport(List<Comparison> comparisons) {
+		System.out.printf("%-40s %8s %8s %11s %11s %7s %11s %11s %7s %9s %9s %7s %8s %8s  %s\n",
+				"benchmark", "nBase", "nRun", "base p50", "run p50", "p50 %",
+				"base p99", "run p99", "p99 %", "base tput", "run tput", "tput %",
+				"MW p", "KS p", "verdict");
+		for (Comparison c : comparisons) {
+			String verdict;
+			if (c.isRegression()) {
+				verdict = "REGRESSED";
+				if (c.p50Regressed)
+					verdict += " p50";
+				if (c.p99Regressed)
+					verdict += " p99";
+				if (c.throughputRegressed)
+					verdict += " throughput";
+			} else {
+				verdict = c.improved ? "improved" : "ok";
+			}
+			System.out.printf("%-40s %8d %8d %11.6f %11.6f %+7.1f %11.6f %11.6f %+7.1f %9.1f %9.1f %+7.1f %8.2g %8.2g  %s\n",
+					c.key, c.baselineSamples, c.candidateSamples,
+					c.baselineP50, c.candidateP50, percentChange(c.baselineP50, c.candidateP50),
+					c.baselineP99, c.candidateP99, percentChange(c.baselineP99, c.candidateP99),
+					c.baselineThroughput, c.candidateThroughput, percentChange(c.baselineThroughput, c.candidateThroughput),
+					c.mannWhitneyP, c.kolmogorovSmirnovP, verdict);
+		}
+	}
+
+	private static double percentChange(double from, double to) {
+		return 100*(to - from)/from;
+	}
+
+	/**
+	 * Mann-Whitney U test, using the normal approximation of the statistic.
+	 * The one in commons-math3 3.2 computes n1*(n1+1)/2 and n1*n2 in int,
+	 * which overflows beyond about 46,000 samples and then finds identical
+	 * distributions to differ, so U and its moments are computed in double
+	 * here. Ties get average ranks, as there.
+	 * 
+	 * @param x
+	 *            First sample.
+	 * @param y
+	 *            Second sample.
+	 * @return The two-sided p-value of the hypothesis that both samples
+	 *         come from the same distribution.
+	 */
+	static double mannWhitneyUTest(double[] x, double[] y) {
+		int n1 = x.length;
+		int n2 = y.length;
+		double[] z = new double[n1 + n2];
+		System.arraycopy(x, 0, z, 0, n1);
+		System.arraycopy(y, 0, z, n1, n2);
+		double[] ranks = new NaturalRanking(NaNStrategy.FIXED, TiesStrategy.AVERAGE).rank(z);
+
+		double sumRanksX = 0;
+		for (int i = 0; i < n1; i++)
+			sumRanksX += ranks[i];
+		double u1 = sumRanksX - (double) n1*(n1 + 1)/2;
+		double u2 = (double) n1*n2 - u1;
+		double u = Math.max(u1, u2);
+
+		double mean = (double) n1*n2/2;
+		double variance = (double) n1*n2*((double) n1 + n2 + 1)/12;
+		double zScore = (u - mean)/Math.sqrt(variance);
+		return 2*new NormalDistribution(0, 1).cumulativeProbability(-zScore);
+	}
+
+	/**
+	 * Two-sample Kolmogorov-Smirnov test, which commons-math3 3.2 doesn't
+	 * have. Uses the asymptotic distribution of the statistic, which is
+	 * accurate for the sample sizes the benchmarks produce.
+	 * 
+	 * @param x
+	 *            First sample, sorted.
+	 * @param y
+	 *            Second sample, sorted.
+	 * @return The p-value of the hypothesis that both samples come from the
+	 *         same distribution.
+	 */
+	static double kolmogorovSmirnovTest(double[] x, double[] y) {
+		int n = x.length;
+		int m = y.length;
+
+		// D = sup |Fx - Fy|, stepping through both samples in order.
+		double d = 0;
+		int i = 0;
+		int j = 0;
+		while (i < n && j < m) {
+			double v = Math.min(x[i], y[j]);
+			while (i < n && x[i] == v)
+				i++;
+			while (j < m && y[j] == v)
+				j++;
+			d = Math.max(d, Math.abs((double) i/n - (double) j/m));
+		}
+
+		// Kolmogorov distribution, with the small sample correction from
+		// Numerical Recipes.
+		double en = Math.sqrt((double) n*m/(n + m));
+		double lambda = (en + 0.12 + 0.11/en)*d;
+		double sum = 0;
+		double sign = 1;
+		for (int k = 1; k <= 100; k++) {
+			double term = sign*FastMath.exp(-2*k*k*lambda*lambda);
+			sum += term;
+			if (Math.abs(term) < 1e-12*Math.abs(sum))
+				break;
+			sign = -sign;
+		}
+		return lambda < 1e-3 ? 1 : Math.max(0, Math.min(1, 2*sum));
+	}
+
+	public static void main(String[] args) throws IOException {
+		BaselineStore store = new BaselineStore(new File("baselines"));
+
+		if (args.length == 1 && args[0].equals("list")) {
+			for (String name : store.list())
+				System.out.println(name);
+		} else if (args.length >= 2 && args.length <= 3 && args[0].equals("save")) {
+			File runDir = new File(args.length > 2 ? args[2] : ".");
+			int numFiles = store.save(args[1], runDir);
+			System.out.println("Saved " + numFiles + " files from " + runDir + " as baseline " + args[1] + ".");
+		} else if (args.length >= 2 && args.length <= 5 && args[0].equals("compare")) {
+			RegressionDetector detector = new RegressionDetector();
+			if (args.length > 3)
+				detector.setAlpha(Double.parseDouble(args[3]));
+			if (args.length > 4)
+				detector.setTolerance(Double.parseDouble(args[4]));
+
+			Map<String, Result> baseline = store.load(args[1]);
+			Map<String, Result> run = BaselineStore.loadRun(new File(args.length > 2 ? args[2] : "."));
+			List<Comparison> comparisons = detector.compare(baseline, run);
+
+			System.out.println("Comparing against baseline " + args[1] + "...");
+			printReport(comparisons);
+			for (String key : baseline.keySet())
+				if (!run.containsKey(key))
+					System.out.println("not run: " + key);
+			for (String key : run.keySet())
+				if (!baseline.containsKey(key))
+					System.out.println("no baseline: " + key);
+
+			int numRegressions = 0;
+			for (Comparison c : comparisons)
+				if (c.isRegression())
+					numRegressions++;
+			System.out.println(numRegressions + " of " + comparisons.size() + " benchmarks regressed.");
+			if (numRegressions > 0)
+				System.exit(1);
+		} else if (args.length <= 2 && args[0].equals("selfcheck")) {
+			int n = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+			Random random = new Random(42);
+			double[] x = new double[n];
+			double[] y = new double[n];
+			for (int i = 0; i < n; i++) {
+				x[i] = random.nextGaussian();
+				y[i] = random.nextGaussian();
+			}
+			Arrays.sort(x);
+			Arrays.sort(y);
+			double mannWhitneyP = mannWhitneyUTest(x, y);
+			double kolmogorovSmirnovP = kolmogorovSmirnovTest(x, y);
+			System.out.printf("Two samples of %d from N(0,1): MW p: %.4f KS p: %.4f\n", n, mannWhitneyP, kolmogorovSmirnovP);
+			if (mannWhitneyP < DEFAULT_ALPHA || kolmogorovSmirnovP < DEFAULT_ALPHA) {
+				System.out.println("FAILED: identical distributions found to differ.");
+				System.exit(1);
+			}
+		} else {
+			System.out.println("Usage: RegressionDetector list");
+			System.out.println("       RegressionDetector save baseline [runDir]");
+			System.out.println("       RegressionDetector compare baseline [runDir [alpha [tolerance]]]");
+			System.out.println("       RegressionDetector selfcheck [numSamples]");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,520 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ReportGenerator turns a run directory into a single report comparing the
+ * backends run in it, operation by operation:
+ * <ul>
+ * <li>report.html: the environment of each backend (see
+ * {@link RunEnvironment}), a summary table, and for each operation a table of
+ * percentiles, throughput and error rate per backend with a percentile plot
+ * (latency against percentile, on a log scale of nines) overlaying the
+ * backends, followed by the server metrics polled while it ran (see
+ * {@link ServerMetricsCollector}), where they were.</li>
+ * <li>report.csv: the same numbers, one line per operation and backend.</li>
+ * </ul>
+ * Latencies are streamed from the raw files into a {@link LatencyHistogram}
+ * rather than loaded into memory, so runs of 10^8 samples are handled in a
+ * single pass in constant memory, with percentiles accurate to within 1/64.
+ * When an operation was run more than once by a backend, its latest run is
+ * used.
+ * <p>
+ * Usage: ReportGenerator [runDir]
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class ReportGenerator {
+	/**
+	 * Matches result files, capturing timestamp, operation and kind.
+	 */
+	private static final Pattern RESULT_FILE = Pattern.compile("(\\d{8}_\\d{6})_(.+)\\.(bin|out|intervals|metrics)");
+
+	/**
+	 * Percentiles given in the tables.
+	 */
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+	/**
+	 * Line colors of the backends in the plots, in order.
+	 */
+	private static final String[] COLORS = { "#1f77b4", "#d62728", "#2ca02c", "#ff7f0e", "#9467bd" };
+
+	/**
+	 * Largest number of nines on the plots' percentile axis (99.999%).
+	 */
+	private static final int MAX_NINES = 5;
+
+	private static final int PLOT_WIDTH = 640;
+	private static final int PLOT_HEIGHT = 320;
+	private static final int PLOT_MARGIN = 50;
+
+	/**
+	 * Results of one operation on one backend.
+	 */
+	private static class Result {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		File latencyFile;
+		String latencyTimestamp;
+		File intervalsFile;
+		String intervalsTimestamp;
+		File metricsFile;
+		String metricsTimestamp;
+		ServerMetricsCollector.Summary serverMetrics;
+
+		long count = 0;
+		long errors = 0;
+		double totalMs = 0;
+		double peakThroughput = 0;
+
+		/**
+		 * Returns the throughput in ops/s, or NaN without an intervals file.
+		 */
+		double getThroughput() {
+			return totalMs > 0 ? count/(totalMs/1e3) : Double.NaN;
+		}
+
+		/**
+		 * Returns the fraction of failed operations, or NaN without an
+		 * intervals file.
+		 */
+		double getErrorRate() {
+			return count > 0 ? (double) errors/count : Double.NaN;
+		}
+	}
+
+	private final File runDir;
+
+	/**
+	 * Environment of each backend, by backend, in the order they ran.
+	 */
+	private final Map<String, Properties> environments = new TreeMap<String, Properties>();
+	private final List<String> backends = new ArrayList<String>();
+
+	/**
+	 * Results by operation, then backend.
+	 */
+	private final Map<String, Map<String, Result>> results = new TreeMap<String, Map<String, Result>>();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param runDir
+	 *            The directory the benchmarks were run in.
+	 */
+	public ReportGenerator(File runDir) {
+		this.runDir = runDir;
+	}
+
+	/**
+	 * Reads the environments and results in the run directory.
+	 * 
+	 * @throws IOException
+	 */
+	public void load() throws IOException {
+		File[] files = runDir.listFiles();
+		if (files == null)
+			throw new IOException("Could not list " + runDir);
+
+		// Environments, by timestamp. A backend run more than once keeps its
+		// latest environment.
+		TreeMap<String, String> backendByTimestamp = new TreeMap<String, String>();
+		TreeMap<String, File> environmentFiles = new TreeMap<String, File>();
+		for (File file : files) {
+			Matcher m = RunEnvironment.FILE_PATTERN.matcher(file.getName());
+			if (m.matches()) {
+				backendByTimestamp.put(m.group(1), m.group(2));
+				environmentFiles.put(m.group(1), file);
+			}
+		}
+		for (Map.Entry<String, File> entry : environmentFiles.entrySet()) {
+			String backend = backendByTimestamp.get(entry.getKey());
+			environments.put(backend, RunEnvironment.read(entry.getValue().getPath()));
+			if (!backends.contains(backend))
+				backends.add(backend);
+		}
+
+		// Pick the latest files of each operation for each backend.
+		for (File file : files) {
+			Matcher m = RESULT_FILE.matcher(file.getName());
+			if (!file.isFile() || !m.matches())
+				continue;
+			String timestamp = m.group(1);
+			Map.Entry<String, String> environment = backendByTimestamp.floorEntry(timestamp);
+			String backend = environment == null ? "unknown" : environment.getValue();
+			if (!backends.contains(backend))
+				backends.add(backend);
+
+			Map<String, Result> byBackend = results.get(m.group(2));
+			if (byBackend == null) {
+				byBackend = new TreeMap<String, Result>();
+				results.put(m.group(2), byBackend);
+			}
+			Result result = byBackend.get(backend);
+			if (result == null) {
+				result = new Result();
+				byBackend.put(backend, result);
+			}
+
+			if (m.group(3).equals("metrics")) {
+				if (result.metricsTimestamp == null || timestamp.compareTo(result.metricsTimestamp) > 0) {
+					result.metricsFile = file;
+					result.metricsTimestamp = timestamp;
+				}
+			} else if (m.group(3).equals("intervals")) {
+				if (result.intervalsTimestamp == null || timestamp.compareTo(result.intervalsTimestamp) > 0) {
+					result.intervalsFile = file;
+					result.intervalsTimestamp = timestamp;
+				}
+			} else if (result.latencyTimestamp == null || timestamp.compareTo(result.latencyTimestamp) > 0
+					|| (timestamp.equals(result.latencyTimestamp) && m.group(3).equals("bin"))) {
+				// The raw file wins over a text file converted from it.
+				result.latencyFile = file;
+				result.latencyTimestamp = timestamp;
+			}
+		}
+
+		for (Map<String, Result> byBackend : results.values()) {
+			for (Result result : byBackend.values()) {
+				if (result.latencyFile != null)
+					readLatencies(result);
+				if (result.intervalsFile != null)
+					readIntervals(result);
+				if (result.metricsFile != null)
+					result.serverMetrics = ServerMetricsCollector.Summary.read(result.metricsFile);
+			}
+		}
+	}
+
+	private static void readLatencies(Result result) throws IOException {
+		String path = result.latencyFile.getPath();
+		if (path.endsWith(".bin")) {
+			LatencyFileConverter.readInto(path, result.histogram);
+			return;
+		}
+
+		BufferedReader br = new BufferedReader(new FileReader(path), 1 << 20);
+		String line;
+		while ((line = br.readLine()) != null) {
+			line = line.trim();
+			if (!line.isEmpty())
+				result.histogram.record((long) (Double.parseDouble(line)*1e6));
+		}
+		br.close();
+	}
+
+	private static void readIntervals(Result result) throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(result.intervalsFile));
+		double lastThroughput = 0;
+		int numIntervals = 0;
+		String line;
+		while ((line = br.readLine()) != null) {
+			if (line.startsWith("#") || line.trim().isEmpty())
+				continue;
+			// timestamp epochMillis intervalMs count throughput p50 p99 max errors
+			String[] fields = line.trim().split(" ");
+			result.totalMs += Double.parseDouble(fields[2]);
+			result.count += Long.parseLong(fields[3]);
+			result.errors += Long.parseLong(fields[8]);
+			// The last interval is partial, so only count the ones before it
+			// towards the peak.
+			result.peakThroughput = Math.max(result.peakThroughput, lastThroughput);
+			lastThroughput = Double.parseDouble(fields[4]);
+			numIntervals++;
+		}
+		br.close();
+		// A run shorter than one interval has nothing better to go on.
+		if (numIntervals == 1)
+			result.peakThroughput = lastThroughput;
+	}
+
+	/**
+	 * Writes the CSV report.
+	 * 
+	 * @param file
+	 *            The file to write.
+	 * @throws IOException
+	 */
+	public void writeCsv(File file) throws IOException {
+		BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+		bw.write("operation,backend,samples,min_ms,mean_ms");
+		for (double p : PERCENTILES)
+			bw.write(",p" + formatPercentile(p) + "_ms");
+		bw.write(",max_ms,throughput_ops,peak_throughput_ops,error_rate\n");
+
+		for (Map.Entry<String, Map<String, Result>> op : results.entrySet()) {
+			for (Map.Entry<String, Result> entry : op.getValue().entrySet()) {
+				LatencyHistogram h = entry.getValue().histogram;
+				StringBuilder sb = new StringBuilder();
+				sb.append(op.getKey()).append(',').append(entry.getKey()).append(',').append(h.getCount());
+				sb.append(',').append(ms(h.getMin())).append(',').append(String.format("%.6f", h.getMean()/1e6));
+				for (double p : PERCENTILES)
+					sb.append(',').append(ms(h.getPercentile(p)));
+				sb.append(',').append(ms(h.getMax()));
+				sb.append(',').append(String.format("%.1f", entry.getValue().getThroughput()));
+				sb.append(',').append(String.format("%.1f", entry.getValue().peakThroughput));
+				sb.append(',').append(String.format("%.6f", entry.getValue().getErrorRate()));
+				bw.write(sb.append('\n').toString());
+			}
+		}
+		bw.close();
+	}
+
+	/**
+	 * Writes the HTML report.
+	 * 
+	 * @param file
+	 *            The file to write.
+	 * @throws IOException
+	 */
+	public void writeHtml(File file) throws IOException {
+		BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+		bw.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n");
+		bw.write("<title>Benchmark report: " + escape(runDir.getAbsolutePath()) + "</title>\n");
+		bw.write("<style>\nbody { font-family: sans-serif; }\ntable { border-collapse: collapse; margin-bottom: 1em; }\n"
+				+ "th, td { border: 1px solid #ccc; padding: 2px 8px; text-align: right; }\nth { background: #eee; }\n"
+				+ "td.name { text-align: left; }\n</style>\n</head>\n<body>\n");
+		bw.write("<h1>Benchmark report</h1>\n");
+		bw.write("<p>Run directory " + escape(runDir.getAbsolutePath()) + ", generated "
+				+ new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + ". Latencies in ms.</p>\n");
+
+		// Environment, one column per backend.
+		bw.write("<h2>Environment</h2>\n<table>\n<tr><th>property</th>");
+		for (String backend : backends)
+			bw.write("<th>" + escape(backend) + "</th>");
+		bw.write("</tr>\n");
+		TreeSet<String> keys = new TreeSet<String>();
+		for (Properties properties : environments.values())
+			keys.addAll(properties.stringPropertyNames());
+		for (String key : keys) {
+			bw.write("<tr><td class=\"name\">" + escape(key) + "</td>");
+			for (String backend : backends) {
+				Properties properties = environments.get(backend);
+				String value = properties == null ? null : properties.getProperty(key);
+				bw.write("<td class=\"name\">" + (value == null ? "" : escape(value)) + "</td>");
+			}
+			bw.write("</tr>\n");
+		}
+		bw.write("</table>\n");
+
+		// Summary
+		bw.write("<h2>Summary</h2>\n<table>\n<tr><th>operation</th><th>backend</th><th>samples</th>"
+				+ "<th>p50</th><th>p99</th><th>p99.9</th><th>max</th><th>throughput (ops/s)</th><th>error rate</th></tr>\n");
+		for (Map.Entry<String, Map<String, Result>> op : results.entrySet()) {
+			for (Map.Entry<String, Result> entry : op.getValue().entrySet()) {
+				LatencyHistogram h = entry.getValue().histogram;
+				bw.write("<tr><td class=\"name\"><a href=\"#" + escape(op.getKey()) + "\">" + escape(op.getKey()) + "</a></td>"
+						+ "<td class=\"name\">" + escape(entry.getKey()) + "</td><td>" + h.getCount() + "</td>"
+						+ "<td>" + ms(h.getPercentile(50)) + "</td><td>" + ms(h.getPercentile(99)) + "</td>"
+						+ "<td>" + ms(h.getPercentile(99.9)) + "</td><td>" + ms(h.getMax()) + "</td>"
+						+ "<td>" + formatThroughput(entry.getValue().getThroughput()) + "</td>"
+						+ "<td>" + formatErrorRate(entry.getValue().getErrorRate()) + "</td></tr>\n");
+			}
+		}
+		bw.write("</table>\n");
+
+		// One section per operation.
+		for (Map.Entry<String, Map<String, Result>> op : results.entrySet()) {
+			bw.write("<h2 id=\"" + escape(op.getKey()) + "\">" + escape(op.getKey()) + "</h2>\n");
+			bw.write("<table>\n<tr><th>backend</th><th>samples</th><th>min</th><th>mean</th>");
+			for (double p : PERCENTILES)
+				bw.write("<th>p" + formatPercentile(p) + "</th>");
+			bw.write("<th>max</th><th>throughput (ops/s)</th><th>peak (ops/s)</th><th>errors</th><th>error rate</th></tr>\n");
+			for (Map.Entry<String, Result> entry : op.getValue().entrySet()) {
+				Result result = entry.getValue();
+				LatencyHistogram h = result.histogram;
+				bw.write("<tr><td class=\"name\">" + escape(entry.getKey()) + "</td><td>" + h.getCount() + "</td>"
+						+ "<td>" + ms(h.getMin()) + "</td><td>" + String.format("%.6f", h.getMean()/1e6) + "</td>");
+				for (double p : PERCENTILES)
+					bw.write("<td>" + ms(h.getPercentile(p)) + "</td>");
+				bw.write("<td>" + ms(h.getMax()) + "</td><td>" + formatThroughput(result.getThroughput()) + "</td>"
+						+ "<td>" + formatThroughput(result.intervalsFile == null ? Double.NaN : result.peakThroughput) + "</td>"
+						+ "<td>" + (result.intervalsFile == null ? "" : Long.toString(result.errors)) + "</td>"
+						+ "<td>" + formatErrorRate(result.getErrorRate()) + "</td></tr>\n");
+			}
+			bw.write("</table>\n");
+			writeServerMetrics(bw, op.getValue());
+			writePlot(bw, op.getValue());
+		}
+
+		bw.write("</body>\n</html>\n");
+		bw.close();
+	}
+
+	/**
+	 * Writes a table of the server metrics polled while an operation ran, one
+	 * row per backend that polled them, or nothing if none did.
+	 */
+	private void writeServerMetrics(BufferedWriter bw, Map<String, Result> byBackend) throws IOException {
+		Map<String, Map<String, String>> formatted = new TreeMap<String, Map<String, String>>();
+		List<String> names = new ArrayList<String>();
+		for (Map.Entry<String, Result> entry : byBackend.entrySet()) {
+			if (entry.getValue().serverMetrics == null)
+				continue;
+			Map<String, String> metrics = entry.getValue().serverMetrics.format();
+			formatted.put(entry.getKey(), metrics);
+			for (String name : metrics.keySet())
+				if (!names.contains(name))
+					names.add(name);
+		}
+		if (formatted.isEmpty())
+			return;
+
+		bw.write("<table>\n<tr><th>backend</th>");
+		for (String name : names)
+			bw.write("<th>" + escape(name) + "</th>");
+		bw.write("<th>failed polls</th></tr>\n");
+		for (Map.Entry<String, Map<String, String>> entry : formatted.entrySet()) {
+			bw.write("<tr><td class=\"name\">" + escape(entry.getKey()) + "</td>");
+			for (String name : names) {
+				String value = entry.getValue().get(name);
+				bw.write("<td>" + (value == null ? "" : escape(value)) + "</td>");
+			}
+			ServerMetricsCollector.Summary summary = byBackend.get(entry.getKey()).serverMetrics;
+			bw.write("<td>" + summary.getNumFailedPolls() + "/" + summary.getNumPolls() + "</td></tr>\n");
+		}
+		bw.write("</table>\n");
+	}
+
+	/**
+	 * Writes an SVG percentile plot of an operation, one line per backend:
+	 * latency on a log scale against percentile on a log scale of nines.
+	 */
+	private void writePlot(BufferedWriter bw, Map<String, Result> byBackend) throws IOException {
+		long maxCount = 0;
+		double minLatency = Double.MAX_VALUE;
+		double maxLatency = 0;
+		for (Result result : byBackend.values()) {
+			LatencyHistogram h = result.histogram;
+			if (h.getCount() == 0)
+				continue;
+			maxCount = Math.max(maxCount, h.getCount());
+			minLatency = Math.min(minLatency, Math.max(h.getMin(), 1)/1e6);
+			maxLatency = Math.max(maxLatency, Math.max(h.getMax(), 1)/1e6);
+		}
+		if (maxCount == 0)
+			return;
+
+		// Only plot as many nines as there are samples to back them.
+		double nines = Math.max(1, Math.min(MAX_NINES, Math.log10(maxCount)));
+		int minDecade = (int) Math.floor(Math.log10(minLatency));
+		int maxDecade = Math.max(minDecade + 1, (int) Math.ceil(Math.log10(maxLatency)));
+		int w = PLOT_WIDTH - 2*PLOT_MARGIN;
+		int h = PLOT_HEIGHT - 2*PLOT_MARGIN;
+
+		bw.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + PLOT_WIDTH + "\" height=\"" + PLOT_HEIGHT
+				+ "\" font-family=\"sans-serif\" font-size=\"11\">\n");
+		bw.write("<rect x=\"" + PLOT_MARGIN + "\" y=\"" + PLOT_MARGIN + "\" width=\"" + w + "\" height=\"" + h
+				+ "\" fill=\"none\" stroke=\"#999\"/>\n");
+
+		// Grid and labels: decades of latency, whole nines of percentile.
+		for (int d = minDecade; d <= maxDecade; d++) {
+			double y = PLOT_MARGIN + h - h*(d - minDecade)/(double) (maxDecade - minDecade);
+			bw.write(String.format("<line x1=\"%d\" y1=\"%.1f\" x2=\"%d\" y2=\"%.1f\" stroke=\"#eee\"/>", PLOT_MARGIN, y, PLOT_MARGIN + w, y));
+			bw.write(String.format("<text x=\"%d\" y=\"%.1f\" text-anchor=\"end\">%s</text>\n", PLOT_MARGIN - 4, y + 4,
+					d >= 0 ? Long.toString((long) Math.pow(10, d)) : String.format("%." + (-d) + "f", Math.pow(10, d))));
+		}
+		for (int k = 0; k <= (int) nines; k++) {
+			double x = PLOT_MARGIN + w*k/nines;
+			String label = k == 0 ? "0" : formatPercentile(100*(1 - Math.pow(10, -k)));
+			bw.write(String.format("<line x1=\"%.1f\" y1=\"%d\" x2=\"%.1f\" y2=\"%d\" stroke=\"#eee\"/>", x, PLOT_MARGIN, x, PLOT_MARGIN + h));
+			bw.write(String.format("<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\">%s%%</text>\n", x, PLOT_MARGIN + h + 14, label));
+		}
+		bw.write(String.format("<text x=\"%d\" y=\"%d\" text-anchor=\"middle\">percentile</text>\n", PLOT_MARGIN + w/2, PLOT_HEIGHT - 8));
+		bw.write(String.format("<text x=\"12\" y=\"%d\" text-anchor=\"middle\" transform=\"rotate(-90 12 %d)\">latency (ms)</text>\n",
+				PLOT_MARGIN + h/2, PLOT_MARGIN + h/2));
+
+		int i = 0;
+		for (String backend : backends) {
+			Result result = byBackend.get(backend);
+			String color = COLORS[backends.indexOf(backend) % COLORS.length];
+			if (result == null || result.histogram.getCount() == 0)
+				continue;
+
+			StringBuilder points = new StringBuilder();
+			int numPoints = 200;
+			for (int j = 0; j <= numPoints; j++) {
+				double n = nines*j/numPoints;
+				double latency = Math.max(result.histogram.getPercentile(100*(1 - Math.pow(10, -n))), 1)/1e6;
+				double x = PLOT_MARGIN + w*n/nines;
+				double y = PLOT_MARGIN + h - h*(Math.log10(latency) - minDecade)/(maxDecade - minDecade);
+				points.append(String.format("%.1f,%.1f ", x, y));
+			}
+			bw.write("<polyline fill=\"none\" stroke=\"" + color + "\" stroke-width=\"1.5\" points=\"" + points.toString().trim() + "\"/>\n");
+			bw.write(String.format("<text x=\"%d\" y=\"%d\" fill=\"%s\">%s</text>\n", PLOT_MARGIN + 8, PLOT_MARGIN + 14 + 14*i, color, escape(backend)));
+			i++;
+		}
+		bw.write("</svg>\n");
+	}
+
+	private static String ms(long nanos) {
+		return String.format("%.6f", nanos/1e6);
+	}
+
+	private static String formatThroughput(double throughput) {
+		return Double.isNaN(throughput) ? "" : String.format("%.1f", throughput);
+	}
+
+	private static String formatErrorRate(double errorRate) {
+		return Double.isNaN(errorRate) ? "" : String.format("%.2f%%", 100*errorRate);
+	}
+
+	private static String formatPercentile(double p) {
+		String s = String.format("%.4f", p).replaceAll("0+$", "");
+		return s.endsWith(".") ? s.substring(0, s.length() - 1) : s;
+	}
+
+	private static String escape(String s) {
+		return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 1) {
+			System.out.println("Usage: ReportGenerator [runDir]");
+			System.exit(1);
+		}
+
+		File runDir = new File(args.length > 0 ? args[0] : ".");
+		ReportGenerator generator = new ReportGenerator(runDir);
+
+		System.out.print("Reading results in " + runDir + "... ");
+		generator.load();
+		System.out.println("done (" + generator.results.size() + " operations, backends: " + generator.backends + ").");
+
+		File html = new File(runDir, "report.html");
+		File csv = new File(runDir, "report.csv");
+		generator.writeHtml(html);
+		generator.writeCsv(csv);
+		System.out.println("Wrote " + html + " and " + csv + ".");
+	}
+}
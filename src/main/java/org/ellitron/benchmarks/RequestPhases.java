@@ -0,0 +1,137 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+/**
+ * RequestPhases holds the System.nanoTime() timestamps marking the phases of
+ * a single HTTP request, and accumulates statistics on the length of each
+ * phase over many requests. The phases are:
+ * <ul>
+ * <li>build: building the request in Jersey, up to asking for a connection</li>
+ * <li>connect: acquiring a connection (new TCP connection or keep-alive hit)</li>
+ * <li>ttfb: sending the request and waiting for the response headers</li>
+ * <li>body: reading the response body</li>
+ * <li>server: time spent in the server, where the server reports it</li>
+ * </ul>
+ * Timestamps for connect and ttfb are filled in by
+ * {@link TimedHttpURLConnection}; the benchmark fills in the rest using
+ * {@link #begin()}, {@link #end()} and {@link #serverTime}.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class RequestPhases {
+	/**
+	 * Timestamps for the request in progress on each thread.
+	 */
+	private static final ThreadLocal<RequestPhases> current = new ThreadLocal<RequestPhases>() {
+		@Override
+		protected RequestPhases initialValue() {
+			return new RequestPhases();
+		}
+	};
+
+	public long start;
+	public long connectStart;
+	public long connectEnd;
+	public long headersReceived;
+	public long end;
+
+	/**
+	 * Server reported processing time in ms, or NaN if not reported.
+	 */
+	public double serverTime;
+
+	private final SummaryStatistics buildStats = new SummaryStatistics();
+	private final SummaryStatistics connectStats = new SummaryStatistics();
+	private final SummaryStatistics ttfbStats = new SummaryStatistics();
+	private final SummaryStatistics bodyStats = new SummaryStatistics();
+	private final SummaryStatistics serverStats = new SummaryStatistics();
+	private final SummaryStatistics totalStats = new SummaryStatistics();
+
+	/**
+	 * Returns the phase timestamps for the calling thread.
+	 */
+	public static RequestPhases current() {
+		return current.get();
+	}
+
+	/**
+	 * Marks the start of a new request and clears the previous timestamps.
+	 */
+	public void begin() {
+		connectStart = connectEnd = headersReceived = end = 0;
+		serverTime = Double.NaN;
+		start = System.nanoTime();
+	}
+
+	/**
+	 * Marks the end of the request in progress, after its body has been read.
+	 */
+	public void end() {
+		end = System.nanoTime();
+	}
+
+	/**
+	 * Adds the length of each phase of the last request to the statistics.
+	 * Call after {@link #end()}, and after setting {@link #serverTime} if the
+	 * server reported it.
+	 */
+	public void record() {
+		buildStats.addValue((connectStart - start)/1e6);
+		connectStats.addValue((connectEnd - connectStart)/1e6);
+		ttfbStats.addValue((headersReceived - connectEnd)/1e6);
+		bodyStats.addValue((end - headersReceived)/1e6);
+		if (!Double.isNaN(serverTime))
+			serverStats.addValue(serverTime);
+		totalStats.addValue((end - start)/1e6);
+	}
+
+	/**
+	 * Clears accumulated statistics.
+	 */
+	public void reset() {
+		buildStats.clear();
+		connectStats.clear();
+		ttfbStats.clear();
+		bodyStats.clear();
+		serverStats.clear();
+		totalStats.clear();
+	}
+
+	/**
+	 * Prints accumulated statistics for each phase, in ms.
+	 */
+	public void printStatistics() {
+		System.out.println("Phase breakdown (ms):");
+		printStatistics("build", buildStats);
+		printStatistics("connect", connectStats);
+		printStatistics("ttfb", ttfbStats);
+		printStatistics("body", bodyStats);
+		if (serverStats.getN() > 0) {
+			printStatistics("server", serverStats);
+			System.out.printf("\t%-8s mean: %11.6f (ttfb - server)\n", "network", ttfbStats.getMean() - serverStats.getMean());
+		} else {
+			System.out.printf("\t%-8s not reported by server\n", "server");
+		}
+		printStatistics("total", totalStats);
+	}
+
+	private static void printStatistics(String phase, SummaryStatistics stats) {
+		System.out.printf("\t%-8s numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", phase, stats.getN(), stats.getMin(), stats.getMax(), stats.getMean(), stats.getStandardDeviation());
+	}
+}
@@ -0,0 +1,117 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+
+/**
+ * ResponseConsumption controls how much of a response is consumed before a
+ * request is considered complete for the purpose of measuring its latency.
+ * <ul>
+ * <li>HEADERS: stop as soon as the response headers have arrived. The body
+ * may still be in flight. This is what the benchmarks have always measured.</li>
+ * <li>BODY: read the entire response body.</li>
+ * <li>PARSE: parse the response body as JSON while streaming it off the
+ * connection, which is what a real application pays.</li>
+ * </ul>
+ * In the BODY and PARSE modes the body is kept in memory, so code that calls
+ * ClientResponse.getEntity() after the timed section still works.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public enum ResponseConsumption {
+	HEADERS,
+	BODY,
+	PARSE;
+
+	/**
+	 * Consumes the response according to this mode.
+	 *
+	 * @param response
+	 *            The response to consume.
+	 */
+	public void consume(ClientResponse response) {
+		switch (this) {
+		case HEADERS:
+			break;
+		case BODY:
+			response.bufferEntity();
+			break;
+		case PARSE:
+			if (!response.hasEntity())
+				break;
+			CapturingInputStream in = new CapturingInputStream(response.getEntityInputStream());
+			try {
+				try {
+					new JSONTokener(new InputStreamReader(in, "UTF-8")).nextValue();
+				} catch (JSONException e) {
+					// Not JSON (e.g. an error page), just read it.
+				}
+				// Drain anything following the parsed value.
+				byte[] buf = new byte[4096];
+				while (in.read(buf, 0, buf.length) != -1)
+					;
+				in.close();
+			} catch (IOException e) {
+				throw new ClientHandlerException(e);
+			}
+			response.setEntityInputStream(new ByteArrayInputStream(in.getBytes()));
+			break;
+		}
+	}
+
+	/**
+	 * Keeps a copy of every byte read through it.
+	 */
+	private static class CapturingInputStream extends FilterInputStream {
+		private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+		CapturingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1)
+				copy.write(b);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				copy.write(b, off, n);
+			return n;
+		}
+
+		byte[] getBytes() {
+			return copy.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.IOException;
+
+/**
+ * RestartableDatabase is a database the harness runs itself, embedded or as
+ * a local stand-in, and so can stop and start again on the same data to
+ * measure first-touch latency after a restart (see
+ * {@link ColdStartBenchmarks}).
+ *
+ * @author Jonathan Ellithorpe
+ */
+public interface RestartableDatabase {
+	/**
+	 * Starts the database, on the data it had when last stopped. Returns once
+	 * it is ready to serve requests.
+	 * 
+	 * @throws IOException
+	 *             If the database could not be started.
+	 */
+	public void start() throws IOException;
+
+	/**
+	 * Stops the database.
+	 */
+	public void stop();
+
+	/**
+	 * Evicts the database's files from the operating system's page cache, so
+	 * that the next start reads them from disk. Call while stopped.
+	 * 
+	 * @return Whether the page cache was dropped; false if the database keeps
+	 *         no files or they could not be evicted.
+	 */
+	public boolean dropPageCache();
+
+	/**
+	 * Returns a new client for the running database, with no connections
+	 * open yet.
+	 */
+	public GraphClient newClient();
+}
@@ -0,0 +1,102 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+/**
+ * RetryFilter is a Jersey client filter that retries requests failing with a
+ * {@link StatusClass#TRANSIENT} error, or failing to get a response at all,
+ * up to a bounded number of times. Before the n-th retry it sleeps for a
+ * random time of up to initialBackoff * 2^(n-1) ms, so that clients that
+ * failed together don't retry in lock step.
+ * <p>
+ * Since the filter sits below the benchmark, the latency measured for a
+ * request includes all of its attempts. A single filter may be shared by
+ * many clients and threads.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class RetryFilter extends ClientFilter {
+	private final int maxRetries;
+
+	/**
+	 * Upper bound, in ms, of the sleep before the first retry.
+	 */
+	private final long initialBackoff;
+
+	private final AtomicLong numRetries = new AtomicLong();
+
+	private final Random random = new Random();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxRetries
+	 *            Maximum number of times a request is retried.
+	 * @param initialBackoff
+	 *            Upper bound, in ms, of the sleep before the first retry.
+	 */
+	public RetryFilter(int maxRetries, long initialBackoff) {
+		this.maxRetries = maxRetries;
+		this.initialBackoff = initialBackoff;
+	}
+
+	@Override
+	public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+		for (int attempt = 0; ; attempt++) {
+			ClientResponse response;
+			try {
+				response = getNext().handle(request);
+			} catch (ClientHandlerException e) {
+				if (attempt == maxRetries)
+					throw e;
+				response = null;
+			}
+
+			if (response != null) {
+				if (attempt == maxRetries || StatusClass.classify(response) != StatusClass.TRANSIENT)
+					return response;
+				response.close();
+			}
+
+			numRetries.incrementAndGet();
+			backoff(attempt);
+		}
+	}
+
+	private void backoff(int attempt) {
+		long bound = initialBackoff << Math.min(attempt, 20);
+		try {
+			Thread.sleep((long) (random.nextDouble()*bound));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of retries made so far and resets the count.
+	 */
+	public long getAndResetRetries() {
+		return numRetries.getAndSet(0);
+	}
+}
@@ -0,0 +1,121 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * RunEnvironment records what a benchmark run ran on: the JVM and its heap
+ * and garbage collectors, the machine, and settings of the backend and the
+ * harness. It is written at the start of a run to a file named
+ * "yyyyMMdd_HHmmss_environment_backend.properties" next to the results.
+ * <p>
+ * Result files don't say which backend produced them. {@link ReportGenerator}
+ * attributes each result file to the latest environment written at or before
+ * the file's own timestamp, so backends run one after the other in the same
+ * directory are told apart.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class RunEnvironment {
+	/**
+	 * Matches environment files, capturing the timestamp and the backend.
+	 */
+	public static final Pattern FILE_PATTERN = Pattern.compile("(\\d{8}_\\d{6})_environment_(.+)\\.properties");
+
+	private final String backend;
+	private final Properties properties = new Properties();
+
+	/**
+	 * Constructor. Collects the JVM and machine properties.
+	 * 
+	 * @param backend
+	 *            Name of the backend under test, e.g. "neo4j".
+	 */
+	public RunEnvironment(String backend) {
+		this.backend = backend;
+
+		put("backend", backend);
+		put("java.version", System.getProperty("java.version"));
+		put("java.vm", System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"));
+		put("java.vendor", System.getProperty("java.vendor"));
+		put("os", System.getProperty("os.name") + " " + System.getProperty("os.version") + " " + System.getProperty("os.arch"));
+		put("cpus", Integer.toString(Runtime.getRuntime().availableProcessors()));
+		put("jvm.heap.initial", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getInit()/(1 << 20) + " MB");
+		put("jvm.heap.max", Runtime.getRuntime().maxMemory()/(1 << 20) + " MB");
+
+		StringBuilder gcs = new StringBuilder();
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			gcs.append(gcs.length() > 0 ? ", " : "").append(gc.getName());
+		put("jvm.gc", gcs.toString());
+
+		StringBuilder args = new StringBuilder();
+		for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments())
+			args.append(args.length() > 0 ? " " : "").append(arg);
+		put("jvm.args", args.toString());
+
+		try {
+			put("host", InetAddress.getLocalHost().getHostName());
+		} catch (IOException e) {
+			put("host", "unknown");
+		}
+	}
+
+	/**
+	 * Sets a property, e.g. a backend or harness setting. Null values are
+	 * recorded as "unknown".
+	 */
+	public void put(String key, String value) {
+		properties.setProperty(key, value == null ? "unknown" : value);
+	}
+
+	/**
+	 * Writes the environment to a file in the current directory.
+	 * 
+	 * @return The name of the file written.
+	 * @throws IOException
+	 */
+	public String write() throws IOException {
+		String dateString = new SimpleDateFormat("yyyyMMdd'_'HHmmss").format(new Date());
+		String filename = dateString + "_environment_" + backend + ".properties";
+		OutputStream out = new FileOutputStream(filename);
+		properties.store(out, "Environment of a " + backend + " benchmark run");
+		out.close();
+		return filename;
+	}
+
+	/**
+	 * Reads an environment file.
+	 */
+	public static Properties read(String filename) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(filename);
+		properties.load(in);
+		in.close();
+		return properties;
+	}
+}
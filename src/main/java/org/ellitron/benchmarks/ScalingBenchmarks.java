@@ -0,0 +1,445 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.json.JSONObject;
+
+/**
+ * ScalingBenchmarks measures how CRUD latency degrades as the graph grows.
+ * Rather than starting every measurement from an empty (and so fully cached)
+ * database, the graph is loaded to successive size tiers, by default 10^3 to
+ * 10^8 vertices with one edge per vertex, and at each tier the CRUD
+ * operations are run against a random sample of the elements already there.
+ * Plotting latency against size shows where each backend's working set falls
+ * out of memory.
+ * <p>
+ * The graph is loaded in batches (see {@link BatchGraphClient}) from several
+ * threads. Each new edge goes from a new vertex to another vertex of the same
+ * batch, picked at random, so every vertex has the same expected degree
+ * whenever it was loaded. So that the client doesn't have to hold the IDs of
+ * every element, it keeps a uniform random sample of them (a reservoir) from
+ * which the measured operations pick their targets. The reservoir plays no
+ * part in placing edges, so the sampled vertices are no better connected
+ * than the rest; to check, the mean degree of the graph and of the vertices
+ * whose neighbors were read is reported per tier.
+ * Vertices created while measuring are deleted again, so each tier is
+ * measured at its nominal size.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class ScalingBenchmarks {
+	/**
+	 * Default graph sizes, in vertices.
+	 */
+	public static final long[] DEFAULT_TIERS = { (long)1e3, (long)1e4, (long)1e5, (long)1e6, (long)1e7, (long)1e8 };
+
+	/**
+	 * Default number of threads loading the graph.
+	 */
+	public static final int DEFAULT_LOAD_THREADS = 8;
+
+	/**
+	 * Number of vertices created per batch while loading.
+	 */
+	private static final int LOAD_BATCH_SIZE = 1000;
+
+	/**
+	 * Number of vertex and of edge IDs kept to pick targets from.
+	 */
+	private static final int RESERVOIR_SIZE = 100000;
+
+	private final BatchGraphClient client;
+
+	/**
+	 * Length, in ms, of the intervals over which latency statistics are
+	 * reported.
+	 */
+	private final long reportingInterval;
+
+	private int numLoadThreads = DEFAULT_LOAD_THREADS;
+	private int edgesPerVertex = 1;
+
+	/**
+	 * Uniform random samples of the IDs of vertices and edges loaded so far,
+	 * and the number of each loaded.
+	 */
+	private final long[] vertexSample = new long[RESERVOIR_SIZE];
+	private final String[] edgeSample = new String[RESERVOIR_SIZE];
+	private long numVertices = 0;
+	private long numEdges = 0;
+	private final Random reservoirRandom = new Random(0);
+
+	/**
+	 * Summary lines for every tier and operation, printed at the end.
+	 */
+	private final List<String> summary = new ArrayList<String>();
+	private final List<String> degreeSummary = new ArrayList<String>();
+
+	/**
+	 * A single measured operation of one phase, on sample i. Only run is
+	 * timed; picking its inputs goes in prepare, and bookkeeping on its
+	 * result in complete, which is only called if it succeeded.
+	 */
+	private static abstract class Operation {
+		void prepare(int i) {
+		}
+
+		abstract void run(int i);
+
+		void complete(int i) {
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param client
+	 *            Client for the database under test.
+	 * @param reportingInterval
+	 *            Length, in ms, of the intervals over which latency
+	 *            statistics are reported.
+	 */
+	public ScalingBenchmarks(BatchGraphClient client, long reportingInterval) {
+		this.client = client;
+		this.reportingInterval = reportingInterval;
+	}
+
+	/**
+	 * Sets the number of threads loading the graph.
+	 */
+	public void setLoadThreads(int numLoadThreads) {
+		this.numLoadThreads = numLoadThreads;
+	}
+
+	/**
+	 * Sets the number of edges loaded per vertex.
+	 */
+	public void setEdgesPerVertex(int edgesPerVertex) {
+		this.edgesPerVertex = edgesPerVertex;
+	}
+
+	/**
+	 * Runs the benchmarks at each of the default tiers up to a maximum size.
+	 * 
+	 * @param maxSize
+	 *            The largest graph size, in vertices.
+	 * @param numSamples
+	 *            The number of samples per operation at each tier.
+	 */
+	public void run(long maxSize, int numSamples) {
+		int numTiers = 0;
+		while (numTiers < DEFAULT_TIERS.length && DEFAULT_TIERS[numTiers] <= maxSize)
+			numTiers++;
+		long[] tiers = new long[numTiers];
+		System.arraycopy(DEFAULT_TIERS, 0, tiers, 0, numTiers);
+		run(tiers, numSamples);
+	}
+
+	/**
+	 * Loads the graph to each tier in turn and measures the CRUD operations
+	 * at each, then prints a summary table of latency against size. The
+	 * database is cleared before and after.
+	 * 
+	 * @param tiers
+	 *            Graph sizes, in vertices, in increasing order.
+	 * @param numSamples
+	 *            The number of samples per operation at each tier.
+	 */
+	public void run(long[] tiers, int numSamples) {
+		summary.clear();
+		degreeSummary.clear();
+		client.clearDatabase();
+		numVertices = 0;
+		numEdges = 0;
+
+		for (long size : tiers) {
+			load(size);
+			measure(size, numSamples);
+		}
+
+		client.clearDatabase();
+
+		System.out.println("Scaling benchmark summary (latencies in ms):");
+		System.out.printf("%12s %-16s %11s %11s %11s %11s %7s\n", "vertices", "operation", "mean", "p50", "p99", "max", "errors");
+		for (String line : summary)
+			System.out.println(line);
+		System.out.printf("%12s %12s %14s\n", "vertices", "mean degree", "sampled degree");
+		for (String line : degreeSummary)
+			System.out.println(line);
+	}
+
+	/**
+	 * Loads vertices, and edges from them, until the graph has size
+	 * vertices.
+	 */
+	private void load(final long size) {
+		final long numBatches = (size - numVertices + LOAD_BATCH_SIZE - 1)/LOAD_BATCH_SIZE;
+		if (numBatches <= 0)
+			return;
+		System.out.println("Loading graph to " + size + " vertices...");
+
+		final long firstName = numVertices;
+		long numElements = numVertices + numEdges;
+		final AtomicLong nextBatch = new AtomicLong(0);
+		final AtomicLong numFailedBatches = new AtomicLong(0);
+		long startTime = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(numLoadThreads);
+		for (int t = 0; t < numLoadThreads; t++) {
+			final int threadId = t;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(firstName + threadId);
+					long batch;
+					while ((batch = nextBatch.getAndIncrement()) < numBatches) {
+						long first = firstName + batch*LOAD_BATCH_SIZE;
+						long last = Math.min(first + LOAD_BATCH_SIZE, size);
+						try {
+							loadBatch(first, last, random);
+						} catch (GraphClientException e) {
+							numFailedBatches.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		double seconds = (System.nanoTime() - startTime)/1e9;
+
+		System.out.printf("Loaded %d vertices and %d edges in %.1f s (%.0f elements/s), failed batches: %d\n",
+				numVertices, numEdges, seconds, (numVertices + numEdges - numElements)/seconds, numFailedBatches.get());
+	}
+
+	/**
+	 * Creates the vertices named first to last - 1 in one batch, then their
+	 * edges in another.
+	 */
+	private void loadBatch(long first, long last, Random random) {
+		List<GraphWrite> writes = new ArrayList<GraphWrite>();
+		for (long name = first; name < last; name++)
+			writes.add(GraphWrite.createVertex(new JSONObject().put("name", name)));
+		Object[] ids = client.writeBatch(writes);
+		for (Object id : ids)
+			addVertex((Long) id);
+
+		if (edgesPerVertex == 0 || ids.length < 2)
+			return;
+		writes.clear();
+		for (int i = 0; i < ids.length; i++) {
+			for (int e = 0; e < edgesPerVertex; e++) {
+				// Any other vertex of the batch.
+				int j = random.nextInt(ids.length - 1);
+				if (j >= i)
+					j++;
+				writes.add(GraphWrite.createEdge((Long) ids[i], (Long) ids[j], "friend", new JSONObject()));
+			}
+		}
+		for (Object id : client.writeBatch(writes))
+			addEdge((String) id);
+	}
+
+	/**
+	 * Adds a loaded vertex to the reservoir.
+	 */
+	private synchronized void addVertex(long vId) {
+		if (numVertices < RESERVOIR_SIZE) {
+			vertexSample[(int) numVertices] = vId;
+		} else {
+			long slot = (long) (reservoirRandom.nextDouble()*(numVertices + 1));
+			if (slot < RESERVOIR_SIZE)
+				vertexSample[(int) slot] = vId;
+		}
+		numVertices++;
+	}
+
+	/**
+	 * Adds a loaded edge to the reservoir.
+	 */
+	private synchronized void addEdge(String eId) {
+		if (numEdges < RESERVOIR_SIZE) {
+			edgeSample[(int) numEdges] = eId;
+		} else {
+			long slot = (long) (reservoirRandom.nextDouble()*(numEdges + 1));
+			if (slot < RESERVOIR_SIZE)
+				edgeSample[(int) slot] = eId;
+		}
+		numEdges++;
+	}
+
+	/**
+	 * Returns a vertex picked uniformly at random from those loaded so far,
+	 * for the measured operations.
+	 */
+	private synchronized long sampleVertex(Random random) {
+		return vertexSample[random.nextInt((int) Math.min(numVertices, RESERVOIR_SIZE))];
+	}
+
+	/**
+	 * Returns an edge picked uniformly at random from those loaded so far.
+	 */
+	private synchronized String sampleEdge(Random random) {
+		return edgeSample[random.nextInt((int) Math.min(numEdges, RESERVOIR_SIZE))];
+	}
+
+	/**
+	 * Measures each operation on numSamples randomly picked elements of a
+	 * graph of the given size.
+	 */
+	private void measure(long size, final int numSamples) {
+		String spec = "size=" + size + "_numSamples=" + numSamples;
+		if (numVertices == 0) {
+			System.out.println("Skipping scaling benchmark, nothing was loaded... " + spec);
+			return;
+		}
+		System.out.println("Running scaling benchmark... " + spec);
+
+		final Random random = new Random(size);
+		// Creates that fail leave -1, which the deletes then fail on.
+		final long[] vIdArray = new long[numSamples];
+		Arrays.fill(vIdArray, -1);
+
+		runPhase("scaledVertexRead", spec, size, numSamples, new Operation() {
+			private long vId;
+
+			@Override
+			void prepare(int i) {
+				vId = sampleVertex(random);
+			}
+
+			@Override
+			void run(int i) {
+				client.readVertex(vId);
+			}
+		});
+		runPhase("scaledVertexUpdate", spec, size, numSamples, new Operation() {
+			private long vId;
+			private JSONObject properties;
+
+			@Override
+			void prepare(int i) {
+				vId = sampleVertex(random);
+				properties = new JSONObject().put("age", i);
+			}
+
+			@Override
+			void run(int i) {
+				client.updateVertex(vId, properties);
+			}
+		});
+		final SummaryStatistics degrees = new SummaryStatistics();
+		runPhase("scaledNeighborRead", spec, size, numSamples, new Operation() {
+			private long vId;
+			private int degree;
+
+			@Override
+			void prepare(int i) {
+				vId = sampleVertex(random);
+			}
+
+			@Override
+			void run(int i) {
+				degree = client.readNeighbors(vId).size();
+			}
+
+			@Override
+			void complete(int i) {
+				degrees.addValue(degree);
+			}
+		});
+		degreeSummary.add(String.format("%12d %12.3f %14.3f", size, numVertices == 0 ? 0 : 2.0*numEdges/numVertices, degrees.getMean()));
+		if (numEdges > 0) {
+			runPhase("scaledEdgeRead", spec, size, numSamples, new Operation() {
+				private String eId;
+
+				@Override
+				void prepare(int i) {
+					eId = sampleEdge(random);
+				}
+
+				@Override
+				void run(int i) {
+					client.readEdge(eId);
+				}
+			});
+		}
+		runPhase("scaledVertexCreate", spec, size, numSamples, new Operation() {
+			private JSONObject properties;
+
+			@Override
+			void prepare(int i) {
+				properties = new JSONObject().put("name", -1 - i);
+			}
+
+			@Override
+			void run(int i) {
+				vIdArray[i] = client.createVertex(properties);
+			}
+		});
+		runPhase("scaledVertexDelete", spec, size, numSamples, new Operation() {
+			@Override
+			void run(int i) {
+				client.deleteVertex(vIdArray[i]);
+			}
+		});
+	}
+
+	/**
+	 * Runs an operation numSamples times, measuring the latency of each.
+	 */
+	private void runPhase(String benchmarkName, String spec, long size, int numSamples, Operation operation) {
+		LatencyMeasurement m = new LatencyMeasurement(benchmarkName, spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			operation.prepare(i);
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				operation.run(i);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+			if (!error)
+				operation.complete(i);
+		}
+		m.finish();
+
+		System.out.println("Timings statistics for " + benchmarkName + ":");
+		m.printStatistics();
+
+		summary.add(String.format("%12d %-16s %11.6f %11.6f %11.6f %11.6f %7d",
+				size, benchmarkName.substring("scaled".length()), m.getStatistics().getMean(),
+				m.getStatistics().getPercentile(50), m.getStatistics().getPercentile(99),
+				m.getStatistics().getMax(), m.getNumErrors()));
+	}
+}
@@ -0,0 +1,53 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+/**
+ * ServerMetrics is a source of server side metrics (cache hits, committed
+ * transactions, store size, GC, ...) for a backend, polled at a fixed interval
+ * by a {@link ServerMetricsCollector} while a benchmark runs. Each metric is
+ * either a counter, which only ever grows and is reported as its increase
+ * over a measurement, or a gauge, reported as its mean and maximum.
+ * <p>
+ * By convention, a counter named xHits whose backend also counts misses
+ * under xMisses or xFaults is reported with its hit ratio.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public interface ServerMetrics {
+	/**
+	 * Returns the names of the metrics, in the order {@link #poll()} returns
+	 * their values.
+	 */
+	String[] getNames();
+
+	/**
+	 * Returns whether a metric is a counter rather than a gauge.
+	 * 
+	 * @param metric
+	 *            Index of the metric in {@link #getNames()}.
+	 */
+	boolean isCounter(int metric);
+
+	/**
+	 * Polls the server for the current value of every metric. Metrics the
+	 * server doesn't report (e.g. in an older version) are NaN.
+	 * 
+	 * @throws RuntimeException
+	 *             If the server could not be polled.
+	 */
+	double[] poll();
+}
@@ -0,0 +1,331 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+/**
+ * ServerMetricsCollector polls a {@link ServerMetrics} source on a background
+ * thread at a fixed interval for the length of a measurement, and writes one
+ * line per poll to a file next to the measurement's interval statistics,
+ * stamped with the same absolute wall clock time so that server side cache
+ * efficiency, transaction rate and GC can be lined up against the latency
+ * the client saw. The server is polled once when the collector starts and
+ * once more when it stops, so that counters cover the whole measurement.
+ * <p>
+ * The file starts with a header naming the metrics, counters marked with
+ * "(counter)", and can be summarized again later with
+ * {@link Summary#read(File)}.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class ServerMetricsCollector implements Runnable {
+	/**
+	 * Suffix marking counters in the header of the output file.
+	 */
+	private static final String COUNTER_SUFFIX = "(counter)";
+
+	private final ServerMetrics metrics;
+	private final String filename;
+	private final long intervalMillis;
+
+	/**
+	 * Summary of the polls so far.
+	 */
+	private final Summary summary;
+
+	/**
+	 * Background thread doing the polling.
+	 */
+	private Thread thread;
+
+	private volatile boolean running;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param metrics
+	 *            The server metrics to poll.
+	 * @param filename
+	 *            The file to write the polled values to.
+	 * @param intervalMillis
+	 *            Time between polls in milliseconds.
+	 */
+	public ServerMetricsCollector(ServerMetrics metrics, String filename, long intervalMillis) {
+		this.metrics = metrics;
+		this.filename = filename;
+		this.intervalMillis = intervalMillis;
+		String[] names = metrics.getNames();
+		boolean[] counters = new boolean[names.length];
+		for (int i = 0; i < names.length; i++)
+			counters[i] = metrics.isCounter(i);
+		this.summary = new Summary(names, counters);
+	}
+
+	/**
+	 * Starts the background polling thread.
+	 */
+	public void start() {
+		running = true;
+		thread = new Thread(this, "ServerMetricsCollector");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the background polling thread after a final poll.
+	 */
+	public void stop() {
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the summary of the polls so far.
+	 */
+	public Summary getSummary() {
+		return summary;
+	}
+
+	@Override
+	public void run() {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+		String[] names = metrics.getNames();
+		boolean reportedFailure = false;
+
+		try {
+			BufferedWriter br = new BufferedWriter(new FileWriter(filename));
+			br.write("# timestamp epochMillis");
+			for (int i = 0; i < names.length; i++)
+				br.write(" " + names[i] + (metrics.isCounter(i) ? COUNTER_SUFFIX : ""));
+			br.write("\n");
+
+			long nextDeadline = System.nanoTime();
+			boolean done = false;
+			while (!done) {
+				done = !running;
+
+				double[] values = null;
+				try {
+					values = metrics.poll();
+				} catch (RuntimeException e) {
+					if (!reportedFailure) {
+						System.err.println("Polling server metrics failed: " + e.getMessage());
+						reportedFailure = true;
+					}
+				}
+				summary.add(values);
+
+				long timestamp = System.currentTimeMillis();
+				StringBuilder sb = new StringBuilder();
+				sb.append(dateFormat.format(new Date(timestamp))).append(' ').append(timestamp);
+				for (int i = 0; i < names.length; i++)
+					sb.append(' ').append(values == null ? "NaN" : format(values[i]));
+				br.write(sb.append('\n').toString());
+				br.flush();
+
+				if (done)
+					break;
+
+				// Sleep to a fixed schedule so polls don't drift.
+				nextDeadline += intervalMillis*1000000;
+				try {
+					long sleepNanos = nextDeadline - System.nanoTime();
+					if (sleepNanos > 0)
+						Thread.sleep(sleepNanos/1000000, (int)(sleepNanos%1000000));
+				} catch (InterruptedException ex) {
+					// Woken up by stop().
+				}
+			}
+
+			br.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static String format(double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value))
+			return String.format("%.0f", value);
+		return Double.toString(value);
+	}
+
+	/**
+	 * Summary of the polls of one measurement: the increase of each counter
+	 * and the mean and maximum of each gauge, ignoring polls that failed or
+	 * where the server didn't report a metric.
+	 */
+	public static class Summary {
+		private final String[] names;
+		private final boolean[] counters;
+		private final double[] first;
+		private final double[] last;
+		private final SummaryStatistics[] gauges;
+		private int numPolls = 0;
+		private int numFailedPolls = 0;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param names
+		 *            Names of the metrics.
+		 * @param counters
+		 *            Whether each metric is a counter rather than a gauge.
+		 */
+		public Summary(String[] names, boolean[] counters) {
+			this.names = names;
+			this.counters = counters;
+			this.first = new double[names.length];
+			this.last = new double[names.length];
+			Arrays.fill(first, Double.NaN);
+			Arrays.fill(last, Double.NaN);
+			this.gauges = new SummaryStatistics[names.length];
+			for (int i = 0; i < names.length; i++)
+				gauges[i] = new SummaryStatistics();
+		}
+
+		/**
+		 * Adds the values of one poll.
+		 * 
+		 * @param values
+		 *            Value of each metric, or null if the poll failed.
+		 */
+		public synchronized void add(double[] values) {
+			numPolls++;
+			if (values == null) {
+				numFailedPolls++;
+				return;
+			}
+			for (int i = 0; i < names.length; i++) {
+				if (Double.isNaN(values[i]))
+					continue;
+				if (Double.isNaN(first[i]))
+					first[i] = values[i];
+				last[i] = values[i];
+				gauges[i].addValue(values[i]);
+			}
+		}
+
+		/**
+		 * Reads back the file written by a collector.
+		 * 
+		 * @param file
+		 *            The file.
+		 * @throws IOException
+		 */
+		public static Summary read(File file) throws IOException {
+			BufferedReader br = new BufferedReader(new FileReader(file));
+			Summary summary = null;
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] fields = line.trim().split(" ");
+				if (line.startsWith("#")) {
+					// # timestamp epochMillis name...
+					String[] names = new String[fields.length - 3];
+					boolean[] counters = new boolean[names.length];
+					for (int i = 0; i < names.length; i++) {
+						names[i] = fields[i + 3];
+						counters[i] = names[i].endsWith(COUNTER_SUFFIX);
+						if (counters[i])
+							names[i] = names[i].substring(0, names[i].length() - COUNTER_SUFFIX.length());
+					}
+					summary = new Summary(names, counters);
+				} else if (summary != null && fields.length == summary.names.length + 2) {
+					double[] values = new double[summary.names.length];
+					boolean failed = true;
+					for (int i = 0; i < values.length; i++) {
+						values[i] = Double.parseDouble(fields[i + 2]);
+						failed &= Double.isNaN(values[i]);
+					}
+					summary.add(failed ? null : values);
+				}
+			}
+			br.close();
+			if (summary == null)
+				throw new IOException("No header in " + file);
+			return summary;
+		}
+
+		/**
+		 * Returns the formatted summary of each metric by name: the increase
+		 * of counters, the mean and maximum of gauges, and the hit ratio of
+		 * each xHits counter with a matching xMisses or xFaults counter.
+		 * Metrics that were never reported are left out.
+		 */
+		public synchronized Map<String, String> format() {
+			Map<String, String> formatted = new LinkedHashMap<String, String>();
+			for (int i = 0; i < names.length; i++) {
+				if (Double.isNaN(first[i]))
+					continue;
+				if (counters[i])
+					formatted.put(names[i], String.format("+%.0f", last[i] - first[i]));
+				else
+					formatted.put(names[i], String.format("%.0f (max %.0f)", gauges[i].getMean(), gauges[i].getMax()));
+			}
+			for (int i = 0; i < names.length; i++) {
+				if (!counters[i] || !names[i].endsWith("Hits") || Double.isNaN(first[i]))
+					continue;
+				String prefix = names[i].substring(0, names[i].length() - "Hits".length());
+				double hits = last[i] - first[i];
+				for (int j = 0; j < names.length; j++) {
+					if (!counters[j] || Double.isNaN(first[j])
+							|| !(names[j].equals(prefix + "Misses") || names[j].equals(prefix + "Faults")))
+						continue;
+					double total = hits + last[j] - first[j];
+					if (total > 0)
+						formatted.put(prefix + "HitRatio", String.format("%.4f", hits/total));
+				}
+			}
+			return formatted;
+		}
+
+		public synchronized int getNumPolls() {
+			return numPolls;
+		}
+
+		public synchronized int getNumFailedPolls() {
+			return numFailedPolls;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (Map.Entry<String, String> entry : format().entrySet())
+				sb.append(sb.length() == 0 ? "" : " ").append(entry.getKey()).append(": ").append(entry.getValue());
+			int failed = getNumFailedPolls();
+			if (failed > 0)
+				sb.append(sb.length() == 0 ? "" : " ").append("failed polls: ").append(failed).append("/").append(getNumPolls());
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,287 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.distribution.ExponentialDistribution;
+import org.apache.commons.math3.distribution.RealDistribution;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.json.JSONObject;
+
+/**
+ * SessionBenchmarks simulates users running sessions: scripted chains of
+ * dependent requests separated by think time, rather than isolated requests
+ * in a tight loop. The default script is
+ * <ol>
+ * <li>CREATE_PERSON: create a vertex for a new person.</li>
+ * <li>LINK_FRIENDS: add edges from the person to a few existing people.</li>
+ * <li>READ_NEIGHBORHOOD: read the person's neighbors.</li>
+ * <li>UPDATE_PROFILE: update the person's properties.</li>
+ * </ol>
+ * Think time before each step after the first, and between sessions, is
+ * drawn from a configurable distribution.
+ * <p>
+ * The latency of each step is measured separately, as is the end-to-end
+ * latency of each session, which includes think time. The active time of
+ * each successful session, the sum of its step latencies, is reported as a
+ * separate statistic, since it doesn't correspond to any span of time that
+ * could be placed in the interval reports. A session is abandoned at the
+ * first failed step.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class SessionBenchmarks {
+	public enum Step {
+		CREATE_PERSON("sessionCreatePerson"),
+		LINK_FRIENDS("sessionLinkFriends"),
+		READ_NEIGHBORHOOD("sessionReadNeighborhood"),
+		UPDATE_PROFILE("sessionUpdateProfile");
+
+		private final String benchmarkName;
+
+		private Step(String benchmarkName) {
+			this.benchmarkName = benchmarkName;
+		}
+	}
+
+	public static final Step[] DEFAULT_SCRIPT = { Step.CREATE_PERSON, Step.LINK_FRIENDS, Step.READ_NEIGHBORHOOD, Step.UPDATE_PROFILE };
+
+	/**
+	 * Number of people created up front, for new people to befriend.
+	 */
+	private static final int NUM_PEOPLE = 1000;
+
+	private final GraphClient client;
+
+	/**
+	 * Length, in ms, of the intervals over which latency statistics are
+	 * reported.
+	 */
+	private final long reportingInterval;
+
+	private Step[] script = DEFAULT_SCRIPT;
+
+	/**
+	 * Distribution of think times, in ms, or null for none.
+	 */
+	private RealDistribution thinkTime = new ExponentialDistribution(100);
+
+	private int numFriends = 5;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param client
+	 *            Client for the database under test. It is shared by all
+	 *            users.
+	 * @param reportingInterval
+	 *            Length, in ms, of the intervals over which latency
+	 *            statistics are reported.
+	 */
+	public SessionBenchmarks(GraphClient client, long reportingInterval) {
+		this.client = client;
+		this.reportingInterval = reportingInterval;
+	}
+
+	/**
+	 * Sets the steps of a session, in order. Steps may be repeated. Without
+	 * a CREATE_PERSON step, sessions work on an existing person.
+	 */
+	public void setScript(Step... script) {
+		this.script = script;
+	}
+
+	/**
+	 * Sets the distribution of think times, in ms (e.g. an
+	 * ExponentialDistribution or LogNormalDistribution), or null for no
+	 * think time. Negative samples are treated as zero.
+	 */
+	public void setThinkTime(RealDistribution thinkTime) {
+		this.thinkTime = thinkTime;
+	}
+
+	/**
+	 * Sets the number of friends linked in the LINK_FRIENDS step.
+	 */
+	public void setNumFriends(int numFriends) {
+		this.numFriends = numFriends;
+	}
+
+	/**
+	 * Runs sessions for a number of concurrent users, one thread each, and
+	 * prints per step and per session statistics.
+	 * 
+	 * @param numUsers
+	 *            The number of concurrent users.
+	 * @param numSessions
+	 *            The number of sessions each user runs, one after another.
+	 */
+	public void run(final int numUsers, final int numSessions) {
+		String spec = "numUsers=" + numUsers + "_numSessions=" + numSessions;
+		System.out.println("Running session benchmark... " + spec);
+
+		final long[] people = new long[NUM_PEOPLE];
+		for (int i = 0; i < NUM_PEOPLE; i++)
+			people[i] = client.createVertex(new JSONObject().put("name", "person" + i));
+
+		final Map<Step, LatencyMeasurement> stepMeasurements = new EnumMap<Step, LatencyMeasurement>(Step.class);
+		for (Step step : script)
+			if (!stepMeasurements.containsKey(step))
+				stepMeasurements.put(step, new LatencyMeasurement(step.benchmarkName, spec, reportingInterval));
+		final LatencyMeasurement sessionTotal = new LatencyMeasurement("sessionTotal", spec, reportingInterval);
+		final DescriptiveStatistics sessionActive = new DescriptiveStatistics();
+
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(numUsers);
+		for (int u = 0; u < numUsers; u++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						startLatch.await();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+
+					for (int s = 0; s < numSessions; s++) {
+						if (s > 0)
+							think();
+						runSession(people, stepMeasurements, sessionTotal, sessionActive);
+					}
+				}
+			});
+		}
+
+		startLatch.countDown();
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+
+		List<LatencyMeasurement> measurements = new ArrayList<LatencyMeasurement>(stepMeasurements.values());
+		measurements.add(sessionTotal);
+		for (LatencyMeasurement m : measurements) {
+			m.finish();
+			System.out.println("Timings statistics for " + m.getBenchmarkName() + ":");
+			m.printStatistics();
+		}
+		System.out.println("Active time statistics for successful sessions:");
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f p50: %11.6f p99: %11.6f\n", sessionActive.getN(), sessionActive.getMin(), sessionActive.getMax(),
+				sessionActive.getMean(), sessionActive.getPercentile(50), sessionActive.getPercentile(99));
+
+		System.out.println("Session benchmark summary (latencies in ms):");
+		System.out.printf("%-24s %10s %11s %11s %11s %11s %7s\n", "measurement", "numSamples", "mean", "p50", "p99", "max", "errors");
+		for (LatencyMeasurement m : measurements)
+			System.out.printf("%-24s %10d %11.6f %11.6f %11.6f %11.6f %7d\n", m.getBenchmarkName(),
+					m.getStatistics().getN(), m.getStatistics().getMean(),
+					m.getStatistics().getPercentile(50),
+					m.getStatistics().getPercentile(99),
+					m.getStatistics().getMax(), m.getNumErrors());
+		System.out.printf("%-24s %10d %11.6f %11.6f %11.6f %11.6f %7s\n", "sessionActive", sessionActive.getN(), sessionActive.getMean(),
+				sessionActive.getPercentile(50), sessionActive.getPercentile(99), sessionActive.getMax(), "-");
+
+		client.clearDatabase();
+	}
+
+	/**
+	 * Runs a single session through the script.
+	 */
+	private void runSession(long[] people, Map<Step, LatencyMeasurement> stepMeasurements, LatencyMeasurement sessionTotal, DescriptiveStatistics sessionActive) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long personId = people[random.nextInt(people.length)];
+		long activeTime = 0;
+		boolean error = false;
+
+		long sessionStartTime = System.nanoTime();
+		for (int k = 0; k < script.length && !error; k++) {
+			if (k > 0)
+				think();
+
+			Step step = script[k];
+			LatencyMeasurement stepMeasurement = stepMeasurements.get(step);
+			long allocatedBefore = stepMeasurement.allocatedBytes();
+			long startTime = System.nanoTime();
+			try {
+				switch (step) {
+				case CREATE_PERSON:
+					personId = client.createVertex(new JSONObject().put("name", "person").put("age", random.nextInt(18, 90)));
+					break;
+				case LINK_FRIENDS:
+					for (int f = 0; f < numFriends; f++)
+						client.createEdge(personId, people[random.nextInt(people.length)], "friend", new JSONObject());
+					break;
+				case READ_NEIGHBORHOOD:
+					client.readNeighbors(personId);
+					break;
+				case UPDATE_PROFILE:
+					client.updateVertex(personId, new JSONObject().put("name", "person").put("age", random.nextInt(18, 90)).put("status", "updated"));
+					break;
+				}
+			} catch (GraphClientException e) {
+				error = true;
+			} catch (RuntimeException e) {
+				// Connection refused or reset, unparseable response, ...:
+				// fails the step like any other error.
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			stepMeasurement.recordAllocation(allocatedBefore, stepMeasurement.allocatedBytes());
+
+			stepMeasurement.record(startTime, endTime, error);
+			activeTime += endTime - startTime;
+		}
+		long sessionEndTime = System.nanoTime();
+
+		sessionTotal.record(sessionStartTime, sessionEndTime, error);
+		if (!error) {
+			synchronized (sessionActive) {
+				sessionActive.addValue(activeTime/1e6);
+			}
+		}
+	}
+
+	/**
+	 * Sleeps for a think time drawn from the distribution.
+	 */
+	private void think() {
+		if (thinkTime == null)
+			return;
+
+		double millis;
+		synchronized (thinkTime) {
+			millis = thinkTime.sample();
+		}
+		if (millis <= 0)
+			return;
+		try {
+			Thread.sleep((long) millis, (int) ((millis % 1)*1e6));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,206 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+/**
+ * SimulatedUserBenchmarks runs a large number of simulated users at once,
+ * each a thread issuing blocking requests through a {@link GraphClient}: 90%
+ * vertex reads and 10% vertex updates, on vertices picked at random from a
+ * set created up front.
+ * <p>
+ * The workload is run twice: on a pool of at most
+ * {@link #MAX_PLATFORM_THREADS} platform threads, which is what the client
+ * machine can afford and so queues users beyond that, and, on Java 21 and
+ * later, with one virtual thread per user. In the virtual thread run,
+ * periods where a virtual thread blocked while pinned to its carrier thread
+ * are reported, since they delay other users and skew latency.
+ * <p>
+ * With many users, raise the JDK's keep-alive cache size (system property
+ * http.maxConnections, 5 by default) so that connections are reused rather
+ * than opened for every request.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class SimulatedUserBenchmarks {
+	/**
+	 * Largest number of platform threads used.
+	 */
+	public static final int MAX_PLATFORM_THREADS = 256;
+
+	/**
+	 * Number of vertices the users read and update.
+	 */
+	private static final int NUM_VERTICES = 1000;
+
+	private final GraphClient client;
+
+	/**
+	 * Length, in ms, of the intervals over which latency statistics are
+	 * reported.
+	 */
+	private final long reportingInterval;
+
+	/**
+	 * Pinned periods shorter than this are not reported.
+	 */
+	private Duration pinningThreshold = Duration.ofMillis(1);
+
+	/**
+	 * Summary lines for every run, printed at the end.
+	 */
+	private final List<String> summary = new ArrayList<String>();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param client
+	 *            Client for the database under test. It is shared by all
+	 *            users.
+	 * @param reportingInterval
+	 *            Length, in ms, of the intervals over which latency
+	 *            statistics are reported.
+	 */
+	public SimulatedUserBenchmarks(GraphClient client, long reportingInterval) {
+		this.client = client;
+		this.reportingInterval = reportingInterval;
+	}
+
+	/**
+	 * Sets the shortest pinned period that is reported.
+	 */
+	public void setPinningThreshold(Duration pinningThreshold) {
+		this.pinningThreshold = pinningThreshold;
+	}
+
+	/**
+	 * Runs the workload on platform threads and then on virtual threads, if
+	 * available, and prints a summary.
+	 * 
+	 * @param numUsers
+	 *            The number of simulated users.
+	 * @param numOps
+	 *            The number of requests each user makes.
+	 */
+	public void run(final int numUsers, final int numOps) {
+		summary.clear();
+
+		long[] vIdArray = new long[NUM_VERTICES];
+		for (int i = 0; i < NUM_VERTICES; i++)
+			vIdArray[i] = client.createVertex(new JSONObject().put("prop", 42));
+
+		int numPlatformThreads = Math.min(numUsers, MAX_PLATFORM_THREADS);
+		runUsers("platform", Executors.newFixedThreadPool(numPlatformThreads), numPlatformThreads, numUsers, numOps, vIdArray, null);
+
+		if (VirtualThreads.isAvailable()) {
+			VirtualThreads.PinningMonitor pinningMonitor = new VirtualThreads.PinningMonitor(pinningThreshold);
+			if (!pinningMonitor.start())
+				pinningMonitor = null;
+			runUsers("virtual", VirtualThreads.newVirtualThreadPerTaskExecutor(), numUsers, numUsers, numOps, vIdArray, pinningMonitor);
+		} else {
+			System.out.println("Virtual threads require Java 21 or later, skipping virtual thread run");
+		}
+
+		client.clearDatabase();
+
+		System.out.println("Simulated user benchmark summary (latencies in ms):");
+		System.out.printf("%-8s %8s %8s %11s %11s %11s %10s %7s %8s\n", "threads", "users", "running", "mean", "p50", "p99", "ops/s", "errors", "pinned");
+		for (String line : summary)
+			System.out.println(line);
+	}
+
+	/**
+	 * Runs every user as a task on the executor, all released at once.
+	 */
+	private void runUsers(String mode, ExecutorService executor, int numRunning, int numUsers, final int numOps, final long[] vIdArray, VirtualThreads.PinningMonitor pinningMonitor) {
+		String spec = "numUsers=" + numUsers + "_numOps=" + numOps + "_threads=" + mode;
+		System.out.println("Running simulated users... " + spec);
+
+		final LatencyMeasurement m = new LatencyMeasurement("simulatedUsers", spec, reportingInterval);
+		final CountDownLatch startLatch = new CountDownLatch(1);
+
+		for (int u = 0; u < numUsers; u++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						startLatch.await();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < numOps; i++) {
+						long vId = vIdArray[random.nextInt(vIdArray.length)];
+						long allocatedBefore = m.allocatedBytes();
+						long startTime = System.nanoTime();
+						boolean error = false;
+						try {
+							if (random.nextInt(10) == 0)
+								client.updateVertex(vId, new JSONObject().put("prop", i));
+							else
+								client.readVertex(vId);
+						} catch (GraphClientException e) {
+							error = true;
+						} catch (RuntimeException e) {
+							// Connection refused or reset, unparseable
+							// response, ...: count it and carry on.
+							error = true;
+						}
+						long endTime = System.nanoTime();
+						m.recordAllocation(allocatedBefore, m.allocatedBytes());
+						m.record(startTime, endTime, error);
+					}
+				}
+			});
+		}
+
+		startLatch.countDown();
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		m.finish();
+
+		System.out.println("Timings statistics for " + mode + " threads:");
+		m.printStatistics();
+		String pinned = "-";
+		if (pinningMonitor != null) {
+			pinningMonitor.stop();
+			pinningMonitor.printStatistics();
+			pinned = Long.toString(pinningMonitor.getNumEvents());
+		}
+
+		summary.add(String.format("%-8s %8d %8d %11.6f %11.6f %11.6f %10.1f %7d %8s",
+				mode, numUsers, numRunning, m.getStatistics().getMean(),
+				m.getStatistics().getPercentile(50),
+				m.getStatistics().getPercentile(99), m.getThroughput(),
+				m.getNumErrors(), pinned));
+	}
+}
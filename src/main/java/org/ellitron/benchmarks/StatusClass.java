@@ -0,0 +1,132 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.sun.jersey.api.client.ClientResponse;
+
+/**
+ * StatusClass classifies the outcome of a request from its HTTP status (and,
+ * for errors, its body):
+ * <ul>
+ * <li>SUCCESS: 1xx, 2xx and 3xx responses.</li>
+ * <li>CLIENT_ERROR: 4xx responses, e.g. a 404 when deleting an element that
+ * is already gone. Retrying will not help.</li>
+ * <li>TRANSIENT: failures that may succeed if retried. These are 408, 429,
+ * 502, 503 and 504 responses, and any 4xx or 5xx response caused by a lock
+ * conflict (a DeadlockDetectedException from Neo4j, which the cypher
+ * endpoint reports as a 400, or a PermanentLockingException or
+ * TemporaryLockingException from Titan).</li>
+ * <li>SERVER_ERROR: all other 5xx responses.</li>
+ * </ul>
+ *
+ * @author Jonathan Ellithorpe
+ */
+public enum StatusClass {
+	SUCCESS,
+	CLIENT_ERROR,
+	TRANSIENT,
+	SERVER_ERROR;
+
+	/**
+	 * Classifies a status code and response body.
+	 *
+	 * @param status
+	 *            HTTP status code.
+	 * @param body
+	 *            Response body, or null if not available.
+	 * @return The class of the outcome.
+	 */
+	public static StatusClass classify(int status, String body) {
+		if (status < 400)
+			return SUCCESS;
+		switch (status) {
+		case 408:
+		case 429:
+		case 502:
+		case 503:
+		case 504:
+			return TRANSIENT;
+		default:
+			if (isLockConflict(body))
+				return TRANSIENT;
+			return status < 500 ? CLIENT_ERROR : SERVER_ERROR;
+		}
+	}
+
+	/**
+	 * Classifies a response. For an error response the body is buffered and
+	 * inspected, and remains readable afterwards.
+	 *
+	 * @param response
+	 *            The response to classify.
+	 * @return The class of the outcome.
+	 */
+	public static StatusClass classify(ClientResponse response) {
+		int status = response.getStatus();
+		if (status < 400 || !response.hasEntity())
+			return classify(status, null);
+
+		response.bufferEntity();
+		String body = response.getEntity(String.class);
+		InputStream in = response.getEntityInputStream();
+		try {
+			in.reset();
+		} catch (IOException e) {
+			// Can't happen for a buffered entity.
+		}
+		return classify(status, body);
+	}
+
+	/**
+	 * Returns whether an error message reports a lock conflict.
+	 */
+	public static boolean isLockConflict(String message) {
+		return message != null && (message.contains("Deadlock") || message.contains("LockingException"));
+	}
+
+	/**
+	 * Checks the classification of a few representative responses and exits
+	 * with status 1 if any is misclassified.
+	 */
+	public static void main(String[] args) {
+		String deadlock = "{\"message\":\"LockClient[42] can't wait on resource\",\"exception\":\"DeadlockDetectedException\"}";
+		Object[][] cases = {
+				{ 200, null, SUCCESS },
+				{ 404, null, CLIENT_ERROR },
+				{ 400, "{\"exception\":\"SyntaxException\"}", CLIENT_ERROR },
+				{ 400, deadlock, TRANSIENT },
+				{ 409, deadlock, TRANSIENT },
+				{ 500, deadlock, TRANSIENT },
+				{ 500, "com.thinkaurelius.titan.diskstorage.locking.PermanentLockingException", TRANSIENT },
+				{ 500, "java.lang.NullPointerException", SERVER_ERROR },
+				{ 503, null, TRANSIENT },
+		};
+		boolean failed = false;
+		for (Object[] c : cases) {
+			StatusClass actual = classify((Integer) c[0], (String) c[1]);
+			if (actual != c[2]) {
+				System.out.println("FAILED: " + c[0] + " " + c[1] + " classified as " + actual + ", expected " + c[2]);
+				failed = true;
+			}
+		}
+		if (failed)
+			System.exit(1);
+		System.out.println("All " + cases.length + " cases classified as expected.");
+	}
+}
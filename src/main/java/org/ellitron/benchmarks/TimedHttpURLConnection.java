@@ -0,0 +1,253 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.client.urlconnection.HttpURLConnectionFactory;
+import com.sun.jersey.client.urlconnection.URLConnectionClientHandler;
+
+/**
+ * TimedHttpURLConnection wraps the JDK's HttpURLConnection and records, in
+ * the calling thread's {@link RequestPhases}, when the connection to the
+ * server was acquired (either a fresh TCP connect or a connection taken from
+ * the keep-alive cache) and when the response headers arrived.
+ * <p>
+ * Use {@link #createClient()} to get a Jersey client whose requests go
+ * through these connections.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class TimedHttpURLConnection extends HttpURLConnection {
+	/**
+	 * The real connection.
+	 */
+	private final HttpURLConnection delegate;
+
+	private boolean connectTimed = false;
+	private boolean responseTimed = false;
+
+	/**
+	 * Hands Jersey timed connections.
+	 */
+	private static class Factory implements HttpURLConnectionFactory {
+		@Override
+		public HttpURLConnection getHttpURLConnection(URL url) throws IOException {
+			return new TimedHttpURLConnection((HttpURLConnection) url.openConnection());
+		}
+	}
+
+	/**
+	 * Creates a Jersey client that records connection acquisition and
+	 * time-to-first-byte for each request in {@link RequestPhases#current()}.
+	 */
+	public static Client createClient() {
+		return new Client(new URLConnectionClientHandler(new Factory()));
+	}
+
+	private TimedHttpURLConnection(HttpURLConnection delegate) {
+		super(delegate.getURL());
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Connects the underlying connection, timing how long it takes.
+	 */
+	private void timedConnect() throws IOException {
+		if (!connectTimed) {
+			connectTimed = true;
+			RequestPhases phases = RequestPhases.current();
+			phases.connectStart = System.nanoTime();
+			delegate.connect();
+			phases.connectEnd = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Waits for the response headers, timing when they arrived.
+	 */
+	private void timedResponse() throws IOException {
+		if (!responseTimed) {
+			timedConnect();
+			responseTimed = true;
+			delegate.getResponseCode();
+			RequestPhases.current().headersReceived = System.nanoTime();
+		}
+	}
+
+	@Override
+	public void connect() throws IOException {
+		timedConnect();
+		connected = true;
+	}
+
+	@Override
+	public void disconnect() {
+		delegate.disconnect();
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return delegate.usingProxy();
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		timedConnect();
+		return delegate.getOutputStream();
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		timedResponse();
+		return delegate.getInputStream();
+	}
+
+	@Override
+	public InputStream getErrorStream() {
+		return delegate.getErrorStream();
+	}
+
+	@Override
+	public int getResponseCode() throws IOException {
+		timedResponse();
+		return delegate.getResponseCode();
+	}
+
+	@Override
+	public String getResponseMessage() throws IOException {
+		timedResponse();
+		return delegate.getResponseMessage();
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		return delegate.getHeaderFields();
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		return delegate.getHeaderField(name);
+	}
+
+	@Override
+	public String getHeaderField(int n) {
+		return delegate.getHeaderField(n);
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n) {
+		return delegate.getHeaderFieldKey(n);
+	}
+
+	@Override
+	public int getContentLength() {
+		return delegate.getContentLength();
+	}
+
+	@Override
+	public String getContentType() {
+		return delegate.getContentType();
+	}
+
+	@Override
+	public void setRequestMethod(String method) throws ProtocolException {
+		delegate.setRequestMethod(method);
+	}
+
+	@Override
+	public String getRequestMethod() {
+		return delegate.getRequestMethod();
+	}
+
+	@Override
+	public void setRequestProperty(String key, String value) {
+		delegate.setRequestProperty(key, value);
+	}
+
+	@Override
+	public void addRequestProperty(String key, String value) {
+		delegate.addRequestProperty(key, value);
+	}
+
+	@Override
+	public String getRequestProperty(String key) {
+		return delegate.getRequestProperty(key);
+	}
+
+	@Override
+	public Map<String, List<String>> getRequestProperties() {
+		return delegate.getRequestProperties();
+	}
+
+	@Override
+	public void setDoOutput(boolean dooutput) {
+		delegate.setDoOutput(dooutput);
+	}
+
+	@Override
+	public boolean getDoOutput() {
+		return delegate.getDoOutput();
+	}
+
+	@Override
+	public void setDoInput(boolean doinput) {
+		delegate.setDoInput(doinput);
+	}
+
+	@Override
+	public boolean getDoInput() {
+		return delegate.getDoInput();
+	}
+
+	@Override
+	public void setUseCaches(boolean usecaches) {
+		delegate.setUseCaches(usecaches);
+	}
+
+	@Override
+	public void setConnectTimeout(int timeout) {
+		delegate.setConnectTimeout(timeout);
+	}
+
+	@Override
+	public void setReadTimeout(int timeout) {
+		delegate.setReadTimeout(timeout);
+	}
+
+	@Override
+	public void setInstanceFollowRedirects(boolean followRedirects) {
+		delegate.setInstanceFollowRedirects(followRedirects);
+	}
+
+	@Override
+	public void setChunkedStreamingMode(int chunklen) {
+		delegate.setChunkedStreamingMode(chunklen);
+	}
+
+	@Override
+	public void setFixedLengthStreamingMode(int contentLength) {
+		delegate.setFixedLengthStreamingMode(contentLength);
+	}
+}
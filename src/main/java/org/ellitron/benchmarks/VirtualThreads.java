@@ -0,0 +1,184 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.benchmarks;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * VirtualThreads gives access to Java 21 virtual threads, and to JFR events
+ * reporting when a virtual thread pins its carrier thread, while still
+ * building and running on older JVMs. Everything is looked up reflectively;
+ * use {@link #isAvailable()} to check for support first.
+ * <p>
+ * A virtual thread blocked in I/O normally unmounts from its carrier thread
+ * so that the carrier can run other virtual threads. A virtual thread that
+ * blocks while holding a monitor (or inside native code) instead pins its
+ * carrier, and with few carriers the other simulated clients stall behind
+ * it, which shows up as latency that has nothing to do with the server.
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class VirtualThreads {
+	/**
+	 * Returns whether the JVM supports virtual threads.
+	 */
+	public static boolean isAvailable() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns an executor that runs each task in a new virtual thread.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             If the JVM doesn't support virtual threads.
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+		}
+	}
+
+	/**
+	 * PinningMonitor records jdk.VirtualThreadPinned events, emitted when a
+	 * virtual thread blocks while pinned to its carrier thread for longer
+	 * than a threshold, using a JFR event stream.
+	 */
+	public static class PinningMonitor {
+		/**
+		 * Number of events whose stack traces are kept for the report.
+		 */
+		private static final int NUM_EXAMPLES = 3;
+
+		private final Duration threshold;
+
+		private Object recordingStream;
+
+		private final AtomicLong numEvents = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final List<String> examples = new ArrayList<String>();
+
+		/**
+		 * Constructor.
+		 *
+		 * @param threshold
+		 *            Pinned periods shorter than this are not recorded.
+		 */
+		public PinningMonitor(Duration threshold) {
+			this.threshold = threshold;
+		}
+
+		/**
+		 * Starts recording pinning events.
+		 *
+		 * @return Whether recording started; false if the JVM doesn't
+		 *         support JFR event streaming.
+		 */
+		public boolean start() {
+			try {
+				Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+				Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings");
+				final Method getDuration = Class.forName("jdk.jfr.consumer.RecordedEvent").getMethod("getDuration");
+
+				recordingStream = streamClass.getConstructor().newInstance();
+				Object settings = streamClass.getMethod("enable", String.class).invoke(recordingStream, "jdk.VirtualThreadPinned");
+				settingsClass.getMethod("withThreshold", Duration.class).invoke(settings, threshold);
+				settingsClass.getMethod("withStackTrace").invoke(settings);
+				streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(recordingStream, "jdk.VirtualThreadPinned", new Consumer<Object>() {
+					@Override
+					public void accept(Object event) {
+						long nanos;
+						try {
+							nanos = ((Duration) getDuration.invoke(event)).toNanos();
+						} catch (ReflectiveOperationException e) {
+							nanos = 0;
+						}
+						record(nanos, event.toString());
+					}
+				});
+				streamClass.getMethod("startAsync").invoke(recordingStream);
+				return true;
+			} catch (ReflectiveOperationException e) {
+				recordingStream = null;
+				return false;
+			}
+		}
+
+		private void record(long nanos, String event) {
+			numEvents.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			long max;
+			while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos))
+				;
+			synchronized (examples) {
+				if (examples.size() < NUM_EXAMPLES)
+					examples.add(event);
+			}
+		}
+
+		/**
+		 * Stops recording, after all events emitted so far have been
+		 * processed.
+		 */
+		public void stop() {
+			if (recordingStream == null)
+				return;
+			try {
+				try {
+					// Flushes pending events (Java 20 and later)
+					recordingStream.getClass().getMethod("stop").invoke(recordingStream);
+				} catch (NoSuchMethodException e) {
+					// Events still in flight are lost.
+				}
+				recordingStream.getClass().getMethod("close").invoke(recordingStream);
+			} catch (ReflectiveOperationException e) {
+				e.printStackTrace();
+			}
+			recordingStream = null;
+		}
+
+		public long getNumEvents() {
+			return numEvents.get();
+		}
+
+		/**
+		 * Prints the number and length of pinned periods, and the stack
+		 * traces of the first few.
+		 */
+		public void printStatistics() {
+			long n = numEvents.get();
+			System.out.printf("pinned events (>= %d ms): %d total: %11.6f max: %11.6f (ms)\n", threshold.toMillis(), n, totalNanos.get()/1e6, maxNanos.get()/1e6);
+			synchronized (examples) {
+				for (String example : examples)
+					System.out.println(example);
+			}
+		}
+	}
+}
@@ -15,6 +15,11 @@
 
 package org.ellitron.neo4j.benchmarks;
 
+import java.io.IOException;
+
+import org.ellitron.benchmarks.LoadAgent;
+import org.ellitron.benchmarks.LoadCoordinator;
+
 /**
  * App demonstrates the use of {@link HttpClientBenchmarks}
  * 
@@ -23,11 +28,42 @@ package org.ellitron.neo4j.benchmarks;
  */
 public class App 
 {
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
 		System.out.println("Welcome to Neo4j Benchmarks!");
 		
-		HttpClientBenchmarks benchmarks = new HttpClientBenchmarks("http://192.168.1.101:7474/db/data/");
+		String server_root_uri = "http://192.168.1.101:7474/db/data/";
+		
+		// Distributed mode, with load generated by agents on other machines:
+		//   coordinator numAgents create|read|update [local]
+		//   agent coordinatorHost
+		// where "local" has the coordinator launch the agents itself, as JVMs
+		// on this machine.
+		if (args.length >= 3 && args[0].equals("coordinator")) {
+			LoadCoordinator coordinator = new LoadCoordinator(LoadCoordinator.DEFAULT_PORT, Integer.parseInt(args[1]), Neo4jRestClient.class, server_root_uri);
+			coordinator.setSpawnLocalAgents(args.length > 3 && args[3].equals("local"));
+			coordinator.run(args[2]);
+			return;
+		} else if (args.length >= 2 && args[0].equals("agent")) {
+			new LoadAgent(args[1], LoadCoordinator.DEFAULT_PORT).run();
+			return;
+		}
+		
+		HttpClientBenchmarks benchmarks = new HttpClientBenchmarks(server_root_uri);
+		
+		// "adaptive" samples each measurement until its p99 is known to within
+		// 5%, or for at most a minute. The sample counts below are then upper
+		// bounds.
+		if (args.length >= 1 && args[0].equals("adaptive"))
+			benchmarks.setAdaptiveSampling(99, 0.05, 60*1000);
+		
+		// Flag samples that overlapped a GC pause in this JVM, and report
+		// client allocation per operation.
+		benchmarks.setJvmMonitoring(true, false);
+		
+		// Poll server side metrics alongside every measurement.
+		benchmarks.setServerMetrics(true, 1000);
 		
+		benchmarks.writeEnvironment();
 		benchmarks.clearDatabase();
 		benchmarks.warmUpDatabase((int)1e5);
 		benchmarks.run01((int)1e4);	// Read nodes
@@ -40,5 +76,19 @@ public class App
 		benchmarks.run10((int)1e4);	// Delete edges
 		benchmarks.run11((int)1e4); // CRUD without indices (cypher based queries)
 		benchmarks.run12((int)1e4); // CRUD using indices (cypher based queries)
+		benchmarks.run13((int)1e4); // Phase breakdown of node creates and reads
+		benchmarks.run14((int)1e3); // CRUD against property payload size
+		benchmarks.run15((int)1e5, (int)1e4); // Index build and index maintenance
+		benchmarks.run16((int)1e4, 100, 16); // MERGE upserts with index and uniqueness constraint
+		benchmarks.run17((int)1e3); // Writes under contention on hot nodes and a supernode
+		benchmarks.run18((int)1e4, 100); // Many simulated users on platform and virtual threads
+		benchmarks.run19(100, 100); // User sessions with think time
+		benchmarks.run20((int)1e4, 100); // REST representation against the unmanaged extension, if deployed
+		benchmarks.run21((int)1e4, (int)1e5); // Reads through a client side cache
+		benchmarks.run22(64, (int)1e4); // Single element writes coalesced into batches
+		benchmarks.run23((long)1e6, (int)1e4); // CRUD latency against graph size, up to 10^8 given the time
+		benchmarks.run24("target/coldstart.db", (int)1e5, (int)1e4, (int)1e4, 3); // First touches after a restart
+		benchmarks.calibrate((int)1e4); // Client overhead of the basic CRUD benchmarks
+		benchmarks.printReport();
 	}
 }
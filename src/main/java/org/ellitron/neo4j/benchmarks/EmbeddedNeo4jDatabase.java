@@ -0,0 +1,95 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.neo4j.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.ellitron.benchmarks.ColdStartBenchmarks;
+import org.ellitron.benchmarks.GraphClient;
+import org.ellitron.benchmarks.RestartableDatabase;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.server.WrappingNeoServerBootstrapper;
+import org.neo4j.server.configuration.Configurator;
+import org.neo4j.server.configuration.ServerConfigurator;
+
+/**
+ * EmbeddedNeo4jDatabase runs Neo4j embedded in the harness's JVM, on a store
+ * directory of its own, with the REST server wrapped around it listening on
+ * localhost. Benchmarks reach it over the same REST API as a standalone
+ * server, but the harness can restart it and drop its store files from the
+ * page cache in between (see {@link ColdStartBenchmarks}).
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class EmbeddedNeo4jDatabase implements RestartableDatabase {
+	private final File storeDir;
+	private final int port;
+
+	private GraphDatabaseService db;
+	private WrappingNeoServerBootstrapper server;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param storeDir
+	 *            The store directory, created on first start if it doesn't
+	 *            exist.
+	 * @param port
+	 *            The port the REST server listens on.
+	 */
+	public EmbeddedNeo4jDatabase(String storeDir, int port) {
+		this.storeDir = new File(storeDir);
+		this.port = port;
+	}
+
+	@Override
+	public void start() throws IOException {
+		db = new GraphDatabaseFactory().newEmbeddedDatabase( storeDir.getPath() );
+		ServerConfigurator config = new ServerConfigurator( (GraphDatabaseAPI) db );
+		config.configuration().setProperty( Configurator.WEBSERVER_PORT_PROPERTY_KEY, port );
+		server = new WrappingNeoServerBootstrapper( (GraphDatabaseAPI) db, config );
+		server.start();
+	}
+
+	@Override
+	public void stop() {
+		server.stop();
+		db.shutdown();
+		server = null;
+		db = null;
+	}
+
+	@Override
+	public boolean dropPageCache() {
+		return ColdStartBenchmarks.dropFromPageCache(storeDir);
+	}
+
+	@Override
+	public GraphClient newClient() {
+		return new Neo4jRestClient( getServerRootUri() );
+	}
+
+	/**
+	 * Returns the root URI of the REST API (e.g.
+	 * "http://localhost:7475/db/data/").
+	 */
+	public String getServerRootUri() {
+		return "http://localhost:" + port + "/db/data/";
+	}
+}
@@ -15,17 +15,46 @@
 
 package org.ellitron.neo4j.benchmarks;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.text.*;
 
 import javax.ws.rs.core.MediaType;
 
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.ellitron.benchmarks.AdaptiveSampler;
+import org.ellitron.benchmarks.BinaryLatencyWriter;
+import org.ellitron.benchmarks.CacheBenchmarks;
+import org.ellitron.benchmarks.CachingGraphClient;
+import org.ellitron.benchmarks.CoalescingBenchmarks;
+import org.ellitron.benchmarks.ColdStartBenchmarks;
+import org.ellitron.benchmarks.ContentionBenchmarks;
+import org.ellitron.benchmarks.ElementResources;
+import org.ellitron.benchmarks.GraphClient;
+import org.ellitron.benchmarks.JvmMonitor;
+import org.ellitron.benchmarks.LatencyFileConverter;
+import org.ellitron.benchmarks.LatencyMeasurement;
+import org.ellitron.benchmarks.PayloadBenchmarks;
+import org.ellitron.benchmarks.RequestPhases;
+import org.ellitron.benchmarks.ResponseConsumption;
+import org.ellitron.benchmarks.ReportGenerator;
+import org.ellitron.benchmarks.RestartableDatabase;
+import org.ellitron.benchmarks.RetryFilter;
+import org.ellitron.benchmarks.RunEnvironment;
+import org.ellitron.benchmarks.ScalingBenchmarks;
+import org.ellitron.benchmarks.ServerMetrics;
+import org.ellitron.benchmarks.SessionBenchmarks;
+import org.ellitron.benchmarks.SimulatedUserBenchmarks;
+import org.ellitron.benchmarks.StatusClass;
+import org.ellitron.benchmarks.TimedHttpURLConnection;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.neo4j.examples.server.Relation;
@@ -48,6 +77,100 @@ public class HttpClientBenchmarks {
 	 */
 	private String server_root_uri;
 	
+	/**
+	 * Root URI of the {@link org.ellitron.neo4j.extension.CrudResource}
+	 * unmanaged extension, by default "/crud/" on the same server.
+	 */
+	private String extension_root_uri;
+	
+	/**
+	 * Port of the REST server wrapped around the embedded database of
+	 * {@link #run24}, clear of a standalone server's 7474.
+	 */
+	private static final int EMBEDDED_PORT = 7475;
+	
+	/**
+	 * How long to wait, in ms, for a newly created index to come online.
+	 */
+	private static final long INDEX_ONLINE_TIMEOUT = 10*60*1000;
+	
+	/**
+	 * How often, in ms, to poll the server for the state of an index.
+	 */
+	private static final long INDEX_POLL_INTERVAL = 10;
+	
+	/**
+	 * Length, in milliseconds, of the intervals over which latency statistics
+	 * are reported while a benchmark is running.
+	 */
+	private long reportingInterval = 1000;
+	
+	/**
+	 * The measurement in progress.
+	 */
+	private LatencyMeasurement measurement;
+	
+	/**
+	 * How much of each response is consumed before a request is considered
+	 * complete.
+	 */
+	private ResponseConsumption responseConsumption = ResponseConsumption.HEADERS;
+	
+	/**
+	 * Retries requests failing with transient errors, or null if retries are
+	 * disabled (the default).
+	 */
+	private RetryFilter retryFilter = null;
+	
+	/**
+	 * Error rate above which a measurement is flagged as unreliable.
+	 */
+	private double errorRateThreshold = LatencyMeasurement.DEFAULT_ERROR_RATE_THRESHOLD;
+	
+	/**
+	 * Decides when a measurement has enough samples, or null to always take
+	 * the number of samples asked for (the default).
+	 */
+	private AdaptiveSampler adaptiveSampler = null;
+	
+	/**
+	 * Capacity and time to live, in ms, of the read-through cache put in
+	 * front of the backend independent benchmarks, or 0 for no cache (the
+	 * default).
+	 */
+	private int clientCacheCapacity = 0;
+	private long clientCacheTtl = 0;
+	
+	/**
+	 * Monitor of this JVM's allocation and GC pauses, or null if disabled
+	 * (the default).
+	 */
+	private JvmMonitor jvmMonitor = null;
+	private boolean excludeGcTainted = false;
+	
+	/**
+	 * Server metrics polled during every measurement, or null if disabled.
+	 */
+	private ServerMetrics serverMetrics = null;
+	private long serverMetricsInterval = 1000;
+	
+	/**
+	 * Summaries of every benchmark run so far, by benchmark name.
+	 */
+	private final Map<String, LatencyMeasurement.Summary> results = new LinkedHashMap<String, LatencyMeasurement.Summary>();
+	
+	/**
+	 * Client overhead of each benchmark, measured by {@link #calibrate(int)},
+	 * by benchmark name.
+	 */
+	private final Map<String, LatencyMeasurement.Summary> clientOverhead = new LinkedHashMap<String, LatencyMeasurement.Summary>();
+	
+	/**
+	 * Whether this instance is running against a stand-in server to measure
+	 * client overhead.
+	 */
+	private boolean calibrating = false;
+	
 	/**
 	 * Constructor.
 	 * 
@@ -57,6 +180,215 @@ public class HttpClientBenchmarks {
 	 */
 	public HttpClientBenchmarks(String server_root_uri) {
 		this.server_root_uri = server_root_uri;
+		this.extension_root_uri = URI.create(server_root_uri).resolve("../../crud/").toString();
+	}
+	
+	/**
+	 * Sets the root URI of the unmanaged extension used by
+	 * {@link #run20(int, int)}.
+	 * 
+	 * @param extension_root_uri
+	 *            The root URI of the extension (e.g.
+	 *            "http://192.168.1.1:7474/crud/").
+	 */
+	public void setExtensionRootUri(String extension_root_uri) {
+		this.extension_root_uri = extension_root_uri;
+	}
+	
+	/**
+	 * Sets the length of the intervals over which latency statistics are
+	 * reported while a benchmark is running.
+	 * 
+	 * @param reportingInterval
+	 *            Interval length in milliseconds.
+	 */
+	public void setReportingInterval(long reportingInterval) {
+		this.reportingInterval = reportingInterval;
+	}
+	
+	/**
+	 * Sets how much of each response is consumed before a request is
+	 * considered complete. By default latency is measured up to the arrival
+	 * of the response headers; use {@link ResponseConsumption#BODY} or
+	 * {@link ResponseConsumption#PARSE} to include reading (and parsing) the
+	 * response body.
+	 * 
+	 * @param responseConsumption
+	 *            The mode to use for subsequent benchmarks.
+	 */
+	public void setResponseConsumption(ResponseConsumption responseConsumption) {
+		this.responseConsumption = responseConsumption;
+	}
+	
+	/**
+	 * Enables bounded retries, with randomized exponential backoff, of
+	 * requests that fail with a transient error (see {@link StatusClass}).
+	 * The latency recorded for a request includes all of its attempts.
+	 * 
+	 * @param maxRetries
+	 *            Maximum number of retries per request, or 0 to disable
+	 *            retries.
+	 * @param initialBackoff
+	 *            Upper bound, in ms, of the sleep before the first retry.
+	 */
+	public void setRetries(int maxRetries, long initialBackoff) {
+		retryFilter = maxRetries > 0 ? new RetryFilter(maxRetries, initialBackoff) : null;
+	}
+	
+	/**
+	 * Sets the error rate above which a benchmark is flagged as unreliable.
+	 * 
+	 * @param errorRateThreshold
+	 *            Fraction of failed requests, between 0 and 1.
+	 */
+	public void setErrorRateThreshold(double errorRateThreshold) {
+		this.errorRateThreshold = errorRateThreshold;
+	}
+	
+	/**
+	 * Enables adaptive sampling in benchmarks 01 to 12: each measurement stops
+	 * as soon as the confidence interval on the target percentile is narrow
+	 * enough, or its time budget runs out, and the number of samples given to
+	 * a benchmark becomes an upper bound. Percentiles are then reported with
+	 * their confidence intervals.
+	 * 
+	 * @param percentile
+	 *            The target percentile, e.g. 99.
+	 * @param relativeWidth
+	 *            Width of the confidence interval, as a fraction of the
+	 *            percentile, at which to stop, e.g. 0.05.
+	 * @param timeBudget
+	 *            Time, in ms, after which a measurement stops regardless.
+	 */
+	public void setAdaptiveSampling(double percentile, double relativeWidth, long timeBudget) {
+		adaptiveSampler = new AdaptiveSampler(percentile, relativeWidth, timeBudget);
+	}
+	
+	/**
+	 * Disables adaptive sampling, so benchmarks take exactly the number of
+	 * samples asked for.
+	 */
+	public void setFixedSampling() {
+		adaptiveSampler = null;
+	}
+	
+	/**
+	 * Puts a {@link CachingGraphClient} in front of the backend independent
+	 * benchmarks (run14 and run17 to run19), so that they measure the
+	 * database as seen by an application server with a read-through cache.
+	 * 
+	 * @param capacity
+	 *            Maximum number of vertices, and of edges, to cache, or 0 to
+	 *            disable the cache.
+	 * @param ttl
+	 *            Time, in ms, after which a cached entry expires.
+	 */
+	public void setClientCache(int capacity, long ttl) {
+		this.clientCacheCapacity = capacity;
+		this.clientCacheTtl = ttl;
+	}
+	
+	/**
+	 * Enables or disables instrumentation of this (the client) JVM. When
+	 * enabled, every measurement reports the bytes allocated by the client
+	 * per operation and the number of samples that overlapped a client GC
+	 * pause, which points at latency spikes that are the client's own doing.
+	 * See {@link JvmMonitor}.
+	 * 
+	 * @param enabled
+	 *            Whether to instrument the JVM.
+	 * @param excludeGcTainted
+	 *            Whether samples that overlapped a GC pause are left out of
+	 *            the reported statistics, rather than only counted.
+	 */
+	public void setJvmMonitoring(boolean enabled, boolean excludeGcTainted) {
+		this.excludeGcTainted = excludeGcTainted;
+		if (jvmMonitor != null) {
+			jvmMonitor.stop();
+			jvmMonitor = null;
+		}
+		if (enabled) {
+			jvmMonitor = new JvmMonitor();
+			jvmMonitor.start();
+		}
+		LatencyMeasurement.setJvmMonitor(jvmMonitor, excludeGcTainted);
+	}
+	
+	/**
+	 * Enables or disables polling of server side metrics during every
+	 * measurement. When enabled, each measurement polls the JMX beans of the
+	 * server (transactions, object cache, memory mapping or page cache, store
+	 * sizes, server GC), see {@link Neo4jServerMetrics}. They are written to
+	 * a ".metrics" file next to the interval statistics and summarized after
+	 * each measurement, so that latency can be read against what the server
+	 * was doing.
+	 * 
+	 * @param enabled
+	 *            Whether to poll server metrics.
+	 * @param pollInterval
+	 *            Time between polls in ms.
+	 */
+	public void setServerMetrics(boolean enabled, long pollInterval) {
+		serverMetrics = enabled ? new Neo4jServerMetrics( URI.create(server_root_uri).resolve("../manage/").toString() ) : null;
+		serverMetricsInterval = pollInterval;
+		LatencyMeasurement.setServerMetrics(serverMetrics, pollInterval);
+	}
+	
+	/**
+	 * Returns a new client for the backend independent benchmarks, behind a
+	 * read-through cache if one was set with {@link #setClientCache(int, long)}.
+	 */
+	private GraphClient graphClient() {
+		GraphClient client = new Neo4jRestClient(server_root_uri);
+		if (clientCacheCapacity > 0)
+			client = new CachingGraphClient(client, clientCacheCapacity, clientCacheTtl);
+		return client;
+	}
+	
+	/**
+	 * Creates a Jersey client, with the retry filter installed if retries
+	 * are enabled.
+	 */
+	private Client createClient() {
+		Client client = Client.create();
+		if (retryFilter != null)
+			client.addFilter(retryFilter);
+		return client;
+	}
+	
+	/**
+	 * Writes the environment of this run (JVM, heap, machine, server version
+	 * and harness settings) to a file next to the results, for
+	 * {@link ReportGenerator}. Call before running any benchmarks.
+	 */
+	public void writeEnvironment() {
+		RunEnvironment environment = new RunEnvironment("neo4j");
+		environment.put("server.uri", server_root_uri);
+		try {
+			ClientResponse response = createClient()
+					.resource( server_root_uri )
+					.accept( MediaType.APPLICATION_JSON )
+					.get( ClientResponse.class );
+			JSONObject root = new JSONObject( response.getEntity( String.class ) );
+			environment.put("server.version", root.optString("neo4j_version", null));
+			response.close();
+		} catch (RuntimeException e) {
+			// Server unreachable or not answering with JSON, leave it unknown.
+		}
+		environment.put("harness.reportingInterval", reportingInterval + " ms");
+		environment.put("harness.responseConsumption", responseConsumption.name().toLowerCase());
+		environment.put("harness.retries", retryFilter == null ? "disabled" : "enabled");
+		environment.put("harness.errorRateThreshold", Double.toString(errorRateThreshold));
+		environment.put("harness.adaptiveSampling", adaptiveSampler == null ? "disabled" : "enabled");
+		environment.put("harness.jvmMonitoring", jvmMonitor == null ? "disabled" : "enabled");
+		environment.put("harness.serverMetrics", serverMetrics == null ? "disabled" : "every " + serverMetricsInterval + " ms");
+		environment.put("harness.clientCache", clientCacheCapacity == 0 ? "disabled" : clientCacheCapacity + " entries, ttl " + clientCacheTtl + " ms");
+		
+		try {
+			System.out.println("Wrote environment to " + environment.write());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 	
 	/**
@@ -67,7 +399,7 @@ public class HttpClientBenchmarks {
 		
 		// Clear edges
 		String cypherQuery = "start r=relationship(*) delete r";
-		WebResource resource = Client.create()
+		WebResource resource = createClient()
 				.resource( server_root_uri + "cypher" );
 		ClientResponse response = resource.accept( MediaType.APPLICATION_JSON )
 				.type( MediaType.APPLICATION_JSON )
@@ -78,7 +410,7 @@ public class HttpClientBenchmarks {
 
 		// Clear nodes
 		cypherQuery = "start n=node(*) delete n";
-		resource = Client.create()
+		resource = createClient()
 				.resource( server_root_uri + "cypher" );
 		response = resource.accept( MediaType.APPLICATION_JSON )
 				.type( MediaType.APPLICATION_JSON )
@@ -91,33 +423,223 @@ public class HttpClientBenchmarks {
 	}
 	
 	/**
-	 * Dumps latency measurements to a file.
+	 * Dumps latency measurements for the measurement in progress to a file.
+	 * Samples have been streamed to a {@link BinaryLatencyWriter} as they were
+	 * recorded; this hands off whatever remains and lets the writer finish on
+	 * its own thread, so the next benchmark can start immediately. Use
+	 * {@link LatencyFileConverter} to convert the output to text or CSV.
+	 */
+	public void dumpLatencyMeasurements() {
+		System.out.print("Dumping latency measurements... ");
+		
+		measurement.printErrorStatistics();
+		if (adaptiveSampler != null)
+			adaptiveSampler.printStatistics(measurement.getStatistics());
+		if (retryFilter != null)
+			System.out.print("retries: " + retryFilter.getAndResetRetries() + " ");
+		measurement.finish();
+		measurement.printJvmStatistics();
+		measurement.printServerStatistics();
+		results.put(measurement.getBenchmarkName(), measurement.summarize());
+		measurement = null;
+		
+		System.out.println("done.");
+	}
+	
+	/**
+	 * Starts a new latency measurement, which streams raw samples and
+	 * interval statistics (throughput, p50, p99, max, errors) to files in the
+	 * background until the measurements are dumped.
 	 * 
 	 * @param benchmarkName
 	 *            Name to give the benchmark.
 	 * @param benchmarkSpec
 	 *            Description of benchmark parameters to include in output
 	 *            filename.
-	 * @param timings
-	 *            The timing data.
 	 */
-	public void dumpLatencyMeasurements(String benchmarkName, String benchmarkSpec, double timings[]) {
-		System.out.print("Dumping latency measurements... ");
-		
-		try {
-			String dateString = new SimpleDateFormat("yyyyMMdd'_'HHmmss").format(new Date());
-			String filename = dateString + "_" + benchmarkName + "_" + benchmarkSpec + ".out";
-			BufferedWriter br = new BufferedWriter(new FileWriter(filename));
-			for(int i = 0; i<timings.length; i++) {
-				br.write(String.format("%.6f\n", timings[i]));
+	private void startMeasurement(String benchmarkName, String benchmarkSpec) {
+		if (responseConsumption != ResponseConsumption.HEADERS)
+			benchmarkSpec += "_response=" + responseConsumption.name().toLowerCase();
+		if (calibrating)
+			benchmarkSpec += "_calibration";
+		measurement = new LatencyMeasurement(benchmarkName, benchmarkSpec, reportingInterval);
+		measurement.setErrorRateThreshold(errorRateThreshold);
+		if (retryFilter != null)
+			retryFilter.getAndResetRetries();
+		if (adaptiveSampler != null)
+			adaptiveSampler.start();
+	}
+	
+	/**
+	 * Returns whether the measurement in progress should take another
+	 * sample, which is always the case unless adaptive sampling is enabled.
+	 */
+	private boolean needsMoreSamples() {
+		return adaptiveSampler == null || !adaptiveSampler.isDone(measurement.getStatistics());
+	}
+	
+	/**
+	 * Records a single latency sample for the measurement in progress,
+	 * classifying the response by its status so that failures are kept
+	 * apart from successes.
+	 * 
+	 * @param startTime
+	 *            Value of System.nanoTime() before the request was issued.
+	 * @param endTime
+	 *            Value of System.nanoTime() after the response was received.
+	 * @param response
+	 *            The response received.
+	 */
+	private void recordSample(long startTime, long endTime, ClientResponse response) {
+		measurement.record(startTime, endTime, response.getStatus(), StatusClass.classify(response));
+	}
+	
+	/**
+	 * Sends a Cypher query to the server.
+	 * 
+	 * @param query
+	 *            The Cypher query.
+	 * @param params
+	 *            Query parameters, or null if there are none.
+	 * @return The response, which the caller must close.
+	 */
+	private ClientResponse postCypher(String query, JSONObject params) {
+		JSONObject request = new JSONObject();
+		request.put("query", query);
+		if (params != null)
+			request.put("params", params);
+		
+		return createClient()
+				.resource( server_root_uri + "cypher" )
+				.accept( MediaType.APPLICATION_JSON )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( request.toString() )
+				.post( ClientResponse.class );
+	}
+	
+	/**
+	 * Waits for the schema index on :label(property) to come online by
+	 * polling the server, instead of sleeping for a fixed amount of time.
+	 * <p>
+	 * Servers that report index state in the schema endpoint are polled
+	 * until the state is ONLINE. Otherwise (e.g. Neo4j 2.1), once the index
+	 * is listed, a lookup that is forced to use the index is issued until it
+	 * succeeds, since such a lookup fails while the index is populating.
+	 * 
+	 * @param label
+	 *            The indexed label.
+	 * @param property
+	 *            The indexed property.
+	 * @param timeout
+	 *            How long to wait, in ms, before giving up.
+	 * @return The time waited, in ms, or -1 if the index failed or did not
+	 *         come online within the timeout.
+	 */
+	private double awaitIndexOnline(String label, String property, long timeout) {
+		WebResource schemaResource = createClient()
+				.resource( server_root_uri + "schema/index/" + label );
+		String probeCQ = "match (n:" + label + ") using index n:" + label + "(" + property + ") where n." + property + "={value} return count(n);";
+		JSONObject probeParams = new JSONObject();
+		probeParams.put("value", -1);
+		
+		long startTime = System.nanoTime();
+		while (true) {
+			ClientResponse response = schemaResource
+					.accept( MediaType.APPLICATION_JSON )
+					.get( ClientResponse.class );
+			JSONArray indices = new JSONArray( response.getEntity( String.class ) );
+			response.close();
+			
+			JSONObject index = null;
+			for (int i = 0; i < indices.length(); i++) {
+				JSONArray keys = indices.getJSONObject(i).getJSONArray("property_keys");
+				if (keys.length() == 1 && keys.getString(0).equals(property))
+					index = indices.getJSONObject(i);
+			}
+			
+			if (index != null) {
+				String state = index.optString("state", null);
+				if (state == null) {
+					response = postCypher(probeCQ, probeParams);
+					state = (response.getStatus() == 200) ? "ONLINE" : "POPULATING";
+					response.close();
+				}
+				
+				if (state.equals("ONLINE")) {
+					return (System.nanoTime() - startTime)/1e6;
+				} else if (state.equals("FAILED")) {
+					System.out.println("Index on :" + label + "(" + property + ") failed to populate.");
+					return -1;
+				}
+			}
+			
+			if ((System.nanoTime() - startTime)/1e6 > timeout) {
+				System.out.println("Timed out waiting for index on :" + label + "(" + property + ") to come online.");
+				return -1;
+			}
+			
+			try {
+				Thread.sleep(INDEX_POLL_INTERVAL);
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return -1;
 			}
-			br.flush();
-			br.close();
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
+	}
+	
+	/**
+	 * Commits a list of Cypher statements in a single transaction using the
+	 * transactional endpoint. The full response is read, since the server
+	 * streams results and only reports commit errors at the end.
+	 * 
+	 * @param client
+	 *            The client to send the request with.
+	 * @param statements
+	 *            The statements, each a JSON object with "statement" and
+	 *            optionally "parameters".
+	 * @return The "errors" array of the response, empty on success.
+	 */
+	private JSONArray commitStatements(Client client, JSONArray statements) {
+		JSONObject request = new JSONObject();
+		request.put("statements", statements);
 		
-		System.out.println("done.");
+		ClientResponse response = client
+				.resource( server_root_uri + "transaction/commit" )
+				.accept( MediaType.APPLICATION_JSON )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( request.toString() )
+				.post( ClientResponse.class );
+		String jsonString = response.getEntity( String.class );
+		int status = response.getStatus();
+		response.close();
+		
+		if (status >= 400) {
+			JSONArray errors = new JSONArray();
+			errors.put(new JSONObject().put("code", "HTTP " + status).put("message", jsonString));
+			return errors;
+		}
+		
+		return new JSONObject( jsonString ).getJSONArray("errors");
+	}
+	
+	/**
+	 * Returns a single statement for {@link #commitStatements}.
+	 */
+	private static JSONObject statement(String statement, String param, long value) {
+		JSONObject parameters = new JSONObject();
+		parameters.put(param, value);
+		return new JSONObject().put("statement", statement).put("parameters", parameters);
+	}
+	
+	/**
+	 * Returns whether any of the errors is transient (e.g. a deadlock), and
+	 * so the transaction could be retried.
+	 */
+	private static boolean isTransient(JSONArray errors) {
+		for (int i = 0; i < errors.length(); i++)
+			if (errors.getJSONObject(i).optString("code").startsWith("Neo.TransientError"))
+				return true;
+		return false;
 	}
 	
 	/**
@@ -130,7 +652,7 @@ public class HttpClientBenchmarks {
 		System.out.print("Warming up the database... ");
 		
 		// Create a node
-		WebResource resource = Client.create()
+		WebResource resource = createClient()
 				.resource( server_root_uri + "node" );
 
 		ClientResponse response = resource
@@ -143,21 +665,26 @@ public class HttpClientBenchmarks {
 
 		response.close();
 
-		resource = Client.create()
+		resource = createClient()
 				.resource( nodeURIArray );
 		
 		double[] timings = new double[numReads];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("warmUpDatabase", "numSamples=" + numReads);
 		
 		for(int i = 0; i < numReads; i++) {
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource
 					.accept( MediaType.APPLICATION_JSON)
 					.get( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 			
 			response.close();
 		}
@@ -167,7 +694,7 @@ public class HttpClientBenchmarks {
 		System.out.println("Timings statistics:");
 		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numReads, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("warmUpDatabase", "numSamples=" + numReads, timings);
+		dumpLatencyMeasurements();
 		
 		clearDatabase();
 	}
@@ -184,10 +711,12 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 		
 		// Create numSamples nodes and collect their IDs
-		WebResource resource = Client.create()
-				.resource( server_root_uri + "node" );
+		Client client = createClient();
+		ElementResources nodes = new ElementResources( client, server_root_uri + "node" );
+		WebResource resource = nodes.getBase();
 
 		String[] nodeURIArray = new String[numSamples];
+		long[] nodeIdArray = new long[numSamples];
 
 		for(int i = 0; i < numSamples; i++) {
 			ClientResponse response = resource
@@ -197,6 +726,7 @@ public class HttpClientBenchmarks {
 			String jsonString = response.getEntity( String.class );
 			JSONObject jsonObject = new JSONObject(jsonString);
 			nodeURIArray[i] = jsonObject.getString("self");
+			nodeIdArray[i] = ElementResources.idOf( nodeURIArray[i] );
 
 			response.close();
 		}
@@ -204,27 +734,31 @@ public class HttpClientBenchmarks {
 		// Read nodes sequentially
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark01", "numSamples=" + numSamples);
 
-		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( nodeURIArray[i] );
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			resource = nodes.get( nodeIdArray[i] );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource
 					.accept( MediaType.APPLICATION_JSON)
 					.get( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 			response.close();
 		}
 
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark01", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 
 		clearDatabase();
 	}
@@ -241,10 +775,13 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 
 		// Create 2*numSamples nodes and collect their IDs
-		WebResource resource = Client.create()
-				.resource( server_root_uri + "node" );
+		Client client = createClient();
+		ElementResources nodes = new ElementResources( client, server_root_uri + "node" );
+		ElementResources relationships = new ElementResources( client, server_root_uri + "relationship" );
+		WebResource resource = nodes.getBase();
 
 		String[] nodeURIArray = new String[2*numSamples];
+		long[] nodeIdArray = new long[2*numSamples];
 		
 		for(int i = 0; i < 2*numSamples; i++) {
 			ClientResponse response = resource
@@ -254,6 +791,7 @@ public class HttpClientBenchmarks {
 			String jsonString = response.getEntity( String.class );
 			JSONObject jsonObject = new JSONObject(jsonString);
 			nodeURIArray[i] = jsonObject.getString("self");
+			nodeIdArray[i] = ElementResources.idOf( nodeURIArray[i] );
 
 			response.close();
 		}
@@ -262,11 +800,10 @@ public class HttpClientBenchmarks {
 //			System.out.println("nodeURI[" + i + "]: " + nodeURIArray[i]);
 		
 		// Create numSamples edges
-		String[] edgeURIArray = new String[numSamples];
+		long[] edgeIdArray = new long[numSamples];
 		
 		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( nodeURIArray[i] + "/relationships" );
+			resource = nodes.get( nodeIdArray[i] ).path( "relationships" );
 			
 			ClientResponse response = resource
 					.accept( MediaType.APPLICATION_JSON )
@@ -276,30 +813,34 @@ public class HttpClientBenchmarks {
 
 			String jsonString = response.getEntity( String.class );
 			JSONObject jsonObject = new JSONObject(jsonString);
-			edgeURIArray[i] = jsonObject.getString("self");
+			edgeIdArray[i] = ElementResources.idOf( jsonObject.getString("self") );
 			
 			response.close();
 		}
 		
 //		for(int i = 0; i < numSamples; i++)
-//			System.out.println("edgeURI[" + i + "]: " + edgeURIArray[i]);
+//			System.out.println("edgeId[" + i + "]: " + edgeIdArray[i]);
 		
 		// Read edges sequentially
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark02", "numSamples=" + numSamples);
 		
-		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( edgeURIArray[i] );
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			resource = relationships.get( edgeIdArray[i] );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource
 					.accept( MediaType.APPLICATION_JSON )
 					.get( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 //			String jsonString = response.getEntity( String.class );
 //			System.out.println("response: " + jsonString);
@@ -308,9 +849,9 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 		
-		dumpLatencyMeasurements("benchmark02", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		clearDatabase();
 	}
@@ -333,29 +874,34 @@ public class HttpClientBenchmarks {
 		System.out.println("Running Benchmark 05... Creating nodes");
 		System.out.println("\tnumSamples:\t" + numSamples);
 
-		WebResource resource = Client.create()
+		WebResource resource = createClient()
 				.resource( server_root_uri + "node" );
 		
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark05", "numSamples=" + numSamples);
 		
-		for(int i = 0; i < numSamples; i++) {
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource
 					.accept( MediaType.APPLICATION_JSON)
 					.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 			
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 			
 			response.close();
 		}
 		
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 		
-		dumpLatencyMeasurements("benchmark05", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		clearDatabase();
 	}
@@ -371,7 +917,7 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 
 		// Create 2*numSamples nodes and collect their IDs
-		WebResource resource = Client.create()
+		WebResource resource = createClient()
 				.resource( server_root_uri + "node" );
 
 		String[] nodeURIArray = new String[2*numSamples];
@@ -391,29 +937,34 @@ public class HttpClientBenchmarks {
 		// Create numSample edges
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark06", "numSamples=" + numSamples);
 		
-		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			resource = createClient()
 					.resource( nodeURIArray[i] + "/relationships" );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource
 					.accept( MediaType.APPLICATION_JSON )
 					.type( MediaType.APPLICATION_JSON )
 					.entity( "{ \"to\" : \"" + nodeURIArray[i+numSamples] + "\", \"type\" : \"KNOWS\" }" )
 					.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 			response.close();
 		}
 		
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 		
-		dumpLatencyMeasurements("benchmark06", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		clearDatabase();
 	}
@@ -430,10 +981,12 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 
 		// Create numSamples nodes with properties and collect their IDs
-		WebResource resource = Client.create()
-				.resource( server_root_uri + "node" );
+		Client client = createClient();
+		ElementResources nodes = new ElementResources( client, server_root_uri + "node" );
+		WebResource resource = nodes.getBase();
 
 		String[] nodeURIArray = new String[numSamples];
+		long[] nodeIdArray = new long[numSamples];
 
 		for(int i = 0; i < numSamples; i++) {
 			ClientResponse response = resource
@@ -445,6 +998,7 @@ public class HttpClientBenchmarks {
 			String jsonString = response.getEntity( String.class );
 			JSONObject jsonObject = new JSONObject(jsonString);
 			nodeURIArray[i] = jsonObject.getString("self");
+			nodeIdArray[i] = ElementResources.idOf( nodeURIArray[i] );
 
 			response.close();
 		}
@@ -455,29 +1009,33 @@ public class HttpClientBenchmarks {
 		// Update node properties
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark07", "numSamples=" + numSamples);
 		
-		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( nodeURIArray[i] + "/properties" );
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			resource = nodes.get( nodeIdArray[i] ).path( "properties" );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource
 					.accept( MediaType.APPLICATION_JSON )
 					.type( MediaType.APPLICATION_JSON )
 					.entity( "{ \"prop\" : 43 }" )
 					.put( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 			response.close();
 		}
 		
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 		
-		dumpLatencyMeasurements("benchmark07", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		clearDatabase();
 	}
@@ -494,10 +1052,13 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 		
 		// Create 2*numSamples nodes and collect their IDs
-		WebResource resource = Client.create()
-				.resource( server_root_uri + "node" );
+		Client client = createClient();
+		ElementResources nodes = new ElementResources( client, server_root_uri + "node" );
+		ElementResources relationships = new ElementResources( client, server_root_uri + "relationship" );
+		WebResource resource = nodes.getBase();
 
 		String[] nodeURIArray = new String[2*numSamples];
+		long[] nodeIdArray = new long[2*numSamples];
 
 		for(int i = 0; i < 2*numSamples; i++) {
 			ClientResponse response = resource
@@ -507,6 +1068,7 @@ public class HttpClientBenchmarks {
 			String jsonString = response.getEntity( String.class );
 			JSONObject jsonObject = new JSONObject(jsonString);
 			nodeURIArray[i] = jsonObject.getString("self");
+			nodeIdArray[i] = ElementResources.idOf( nodeURIArray[i] );
 
 			response.close();
 		}
@@ -515,11 +1077,10 @@ public class HttpClientBenchmarks {
 //			System.out.println("nodeURI[" + i + "]: " + nodeURIArray[i]);
 
 		// Create numSample edges with properties
-		String[] edgeURIArray = new String[numSamples];
+		long[] edgeIdArray = new long[numSamples];
 
 		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( nodeURIArray[i] + "/relationships" );
+			resource = nodes.get( nodeIdArray[i] ).path( "relationships" );
 
 			ClientResponse response = resource
 					.accept( MediaType.APPLICATION_JSON )
@@ -529,40 +1090,44 @@ public class HttpClientBenchmarks {
 
 			String jsonString = response.getEntity( String.class );
 			JSONObject jsonObject = new JSONObject(jsonString);
-			edgeURIArray[i] = jsonObject.getString("self");
+			edgeIdArray[i] = ElementResources.idOf( jsonObject.getString("self") );
 
 			response.close();
 		}
 
 //		for(int i = 0; i < numSamples; i++)
-//			System.out.println("edgeURI[" + i + "]: " + edgeURIArray[i]);
+//			System.out.println("edgeId[" + i + "]: " + edgeIdArray[i]);
 
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark08", "numSamples=" + numSamples);
 
 		// Update properties on edges
-		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( edgeURIArray[i] + "/properties" );
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			resource = relationships.get( edgeIdArray[i] ).path( "properties" );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource
 					.accept( MediaType.APPLICATION_JSON )
 					.type( MediaType.APPLICATION_JSON )
 					.entity( "{ \"prop\" : 43 }" )
 					.put( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 			response.close();
 		}
 
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark08", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 
 		clearDatabase();
 	}
@@ -579,10 +1144,12 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 
 		// Create numSamples nodes and collect their IDs
-		WebResource resource = Client.create()
-				.resource( server_root_uri + "node" );
+		Client client = createClient();
+		ElementResources nodes = new ElementResources( client, server_root_uri + "node" );
+		WebResource resource = nodes.getBase();
 
 		String[] nodeURIArray = new String[numSamples];
+		long[] nodeIdArray = new long[numSamples];
 
 		for(int i = 0; i < numSamples; i++) {
 			ClientResponse response = resource
@@ -592,6 +1159,7 @@ public class HttpClientBenchmarks {
 			String jsonString = response.getEntity( String.class );
 			JSONObject jsonObject = new JSONObject(jsonString);
 			nodeURIArray[i] = jsonObject.getString("self");
+			nodeIdArray[i] = ElementResources.idOf( nodeURIArray[i] );
 
 			response.close();
 		}
@@ -599,27 +1167,31 @@ public class HttpClientBenchmarks {
 		// Now delete them all!
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark09", "numSamples=" + numSamples);
 
-		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( nodeURIArray[i] );
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			resource = nodes.get( nodeIdArray[i] );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource
 					.accept( MediaType.APPLICATION_JSON)
 					.delete( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 			response.close();
 		}
 
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark09", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 
 		clearDatabase();
 	}
@@ -636,10 +1208,13 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 
 		// Create 2*numSamples nodes and collect their IDs
-		WebResource resource = Client.create()
-				.resource( server_root_uri + "node" );
+		Client client = createClient();
+		ElementResources nodes = new ElementResources( client, server_root_uri + "node" );
+		ElementResources relationships = new ElementResources( client, server_root_uri + "relationship" );
+		WebResource resource = nodes.getBase();
 
 		String[] nodeURIArray = new String[2*numSamples];
+		long[] nodeIdArray = new long[2*numSamples];
 		
 		for(int i = 0; i < 2*numSamples; i++) {
 			ClientResponse response = resource
@@ -649,6 +1224,7 @@ public class HttpClientBenchmarks {
 			String jsonString = response.getEntity( String.class );
 			JSONObject jsonObject = new JSONObject(jsonString);
 			nodeURIArray[i] = jsonObject.getString("self");
+			nodeIdArray[i] = ElementResources.idOf( nodeURIArray[i] );
 
 			response.close();
 		}
@@ -657,11 +1233,10 @@ public class HttpClientBenchmarks {
 //			System.out.println("nodeURI[" + i + "]: " + nodeURIArray[i]);
 		
 		// Create numSample edges
-		String[] edgeURIArray = new String[numSamples];
+		long[] edgeIdArray = new long[numSamples];
 		
 		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( nodeURIArray[i] + "/relationships" );
+			resource = nodes.get( nodeIdArray[i] ).path( "relationships" );
 			
 			ClientResponse response = resource
 					.accept( MediaType.APPLICATION_JSON )
@@ -671,30 +1246,34 @@ public class HttpClientBenchmarks {
 
 			String jsonString = response.getEntity( String.class );
 			JSONObject jsonObject = new JSONObject(jsonString);
-			edgeURIArray[i] = jsonObject.getString("self");
+			edgeIdArray[i] = ElementResources.idOf( jsonObject.getString("self") );
 			
 			response.close();
 		}
 		
 //		for(int i = 0; i < numSamples; i++)
-//			System.out.println("edgeURI[" + i + "]: " + edgeURIArray[i]);
+//			System.out.println("edgeId[" + i + "]: " + edgeIdArray[i]);
 		
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark10", "numSamples=" + numSamples);
 		
 		// Delete numSamples edges
-		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( edgeURIArray[i] );
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			resource = relationships.get( edgeIdArray[i] );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource
 					.accept( MediaType.APPLICATION_JSON )
 					.delete( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 //			String jsonString = response.getEntity( String.class );
 //			System.out.println("response: " + jsonString);
@@ -703,9 +1282,9 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 		
-		dumpLatencyMeasurements("benchmark10", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		clearDatabase();
 	}
@@ -727,27 +1306,32 @@ public class HttpClientBenchmarks {
 		System.out.println("Running Benchmark 11... Timing CRUD without indices");
 		System.out.println("\tnumSamples:\t" + numSamples);
 
-		WebResource resource = Client.create()
+		WebResource resource = createClient()
 				.resource( server_root_uri + "cypher" );
 		ClientResponse response;
 		
 		// Create nodes
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark11create", "numSamples=" + numSamples);
 		
 		String createNodeCQ = "create (:Person{ID:{id}});";
 		
-		for(int id = 0; id<numSamples; id++) {
+		for(int id = 0; id<numSamples && needsMoreSamples(); id++) {
 			String createNodeParams = String.format("\"id\" : %d", id);
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.accept( MediaType.APPLICATION_JSON )
 					.type( MediaType.APPLICATION_JSON )
 					.entity( "{ \"query\" : \"" + createNodeCQ + "\", \"params\" : { " + createNodeParams + " } }" )
 					.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 			
 //			String jsonString = response.getEntity(String.class);
 //			System.out.println("create response:\n" + jsonString);
@@ -756,26 +1340,32 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics for create node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		final int numCreated = (int) sumStats.getN();
 	
-		dumpLatencyMeasurements("benchmark11create", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Read nodes
 		sumStats = new SummaryStatistics();
+		startMeasurement("benchmark11read", "numSamples=" + numSamples);
 		
 		String readNodeCQ = "match (n:Person) where n.ID={id} return n;";
 
-		for(int id = 0; id<numSamples; id++) {
+		for(int id = 0; id<numCreated && needsMoreSamples(); id++) {
 			String readNodeParams = String.format("\"id\" : %d", id);
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.accept( MediaType.APPLICATION_JSON )
 					.type( MediaType.APPLICATION_JSON )
 					.entity( "{ \"query\" : \"" + readNodeCQ + "\", \"params\" : { " + readNodeParams + " } }" )
 					.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 			
 //			String jsonString = response.getEntity(String.class);
 //			System.out.println("read response:\n" + jsonString);
@@ -784,26 +1374,31 @@ public class HttpClientBenchmarks {
 		}
 
 		System.out.println("Timings statistics for read node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark11read", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Update property of the nodes
 		sumStats = new SummaryStatistics();
+		startMeasurement("benchmark11update", "numSamples=" + numSamples);
 		
 		String updateNodeCQ = "match (n:Person) where n.ID={id} set n.ID={newId};";
 
-		for(int id = 0; id<numSamples; id++) {
+		for(int id = 0; id<numCreated && needsMoreSamples(); id++) {
 			String updateNodeParams = String.format("\"id\" : %d, \"newId\" : %d", id, id+numSamples);
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.accept( MediaType.APPLICATION_JSON )
 					.type( MediaType.APPLICATION_JSON )
 					.entity( "{ \"query\" : \"" + updateNodeCQ + "\", \"params\" : { " + updateNodeParams + " } }" )
 					.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 
 //			String jsonString = response.getEntity(String.class);
 //			System.out.println("update response:\n" + jsonString);
@@ -812,26 +1407,31 @@ public class HttpClientBenchmarks {
 		}
 
 		System.out.println("Timings statistics for update node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark11update", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Delete nodes
 		sumStats = new SummaryStatistics();
+		startMeasurement("benchmark11delete", "numSamples=" + numSamples);
 		
 		String deleteNodeCQ = "match (n:Person) where n.ID={id} delete n;";
 
-		for(int id = 0; id<numSamples; id++) {
+		for(int id = 0; id<numCreated && needsMoreSamples(); id++) {
 			String deleteNodeParams = String.format("\"id\" : %d", id);
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.accept( MediaType.APPLICATION_JSON )
 					.type( MediaType.APPLICATION_JSON )
 					.entity( "{ \"query\" : \"" + deleteNodeCQ + "\", \"params\" : { " + deleteNodeParams + " } }" )
 					.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 
 //			String jsonString = response.getEntity(String.class);
 //			System.out.println("delete response:\n" + jsonString);
@@ -840,9 +1440,9 @@ public class HttpClientBenchmarks {
 		}
 
 		System.out.println("Timings statistics for delete node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark11delete", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		clearDatabase();
 	}
@@ -870,7 +1470,7 @@ public class HttpClientBenchmarks {
 		// Create an index
 		String createIndexCQ = "create index on :Person(ID);";
 		
-		resource = Client.create()
+		resource = createClient()
 				.resource( server_root_uri + "cypher" );
 		response = resource.accept( MediaType.APPLICATION_JSON )
 				.type( MediaType.APPLICATION_JSON )
@@ -879,30 +1479,31 @@ public class HttpClientBenchmarks {
 		
 		response.close();
 		
-		// Wait a bit for the index to become ready.
-		try {
-		    Thread.sleep(1000);
-		} catch(InterruptedException ex) {
-		    Thread.currentThread().interrupt();
-		}
+		// Wait for the index to come online.
+		awaitIndexOnline("Person", "ID", INDEX_ONLINE_TIMEOUT);
 		
 		// Create nodes in the index
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark12create", "numSamples=" + numSamples);
 		
 		String createNodeCQ = "create (:Person{ID:{id}});";
 		
-		for(int id = 0; id<numSamples; id++) {
+		for(int id = 0; id<numSamples && needsMoreSamples(); id++) {
 			String createNodeParams = String.format("\"id\" : %d", id);
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.accept( MediaType.APPLICATION_JSON )
 					.type( MediaType.APPLICATION_JSON )
 					.entity( "{ \"query\" : \"" + createNodeCQ + "\", \"params\" : { " + createNodeParams + " } }" )
 					.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 			
 //			String jsonString = response.getEntity(String.class);
 //			System.out.println("create response:\n" + jsonString);
@@ -911,26 +1512,32 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics for create node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		final int numCreated = (int) sumStats.getN();
 	
-		dumpLatencyMeasurements("benchmark12create", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Read nodes from the index
 		sumStats = new SummaryStatistics();
+		startMeasurement("benchmark12read", "numSamples=" + numSamples);
 		
 		String readNodeCQ = "match (n:Person) where n.ID={id} return n;";
 
-		for(int id = 0; id<numSamples; id++) {
+		for(int id = 0; id<numCreated && needsMoreSamples(); id++) {
 			String readNodeParams = String.format("\"id\" : %d", id);
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.accept( MediaType.APPLICATION_JSON )
 					.type( MediaType.APPLICATION_JSON )
 					.entity( "{ \"query\" : \"" + readNodeCQ + "\", \"params\" : { " + readNodeParams + " } }" )
 					.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 			
 //			String jsonString = response.getEntity(String.class);
 //			System.out.println("read response:\n" + jsonString);
@@ -939,26 +1546,31 @@ public class HttpClientBenchmarks {
 		}
 
 		System.out.println("Timings statistics for read node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark12read", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Update indexed property of the nodes
 		sumStats = new SummaryStatistics();
+		startMeasurement("benchmark12update", "numSamples=" + numSamples);
 		
 		String updateNodeCQ = "match (n:Person) where n.ID={id} set n.ID={newId};";
 
-		for(int id = 0; id<numSamples; id++) {
+		for(int id = 0; id<numCreated && needsMoreSamples(); id++) {
 			String updateNodeParams = String.format("\"id\" : %d, \"newId\" : %d", id, id+numSamples);
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.accept( MediaType.APPLICATION_JSON )
 					.type( MediaType.APPLICATION_JSON )
 					.entity( "{ \"query\" : \"" + updateNodeCQ + "\", \"params\" : { " + updateNodeParams + " } }" )
 					.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 
 //			String jsonString = response.getEntity(String.class);
 //			System.out.println("update response:\n" + jsonString);
@@ -967,26 +1579,31 @@ public class HttpClientBenchmarks {
 		}
 
 		System.out.println("Timings statistics for update node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark12update", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Delete nodes in the index
 		sumStats = new SummaryStatistics();
+		startMeasurement("benchmark12delete", "numSamples=" + numSamples);
 		
 		String deleteNodeCQ = "match (n:Person) where n.ID={id} delete n;";
 
-		for(int id = 0; id<numSamples; id++) {
+		for(int id = 0; id<numCreated && needsMoreSamples(); id++) {
 			String deleteNodeParams = String.format("\"id\" : %d", id);
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.accept( MediaType.APPLICATION_JSON )
 					.type( MediaType.APPLICATION_JSON )
 					.entity( "{ \"query\" : \"" + deleteNodeCQ + "\", \"params\" : { " + deleteNodeParams + " } }" )
 					.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 
 //			String jsonString = response.getEntity(String.class);
 //			System.out.println("delete response:\n" + jsonString);
@@ -995,9 +1612,9 @@ public class HttpClientBenchmarks {
 		}
 
 		System.out.println("Timings statistics for delete node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark12delete", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Drop the index
 		String dropIndexCQ = "drop index on :Person(ID);";
@@ -1011,4 +1628,724 @@ public class HttpClientBenchmarks {
 		
 		clearDatabase();
 	}
+	
+	/**
+	 * Creates a set of nodes and then reads them sequentially, breaking the
+	 * latency of each create and each read down into phases: building the
+	 * request, acquiring a connection, waiting for the response headers, and
+	 * reading the response body. Unlike the other benchmarks, the response
+	 * body is always read before the request is considered complete.
+	 * <p>
+	 * The Neo4j REST API does not report server side processing time, so
+	 * the server phase is not available here.
+	 * 
+	 * @param numSamples
+	 *            The number of nodes to create and then read sequentially.
+	 */
+	public void run13(final int numSamples) {
+		System.out.println("Running Benchmark 13... Phase breakdown of node creates and reads");
+		System.out.println("\tnumSamples:\t" + numSamples);
+
+		Client client = TimedHttpURLConnection.createClient();
+		RequestPhases phases = RequestPhases.current();
+		phases.reset();
+
+		// Create nodes
+		WebResource resource = client.resource( server_root_uri + "node" );
+
+		String[] nodeURIArray = new String[numSamples];
+
+		for(int i = 0; i < numSamples; i++) {
+			phases.begin();
+			ClientResponse response = resource
+					.accept( MediaType.APPLICATION_JSON )
+					.post( ClientResponse.class );
+			String jsonString = response.getEntity( String.class );
+			phases.end();
+			phases.record();
+
+			JSONObject jsonObject = new JSONObject(jsonString);
+			nodeURIArray[i] = jsonObject.getString("self");
+
+			response.close();
+		}
+
+		System.out.println("Timings statistics for create node:");
+		phases.printStatistics();
+
+		// Read nodes
+		phases.reset();
+
+		for(int i = 0; i < numSamples; i++) {
+			phases.begin();
+			ClientResponse response = client.resource( nodeURIArray[i] )
+					.accept( MediaType.APPLICATION_JSON )
+					.get( ClientResponse.class );
+			response.getEntity( String.class );
+			phases.end();
+			phases.record();
+
+			response.close();
+		}
+
+		System.out.println("Timings statistics for read node:");
+		phases.printStatistics();
+
+		clearDatabase();
+	}
+	
+	/**
+	 * Creates, reads, updates, and deletes nodes and edges carrying from 1
+	 * to 100 properties with values from 8 B to 64 KB, both as plain strings
+	 * and as string arrays, measuring latency and throughput against payload
+	 * size. See {@link PayloadBenchmarks}.
+	 * 
+	 * @param numSamples
+	 *            The number of elements to create, read, update, and then
+	 *            delete for each payload configuration.
+	 */
+	public void run14(final int numSamples) {
+		System.out.println("Running Benchmark 14... Timing CRUD against payload size");
+		System.out.println("\tnumSamples:\t" + numSamples);
+
+		PayloadBenchmarks payloadBenchmarks = new PayloadBenchmarks(graphClient(), reportingInterval);
+		payloadBenchmarks.run(numSamples);
+	}
+	
+	/**
+	 * Measures the index lifecycle. First populates the database with
+	 * numNodes nodes labeled :Person and measures the time it takes to build
+	 * an index on :Person(ID) over them, from issuing the create index query
+	 * until the index is online. Then creates numSamples nodes with the
+	 * indexed label and numSamples with an unindexed label, measuring the
+	 * latency of each create, to show the write amplification of keeping the
+	 * index up to date.
+	 * 
+	 * @param numNodes
+	 *            The number of nodes to build the index over.
+	 * @param numSamples
+	 *            The number of nodes to create with each label.
+	 */
+	public void run15(final int numNodes, final int numSamples) {
+		System.out.println("Running Benchmark 15... Timing index build and index maintenance");
+		System.out.println("\tnumNodes:\t" + numNodes);
+		System.out.println("\tnumSamples:\t" + numSamples);
+		
+		ClientResponse response;
+		
+		// Populate the database in batches
+		System.out.print("Populating the database... ");
+		
+		String populateCQ = "foreach (i in range({start}, {end}) | create (:Person{ID:i}));";
+		int batchSize = 10000;
+		
+		for(int start = 0; start < numNodes; start += batchSize) {
+			JSONObject populateParams = new JSONObject();
+			populateParams.put("start", start);
+			populateParams.put("end", Math.min(start + batchSize, numNodes) - 1);
+			response = postCypher(populateCQ, populateParams);
+			response.close();
+		}
+		
+		System.out.println("done.");
+		
+		// Build an index over the existing nodes
+		String createIndexCQ = "create index on :Person(ID);";
+		
+		long startTime = System.nanoTime();
+		response = postCypher(createIndexCQ, null);
+		long endTime = System.nanoTime();
+		response.close();
+		
+		double createTime = (endTime - startTime)/1e6;
+		double populateTime = awaitIndexOnline("Person", "ID", INDEX_ONLINE_TIMEOUT);
+		
+		System.out.println("Timings statistics for index build:");
+		if (populateTime >= 0)
+			System.out.printf("numNodes: %d total: %11.6f create: %11.6f populate: %11.6f\n", numNodes, createTime + populateTime, createTime, populateTime);
+		else
+			System.out.printf("numNodes: %d index did not come online\n", numNodes);
+		
+		// Create nodes with the indexed label
+		WebResource resource = createClient()
+				.resource( server_root_uri + "cypher" );
+		double[] timings = new double[numSamples];
+		SummaryStatistics indexedStats = new SummaryStatistics();
+		startMeasurement("benchmark15indexed", "numNodes=" + numNodes + "_numSamples=" + numSamples);
+		
+		String createIndexedCQ = "create (:Person{ID:{id}});";
+		
+		for(int id = numNodes; id < numNodes + numSamples && needsMoreSamples(); id++) {
+			String createNodeParams = String.format("\"id\" : %d", id);
+			long allocatedBefore = measurement.allocatedBytes();
+			startTime = System.nanoTime();
+			response = resource.accept( MediaType.APPLICATION_JSON )
+					.type( MediaType.APPLICATION_JSON )
+					.entity( "{ \"query\" : \"" + createIndexedCQ + "\", \"params\" : { " + createNodeParams + " } }" )
+					.post( ClientResponse.class );
+			responseConsumption.consume(response);
+			endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
+			
+			timings[id - numNodes] = (endTime - startTime)/1e6; // Timings recorded in ms
+			indexedStats.addValue(timings[id - numNodes]);
+			recordSample(startTime, endTime, response);
+			
+			response.close();
+		}
+		
+		System.out.println("Timings statistics for create indexed node:");
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", indexedStats.getN(), indexedStats.getMin(), indexedStats.getMax(), indexedStats.getMean(), indexedStats.getStandardDeviation());
+		
+		dumpLatencyMeasurements();
+		
+		// Create nodes with an unindexed label
+		SummaryStatistics unindexedStats = new SummaryStatistics();
+		startMeasurement("benchmark15unindexed", "numNodes=" + numNodes + "_numSamples=" + numSamples);
+		
+		String createUnindexedCQ = "create (:Unindexed{ID:{id}});";
+		
+		for(int id = numNodes; id < numNodes + numSamples && needsMoreSamples(); id++) {
+			String createNodeParams = String.format("\"id\" : %d", id);
+			long allocatedBefore = measurement.allocatedBytes();
+			startTime = System.nanoTime();
+			response = resource.accept( MediaType.APPLICATION_JSON )
+					.type( MediaType.APPLICATION_JSON )
+					.entity( "{ \"query\" : \"" + createUnindexedCQ + "\", \"params\" : { " + createNodeParams + " } }" )
+					.post( ClientResponse.class );
+			responseConsumption.consume(response);
+			endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
+			
+			timings[id - numNodes] = (endTime - startTime)/1e6; // Timings recorded in ms
+			unindexedStats.addValue(timings[id - numNodes]);
+			recordSample(startTime, endTime, response);
+			
+			response.close();
+		}
+		
+		System.out.println("Timings statistics for create unindexed node:");
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", unindexedStats.getN(), unindexedStats.getMin(), unindexedStats.getMax(), unindexedStats.getMean(), unindexedStats.getStandardDeviation());
+		
+		dumpLatencyMeasurements();
+		
+		System.out.printf("Index write amplification (indexed/unindexed mean create latency): %.3f\n", indexedStats.getMean()/unindexedStats.getMean());
+		
+		// Drop the index
+		response = postCypher("drop index on :Person(ID);", null);
+		response.close();
+		
+		clearDatabase();
+	}
+	
+	/**
+	 * Measures MERGE based upserts on :Person(ID), as used for idempotent
+	 * ingestion. Runs the following, each first with a plain index and then
+	 * with a uniqueness constraint on :Person(ID):
+	 * <ol>
+	 * <li>Single statement MERGE of numSamples new keys (inserts), then of
+	 * the same keys again (matches).</li>
+	 * <li>Batched MERGE of numSamples new keys, batchSize statements per
+	 * transaction.</li>
+	 * <li>Concurrent upserts from numThreads threads at increasing conflict
+	 * rates, where the conflict rate is the fraction of upserts that go to a
+	 * small set of hot keys shared by all threads.</li>
+	 * </ol>
+	 * All statements go through the transactional endpoint.
+	 * 
+	 * @param numSamples
+	 *            The number of upserts per measurement (per thread for the
+	 *            concurrent measurements).
+	 * @param batchSize
+	 *            The number of MERGE statements per batched transaction.
+	 * @param numThreads
+	 *            The number of concurrent upserting threads.
+	 */
+	public void run16(final int numSamples, final int batchSize, final int numThreads) {
+		System.out.println("Running Benchmark 16... Timing MERGE upserts");
+		System.out.println("\tnumSamples:\t" + numSamples);
+		System.out.println("\tbatchSize:\t" + batchSize);
+		System.out.println("\tnumThreads:\t" + numThreads);
+		
+		ClientResponse response;
+		
+		String[] schemaTypes = { "index", "constraint" };
+		String[] createSchemaCQs = { "create index on :Person(ID);", "create constraint on (n:Person) assert n.ID is unique;" };
+		String[] dropSchemaCQs = { "drop index on :Person(ID);", "drop constraint on (n:Person) assert n.ID is unique;" };
+		double[] conflictRates = { 0.0, 0.01, 0.1, 0.5, 1.0 };
+		
+		for (int s = 0; s < schemaTypes.length; s++) {
+			String schemaType = schemaTypes[s];
+			System.out.println("Upserts with " + schemaType + " on :Person(ID)");
+			
+			response = postCypher(createSchemaCQs[s], null);
+			response.close();
+			awaitIndexOnline("Person", "ID", INDEX_ONLINE_TIMEOUT);
+			
+			String spec = "numSamples=" + numSamples + "_schema=" + schemaType;
+			
+			// Single statement MERGE, first inserting and then matching
+			runMergeSingles("benchmark16mergeInsert", spec, 0, numSamples);
+			runMergeSingles("benchmark16mergeMatch", spec, 0, numSamples);
+			
+			// Batched MERGE of new keys
+			runMergeBatches("benchmark16mergeBatch", spec + "_batchSize=" + batchSize, numSamples, numSamples, batchSize);
+			
+			// Concurrent upserts at increasing conflict rates
+			System.out.println("Concurrent upsert summary (latencies in ms):");
+			List<String> summary = new ArrayList<String>();
+			long keyBase = 2*numSamples;
+			for (double conflictRate : conflictRates) {
+				summary.add(runConcurrentUpserts("benchmark16concurrent", spec + "_numThreads=" + numThreads + "_conflictRate=" + conflictRate, keyBase, numSamples, numThreads, conflictRate));
+				keyBase += (long) numThreads * numSamples;
+			}
+			System.out.printf("%-12s %11s %11s %11s %11s %11s %10s %8s %8s\n", "conflictRate", "p50", "p99", "hot mean", "cold mean", "lockWait", "ops/s", "errors", "transient");
+			for (String line : summary)
+				System.out.println(line);
+			
+			response = postCypher(dropSchemaCQs[s], null);
+			response.close();
+			
+			clearDatabase();
+		}
+	}
+	
+	/**
+	 * Upserts keys [firstKey, firstKey + numSamples) one MERGE statement per
+	 * transaction, measuring the latency of each.
+	 */
+	private void runMergeSingles(String benchmarkName, String spec, long firstKey, int numSamples) {
+		Client client = createClient();
+		String mergeCQ = "merge (n:Person{ID:{id}})";
+		
+		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement(benchmarkName, spec);
+		
+		for (int i = 0; i < numSamples; i++) {
+			JSONArray statements = new JSONArray();
+			statements.put(statement(mergeCQ, "id", firstKey + i));
+			
+			long allocatedBefore = measurement.allocatedBytes();
+			long startTime = System.nanoTime();
+			JSONArray errors = commitStatements(client, statements);
+			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
+			
+			sumStats.addValue((endTime - startTime)/1e6);
+			measurement.record(startTime, endTime, errors.length() > 0);
+		}
+		
+		System.out.println("Timings statistics for " + benchmarkName + ":");
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		
+		dumpLatencyMeasurements();
+	}
+	
+	/**
+	 * Upserts keys [firstKey, firstKey + numSamples) batchSize MERGE
+	 * statements per transaction, measuring the latency of each batch.
+	 */
+	private void runMergeBatches(String benchmarkName, String spec, long firstKey, int numSamples, int batchSize) {
+		Client client = createClient();
+		String mergeCQ = "merge (n:Person{ID:{id}})";
+		
+		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement(benchmarkName, spec);
+		
+		long firstStartTime = System.nanoTime();
+		for (int i = 0; i < numSamples; i += batchSize) {
+			JSONArray statements = new JSONArray();
+			for (int j = i; j < Math.min(i + batchSize, numSamples); j++)
+				statements.put(statement(mergeCQ, "id", firstKey + j));
+			
+			long allocatedBefore = measurement.allocatedBytes();
+			long startTime = System.nanoTime();
+			JSONArray errors = commitStatements(client, statements);
+			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
+			
+			sumStats.addValue((endTime - startTime)/1e6);
+			measurement.record(startTime, endTime, errors.length() > 0);
+		}
+		double elapsed = (System.nanoTime() - firstStartTime)/1e9;
+		
+		System.out.println("Timings statistics for " + benchmarkName + " (per batch):");
+		System.out.printf("numBatches: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("throughput: %.1f upserts/s\n", numSamples/elapsed);
+		
+		dumpLatencyMeasurements();
+	}
+	
+	/**
+	 * Runs numSamples single statement upserts on each of numThreads threads
+	 * at once. With probability conflictRate an upsert goes to one of a small
+	 * set of hot keys shared by all threads, otherwise to a key of its own.
+	 * The difference in mean latency between hot and cold upserts estimates
+	 * the time spent waiting for locks.
+	 * 
+	 * @return A summary line for the run.
+	 */
+	private String runConcurrentUpserts(String benchmarkName, String spec, final long keyBase, final int numSamples, final int numThreads, final double conflictRate) {
+		System.out.println("Running concurrent upserts... " + spec);
+		
+		final int numHotKeys = 10;
+		final String mergeCQ = "merge (n:Person{ID:{id}}) on match set n.count = coalesce(n.count, 0) + 1";
+		final DescriptiveStatistics hotStats = new DescriptiveStatistics();
+		final DescriptiveStatistics coldStats = new DescriptiveStatistics();
+		final AtomicLong numTransientErrors = new AtomicLong();
+		final LatencyMeasurement m = new LatencyMeasurement(benchmarkName, spec, reportingInterval);
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		for (int t = 0; t < numThreads; t++) {
+			final int threadId = t;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					Client client = createClient();
+					Random random = new Random(threadId);
+					
+					try {
+						startLatch.await();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					
+					for (int i = 0; i < numSamples; i++) {
+						boolean hot = random.nextDouble() < conflictRate;
+						long id = hot ? random.nextInt(numHotKeys) : keyBase + numHotKeys + (long) threadId*numSamples + i;
+						JSONArray statements = new JSONArray();
+						statements.put(statement(mergeCQ, "id", id));
+						
+						long allocatedBefore = m.allocatedBytes();
+						long startTime = System.nanoTime();
+						JSONArray errors = commitStatements(client, statements);
+						long endTime = System.nanoTime();
+						m.recordAllocation(allocatedBefore, m.allocatedBytes());
+						
+						m.record(startTime, endTime, errors.length() > 0);
+						if (isTransient(errors))
+							numTransientErrors.incrementAndGet();
+						DescriptiveStatistics stats = hot ? hotStats : coldStats;
+						synchronized (stats) {
+							stats.addValue((endTime - startTime)/1e6);
+						}
+					}
+				}
+			});
+		}
+		
+		startLatch.countDown();
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		m.finish();
+		
+		System.out.println("Timings statistics for concurrent upserts:");
+		m.printStatistics();
+		
+		double hotMean = hotStats.getN() > 0 ? hotStats.getMean() : Double.NaN;
+		double coldMean = coldStats.getN() > 0 ? coldStats.getMean() : Double.NaN;
+		return String.format("%-12.2f %11.6f %11.6f %11.6f %11.6f %11.6f %10.1f %8d %8d", conflictRate,
+				m.getStatistics().getPercentile(50), m.getStatistics().getPercentile(99),
+				hotMean, coldMean, hotMean - coldMean, m.getThroughput(),
+				m.getNumErrors(), numTransientErrors.get());
+	}
+	
+	/**
+	 * Measures writes under lock contention: concurrent updates to a small
+	 * set of hot nodes and concurrent edge creation to a single supernode,
+	 * at increasing numbers of threads and decreasing hot set sizes.
+	 * 
+	 * @param numSamples
+	 *            The number of writes each thread makes per configuration.
+	 */
+	public void run17(final int numSamples) {
+		System.out.println("Running Benchmark 17... Timing writes under contention");
+		System.out.println("\tnumSamples:\t" + numSamples);
+
+		ContentionBenchmarks contentionBenchmarks = new ContentionBenchmarks(graphClient(), reportingInterval);
+		contentionBenchmarks.run(numSamples);
+	}
+	
+	/**
+	 * Simulates many concurrent users, each issuing blocking node reads and
+	 * updates from its own thread, first on a bounded pool of platform
+	 * threads and then, on Java 21 and later, on one virtual thread per
+	 * user, reporting carrier thread pinning.
+	 * 
+	 * @param numUsers
+	 *            The number of simulated users.
+	 * @param numOps
+	 *            The number of requests each user makes.
+	 */
+	public void run18(final int numUsers, final int numOps) {
+		System.out.println("Running Benchmark 18... Timing many simulated users");
+		System.out.println("\tnumUsers:\t" + numUsers);
+		System.out.println("\tnumOps:\t" + numOps);
+
+		SimulatedUserBenchmarks simulatedUserBenchmarks = new SimulatedUserBenchmarks(graphClient(), reportingInterval);
+		simulatedUserBenchmarks.run(numUsers, numOps);
+	}	
+	/**
+	 * Simulates users running sessions of dependent requests with think time
+	 * in between: create a person, link friends, read the neighborhood and
+	 * update the profile. Reports per step and end-to-end session latency.
+	 * 
+	 * @param numUsers
+	 *            The number of concurrent users.
+	 * @param numSessions
+	 *            The number of sessions each user runs.
+	 */
+	public void run19(final int numUsers, final int numSessions) {
+		System.out.println("Running Benchmark 19... Timing user sessions");
+		System.out.println("\tnumUsers:\t" + numUsers);
+		System.out.println("\tnumSessions:\t" + numSessions);
+
+		SessionBenchmarks sessionBenchmarks = new SessionBenchmarks(graphClient(), reportingInterval);
+		sessionBenchmarks.run(numUsers, numSessions);
+	}
+	
+	/**
+	 * Measures what the standard REST representation costs, by running node
+	 * and relationship CRUD through the standard REST API and through the
+	 * compact endpoints of the unmanaged extension deployed on the same
+	 * server, and then batch node creation through the extension. See
+	 * {@link RepresentationBenchmarks}. The benchmark is skipped if the
+	 * extension is not deployed (see {@link #setExtensionRootUri(String)}).
+	 * 
+	 * @param numSamples
+	 *            The number of nodes to create, read, update and delete
+	 *            through each API.
+	 * @param batchSize
+	 *            The number of nodes created per batch request.
+	 */
+	public void run20(final int numSamples, final int batchSize) {
+		System.out.println("Running Benchmark 20... Timing the REST representation against an unmanaged extension");
+		System.out.println("\tnumSamples:\t" + numSamples);
+		System.out.println("\tbatchSize:\t" + batchSize);
+		System.out.println("\textension:\t" + extension_root_uri);
+
+		Neo4jExtensionClient extensionClient = new Neo4jExtensionClient(extension_root_uri);
+		if (!extensionClient.isAvailable()) {
+			System.out.println("No extension deployed at " + extension_root_uri + ", skipping Benchmark 20 (see CrudResource for how to deploy it)");
+			return;
+		}
+
+		RepresentationBenchmarks representationBenchmarks = new RepresentationBenchmarks(new Neo4jRestClient(server_root_uri), extensionClient, reportingInterval);
+		representationBenchmarks.run(numSamples, batchSize);
+	}
+	
+	/**
+	 * Measures reads and updates of a fixed set of vertices, chosen uniformly
+	 * and with a skewed distribution, without a cache and behind read-through
+	 * caches with increasing times to live, reporting hit rate, effective
+	 * read latency and the staleness of reads. See {@link CacheBenchmarks}.
+	 * 
+	 * @param numVertices
+	 *            The number of vertices to operate on.
+	 * @param numOps
+	 *            The number of operations per configuration.
+	 */
+	public void run21(final int numVertices, final int numOps) {
+		System.out.println("Running Benchmark 21... Timing reads through a client side cache");
+		System.out.println("\tnumVertices:\t" + numVertices);
+		System.out.println("\tnumOps:\t" + numOps);
+
+		CacheBenchmarks cacheBenchmarks = new CacheBenchmarks(new Neo4jRestClient(server_root_uri), reportingInterval);
+		cacheBenchmarks.run(numVertices, numOps);
+	}
+	
+	/**
+	 * Measures single element creates and updates of vertices and edges from
+	 * many threads, sent one request per write and then coalesced into batch
+	 * requests with a range of batch sizes and flush deadlines, reporting
+	 * per-write latency against aggregate throughput. See
+	 * {@link CoalescingBenchmarks}.
+	 * 
+	 * @param numThreads
+	 *            The number of threads writing.
+	 * @param numWrites
+	 *            The number of writes per phase, over all threads.
+	 */
+	public void run22(final int numThreads, final int numWrites) {
+		System.out.println("Running Benchmark 22... Timing coalesced writes");
+		System.out.println("\tnumThreads:\t" + numThreads);
+		System.out.println("\tnumWrites:\t" + numWrites);
+
+		CoalescingBenchmarks coalescingBenchmarks = new CoalescingBenchmarks(new Neo4jRestClient(server_root_uri), reportingInterval);
+		coalescingBenchmarks.run(numThreads, numWrites);
+	}
+	
+	/**
+	 * Measures the CRUD operations on a random sample of existing elements
+	 * as the graph is loaded to successive size tiers, from 10^3 vertices up
+	 * to maxSize, showing how latency degrades as the graph outgrows the
+	 * server's memory. See {@link ScalingBenchmarks}.
+	 * 
+	 * @param maxSize
+	 *            The largest graph size, in vertices.
+	 * @param numSamples
+	 *            The number of samples per operation at each tier.
+	 */
+	public void run23(final long maxSize, final int numSamples) {
+		System.out.println("Running Benchmark 23... Timing CRUD operations against graph size");
+		System.out.println("\tmaxSize:\t" + maxSize);
+		System.out.println("\tnumSamples:\t" + numSamples);
+
+		ScalingBenchmarks scalingBenchmarks = new ScalingBenchmarks(new Neo4jRestClient(server_root_uri), reportingInterval);
+		scalingBenchmarks.run(maxSize, numSamples);
+	}
+	
+	/**
+	 * Measures first-touch latency after a restart against steady state
+	 * latency, and the time it takes to warm up, on a Neo4j database
+	 * embedded in this JVM with its store files dropped from the page cache
+	 * on every restart (see {@link EmbeddedNeo4jDatabase}), and then on a
+	 * {@link Neo4jStandInServer}, which shows the part of it that is the
+	 * client's and the HTTP connection's own. See {@link ColdStartBenchmarks}.
+	 * 
+	 * @param storeDir
+	 *            Store directory of the embedded database.
+	 * @param numVertices
+	 *            The number of vertices to load.
+	 * @param workingSetSize
+	 *            The number of vertices the reads are spread over.
+	 * @param numTouches
+	 *            The number of cold reads, and of warm reads, per restart.
+	 * @param numRounds
+	 *            The number of restarts.
+	 */
+	public void run24(String storeDir, final int numVertices, final int workingSetSize, final int numTouches, final int numRounds) {
+		System.out.println("Running Benchmark 24... Timing first touches after a restart");
+		System.out.println("\tstoreDir:\t" + storeDir);
+		System.out.println("\tnumVertices:\t" + numVertices);
+		System.out.println("\tworkingSetSize:\t" + workingSetSize);
+		System.out.println("\tnumTouches:\t" + numTouches);
+		System.out.println("\tnumRounds:\t" + numRounds);
+
+		final Neo4jStandInServer standIn = new Neo4jStandInServer();
+		RestartableDatabase standInDatabase = new RestartableDatabase() {
+			@Override
+			public void start() throws IOException {
+				standIn.start();
+			}
+
+			@Override
+			public void stop() {
+				standIn.stop();
+			}
+
+			@Override
+			public boolean dropPageCache() {
+				return false;
+			}
+
+			@Override
+			public GraphClient newClient() {
+				return new Neo4jRestClient(standIn.getRootUri());
+			}
+		};
+
+		try {
+			new ColdStartBenchmarks(new EmbeddedNeo4jDatabase(storeDir, EMBEDDED_PORT), reportingInterval)
+					.run(numVertices, workingSetSize, numTouches, numRounds, true);
+			new ColdStartBenchmarks(standInDatabase, reportingInterval)
+					.run(numVertices, workingSetSize, numTouches, numRounds, false);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Measures the client overhead of the basic CRUD benchmarks (run01,
+	 * run02 and run05 to run10) by running their exact client code against a
+	 * {@link Neo4jStandInServer}, which answers every request immediately. What is left is
+	 * the cost of Jersey, JSON handling, the harness and the loopback TCP
+	 * stack. Run this after the benchmarks themselves, so that the client
+	 * code has been JIT compiled, and then print the raw and corrected
+	 * results side by side with {@link #printReport()}.
+	 * 
+	 * @param numSamples
+	 *            The number of samples to take for each benchmark.
+	 */
+	public void calibrate(final int numSamples) {
+		System.out.println("Calibrating client overhead against a loopback stand-in server");
+		
+		Neo4jStandInServer standIn = new Neo4jStandInServer();
+		try {
+			standIn.start();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		
+		HttpClientBenchmarks calibration = new HttpClientBenchmarks(standIn.getRootUri());
+		calibration.calibrating = true;
+		calibration.reportingInterval = reportingInterval;
+		calibration.responseConsumption = responseConsumption;
+		calibration.errorRateThreshold = errorRateThreshold;
+		
+		// The stand-in has no server metrics to poll, and monitoring the JVM
+		// would add its own overhead to what is being measured.
+		LatencyMeasurement.setJvmMonitor(null, false);
+		LatencyMeasurement.setServerMetrics(null, serverMetricsInterval);
+		try {
+			calibration.run01(numSamples);
+			calibration.run02(numSamples);
+			calibration.run05(numSamples);
+			calibration.run06(numSamples);
+			calibration.run07(numSamples);
+			calibration.run08(numSamples);
+			calibration.run09(numSamples);
+			calibration.run10(numSamples);
+		} finally {
+			LatencyMeasurement.setJvmMonitor(jvmMonitor, excludeGcTainted);
+			LatencyMeasurement.setServerMetrics(serverMetrics, serverMetricsInterval);
+			standIn.stop();
+		}
+		
+		clientOverhead.putAll(calibration.results);
+	}
+	
+	/**
+	 * Prints a summary of every benchmark run so far. For benchmarks whose
+	 * client overhead has been measured by {@link #calibrate(int)}, the raw
+	 * latencies are followed by the client overhead and by the latencies
+	 * corrected for it. The overhead is treated as a constant shift, so
+	 * every corrected percentile is the raw percentile less the median
+	 * client overhead.
+	 */
+	public void printReport() {
+		System.out.println("Benchmark report (latencies in ms):");
+		System.out.printf("%-20s %10s %11s %11s %11s %11s %11s %11s %11s %11s\n", "benchmark", "numSamples",
+				"raw mean", "raw p50", "raw p99", "client mean", "client p50", "corr mean", "corr p50", "corr p99");
+		for (LatencyMeasurement.Summary raw : results.values()) {
+			System.out.printf("%-20s %10d %11.6f %11.6f %11.6f", raw.getBenchmarkName(), raw.getNumSamples(),
+					raw.getMean(), raw.getP50(), raw.getP99());
+			
+			LatencyMeasurement.Summary client = clientOverhead.get(raw.getBenchmarkName());
+			if (client == null) {
+				System.out.println();
+				continue;
+			}
+			double clientMedian = client.getP50();
+			System.out.printf(" %11.6f %11.6f %11.6f %11.6f %11.6f\n", client.getMean(), clientMedian,
+					raw.getMean() - client.getMean(), raw.getP50() - clientMedian,
+					raw.getP99() - clientMedian);
+		}
+		
+		if (jvmMonitor == null)
+			return;
+		System.out.println("Client JVM report:");
+		System.out.printf("%-20s %14s %14s %10s\n", "benchmark", "alloc/op mean", "alloc/op p99", "gcTainted");
+		for (LatencyMeasurement.Summary m : results.values()) {
+			System.out.printf("%-20s %12.0f B %12.0f B %10d\n", m.getBenchmarkName(), m.getAllocationMean(),
+					m.getAllocationP99(), m.getNumGcTainted());
+		}
+	}
 }
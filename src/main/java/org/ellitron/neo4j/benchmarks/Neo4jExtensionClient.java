@@ -0,0 +1,271 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package org.ellitron.neo4j.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+import org.ellitron.benchmarks.GraphClient;
+import org.ellitron.benchmarks.GraphClientException;
+import org.ellitron.neo4j.extension.CrudResource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+
+/**
+ * Neo4jExtensionClient implements {@link GraphClient} on top of the compact
+ * endpoints of the {@link CrudResource} unmanaged extension, rather than the
+ * standard REST API. It also offers batch creation of nodes and
+ * relationships in a single request.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class Neo4jExtensionClient implements GraphClient {
+	/**
+	 * Stores the root URI of the extension.
+	 */
+	private final String extension_root_uri;
+
+	/**
+	 * Jersey client shared by all requests (and threads).
+	 */
+	private final Client client;
+
+	/**
+	 * Whether batches of IDs are fetched in binary rather than as text.
+	 */
+	private boolean binaryIds = false;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param extension_root_uri
+	 *            The root URI of the extension (e.g.
+	 *            "http://192.168.1.1:7474/crud/").
+	 */
+	public Neo4jExtensionClient(String extension_root_uri) {
+		this.extension_root_uri = extension_root_uri;
+		this.client = Client.create();
+	}
+
+	/**
+	 * Sets whether batches of IDs are fetched as 8-byte binary integers
+	 * rather than as text.
+	 */
+	public void setBinaryIds(boolean binaryIds) {
+		this.binaryIds = binaryIds;
+	}
+
+	/**
+	 * Checks whether the extension is deployed at the root URI, by fetching
+	 * the mount point itself.
+	 * 
+	 * @return Whether the extension answered.
+	 */
+	public boolean isAvailable() {
+		try {
+			ClientResponse response = client.resource( extension_root_uri )
+					.accept( MediaType.TEXT_PLAIN )
+					.get( ClientResponse.class );
+			boolean available = response.getStatus() == 200 && response.getEntity( String.class ).trim().equals("CrudResource");
+			response.close();
+			return available;
+		} catch (ClientHandlerException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Throws a GraphClientException if the response reports an error.
+	 */
+	private static void checkStatus(ClientResponse response) {
+		if (response.getStatus() >= 400) {
+			String message = response.getEntity( String.class );
+			response.close();
+			throw new GraphClientException(response.getStatus(), message);
+		}
+	}
+
+	/**
+	 * Posts a request whose response is a single ID.
+	 */
+	private long postForId(String path, JSONObject properties) {
+		ClientResponse response = client.resource( extension_root_uri + path )
+				.accept( MediaType.TEXT_PLAIN )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( properties.toString() )
+				.post( ClientResponse.class );
+		checkStatus(response);
+
+		long id = Long.parseLong( response.getEntity( String.class ).trim() );
+		response.close();
+
+		return id;
+	}
+
+	/**
+	 * Posts a batch request whose response is a list of IDs.
+	 */
+	private long[] postForIds(String path, String type, String body) {
+		ClientResponse response = client.resource( extension_root_uri + path )
+				.accept( binaryIds ? MediaType.APPLICATION_OCTET_STREAM : MediaType.TEXT_PLAIN )
+				.type( type )
+				.entity( body )
+				.post( ClientResponse.class );
+		checkStatus(response);
+
+		long[] ids;
+		if (binaryIds) {
+			ByteBuffer buffer = ByteBuffer.wrap( response.getEntity( byte[].class ) );
+			ids = new long[buffer.remaining()/8];
+			for (int i = 0; i < ids.length; i++)
+				ids[i] = buffer.getLong();
+		} else {
+			String text = response.getEntity( String.class ).trim();
+			String[] lines = text.isEmpty() ? new String[0] : text.split("\n");
+			ids = new long[lines.length];
+			for (int i = 0; i < ids.length; i++)
+				ids[i] = Long.parseLong(lines[i]);
+		}
+		response.close();
+
+		return ids;
+	}
+
+	private JSONObject get(String path) {
+		ClientResponse response = client.resource( extension_root_uri + path )
+				.accept( MediaType.APPLICATION_JSON )
+				.get( ClientResponse.class );
+		checkStatus(response);
+
+		JSONObject jsonObject = new JSONObject( response.getEntity( String.class ) );
+		response.close();
+
+		return jsonObject;
+	}
+
+	private void put(String path, JSONObject properties) {
+		ClientResponse response = client.resource( extension_root_uri + path )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( properties.toString() )
+				.put( ClientResponse.class );
+		checkStatus(response);
+		response.close();
+	}
+
+	private void delete(String path) {
+		ClientResponse response = client.resource( extension_root_uri + path )
+				.delete( ClientResponse.class );
+		checkStatus(response);
+		response.close();
+	}
+
+	@Override
+	public long createVertex(JSONObject properties) {
+		return postForId("node", properties);
+	}
+
+	/**
+	 * Creates vertices in a single request and transaction.
+	 * 
+	 * @param propertiesList
+	 *            Properties to set on each vertex.
+	 * @return The IDs of the new vertices, in order.
+	 */
+	public long[] createVertices(List<JSONObject> propertiesList) {
+		return postForIds("node/batch", MediaType.APPLICATION_JSON, new JSONArray(propertiesList).toString());
+	}
+
+	@Override
+	public JSONObject readVertex(long vId) {
+		return get("node/" + vId);
+	}
+
+	@Override
+	public void updateVertex(long vId, JSONObject properties) {
+		put("node/" + vId, properties);
+	}
+
+	@Override
+	public void deleteVertex(long vId) {
+		delete("node/" + vId);
+	}
+
+	@Override
+	public String createEdge(long outVId, long inVId, String label, JSONObject properties) {
+		return Long.toString(postForId("relationship/" + outVId + "/" + inVId + "/" + label, properties));
+	}
+
+	/**
+	 * Creates edges, without properties, in a single request and
+	 * transaction.
+	 * 
+	 * @param outVIds
+	 *            IDs of the vertices the edges go out of.
+	 * @param inVIds
+	 *            IDs of the vertices the edges go into.
+	 * @param label
+	 *            Edge label (relationship type) of every edge.
+	 * @return The IDs of the new edges, in order.
+	 */
+	public long[] createEdges(long[] outVIds, long[] inVIds, String label) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < outVIds.length; i++)
+			sb.append(outVIds[i]).append(' ').append(inVIds[i]).append(' ').append(label).append('\n');
+		return postForIds("relationship/batch", MediaType.TEXT_PLAIN, sb.toString());
+	}
+
+	@Override
+	public JSONObject readEdge(String eId) {
+		return get("relationship/" + eId);
+	}
+
+	@Override
+	public void updateEdge(String eId, JSONObject properties) {
+		put("relationship/" + eId, properties);
+	}
+
+	@Override
+	public void deleteEdge(String eId) {
+		delete("relationship/" + eId);
+	}
+
+	@Override
+	public List<JSONObject> readNeighbors(long vId) {
+		ClientResponse response = client.resource( extension_root_uri + "node/" + vId + "/neighbors" )
+				.accept( MediaType.APPLICATION_JSON )
+				.get( ClientResponse.class );
+		checkStatus(response);
+
+		JSONArray array = new JSONArray( response.getEntity( String.class ) );
+		response.close();
+
+		List<JSONObject> neighbors = new ArrayList<JSONObject>(array.length());
+		for (int i = 0; i < array.length(); i++)
+			neighbors.add(array.getJSONObject(i));
+		return neighbors;
+	}
+
+	@Override
+	public void clearDatabase() {
+		delete("graph");
+	}
+}
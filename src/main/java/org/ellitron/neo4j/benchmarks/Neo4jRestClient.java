@@ -0,0 +1,315 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.neo4j.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+import org.ellitron.benchmarks.BatchGraphClient;
+import org.ellitron.benchmarks.GraphClient;
+import org.ellitron.benchmarks.GraphClientException;
+import org.ellitron.benchmarks.GraphWrite;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+
+/**
+ * Neo4jRestClient implements {@link GraphClient} on top of the standard
+ * Neo4j REST API ("/db/data/node", "/db/data/relationship", ...). Batches of
+ * writes are sent to the batch endpoint ("/db/data/batch"), which runs them
+ * in a single transaction.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class Neo4jRestClient implements BatchGraphClient {
+	/**
+	 * Starts of the Cypher queries that set properties on a node or
+	 * relationship, see {@link #setPropertiesRequest(String, long, JSONObject)}.
+	 */
+	private static final String UPDATE_NODE_START = "start e=node({id})";
+	private static final String UPDATE_RELATIONSHIP_START = "start e=relationship({id})";
+
+	/**
+	 * Stores the root URI for all requests to the database.
+	 */
+	private final String server_root_uri;
+
+	/**
+	 * Jersey client shared by all requests (and threads).
+	 */
+	private final Client client;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param server_root_uri
+	 *            The root URI for all requests to the database (e.g.
+	 *            "http://192.168.1.1:7474/db/data/").
+	 */
+	public Neo4jRestClient(String server_root_uri) {
+		this.server_root_uri = server_root_uri;
+		this.client = Client.create();
+	}
+
+	/**
+	 * Throws a GraphClientException if the response reports an error.
+	 */
+	private static void checkStatus(ClientResponse response) {
+		if (response.getStatus() >= 400) {
+			String message = response.getEntity( String.class );
+			response.close();
+			throw new GraphClientException(response.getStatus(), message);
+		}
+	}
+
+	/**
+	 * Extracts the numeric ID from the tail of a node or relationship URI.
+	 */
+	private static long idFromURI(String uri) {
+		return Long.parseLong(uri.substring(uri.lastIndexOf('/') + 1));
+	}
+
+	/**
+	 * Sets properties on a node or relationship with a Cypher query, leaving
+	 * its other properties unchanged. A PUT to ".../properties" would replace
+	 * them all, and the standard API has no request that merges; a null value
+	 * removes the property.
+	 */
+	private void setProperties(String start, long id, JSONObject properties) {
+		ClientResponse response = client.resource( server_root_uri + "cypher" )
+				.accept( MediaType.APPLICATION_JSON )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( setPropertiesRequest(start, id, properties).toString() )
+				.post( ClientResponse.class );
+		checkStatus(response);
+		response.close();
+	}
+
+	/**
+	 * Builds the body of a Cypher request that sets properties, for
+	 * {@link #setProperties(String, long, JSONObject)} and for update jobs in
+	 * a batch, so that both have the same semantics. Each property gets its
+	 * own "set e.`key` = {pN}" item rather than "set e += {props}", which
+	 * older Cypher versions reject. The query text only depends on the
+	 * property names, so repeated updates of the same shape still hit the
+	 * server's plan cache.
+	 */
+	private static JSONObject setPropertiesRequest(String start, long id, JSONObject properties) {
+		StringBuilder query = new StringBuilder(start);
+		JSONObject params = new JSONObject().put("id", id);
+		Iterator<?> keys = properties.keys();
+		for (int i = 0; keys.hasNext(); i++) {
+			String key = (String) keys.next();
+			query.append(i == 0 ? " set " : ", ");
+			query.append("e.`").append(key.replace("`", "``")).append("` = {p").append(i).append("}");
+			params.put("p" + i, properties.get(key));
+		}
+		if (properties.length() == 0)
+			query.append(" return id(e)");
+
+		JSONObject request = new JSONObject();
+		request.put("query", query.toString());
+		request.put("params", params);
+		return request;
+	}
+
+	@Override
+	public long createVertex(JSONObject properties) {
+		ClientResponse response = client.resource( server_root_uri + "node" )
+				.accept( MediaType.APPLICATION_JSON )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( properties.toString() )
+				.post( ClientResponse.class );
+		checkStatus(response);
+
+		JSONObject jsonObject = new JSONObject( response.getEntity( String.class ) );
+		response.close();
+
+		return idFromURI(jsonObject.getString("self"));
+	}
+
+	@Override
+	public JSONObject readVertex(long vId) {
+		ClientResponse response = client.resource( server_root_uri + "node/" + vId )
+				.accept( MediaType.APPLICATION_JSON )
+				.get( ClientResponse.class );
+		checkStatus(response);
+
+		JSONObject jsonObject = new JSONObject( response.getEntity( String.class ) );
+		response.close();
+
+		return jsonObject.getJSONObject("data");
+	}
+
+	@Override
+	public void updateVertex(long vId, JSONObject properties) {
+		setProperties(UPDATE_NODE_START, vId, properties);
+	}
+
+	@Override
+	public void deleteVertex(long vId) {
+		ClientResponse response = client.resource( server_root_uri + "node/" + vId )
+				.accept( MediaType.APPLICATION_JSON )
+				.delete( ClientResponse.class );
+		checkStatus(response);
+		response.close();
+	}
+
+	@Override
+	public String createEdge(long outVId, long inVId, String label, JSONObject properties) {
+		JSONObject request = new JSONObject();
+		request.put("to", server_root_uri + "node/" + inVId);
+		request.put("type", label);
+		request.put("data", properties);
+
+		ClientResponse response = client.resource( server_root_uri + "node/" + outVId + "/relationships" )
+				.accept( MediaType.APPLICATION_JSON )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( request.toString() )
+				.post( ClientResponse.class );
+		checkStatus(response);
+
+		JSONObject jsonObject = new JSONObject( response.getEntity( String.class ) );
+		response.close();
+
+		return Long.toString(idFromURI(jsonObject.getString("self")));
+	}
+
+	@Override
+	public JSONObject readEdge(String eId) {
+		ClientResponse response = client.resource( server_root_uri + "relationship/" + eId )
+				.accept( MediaType.APPLICATION_JSON )
+				.get( ClientResponse.class );
+		checkStatus(response);
+
+		JSONObject jsonObject = new JSONObject( response.getEntity( String.class ) );
+		response.close();
+
+		return jsonObject.getJSONObject("data");
+	}
+
+	@Override
+	public void updateEdge(String eId, JSONObject properties) {
+		setProperties(UPDATE_RELATIONSHIP_START, Long.parseLong(eId), properties);
+	}
+
+	@Override
+	public void deleteEdge(String eId) {
+		ClientResponse response = client.resource( server_root_uri + "relationship/" + eId )
+				.accept( MediaType.APPLICATION_JSON )
+				.delete( ClientResponse.class );
+		checkStatus(response);
+		response.close();
+	}
+
+	@Override
+	public List<JSONObject> readNeighbors(long vId) {
+		JSONObject request = new JSONObject();
+		request.put("query", "start n=node({id}) match (n)--(m) return m");
+		request.put("params", new JSONObject().put("id", vId));
+
+		ClientResponse response = client.resource( server_root_uri + "cypher" )
+				.accept( MediaType.APPLICATION_JSON )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( request.toString() )
+				.post( ClientResponse.class );
+		checkStatus(response);
+
+		JSONArray rows = new JSONObject( response.getEntity( String.class ) ).getJSONArray("data");
+		response.close();
+
+		List<JSONObject> neighbors = new ArrayList<JSONObject>(rows.length());
+		for (int i = 0; i < rows.length(); i++)
+			neighbors.add(rows.getJSONArray(i).getJSONObject(0).getJSONObject("data"));
+		return neighbors;
+	}
+
+	@Override
+	public Object[] writeBatch(List<GraphWrite> writes) {
+		JSONArray jobs = new JSONArray();
+		for (int i = 0; i < writes.size(); i++) {
+			GraphWrite write = writes.get(i);
+			JSONObject job = new JSONObject();
+			job.put("id", i);
+			switch (write.kind) {
+			case CREATE_VERTEX:
+				job.put("method", "POST").put("to", "/node").put("body", write.properties);
+				break;
+			case UPDATE_VERTEX:
+				job.put("method", "POST").put("to", "/cypher").put("body", setPropertiesRequest(UPDATE_NODE_START, write.vId, write.properties));
+				break;
+			case DELETE_VERTEX:
+				job.put("method", "DELETE").put("to", "/node/" + write.vId);
+				break;
+			case CREATE_EDGE:
+				JSONObject body = new JSONObject();
+				body.put("to", server_root_uri + "node/" + write.inVId);
+				body.put("type", write.label);
+				body.put("data", write.properties);
+				job.put("method", "POST").put("to", "/node/" + write.vId + "/relationships").put("body", body);
+				break;
+			case UPDATE_EDGE:
+				job.put("method", "POST").put("to", "/cypher").put("body", setPropertiesRequest(UPDATE_RELATIONSHIP_START, Long.parseLong(write.eId), write.properties));
+				break;
+			case DELETE_EDGE:
+				job.put("method", "DELETE").put("to", "/relationship/" + write.eId);
+				break;
+			}
+			jobs.put(job);
+		}
+
+		ClientResponse response = client.resource( server_root_uri + "batch" )
+				.accept( MediaType.APPLICATION_JSON )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( jobs.toString() )
+				.post( ClientResponse.class );
+		checkStatus(response);
+
+		JSONArray results = new JSONArray( response.getEntity( String.class ) );
+		response.close();
+
+		Object[] ids = new Object[writes.size()];
+		for (int i = 0; i < results.length(); i++) {
+			JSONObject result = results.getJSONObject(i);
+			int id = result.getInt("id");
+			GraphWrite.Kind kind = writes.get(id).kind;
+			if (kind == GraphWrite.Kind.CREATE_VERTEX)
+				ids[id] = idFromURI(result.getString("location"));
+			else if (kind == GraphWrite.Kind.CREATE_EDGE)
+				ids[id] = Long.toString(idFromURI(result.getString("location")));
+		}
+		return ids;
+	}
+
+	@Override
+	public void clearDatabase() {
+		String[] cypherQueries = { "start r=relationship(*) delete r", "start n=node(*) delete n" };
+		for (String cypherQuery : cypherQueries) {
+			ClientResponse response = client.resource( server_root_uri + "cypher" )
+					.accept( MediaType.APPLICATION_JSON )
+					.type( MediaType.APPLICATION_JSON )
+					.entity( "{ \"query\" : \"" + cypherQuery + "\" }" )
+					.post( ClientResponse.class );
+			checkStatus(response);
+			response.close();
+		}
+	}
+}
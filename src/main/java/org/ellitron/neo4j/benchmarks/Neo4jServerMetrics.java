@@ -0,0 +1,227 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.neo4j.benchmarks;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.ws.rs.core.MediaType;
+
+import org.ellitron.benchmarks.GraphClientException;
+import org.ellitron.benchmarks.ServerMetrics;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+
+/**
+ * Neo4jServerMetrics reads {@link ServerMetrics} from the JMX beans the Neo4j
+ * server exposes over REST, fetching all of them with a single query to
+ * "/db/manage/server/jmx/query" per poll:
+ * <ul>
+ * <li>Transactions: committed, rolled back and open transactions.</li>
+ * <li>Object cache: hits and misses of the node and relationship caches,
+ * summed. These caches exist up to Neo4j 2.2.</li>
+ * <li>Memory mapped store files: hits and misses of the mapped windows,
+ * summed over store files, and the memory mapped. These exist up to Neo4j
+ * 2.1.</li>
+ * <li>Page cache: hits, faults and evictions. The page cache replaced memory
+ * mapping in Neo4j 2.2, so against older servers these are not reported.</li>
+ * <li>Store file sizes: total store and logical log size in bytes.</li>
+ * <li>The server JVM's garbage collectors (count and time in ms, summed over
+ * collectors) and heap usage in bytes.</li>
+ * </ul>
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class Neo4jServerMetrics implements ServerMetrics {
+	/**
+	 * Metric name, JMX object name pattern of the bean(s), attribute (with
+	 * the key of a composite value after a '.'), and whether it's a counter.
+	 * Values of beans matching the same pattern are summed.
+	 */
+	private static final String[][] METRICS = {
+		{ "txCommitted", "org.neo4j:name=Transactions,*", "NumberOfCommittedTransactions", "counter" },
+		{ "txRolledBack", "org.neo4j:name=Transactions,*", "NumberOfRolledBackTransactions", "counter" },
+		{ "txOpen", "org.neo4j:name=Transactions,*", "NumberOfOpenTransactions", "gauge" },
+		{ "objectCacheHits", "org.neo4j:name=Cache,*", "HitCount", "counter" },
+		{ "objectCacheMisses", "org.neo4j:name=Cache,*", "MissCount", "counter" },
+		{ "mappedHits", "org.neo4j:name=Memory Mapping,*", "MemoryPools.hitCount", "counter" },
+		{ "mappedMisses", "org.neo4j:name=Memory Mapping,*", "MemoryPools.missCount", "counter" },
+		{ "mappedMemory", "org.neo4j:name=Memory Mapping,*", "MemoryPools.mappedMem", "gauge" },
+		{ "pageCacheHits", "org.neo4j:name=Page cache,*", "Hits", "counter" },
+		{ "pageCacheFaults", "org.neo4j:name=Page cache,*", "Faults", "counter" },
+		{ "pageCacheEvictions", "org.neo4j:name=Page cache,*", "Evictions", "counter" },
+		{ "storeSize", "org.neo4j:name=Store file sizes,*", "TotalStoreSize", "gauge" },
+		{ "logicalLogSize", "org.neo4j:name=Store file sizes,*", "LogicalLogSize", "gauge" },
+		{ "gcCount", "java.lang:type=GarbageCollector,*", "CollectionCount", "counter" },
+		{ "gcTimeMs", "java.lang:type=GarbageCollector,*", "CollectionTime", "counter" },
+		{ "heapUsed", "java.lang:type=Memory", "HeapMemoryUsage.used", "gauge" },
+	};
+
+	/**
+	 * URI of the JMX query endpoint.
+	 */
+	private final String query_uri;
+
+	/**
+	 * Body of the query, the distinct object name patterns of all metrics.
+	 */
+	private final String query;
+
+	private final Client client;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param manage_root_uri
+	 *            The root URI of the server's management API (e.g.
+	 *            "http://192.168.1.1:7474/db/manage/").
+	 */
+	public Neo4jServerMetrics(String manage_root_uri) {
+		this.query_uri = manage_root_uri + "server/jmx/query";
+		Set<String> patterns = new LinkedHashSet<String>();
+		for (String[] metric : METRICS)
+			patterns.add(metric[1]);
+		this.query = new JSONArray(patterns).toString();
+		this.client = Client.create();
+	}
+
+	@Override
+	public String[] getNames() {
+		String[] names = new String[METRICS.length];
+		for (int i = 0; i < names.length; i++)
+			names[i] = METRICS[i][0];
+		return names;
+	}
+
+	@Override
+	public boolean isCounter(int metric) {
+		return METRICS[metric][3].equals("counter");
+	}
+
+	@Override
+	public double[] poll() {
+		ClientResponse response = client.resource( query_uri )
+				.accept( MediaType.APPLICATION_JSON )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( query )
+				.post( ClientResponse.class );
+		if (response.getStatus() >= 400) {
+			String message = response.getEntity( String.class );
+			response.close();
+			throw new GraphClientException(response.getStatus(), message);
+		}
+		JSONArray beans = new JSONArray( response.getEntity( String.class ) );
+		response.close();
+
+		double[] values = new double[METRICS.length];
+		Arrays.fill(values, Double.NaN);
+		for (int i = 0; i < beans.length(); i++) {
+			JSONObject bean = beans.getJSONObject(i);
+			String beanName = bean.optString("name");
+			JSONArray attributes = bean.optJSONArray("attributes");
+			if (attributes == null)
+				continue;
+			for (int m = 0; m < METRICS.length; m++) {
+				if (!matches(beanName, METRICS[m][1]))
+					continue;
+				double value = attributeValue(attributes, METRICS[m][2]);
+				if (!Double.isNaN(value))
+					values[m] = Double.isNaN(values[m]) ? value : values[m] + value;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Returns whether an object name matches a pattern of the form
+	 * "domain:key=value,..." with an optional trailing ",*", i.e. has the
+	 * same domain and all of the pattern's key properties.
+	 */
+	private static boolean matches(String objectName, String pattern) {
+		int colon = pattern.indexOf(':');
+		if (!objectName.startsWith(pattern.substring(0, colon + 1)))
+			return false;
+		String properties = "," + objectName.substring(colon + 1) + ",";
+		for (String property : pattern.substring(colon + 1).split(","))
+			if (!property.equals("*") && !properties.contains("," + property + ","))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the numeric value of an attribute, or NaN if the bean doesn't
+	 * have it. A name of the form "attribute.key" picks a key out of a
+	 * composite value, which the server renders as a list of name and value
+	 * pairs, or sums it over an array of composite values.
+	 */
+	private static double attributeValue(JSONArray attributes, String name) {
+		String key = null;
+		int dot = name.indexOf('.');
+		if (dot >= 0) {
+			key = name.substring(dot + 1);
+			name = name.substring(0, dot);
+		}
+		for (int i = 0; i < attributes.length(); i++) {
+			JSONObject attribute = attributes.getJSONObject(i);
+			if (!name.equals(attribute.optString("name")))
+				continue;
+			Object value = attribute.opt("value");
+			if (key != null)
+				value = compositeValue(value, key);
+			if (value instanceof Number)
+				return ((Number) value).doubleValue();
+			if (value instanceof String) {
+				try {
+					return Double.parseDouble((String) value);
+				} catch (NumberFormatException e) {
+					return Double.NaN;
+				}
+			}
+			return Double.NaN;
+		}
+		return Double.NaN;
+	}
+
+	private static Object compositeValue(Object value, String key) {
+		if (value instanceof JSONObject)
+			value = ((JSONObject) value).opt("value");
+		if (!(value instanceof JSONArray))
+			return null;
+		JSONArray entries = (JSONArray) value;
+		for (int i = 0; i < entries.length(); i++) {
+			JSONObject entry = entries.optJSONObject(i);
+			if (entry != null && key.equals(entry.optString("name")))
+				return entry.opt("value");
+		}
+
+		// An array of composite values, e.g. one per memory mapped store
+		// file: sum the key over them.
+		Double sum = null;
+		for (int i = 0; i < entries.length(); i++) {
+			JSONObject entry = entries.optJSONObject(i);
+			if (entry == null || !(entry.opt("value") instanceof JSONArray))
+				continue;
+			Object element = compositeValue(entry, key);
+			if (element instanceof Number)
+				sum = (sum == null ? 0 : sum) + ((Number) element).doubleValue();
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,96 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.neo4j.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ellitron.benchmarks.LoopbackServer;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Neo4jStandInServer answers the Neo4j REST requests made by
+ * {@link HttpClientBenchmarks} with responses shaped like those of Neo4j 2.1,
+ * for measuring client overhead (see {@link LoopbackServer}).
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class Neo4jStandInServer extends LoopbackServer {
+	private final AtomicLong nextId = new AtomicLong();
+
+	public Neo4jStandInServer() {
+		super("/db/data/");
+	}
+
+	@Override
+	protected void respond(HttpExchange exchange, String method, String path) throws IOException {
+		String[] parts = path.split("/");
+		
+		if (path.equals("node") && method.equals("POST")) {
+			send(exchange, 201, node(getRootUri() + "node/" + nextId.incrementAndGet()));
+		} else if (parts.length == 3 && parts[0].equals("node") && parts[2].equals("relationships") && method.equals("POST")) {
+			send(exchange, 201, relationship(getRootUri() + "relationship/" + nextId.incrementAndGet(), getRootUri() + "node/" + parts[1]));
+		} else if (parts.length == 2 && parts[0].equals("node") && method.equals("GET")) {
+			send(exchange, 200, node(getRootUri() + path));
+		} else if (parts.length == 2 && parts[0].equals("relationship") && method.equals("GET")) {
+			send(exchange, 200, relationship(getRootUri() + path, getRootUri() + "node/0"));
+		} else if (method.equals("PUT") || method.equals("DELETE")) {
+			send(exchange, 204, null);
+		} else if (path.equals("cypher")) {
+			send(exchange, 200, "{\n  \"columns\" : [ ],\n  \"data\" : [ ]\n}");
+		} else if (path.startsWith("transaction")) {
+			send(exchange, 200, "{\"results\":[],\"errors\":[]}");
+		} else {
+			send(exchange, 200, "{ }");
+		}
+	}
+
+	private static String node(String self) {
+		return "{\n"
+				+ "  \"extensions\" : { },\n"
+				+ "  \"paged_traverse\" : \"" + self + "/paged/traverse/{returnType}{?pageSize,leaseTime}\",\n"
+				+ "  \"labels\" : \"" + self + "/labels\",\n"
+				+ "  \"outgoing_relationships\" : \"" + self + "/relationships/out\",\n"
+				+ "  \"traverse\" : \"" + self + "/traverse/{returnType}\",\n"
+				+ "  \"all_typed_relationships\" : \"" + self + "/relationships/all/{-list|&|types}\",\n"
+				+ "  \"all_relationships\" : \"" + self + "/relationships/all\",\n"
+				+ "  \"property\" : \"" + self + "/properties/{key}\",\n"
+				+ "  \"self\" : \"" + self + "\",\n"
+				+ "  \"outgoing_typed_relationships\" : \"" + self + "/relationships/out/{-list|&|types}\",\n"
+				+ "  \"properties\" : \"" + self + "/properties\",\n"
+				+ "  \"incoming_relationships\" : \"" + self + "/relationships/in\",\n"
+				+ "  \"incoming_typed_relationships\" : \"" + self + "/relationships/in/{-list|&|types}\",\n"
+				+ "  \"create_relationship\" : \"" + self + "/relationships\",\n"
+				+ "  \"data\" : {\n"
+				+ "    \"prop\" : 42\n"
+				+ "  }\n"
+				+ "}";
+	}
+
+	private static String relationship(String self, String start) {
+		return "{\n"
+				+ "  \"extensions\" : { },\n"
+				+ "  \"start\" : \"" + start + "\",\n"
+				+ "  \"property\" : \"" + self + "/properties/{key}\",\n"
+				+ "  \"self\" : \"" + self + "\",\n"
+				+ "  \"properties\" : \"" + self + "/properties\",\n"
+				+ "  \"type\" : \"KNOWS\",\n"
+				+ "  \"end\" : \"" + start + "\",\n"
+				+ "  \"data\" : { }\n"
+				+ "}";
+	}
+}
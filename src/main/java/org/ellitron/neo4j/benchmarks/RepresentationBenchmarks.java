@@ -0,0 +1,280 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package org.ellitron.neo4j.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ellitron.benchmarks.GraphClient;
+import org.ellitron.benchmarks.GraphClientException;
+import org.ellitron.benchmarks.LatencyMeasurement;
+import org.ellitron.neo4j.extension.CrudResource;
+import org.json.JSONObject;
+
+/**
+ * RepresentationBenchmarks measures what the standard Neo4j REST
+ * representation costs, by running the same node and relationship CRUD
+ * operations through the standard REST API ({@link Neo4jRestClient}) and
+ * through the compact endpoints of the {@link CrudResource} unmanaged
+ * extension ({@link Neo4jExtensionClient}), one after the other on the same
+ * server. It then measures batch node creation through the extension, with
+ * the IDs returned as text and as binary.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class RepresentationBenchmarks {
+	private final Neo4jRestClient restClient;
+	private final Neo4jExtensionClient extensionClient;
+
+	/**
+	 * Length, in ms, of the intervals over which latency statistics are
+	 * reported.
+	 */
+	private final long reportingInterval;
+
+	/**
+	 * Finished measurements of each operation, for the REST API and for the
+	 * extension.
+	 */
+	private final List<LatencyMeasurement> restResults = new ArrayList<LatencyMeasurement>();
+	private final List<LatencyMeasurement> extensionResults = new ArrayList<LatencyMeasurement>();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param restClient
+	 *            Client for the standard REST API.
+	 * @param extensionClient
+	 *            Client for the extension, on the same server.
+	 * @param reportingInterval
+	 *            Length, in ms, of the intervals over which latency
+	 *            statistics are reported.
+	 */
+	public RepresentationBenchmarks(Neo4jRestClient restClient, Neo4jExtensionClient extensionClient, long reportingInterval) {
+		this.restClient = restClient;
+		this.extensionClient = extensionClient;
+		this.reportingInterval = reportingInterval;
+	}
+
+	/**
+	 * Runs the benchmarks and prints a side-by-side summary.
+	 * 
+	 * @param numSamples
+	 *            The number of nodes and relationships to create, read,
+	 *            update and delete through each API, and the number of nodes
+	 *            to batch create for each ID format.
+	 * @param batchSize
+	 *            The number of nodes created per batch request.
+	 */
+	public void run(final int numSamples, final int batchSize) {
+		restResults.clear();
+		extensionResults.clear();
+
+		runCrud(restClient, "rest", restResults, numSamples);
+		runCrud(extensionClient, "extension", extensionResults, numSamples);
+
+		System.out.println("Representation benchmark summary (latencies in ms):");
+		System.out.printf("%-16s %11s %11s %11s %11s %9s\n", "op", "rest p50", "rest p99", "ext p50", "ext p99", "p50 saved");
+		for (int i = 0; i < restResults.size(); i++) {
+			LatencyMeasurement rest = restResults.get(i);
+			LatencyMeasurement extension = extensionResults.get(i);
+			double restMedian = rest.getStatistics().getPercentile(50);
+			double extensionMedian = extension.getStatistics().getPercentile(50);
+			System.out.printf("%-16s %11.6f %11.6f %11.6f %11.6f %8.1f%%\n",
+					rest.getBenchmarkName().substring("rest".length()),
+					restMedian, rest.getStatistics().getPercentile(99),
+					extensionMedian, extension.getStatistics().getPercentile(99),
+					100*(restMedian - extensionMedian)/restMedian);
+		}
+
+		runBatches(numSamples, batchSize, false);
+		runBatches(numSamples, batchSize, true);
+		extensionClient.clearDatabase();
+	}
+
+	/**
+	 * Creates, reads and updates numSamples nodes, then creates, reads and
+	 * deletes a relationship between each pair of them, and finally deletes
+	 * the nodes, measuring the latency of each operation.
+	 */
+	private void runCrud(GraphClient client, String api, List<LatencyMeasurement> results, final int numSamples) {
+		System.out.println("Running representation benchmark... " + api);
+		String spec = "numSamples=" + numSamples;
+		client.clearDatabase();
+
+		long[] vIdArray = new long[numSamples];
+		String[] eIdArray = new String[numSamples/2];
+
+		LatencyMeasurement m = new LatencyMeasurement(api + "NodeCreate", spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			JSONObject properties = new JSONObject().put("name", "n" + i);
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				vIdArray[i] = client.createVertex(properties);
+			} catch (GraphClientException e) {
+				vIdArray[i] = -1;
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, results);
+
+		m = new LatencyMeasurement(api + "NodeRead", spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				client.readVertex(vIdArray[i]);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, results);
+
+		m = new LatencyMeasurement(api + "NodeUpdate", spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			JSONObject properties = new JSONObject().put("age", i);
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				client.updateVertex(vIdArray[i], properties);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, results);
+
+		m = new LatencyMeasurement(api + "EdgeCreate", spec, reportingInterval);
+		for (int i = 0; i < eIdArray.length; i++) {
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				eIdArray[i] = client.createEdge(vIdArray[2*i], vIdArray[2*i+1], "friend", new JSONObject());
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, results);
+
+		m = new LatencyMeasurement(api + "EdgeRead", spec, reportingInterval);
+		for (int i = 0; i < eIdArray.length; i++) {
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				client.readEdge(eIdArray[i]);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, results);
+
+		m = new LatencyMeasurement(api + "EdgeDelete", spec, reportingInterval);
+		for (int i = 0; i < eIdArray.length; i++) {
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				client.deleteEdge(eIdArray[i]);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, results);
+
+		m = new LatencyMeasurement(api + "NodeDelete", spec, reportingInterval);
+		for (int i = 0; i < numSamples; i++) {
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				client.deleteVertex(vIdArray[i]);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		finish(m, results);
+	}
+
+	/**
+	 * Creates numSamples nodes through the extension in batches of batchSize,
+	 * measuring the latency of each batch request.
+	 */
+	private void runBatches(final int numSamples, final int batchSize, boolean binaryIds) {
+		String ids = binaryIds ? "binary" : "text";
+		System.out.println("Running representation benchmark... extension batches, " + ids + " IDs");
+		extensionClient.setBinaryIds(binaryIds);
+
+		List<JSONObject> batch = new ArrayList<JSONObject>(batchSize);
+		for (int i = 0; i < batchSize; i++)
+			batch.add(new JSONObject().put("name", "n" + i));
+
+		LatencyMeasurement m = new LatencyMeasurement("extensionNodeBatchCreate", "numSamples=" + numSamples + "_batchSize=" + batchSize + "_ids=" + ids, reportingInterval);
+		for (int i = 0; i < numSamples; i += batchSize) {
+			long allocatedBefore = m.allocatedBytes();
+			long startTime = System.nanoTime();
+			boolean error = false;
+			try {
+				extensionClient.createVertices(batch);
+			} catch (GraphClientException e) {
+				error = true;
+			}
+			long endTime = System.nanoTime();
+			m.recordAllocation(allocatedBefore, m.allocatedBytes());
+			m.record(startTime, endTime, error);
+		}
+		m.finish();
+		extensionClient.setBinaryIds(false);
+
+		System.out.println("Timings statistics for extension batch create, " + ids + " IDs:");
+		m.printStatistics();
+		System.out.printf("per node mean: %11.6f ms\n", m.getStatistics().getMean()/batchSize);
+	}
+
+	/**
+	 * Ends a measurement, prints its statistics and keeps it for the summary.
+	 */
+	private static void finish(LatencyMeasurement m, List<LatencyMeasurement> results) {
+		m.finish();
+		System.out.println("Timings statistics for " + m.getBenchmarkName() + ":");
+		m.printStatistics();
+		results.add(m);
+	}
+}
@@ -0,0 +1,444 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package org.ellitron.neo4j.extension;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.TransactionFailureException;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+/**
+ * CrudResource is a Neo4j unmanaged server extension exposing compact CRUD
+ * endpoints, the kind of purpose-built API an application would deploy in
+ * production instead of the standard REST API. Where the standard API
+ * answers every request with the full hypermedia representation of a node
+ * or relationship (a dozen URIs besides the data), these endpoints return
+ * only what was asked for: the ID of a created element as plain text, and
+ * the properties of a read element as a flat JSON object.
+ * <p>
+ * Endpoints, relative to the mount point (e.g. "/crud"):
+ * <ul>
+ * <li>GET: the plain text "CrudResource", to check that the extension is
+ * deployed</li>
+ * <li>POST node: create a node with the JSON properties in the body (may be
+ * empty), returns its ID</li>
+ * <li>POST node/batch: create a node for each JSON object in the array in
+ * the body, in one transaction, returns their IDs</li>
+ * <li>GET, PUT, DELETE node/{id}: read properties, set properties, delete</li>
+ * <li>GET node/{id}/neighbors: properties of the adjacent nodes, as a JSON
+ * array</li>
+ * <li>POST relationship/{from}/{to}/{type}: create a relationship with the
+ * JSON properties in the body (may be empty), returns its ID</li>
+ * <li>POST relationship/batch: create a relationship for each "from to type"
+ * line in the plain text body, in one transaction, returns their IDs</li>
+ * <li>GET, PUT, DELETE relationship/{id}: read properties, set properties,
+ * delete</li>
+ * <li>DELETE graph: delete every relationship and node</li>
+ * </ul>
+ * Setting properties leaves the element's other properties unchanged, and a
+ * null value removes a property, as with {@code Neo4jRestClient}.
+ * <p>
+ * Batches of IDs are returned one per line as plain text, or as 8-byte big
+ * endian integers if the client accepts "application/octet-stream".
+ * <p>
+ * To deploy, copy the benchmarks jar and the org.json jar into the server's
+ * plugins directory and add to conf/neo4j-server.properties:
+ * 
+ * <pre>
+ * org.neo4j.server.thirdparty_jaxrs_classes=org.ellitron.neo4j.extension=/crud
+ * </pre>
+ * 
+ * @author Jonathan Ellithorpe
+ */
+@Path("/")
+public class CrudResource {
+	/**
+	 * Number of elements deleted per transaction when clearing the graph, to
+	 * bound the size of the transaction state.
+	 */
+	private static final int DELETE_BATCH_SIZE = 10000;
+
+	private final GraphDatabaseService database;
+
+	public CrudResource(@Context GraphDatabaseService database) {
+		this.database = database;
+	}
+
+	@GET
+	@Produces(MediaType.TEXT_PLAIN)
+	public Response ping() {
+		return Response.ok("CrudResource").build();
+	}
+
+	@POST
+	@Path("node")
+	@Produces(MediaType.TEXT_PLAIN)
+	public Response createNode(String body) {
+		Transaction tx = database.beginTx();
+		try {
+			Node node = database.createNode();
+			setProperties(node, parseObject(body));
+			tx.success();
+			return Response.status(Status.CREATED).entity(Long.toString(node.getId())).build();
+		} finally {
+			tx.close();
+		}
+	}
+
+	@POST
+	@Path("node/batch")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.TEXT_PLAIN)
+	public Response createNodesText(String body) {
+		return Response.status(Status.CREATED).entity(idsToText(createNodes(body))).build();
+	}
+
+	@POST
+	@Path("node/batch")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_OCTET_STREAM)
+	public Response createNodesBinary(String body) {
+		return Response.status(Status.CREATED).entity(idsToBytes(createNodes(body))).build();
+	}
+
+	private long[] createNodes(String body) {
+		JSONArray array = new JSONArray(body);
+		long[] ids = new long[array.length()];
+		Transaction tx = database.beginTx();
+		try {
+			for (int i = 0; i < array.length(); i++) {
+				Node node = database.createNode();
+				setProperties(node, array.getJSONObject(i));
+				ids[i] = node.getId();
+			}
+			tx.success();
+		} finally {
+			tx.close();
+		}
+		return ids;
+	}
+
+	@GET
+	@Path("node/{id}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response readNode(@PathParam("id") long id) {
+		Transaction tx = database.beginTx();
+		try {
+			String properties = getProperties(database.getNodeById(id)).toString();
+			tx.success();
+			return Response.ok(properties).build();
+		} catch (NotFoundException e) {
+			return notFound("node", id);
+		} finally {
+			tx.close();
+		}
+	}
+
+	@PUT
+	@Path("node/{id}")
+	@Consumes(MediaType.APPLICATION_JSON)
+	public Response updateNode(@PathParam("id") long id, String body) {
+		Transaction tx = database.beginTx();
+		try {
+			setProperties(database.getNodeById(id), parseObject(body));
+			tx.success();
+			return Response.noContent().build();
+		} catch (NotFoundException e) {
+			return notFound("node", id);
+		} finally {
+			tx.close();
+		}
+	}
+
+	@DELETE
+	@Path("node/{id}")
+	public Response deleteNode(@PathParam("id") long id) {
+		try {
+			Transaction tx = database.beginTx();
+			try {
+				database.getNodeById(id).delete();
+				tx.success();
+			} finally {
+				tx.close();
+			}
+		} catch (NotFoundException e) {
+			return notFound("node", id);
+		} catch (TransactionFailureException e) {
+			// The node still has relationships.
+			return Response.status(Status.CONFLICT).entity("node " + id + " still has relationships").type(MediaType.TEXT_PLAIN).build();
+		}
+		return Response.noContent().build();
+	}
+
+	@GET
+	@Path("node/{id}/neighbors")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response readNeighbors(@PathParam("id") long id) {
+		Transaction tx = database.beginTx();
+		try {
+			Node node = database.getNodeById(id);
+			JSONArray neighbors = new JSONArray();
+			for (Relationship relationship : node.getRelationships(Direction.BOTH))
+				neighbors.put(getProperties(relationship.getOtherNode(node)));
+			tx.success();
+			return Response.ok(neighbors.toString()).build();
+		} catch (NotFoundException e) {
+			return notFound("node", id);
+		} finally {
+			tx.close();
+		}
+	}
+
+	@POST
+	@Path("relationship/{from}/{to}/{type}")
+	@Produces(MediaType.TEXT_PLAIN)
+	public Response createRelationship(@PathParam("from") long from, @PathParam("to") long to, @PathParam("type") String type, String body) {
+		Transaction tx = database.beginTx();
+		try {
+			Relationship relationship = database.getNodeById(from).createRelationshipTo(database.getNodeById(to), DynamicRelationshipType.withName(type));
+			setProperties(relationship, parseObject(body));
+			tx.success();
+			return Response.status(Status.CREATED).entity(Long.toString(relationship.getId())).build();
+		} catch (NotFoundException e) {
+			return Response.status(Status.NOT_FOUND).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build();
+		} finally {
+			tx.close();
+		}
+	}
+
+	@POST
+	@Path("relationship/batch")
+	@Consumes(MediaType.TEXT_PLAIN)
+	@Produces(MediaType.TEXT_PLAIN)
+	public Response createRelationshipsText(String body) {
+		return Response.status(Status.CREATED).entity(idsToText(createRelationships(body))).build();
+	}
+
+	@POST
+	@Path("relationship/batch")
+	@Consumes(MediaType.TEXT_PLAIN)
+	@Produces(MediaType.APPLICATION_OCTET_STREAM)
+	public Response createRelationshipsBinary(String body) {
+		return Response.status(Status.CREATED).entity(idsToBytes(createRelationships(body))).build();
+	}
+
+	private long[] createRelationships(String body) {
+		String[] lines = body.trim().split("\n");
+		long[] ids = new long[lines.length];
+		Transaction tx = database.beginTx();
+		try {
+			for (int i = 0; i < lines.length; i++) {
+				String[] fields = lines[i].trim().split(" ");
+				Node from = database.getNodeById(Long.parseLong(fields[0]));
+				Node to = database.getNodeById(Long.parseLong(fields[1]));
+				ids[i] = from.createRelationshipTo(to, DynamicRelationshipType.withName(fields[2])).getId();
+			}
+			tx.success();
+		} finally {
+			tx.close();
+		}
+		return ids;
+	}
+
+	@GET
+	@Path("relationship/{id}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response readRelationship(@PathParam("id") long id) {
+		Transaction tx = database.beginTx();
+		try {
+			String properties = getProperties(database.getRelationshipById(id)).toString();
+			tx.success();
+			return Response.ok(properties).build();
+		} catch (NotFoundException e) {
+			return notFound("relationship", id);
+		} finally {
+			tx.close();
+		}
+	}
+
+	@PUT
+	@Path("relationship/{id}")
+	@Consumes(MediaType.APPLICATION_JSON)
+	public Response updateRelationship(@PathParam("id") long id, String body) {
+		Transaction tx = database.beginTx();
+		try {
+			setProperties(database.getRelationshipById(id), parseObject(body));
+			tx.success();
+			return Response.noContent().build();
+		} catch (NotFoundException e) {
+			return notFound("relationship", id);
+		} finally {
+			tx.close();
+		}
+	}
+
+	@DELETE
+	@Path("relationship/{id}")
+	public Response deleteRelationship(@PathParam("id") long id) {
+		Transaction tx = database.beginTx();
+		try {
+			database.getRelationshipById(id).delete();
+			tx.success();
+			return Response.noContent().build();
+		} catch (NotFoundException e) {
+			return notFound("relationship", id);
+		} finally {
+			tx.close();
+		}
+	}
+
+	@DELETE
+	@Path("graph")
+	public Response clearGraph() {
+		while (deleteSome(true))
+			;
+		while (deleteSome(false))
+			;
+		return Response.noContent().build();
+	}
+
+	/**
+	 * Deletes up to {@link #DELETE_BATCH_SIZE} relationships or nodes in one
+	 * transaction.
+	 * 
+	 * @return Whether anything was deleted.
+	 */
+	private boolean deleteSome(boolean relationships) {
+		GlobalGraphOperations operations = GlobalGraphOperations.at(database);
+		int count = 0;
+		Transaction tx = database.beginTx();
+		try {
+			Iterator<? extends PropertyContainer> it = relationships ? operations.getAllRelationships().iterator() : operations.getAllNodes().iterator();
+			while (count < DELETE_BATCH_SIZE && it.hasNext()) {
+				PropertyContainer element = it.next();
+				if (relationships)
+					((Relationship) element).delete();
+				else
+					((Node) element).delete();
+				count++;
+			}
+			tx.success();
+		} finally {
+			tx.close();
+		}
+		return count > 0;
+	}
+
+	private static Response notFound(String element, long id) {
+		return Response.status(Status.NOT_FOUND).entity(element + " " + id + " not found").type(MediaType.TEXT_PLAIN).build();
+	}
+
+	/**
+	 * Parses a request body holding a JSON object of properties. An empty
+	 * body means no properties.
+	 */
+	private static JSONObject parseObject(String body) {
+		if (body == null || body.trim().isEmpty())
+			return new JSONObject();
+		return new JSONObject(body);
+	}
+
+	/**
+	 * Sets properties on an element. A null value removes the property.
+	 * Arrays are stored as arrays of strings, longs, doubles or booleans,
+	 * depending on their first element.
+	 */
+	private static void setProperties(PropertyContainer element, JSONObject properties) {
+		Iterator<?> keys = properties.keys();
+		while (keys.hasNext()) {
+			String key = (String) keys.next();
+			Object value = properties.get(key);
+			if (value == JSONObject.NULL)
+				element.removeProperty(key);
+			else if (value instanceof JSONArray)
+				element.setProperty(key, toArray((JSONArray) value));
+			else if (value instanceof JSONObject)
+				throw new JSONException("nested objects are not valid property values: " + key);
+			else
+				element.setProperty(key, value);
+		}
+	}
+
+	private static Object toArray(JSONArray array) {
+		Object first = array.length() == 0 ? "" : array.get(0);
+		if (first instanceof Boolean) {
+			boolean[] values = new boolean[array.length()];
+			for (int i = 0; i < values.length; i++)
+				values[i] = array.getBoolean(i);
+			return values;
+		} else if (first instanceof Integer || first instanceof Long) {
+			long[] values = new long[array.length()];
+			for (int i = 0; i < values.length; i++)
+				values[i] = array.getLong(i);
+			return values;
+		} else if (first instanceof Number) {
+			double[] values = new double[array.length()];
+			for (int i = 0; i < values.length; i++)
+				values[i] = array.getDouble(i);
+			return values;
+		} else {
+			String[] values = new String[array.length()];
+			for (int i = 0; i < values.length; i++)
+				values[i] = array.getString(i);
+			return values;
+		}
+	}
+
+	private static JSONObject getProperties(PropertyContainer element) {
+		JSONObject properties = new JSONObject();
+		for (String key : element.getPropertyKeys())
+			properties.put(key, JSONObject.wrap(element.getProperty(key)));
+		return properties;
+	}
+
+	private static String idsToText(long[] ids) {
+		StringBuilder sb = new StringBuilder(ids.length*8);
+		for (long id : ids)
+			sb.append(id).append('\n');
+		return sb.toString();
+	}
+
+	private static byte[] idsToBytes(long[] ids) {
+		ByteBuffer buffer = ByteBuffer.allocate(ids.length*8);
+		for (long id : ids)
+			buffer.putLong(id);
+		return buffer.array();
+	}
+}
@@ -15,15 +15,38 @@
 
 package org.ellitron.titandb.benchmarks;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.ws.rs.core.MediaType;
 
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.ellitron.benchmarks.AdaptiveSampler;
+import org.ellitron.benchmarks.BinaryLatencyWriter;
+import org.ellitron.benchmarks.CacheBenchmarks;
+import org.ellitron.benchmarks.CachingGraphClient;
+import org.ellitron.benchmarks.CoalescingBenchmarks;
+import org.ellitron.benchmarks.ColdStartBenchmarks;
+import org.ellitron.benchmarks.ContentionBenchmarks;
+import org.ellitron.benchmarks.ElementResources;
+import org.ellitron.benchmarks.GraphClient;
+import org.ellitron.benchmarks.JvmMonitor;
+import org.ellitron.benchmarks.LatencyFileConverter;
+import org.ellitron.benchmarks.LatencyMeasurement;
+import org.ellitron.benchmarks.PayloadBenchmarks;
+import org.ellitron.benchmarks.RequestPhases;
+import org.ellitron.benchmarks.ResponseConsumption;
+import org.ellitron.benchmarks.ReportGenerator;
+import org.ellitron.benchmarks.RestartableDatabase;
+import org.ellitron.benchmarks.RetryFilter;
+import org.ellitron.benchmarks.RunEnvironment;
+import org.ellitron.benchmarks.ScalingBenchmarks;
+import org.ellitron.benchmarks.ServerMetrics;
+import org.ellitron.benchmarks.SessionBenchmarks;
+import org.ellitron.benchmarks.SimulatedUserBenchmarks;
+import org.ellitron.benchmarks.StatusClass;
+import org.ellitron.benchmarks.TimedHttpURLConnection;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -42,6 +65,88 @@ public class HttpClientBenchmarks {
 	 * Stores the root URI for all requests to the database.
 	 */
 	private String server_root_uri;
+	
+	/**
+	 * How long to wait, in ms, for a newly created index to be in place.
+	 */
+	private static final long INDEX_ONLINE_TIMEOUT = 10*60*1000;
+	
+	/**
+	 * How often, in ms, to poll the server for the indices in place.
+	 */
+	private static final long INDEX_POLL_INTERVAL = 10;
+	
+	/**
+	 * Length, in milliseconds, of the intervals over which latency statistics
+	 * are reported while a benchmark is running.
+	 */
+	private long reportingInterval = 1000;
+	
+	/**
+	 * The measurement in progress.
+	 */
+	private LatencyMeasurement measurement;
+	
+	/**
+	 * How much of each response is consumed before a request is considered
+	 * complete.
+	 */
+	private ResponseConsumption responseConsumption = ResponseConsumption.HEADERS;
+	
+	/**
+	 * Retries requests failing with transient errors, or null if retries are
+	 * disabled (the default).
+	 */
+	private RetryFilter retryFilter = null;
+	
+	/**
+	 * Error rate above which a measurement is flagged as unreliable.
+	 */
+	private double errorRateThreshold = LatencyMeasurement.DEFAULT_ERROR_RATE_THRESHOLD;
+	
+	/**
+	 * Decides when a measurement has enough samples, or null to always take
+	 * the number of samples asked for (the default).
+	 */
+	private AdaptiveSampler adaptiveSampler = null;
+	
+	/**
+	 * Capacity and time to live, in ms, of the read-through cache put in
+	 * front of the backend independent benchmarks, or 0 for no cache (the
+	 * default).
+	 */
+	private int clientCacheCapacity = 0;
+	private long clientCacheTtl = 0;
+	
+	/**
+	 * Monitor of this JVM's allocation and GC pauses, or null if disabled
+	 * (the default).
+	 */
+	private JvmMonitor jvmMonitor = null;
+	private boolean excludeGcTainted = false;
+	
+	/**
+	 * Server metrics polled during every measurement, or null if disabled.
+	 */
+	private ServerMetrics serverMetrics = null;
+	private long serverMetricsInterval = 1000;
+	
+	/**
+	 * Summaries of every benchmark run so far, by benchmark name.
+	 */
+	private final Map<String, LatencyMeasurement.Summary> results = new LinkedHashMap<String, LatencyMeasurement.Summary>();
+	
+	/**
+	 * Client overhead of each benchmark, measured by {@link #calibrate(int)},
+	 * by benchmark name.
+	 */
+	private final Map<String, LatencyMeasurement.Summary> clientOverhead = new LinkedHashMap<String, LatencyMeasurement.Summary>();
+	
+	/**
+	 * Whether this instance is running against a stand-in server to measure
+	 * client overhead.
+	 */
+	private boolean calibrating = false;
 
 	/**
 	 * Constructor.
@@ -54,6 +159,201 @@ public class HttpClientBenchmarks {
 		this.server_root_uri = server_root_uri;
 	}
 	
+	/**
+	 * Sets the length of the intervals over which latency statistics are
+	 * reported while a benchmark is running.
+	 * 
+	 * @param reportingInterval
+	 *            Interval length in milliseconds.
+	 */
+	public void setReportingInterval(long reportingInterval) {
+		this.reportingInterval = reportingInterval;
+	}
+	
+	/**
+	 * Sets how much of each response is consumed before a request is
+	 * considered complete. By default latency is measured up to the arrival
+	 * of the response headers; use {@link ResponseConsumption#BODY} or
+	 * {@link ResponseConsumption#PARSE} to include reading (and parsing) the
+	 * response body.
+	 * 
+	 * @param responseConsumption
+	 *            The mode to use for subsequent benchmarks.
+	 */
+	public void setResponseConsumption(ResponseConsumption responseConsumption) {
+		this.responseConsumption = responseConsumption;
+	}
+	
+	/**
+	 * Enables bounded retries, with randomized exponential backoff, of
+	 * requests that fail with a transient error (see {@link StatusClass}).
+	 * The latency recorded for a request includes all of its attempts.
+	 * 
+	 * @param maxRetries
+	 *            Maximum number of retries per request, or 0 to disable
+	 *            retries.
+	 * @param initialBackoff
+	 *            Upper bound, in ms, of the sleep before the first retry.
+	 */
+	public void setRetries(int maxRetries, long initialBackoff) {
+		retryFilter = maxRetries > 0 ? new RetryFilter(maxRetries, initialBackoff) : null;
+	}
+	
+	/**
+	 * Sets the error rate above which a benchmark is flagged as unreliable.
+	 * 
+	 * @param errorRateThreshold
+	 *            Fraction of failed requests, between 0 and 1.
+	 */
+	public void setErrorRateThreshold(double errorRateThreshold) {
+		this.errorRateThreshold = errorRateThreshold;
+	}
+	
+	/**
+	 * Enables adaptive sampling in benchmarks 01 to 12: each measurement stops
+	 * as soon as the confidence interval on the target percentile is narrow
+	 * enough, or its time budget runs out, and the number of samples given to
+	 * a benchmark becomes an upper bound. Percentiles are then reported with
+	 * their confidence intervals.
+	 * 
+	 * @param percentile
+	 *            The target percentile, e.g. 99.
+	 * @param relativeWidth
+	 *            Width of the confidence interval, as a fraction of the
+	 *            percentile, at which to stop, e.g. 0.05.
+	 * @param timeBudget
+	 *            Time, in ms, after which a measurement stops regardless.
+	 */
+	public void setAdaptiveSampling(double percentile, double relativeWidth, long timeBudget) {
+		adaptiveSampler = new AdaptiveSampler(percentile, relativeWidth, timeBudget);
+	}
+	
+	/**
+	 * Disables adaptive sampling, so benchmarks take exactly the number of
+	 * samples asked for.
+	 */
+	public void setFixedSampling() {
+		adaptiveSampler = null;
+	}
+	
+	/**
+	 * Puts a {@link CachingGraphClient} in front of the backend independent
+	 * benchmarks (run14 and run17 to run19), so that they measure the
+	 * database as seen by an application server with a read-through cache.
+	 * 
+	 * @param capacity
+	 *            Maximum number of vertices, and of edges, to cache, or 0 to
+	 *            disable the cache.
+	 * @param ttl
+	 *            Time, in ms, after which a cached entry expires.
+	 */
+	public void setClientCache(int capacity, long ttl) {
+		this.clientCacheCapacity = capacity;
+		this.clientCacheTtl = ttl;
+	}
+	
+	/**
+	 * Enables or disables instrumentation of this (the client) JVM. When
+	 * enabled, every measurement reports the bytes allocated by the client
+	 * per operation and the number of samples that overlapped a client GC
+	 * pause, which points at latency spikes that are the client's own doing.
+	 * See {@link JvmMonitor}.
+	 * 
+	 * @param enabled
+	 *            Whether to instrument the JVM.
+	 * @param excludeGcTainted
+	 *            Whether samples that overlapped a GC pause are left out of
+	 *            the reported statistics, rather than only counted.
+	 */
+	public void setJvmMonitoring(boolean enabled, boolean excludeGcTainted) {
+		this.excludeGcTainted = excludeGcTainted;
+		if (jvmMonitor != null) {
+			jvmMonitor.stop();
+			jvmMonitor = null;
+		}
+		if (enabled) {
+			jvmMonitor = new JvmMonitor();
+			jvmMonitor.start();
+		}
+		LatencyMeasurement.setJvmMonitor(jvmMonitor, excludeGcTainted);
+	}
+	
+	/**
+	 * Enables or disables polling of server side metrics during every
+	 * measurement. When enabled, each measurement polls the server's status endpoint and JVM (GC, heap), see
+	 * {@link RexsterServerMetrics}. They are written to a ".metrics" file
+	 * next to the interval statistics and summarized after each measurement,
+	 * so that latency can be read against what the server was doing.
+	 * 
+	 * @param enabled
+	 *            Whether to poll server metrics.
+	 * @param pollInterval
+	 *            Time between polls in ms.
+	 */
+	public void setServerMetrics(boolean enabled, long pollInterval) {
+		serverMetrics = enabled ? new RexsterServerMetrics( server_root_uri ) : null;
+		serverMetricsInterval = pollInterval;
+		LatencyMeasurement.setServerMetrics(serverMetrics, pollInterval);
+	}
+	
+	/**
+	 * Returns a new client for the backend independent benchmarks, behind a
+	 * read-through cache if one was set with {@link #setClientCache(int, long)}.
+	 */
+	private GraphClient graphClient() {
+		GraphClient client = new RexsterClient(server_root_uri);
+		if (clientCacheCapacity > 0)
+			client = new CachingGraphClient(client, clientCacheCapacity, clientCacheTtl);
+		return client;
+	}
+	
+	/**
+	 * Creates a Jersey client, with the retry filter installed if retries
+	 * are enabled.
+	 */
+	private Client createClient() {
+		Client client = Client.create();
+		if (retryFilter != null)
+			client.addFilter(retryFilter);
+		return client;
+	}
+	
+	/**
+	 * Writes the environment of this run (JVM, heap, machine, server version
+	 * and harness settings) to a file next to the results, for
+	 * {@link ReportGenerator}. Call before running any benchmarks.
+	 */
+	public void writeEnvironment() {
+		RunEnvironment environment = new RunEnvironment("titandb");
+		environment.put("server.uri", server_root_uri);
+		try {
+			ClientResponse response = createClient()
+					.resource( server_root_uri )
+					.accept( MediaType.APPLICATION_JSON )
+					.get( ClientResponse.class );
+			JSONObject root = new JSONObject( response.getEntity( String.class ) );
+			environment.put("server.version", root.optString("version", null));
+			environment.put("server.graph", root.optString("graph", null));
+			response.close();
+		} catch (RuntimeException e) {
+			// Server unreachable or not answering with JSON, leave it unknown.
+		}
+		environment.put("harness.reportingInterval", reportingInterval + " ms");
+		environment.put("harness.responseConsumption", responseConsumption.name().toLowerCase());
+		environment.put("harness.retries", retryFilter == null ? "disabled" : "enabled");
+		environment.put("harness.errorRateThreshold", Double.toString(errorRateThreshold));
+		environment.put("harness.adaptiveSampling", adaptiveSampler == null ? "disabled" : "enabled");
+		environment.put("harness.jvmMonitoring", jvmMonitor == null ? "disabled" : "enabled");
+		environment.put("harness.serverMetrics", serverMetrics == null ? "disabled" : "every " + serverMetricsInterval + " ms");
+		environment.put("harness.clientCache", clientCacheCapacity == 0 ? "disabled" : clientCacheCapacity + " entries, ttl " + clientCacheTtl + " ms");
+		
+		try {
+			System.out.println("Wrote environment to " + environment.write());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * Clears the database of all edges and nodes.
 	 */
@@ -61,7 +361,7 @@ public class HttpClientBenchmarks {
 		System.out.print("Clearing the database... ");
 		
 		// Delete all edges
-		WebResource resource = Client.create()
+		WebResource resource = createClient()
 				.resource( server_root_uri + "tp/gremlin?script=g.E.remove()" );
 
 		ClientResponse response = resource.get( ClientResponse.class );
@@ -69,7 +369,7 @@ public class HttpClientBenchmarks {
 		response.close();
 				
 		// Delete all vertices
-		resource = Client.create()
+		resource = createClient()
 				.resource( server_root_uri + "tp/gremlin?script=g.V.remove()" );
 
 		response = resource.get( ClientResponse.class );
@@ -80,34 +380,140 @@ public class HttpClientBenchmarks {
 	}
 	
 	/**
-	 * Dumps latency measurements to a file.
+	 * Dumps latency measurements for the measurement in progress to a file.
+	 * Samples have been streamed to a {@link BinaryLatencyWriter} as they were
+	 * recorded; this hands off whatever remains and lets the writer finish on
+	 * its own thread, so the next benchmark can start immediately. Use
+	 * {@link LatencyFileConverter} to convert the output to text or CSV.
+	 */
+	public void dumpLatencyMeasurements() {
+		System.out.print("Dumping latency measurements... ");
+		
+		measurement.printErrorStatistics();
+		if (adaptiveSampler != null)
+			adaptiveSampler.printStatistics(measurement.getStatistics());
+		if (retryFilter != null)
+			System.out.print("retries: " + retryFilter.getAndResetRetries() + " ");
+		measurement.finish();
+		measurement.printJvmStatistics();
+		measurement.printServerStatistics();
+		results.put(measurement.getBenchmarkName(), measurement.summarize());
+		measurement = null;
+		
+		System.out.println("done.");
+	}
+	
+	/**
+	 * Starts a new latency measurement, which streams raw samples and
+	 * interval statistics (throughput, p50, p99, max, errors) to files in the
+	 * background until the measurements are dumped.
 	 * 
 	 * @param benchmarkName
 	 *            Name to give the benchmark.
 	 * @param benchmarkSpec
 	 *            Description of benchmark parameters to include in output
 	 *            filename.
-	 * @param timings
-	 *            The timing data.
 	 */
-	public void dumpLatencyMeasurements(String benchmarkName, String benchmarkSpec, double timings[]) {
-		System.out.print("Dumping latency measurements... ");
+	private void startMeasurement(String benchmarkName, String benchmarkSpec) {
+		if (responseConsumption != ResponseConsumption.HEADERS)
+			benchmarkSpec += "_response=" + responseConsumption.name().toLowerCase();
+		if (calibrating)
+			benchmarkSpec += "_calibration";
+		measurement = new LatencyMeasurement(benchmarkName, benchmarkSpec, reportingInterval);
+		measurement.setErrorRateThreshold(errorRateThreshold);
+		if (retryFilter != null)
+			retryFilter.getAndResetRetries();
+		if (adaptiveSampler != null)
+			adaptiveSampler.start();
+	}
+	
+	/**
+	 * Returns whether the measurement in progress should take another
+	 * sample, which is always the case unless adaptive sampling is enabled.
+	 */
+	private boolean needsMoreSamples() {
+		return adaptiveSampler == null || !adaptiveSampler.isDone(measurement.getStatistics());
+	}
+	
+	/**
+	 * Records a single latency sample for the measurement in progress,
+	 * classifying the response by its status so that failures are kept
+	 * apart from successes.
+	 * 
+	 * @param startTime
+	 *            Value of System.nanoTime() before the request was issued.
+	 * @param endTime
+	 *            Value of System.nanoTime() after the response was received.
+	 * @param response
+	 *            The response received.
+	 */
+	private void recordSample(long startTime, long endTime, ClientResponse response) {
+		measurement.record(startTime, endTime, response.getStatus(), StatusClass.classify(response));
+	}
+	
+	/**
+	 * Runs a Gremlin script on the server.
+	 * 
+	 * @param script
+	 *            The Gremlin script.
+	 * @param params
+	 *            Script parameters, or null if there are none.
+	 * @return The response, which the caller must close.
+	 */
+	private ClientResponse postGremlin(String script, JSONObject params) {
+		JSONObject request = new JSONObject();
+		request.put("script", script);
+		if (params != null)
+			request.put("params", params);
+		
+		return createClient()
+				.resource( server_root_uri + "tp/gremlin" )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( request.toString() )
+				.post( ClientResponse.class );
+	}
+	
+	/**
+	 * Waits until the vertex key index on the given key is listed by the
+	 * server, polling rather than assuming it is in place as soon as the
+	 * request to create it returns.
+	 * 
+	 * @param key
+	 *            The indexed property key.
+	 * @param timeout
+	 *            How long to wait, in ms, before giving up.
+	 * @return The time waited, in ms, or -1 if the index did not appear
+	 *         within the timeout.
+	 */
+	private double awaitKeyIndex(String key, long timeout) {
+		WebResource resource = createClient()
+				.resource( server_root_uri + "keyindices/vertex" );
 		
-		try {
-			String dateString = new SimpleDateFormat("yyyyMMdd'_'HHmmss").format(new Date());
-			String filename = dateString + "_" + benchmarkName + "_" + benchmarkSpec + ".out";
-			BufferedWriter br = new BufferedWriter(new FileWriter(filename));
-			for(int i = 0; i<timings.length; i++) {
-				br.write(String.format("%.6f\n", timings[i]));
+		long startTime = System.nanoTime();
+		while (true) {
+			ClientResponse response = resource.get( ClientResponse.class );
+			JSONObject queryRetVal = new JSONObject( response.getEntity( String.class ) );
+			response.close();
+			
+			JSONArray keys = queryRetVal.optJSONArray( "results" );
+			if (keys != null) {
+				for (int i = 0; i < keys.length(); i++)
+					if (keys.getString(i).equals(key))
+						return (System.nanoTime() - startTime)/1e6;
+			}
+			
+			if ((System.nanoTime() - startTime)/1e6 > timeout) {
+				System.out.println("Timed out waiting for key index on " + key + ".");
+				return -1;
+			}
+			
+			try {
+				Thread.sleep(INDEX_POLL_INTERVAL);
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return -1;
 			}
-			br.flush();
-			br.close();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
 		}
-		
-		System.out.println("done.");
 	}
 	
 	/**
@@ -120,7 +526,7 @@ public class HttpClientBenchmarks {
 		System.out.print("Warming up the database... ");
 		
 		// Create a vertex
-		WebResource resource = Client.create()
+		WebResource resource = createClient()
 				.resource( server_root_uri + "vertices/" );
 
 		ClientResponse response = resource.post( ClientResponse.class );
@@ -133,19 +539,24 @@ public class HttpClientBenchmarks {
 		response.close();
 
 		// Read the vertex
-		resource = Client.create()
+		resource = createClient()
 				.resource( server_root_uri + "vertices/" + vId );
 
 		double[] timings = new double[numReads];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("warmUpDatabase", "numSamples=" + numReads);
 
 		for(int i = 0; i < numReads; i++) {
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.get( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 			response.close();
 		}
@@ -155,7 +566,7 @@ public class HttpClientBenchmarks {
 		System.out.println("Timings statistics:");
 		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numReads, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("warmUpDatabase", "numSamples=" + numReads, timings);
+		dumpLatencyMeasurements();
 		
 		clearDatabase();
 	}
@@ -172,8 +583,9 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 
 		// Create numSamples vertices
-		WebResource resource = Client.create()
-				.resource( server_root_uri + "vertices/" );
+		Client client = createClient();
+		ElementResources vertices = new ElementResources( client, server_root_uri + "vertices" );
+		WebResource resource = vertices.getBase();
 
 		long[] vIdArray = new long[numSamples];
 
@@ -191,25 +603,29 @@ public class HttpClientBenchmarks {
 		// Read the vertices
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark01", "numSamples=" + numSamples);
 
-		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( server_root_uri + "vertices/" + vIdArray[i] );
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			resource = vertices.get( vIdArray[i] );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource.get( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 			response.close();
 		}
 
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark01", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 
 		clearDatabase();
 	}
@@ -226,8 +642,10 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 
 		// Create 2*numSamples vertices
-		WebResource resource = Client.create()
-				.resource( server_root_uri + "vertices/" );
+		Client client = createClient();
+		ElementResources vertices = new ElementResources( client, server_root_uri + "vertices" );
+		ElementResources edges = new ElementResources( client, server_root_uri + "edges" );
+		WebResource resource = vertices.getBase();
 
 		long[] vIdArray = new long[2*numSamples];
 
@@ -246,8 +664,10 @@ public class HttpClientBenchmarks {
 		String[] eIdArray = new String[numSamples];
 
 		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( server_root_uri + "edges?_outV=" + vIdArray[i] + "&_label=friend&_inV=" + vIdArray[i+numSamples] );
+			resource = edges.getBase()
+					.queryParam( "_outV", Long.toString(vIdArray[i]) )
+					.queryParam( "_label", "friend" )
+					.queryParam( "_inV", Long.toString(vIdArray[i+numSamples]) );
 
 			ClientResponse response = resource.post( ClientResponse.class );
 
@@ -262,25 +682,29 @@ public class HttpClientBenchmarks {
 		// Read numSamples edges
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark02", "numSamples=" + numSamples);
 
-		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( server_root_uri + "edges/" + eIdArray[i] );
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			resource = edges.get( eIdArray[i] );
 
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource.get( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 			response.close();
 		}
 
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark02", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 
 		clearDatabase();
 	}
@@ -303,19 +727,24 @@ public class HttpClientBenchmarks {
 		System.out.println("Running Benchmark 05... Creating nodes");
 		System.out.println("\tnumSamples:\t" + numSamples);
 		
-		WebResource resource = Client.create()
+		WebResource resource = createClient()
 				.resource( server_root_uri + "vertices/" );
 		
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark05", "numSamples=" + numSamples);
 		
-		for(int i = 0; i < numSamples; i++) {
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 			
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 			
 //			String jsonString = response.getEntity( String.class );
 //			System.out.println(jsonString);
@@ -324,9 +753,9 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 		
-		dumpLatencyMeasurements("benchmark05", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		clearDatabase();
 	}
@@ -342,7 +771,7 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 		
 		// Create 2*numSamples vertices
-		WebResource resource = Client.create()
+		WebResource resource = createClient()
 				.resource( server_root_uri + "vertices/" );
 		
 		long[] vIdArray = new long[2*numSamples];
@@ -361,25 +790,30 @@ public class HttpClientBenchmarks {
 		// Create numSamples edges
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark06", "numSamples=" + numSamples);
 		
-		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			resource = createClient()
 					.resource( server_root_uri + "edges?_outV=" + vIdArray[i] + "&_label=friend&_inV=" + vIdArray[i+numSamples] );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 			
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 			
 			response.close();
 		}
 		
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 		
-		dumpLatencyMeasurements("benchmark06", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		clearDatabase();
 	}
@@ -397,8 +831,9 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 		
 		// First create numSamples nodes and collect their IDs
-		WebResource resource = Client.create()
-				.resource( server_root_uri + "vertices/" );
+		Client client = createClient();
+		ElementResources vertices = new ElementResources( client, server_root_uri + "vertices" );
+		WebResource resource = vertices.getBase();
 
 		long[] vIdArray = new long[numSamples];
 
@@ -416,43 +851,51 @@ public class HttpClientBenchmarks {
 		// Now create node properties.
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark07", "numSamples=" + numSamples);
 		
-		for(int i = 0; i < numSamples; i++ ) {
-			resource = Client.create()
-					.resource( server_root_uri + "vertices/" + vIdArray[i] + "?prop=42" );
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++ ) {
+			resource = vertices.get( vIdArray[i] ).queryParam( "prop", "42" );
 
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 			
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 			
 			response.close();
 		}
 		
 		System.out.println("Timings statistics for creating properties:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		final int numProperties = (int) sumStats.getN();
 
 		// Now update node properties.
-		for(int i = 0; i < numSamples; i++ ) {
-			resource = Client.create()
-					.resource( server_root_uri + "vertices/" + vIdArray[i] + "?prop=43" );
+		for(int i = 0; i < numProperties; i++ ) {
+			resource = vertices.get( vIdArray[i] ).queryParam( "prop", "43" );
 
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 			response.close();
 		}
 
 		System.out.println("Timings statistics for updating properties:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark07", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 
 		clearDatabase();
 	}
@@ -469,8 +912,10 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 		
 		// Create 2*numSamples vertices
-		WebResource resource = Client.create()
-				.resource( server_root_uri + "vertices/" );
+		Client client = createClient();
+		ElementResources vertices = new ElementResources( client, server_root_uri + "vertices" );
+		ElementResources edges = new ElementResources( client, server_root_uri + "edges" );
+		WebResource resource = vertices.getBase();
 
 		long[] vIdArray = new long[2*numSamples];
 
@@ -489,8 +934,10 @@ public class HttpClientBenchmarks {
 		String[] eIdArray = new String[numSamples];
 
 		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( server_root_uri + "edges?_outV=" + vIdArray[i] + "&_label=friend&_inV=" + vIdArray[i+numSamples] );
+			resource = edges.getBase()
+					.queryParam( "_outV", Long.toString(vIdArray[i]) )
+					.queryParam( "_label", "friend" )
+					.queryParam( "_inV", Long.toString(vIdArray[i+numSamples]) );
 
 			ClientResponse response = resource.post( ClientResponse.class );
 
@@ -505,43 +952,51 @@ public class HttpClientBenchmarks {
 		// Now create edge properties.
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark08", "numSamples=" + numSamples);
 		
-		for(int i = 0; i < numSamples; i++ ) {
-			resource = Client.create()
-					.resource( server_root_uri + "edges/" + eIdArray[i] + "?prop=42" );
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++ ) {
+			resource = edges.get( eIdArray[i] ).queryParam( "prop", "42" );
 
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 			
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 			
 			response.close();
 		}
 		
 		System.out.println("Timings statistics for creating properties:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		final int numProperties = (int) sumStats.getN();
 
 		// Now update node properties.
-		for(int i = 0; i < numSamples; i++ ) {
-			resource = Client.create()
-					.resource( server_root_uri + "edges/" + eIdArray[i] + "?prop=43" );
+		for(int i = 0; i < numProperties; i++ ) {
+			resource = edges.get( eIdArray[i] ).queryParam( "prop", "43" );
 
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 			response.close();
 		}
 
 		System.out.println("Timings statistics for updating properties:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark08", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 
 		clearDatabase();
 	}
@@ -558,8 +1013,9 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 		
 		// Create numSamples vertices
-		WebResource root_resource = Client.create()
-				.resource( server_root_uri + "vertices/" );
+		Client client = createClient();
+		ElementResources vertices = new ElementResources( client, server_root_uri + "vertices" );
+		WebResource root_resource = vertices.getBase();
 
 		long[] vIdArray = new long[numSamples];
 
@@ -577,24 +1033,29 @@ public class HttpClientBenchmarks {
 		// Delete numSamples vertices
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark09", "numSamples=" + numSamples);
 
-		for(int i = 0; i < numSamples; i++) {
-			WebResource resource = root_resource.path( Long.toString(vIdArray[i]) );
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			WebResource resource = vertices.get( vIdArray[i] );
 
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource.delete( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 			response.close();
 		}
 
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark09", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 
 		clearDatabase();
 	}
@@ -611,8 +1072,10 @@ public class HttpClientBenchmarks {
 		System.out.println("\tnumSamples:\t" + numSamples);
 		
 		// Create 2*numSamples vertices
-		WebResource resource = Client.create()
-				.resource( server_root_uri + "vertices/" );
+		Client client = createClient();
+		ElementResources vertices = new ElementResources( client, server_root_uri + "vertices" );
+		ElementResources edges = new ElementResources( client, server_root_uri + "edges" );
+		WebResource resource = vertices.getBase();
 
 		long[] vIdArray = new long[2*numSamples];
 
@@ -631,8 +1094,10 @@ public class HttpClientBenchmarks {
 		String[] eIdArray = new String[numSamples];
 		
 		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( server_root_uri + "edges?_outV=" + vIdArray[i] + "&_label=friend&_inV=" + vIdArray[i+numSamples] );
+			resource = edges.getBase()
+					.queryParam( "_outV", Long.toString(vIdArray[i]) )
+					.queryParam( "_label", "friend" )
+					.queryParam( "_inV", Long.toString(vIdArray[i+numSamples]) );
 
 			ClientResponse response = resource.post( ClientResponse.class );
 
@@ -647,25 +1112,29 @@ public class HttpClientBenchmarks {
 		// Delete numSamples edges
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark10", "numSamples=" + numSamples);
 
-		for(int i = 0; i < numSamples; i++) {
-			resource = Client.create()
-					.resource( server_root_uri + "edges/" + eIdArray[i] );
+		for(int i = 0; i < numSamples && needsMoreSamples(); i++) {
+			resource = edges.get( eIdArray[i] );
 
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			ClientResponse response = resource.delete( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[i] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[i]);
+			recordSample(startTime, endTime, response);
 
 			response.close();
 		}
 		
 		System.out.println("Timings statistics:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark10", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 
 		clearDatabase();
 	}
@@ -690,20 +1159,25 @@ public class HttpClientBenchmarks {
 		// Create nodes in the index
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark11create", "numSamples=" + numSamples);
 		
 		// Collect IDs for later
 		long[] vIdArray = new long[numSamples];
 		
-		for(int id = 0; id<numSamples; id++) {
-			resource = Client.create()
+		for(int id = 0; id<numSamples && needsMoreSamples(); id++) {
+			resource = createClient()
 					.resource( server_root_uri + "vertices?name=" + id );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 			
 			String jsonString = response.getEntity( String.class );
 //			System.out.println("create response:\n" + jsonString);
@@ -715,23 +1189,29 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics for create node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		final int numCreated = (int) sumStats.getN();
 	
-		dumpLatencyMeasurements("benchmark11create", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Read nodes from the index
 		sumStats = new SummaryStatistics();
+		startMeasurement("benchmark11read", "numSamples=" + numSamples);
 		
-		for(int id = 0; id<numSamples; id++) {
-			resource = Client.create()
+		for(int id = 0; id<numCreated && needsMoreSamples(); id++) {
+			resource = createClient()
 					.resource( server_root_uri + "vertices?key=name&value=" + id );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.get( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 			
 //			String jsonString = response.getEntity(String.class);
 //			System.out.println("read response:\n" + jsonString);
@@ -740,23 +1220,28 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics for read node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark11read", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Update indexed property of the nodes
 		sumStats = new SummaryStatistics();
+		startMeasurement("benchmark11update", "numSamples=" + numSamples);
 		
-		for(int id = 0; id<numSamples; id++) {
-			resource = Client.create()
+		for(int id = 0; id<numCreated && needsMoreSamples(); id++) {
+			resource = createClient()
 					.resource( server_root_uri + "vertices/" + vIdArray[id] + "?name=" + id+numSamples );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 			
 //			String jsonString = response.getEntity(String.class);
 //			System.out.println("update response:\n" + jsonString);
@@ -765,23 +1250,28 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics for update node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark11update", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Delete nodes in the index
 		sumStats = new SummaryStatistics();
+		startMeasurement("benchmark11delete", "numSamples=" + numSamples);
 		
-		for(int id = 0; id<numSamples; id++) {
-			resource = Client.create()
+		for(int id = 0; id<numCreated && needsMoreSamples(); id++) {
+			resource = createClient()
 					.resource( server_root_uri + "vertices/" + vIdArray[id] );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.delete( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 			
 //			String jsonString = response.getEntity( String.class );
 //			System.out.println("delete response:\n" + jsonString);
@@ -790,9 +1280,9 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics for delete node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark11delete", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		clearDatabase();
 	}
@@ -815,28 +1305,36 @@ public class HttpClientBenchmarks {
 		ClientResponse response;
 		
 		// Create an index
-		resource = Client.create()
+		resource = createClient()
 				.resource( server_root_uri + "keyindices/vertex/name" );
 		response = resource.post( ClientResponse.class );
 		response.close();
 		
+		// Wait for the index to be in place.
+		awaitKeyIndex("name", INDEX_ONLINE_TIMEOUT);
+		
 		// Create nodes in the index
 		double[] timings = new double[numSamples];
 		SummaryStatistics sumStats = new SummaryStatistics();
+		startMeasurement("benchmark12create", "numSamples=" + numSamples);
 		
 		// Collect IDs for later
 		long[] vIdArray = new long[numSamples];
 		
-		for(int id = 0; id<numSamples; id++) {
-			resource = Client.create()
+		for(int id = 0; id<numSamples && needsMoreSamples(); id++) {
+			resource = createClient()
 					.resource( server_root_uri + "vertices?name=" + id );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 			
 			String jsonString = response.getEntity( String.class );
 //			System.out.println("create response:\n" + jsonString);
@@ -848,23 +1346,29 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics for create node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		final int numCreated = (int) sumStats.getN();
 	
-		dumpLatencyMeasurements("benchmark12create", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Read nodes from the index
 		sumStats = new SummaryStatistics();
+		startMeasurement("benchmark12read", "numSamples=" + numSamples);
 		
-		for(int id = 0; id<numSamples; id++) {
-			resource = Client.create()
+		for(int id = 0; id<numCreated && needsMoreSamples(); id++) {
+			resource = createClient()
 					.resource( server_root_uri + "vertices?key=name&value=" + id );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.get( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 			
 //			String jsonString = response.getEntity(String.class);
 //			System.out.println("read response:\n" + jsonString);
@@ -873,23 +1377,28 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics for read node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark12read", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Update indexed property of the nodes
 		sumStats = new SummaryStatistics();
+		startMeasurement("benchmark12update", "numSamples=" + numSamples);
 		
-		for(int id = 0; id<numSamples; id++) {
-			resource = Client.create()
+		for(int id = 0; id<numCreated && needsMoreSamples(); id++) {
+			resource = createClient()
 					.resource( server_root_uri + "vertices/" + vIdArray[id] + "?name=" + id+numSamples );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.post( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 			
 //			String jsonString = response.getEntity(String.class);
 //			System.out.println("update response:\n" + jsonString);
@@ -898,23 +1407,28 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics for update node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
 
-		dumpLatencyMeasurements("benchmark12update", "numSamples=" + numSamples, timings);
+		dumpLatencyMeasurements();
 		
 		// Delete nodes in the index
 		sumStats = new SummaryStatistics();
+		startMeasurement("benchmark12delete", "numSamples=" + numSamples);
 		
-		for(int id = 0; id<numSamples; id++) {
-			resource = Client.create()
+		for(int id = 0; id<numCreated && needsMoreSamples(); id++) {
+			resource = createClient()
 					.resource( server_root_uri + "vertices/" + vIdArray[id] );
 			
+			long allocatedBefore = measurement.allocatedBytes();
 			long startTime = System.nanoTime();
 			response = resource.delete( ClientResponse.class );
+			responseConsumption.consume(response);
 			long endTime = System.nanoTime();
+			measurement.recordAllocation(allocatedBefore, measurement.allocatedBytes());
 
 			timings[id] = (endTime - startTime)/1e6; // Timings recorded in ms
 			sumStats.addValue(timings[id]);
+			recordSample(startTime, endTime, response);
 			
 //			String jsonString = response.getEntity( String.class );
 //			System.out.println("delete response:\n" + jsonString);
@@ -923,13 +1437,493 @@ public class HttpClientBenchmarks {
 		}
 		
 		System.out.println("Timings statistics for delete node:");
-		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", sumStats.getN(), sumStats.getMin(), sumStats.getMax(), sumStats.getMean(), sumStats.getStandardDeviation());
+
+		dumpLatencyMeasurements();
+		
+		// Drop the index
+		// Seems like its not possible to do this via the REST API... will need to manually remove
+		
+		clearDatabase();
+	}
+	
+	/**
+	 * Creates a set of nodes and then reads them sequentially, breaking the
+	 * latency of each create and each read down into phases: building the
+	 * request, acquiring a connection, waiting for the response headers, and
+	 * reading the response body. Unlike the other benchmarks, the response
+	 * body is always read before the request is considered complete.
+	 * <p>
+	 * Rexster reports the time it spent processing each request in the
+	 * "queryTime" field of the response, which is broken out as the server
+	 * phase.
+	 * 
+	 * @param numSamples
+	 *            The number of nodes to create and then read sequentially.
+	 */
+	public void run13(final int numSamples) {
+		System.out.println("Running Benchmark 13... Phase breakdown of node creates and reads");
+		System.out.println("\tnumSamples:\t" + numSamples);
+
+		Client client = TimedHttpURLConnection.createClient();
+		RequestPhases phases = RequestPhases.current();
+		phases.reset();
+
+		// Create vertices
+		WebResource resource = client.resource( server_root_uri + "vertices/" );
 
-		dumpLatencyMeasurements("benchmark12delete", "numSamples=" + numSamples, timings);
+		long[] vIdArray = new long[numSamples];
+
+		for(int i = 0; i < numSamples; i++) {
+			phases.begin();
+			ClientResponse response = resource.post( ClientResponse.class );
+			String jsonString = response.getEntity( String.class );
+			phases.end();
+
+			JSONObject queryRetVal = new JSONObject( jsonString );
+			phases.serverTime = queryRetVal.optDouble( "queryTime" );
+			phases.record();
+			JSONObject resultsObject = queryRetVal.getJSONObject( "results" );
+			vIdArray[i] = resultsObject.getLong("_id");
+
+			response.close();
+		}
+
+		System.out.println("Timings statistics for create node:");
+		phases.printStatistics();
+
+		// Read vertices
+		phases.reset();
+
+		for(int i = 0; i < numSamples; i++) {
+			phases.begin();
+			ClientResponse response = client.resource( server_root_uri + "vertices/" + vIdArray[i] )
+					.get( ClientResponse.class );
+			String jsonString = response.getEntity( String.class );
+			phases.end();
+
+			JSONObject queryRetVal = new JSONObject( jsonString );
+			phases.serverTime = queryRetVal.optDouble( "queryTime" );
+			phases.record();
+
+			response.close();
+		}
+
+		System.out.println("Timings statistics for read node:");
+		phases.printStatistics();
+
+		clearDatabase();
+	}
+	
+	/**
+	 * Creates, reads, updates, and deletes nodes and edges carrying from 1
+	 * to 100 properties with values from 8 B to 64 KB, both as plain strings
+	 * and as string arrays, measuring latency and throughput against payload
+	 * size. See {@link PayloadBenchmarks}.
+	 * 
+	 * @param numSamples
+	 *            The number of elements to create, read, update, and then
+	 *            delete for each payload configuration.
+	 */
+	public void run14(final int numSamples) {
+		System.out.println("Running Benchmark 14... Timing CRUD against payload size");
+		System.out.println("\tnumSamples:\t" + numSamples);
+
+		PayloadBenchmarks payloadBenchmarks = new PayloadBenchmarks(graphClient(), reportingInterval);
+		payloadBenchmarks.run(numSamples);
+	}
+	
+	/**
+	 * Measures the index lifecycle. First populates the database with
+	 * numNodes vertices with a property under a key unique to this run and
+	 * measures the time it takes to build a key index on that key over them,
+	 * from issuing the request until the index is listed by the server. Key
+	 * indices can't be dropped over REST, so a key used before (e.g. "name",
+	 * indexed by run12) would already be indexed and the build would be a
+	 * no-op. Then creates numSamples
+	 * vertices with an indexed key and numSamples with an unindexed key,
+	 * measuring the latency of each create, to show the write amplification
+	 * of keeping the index up to date.
+	 * <p>
+	 * Some TitanDB versions refuse to index a key that is already in use. In
+	 * that case the failure is reported and a key index on a fresh key is
+	 * used for the write amplification measurements instead.
+	 * 
+	 * @param numNodes
+	 *            The number of vertices to build the index over.
+	 * @param numSamples
+	 *            The number of vertices to create with each key.
+	 */
+	public void run15(final int numNodes, final int numSamples) {
+		System.out.println("Running Benchmark 15... Timing index build and index maintenance");
+		System.out.println("\tnumNodes:\t" + numNodes);
+		System.out.println("\tnumSamples:\t" + numSamples);
+		
+		WebResource resource;
+		ClientResponse response;
+		
+		// Populate the database in batches
+		System.out.print("Populating the database... ");
+		
+		// Keys unique to this run, so that neither is indexed yet.
+		String indexedKey = "idx" + System.nanoTime();
+		String fallbackKey = indexedKey + "fresh";
+		
+		String populateScript = "for (i in start..<end) g.addVertex(null, [(key):i]);";
+		int batchSize = 10000;
+		
+		for(int start = 0; start < numNodes; start += batchSize) {
+			JSONObject populateParams = new JSONObject();
+			populateParams.put("key", indexedKey);
+			populateParams.put("start", start);
+			populateParams.put("end", Math.min(start + batchSize, numNodes));
+			response = postGremlin(populateScript, populateParams);
+			response.close();
+		}
+		
+		System.out.println("done.");
+		
+		// Build an index over the existing vertices
+		resource = createClient()
+				.resource( server_root_uri + "keyindices/vertex/" + indexedKey );
+		long startTime = System.nanoTime();
+		response = resource.post( ClientResponse.class );
+		long endTime = System.nanoTime();
+		int status = response.getStatus();
+		response.close();
+		
+		System.out.println("Timings statistics for index build:");
+		if (status >= 400) {
+			System.out.printf("numNodes: %d index build over existing data rejected by server (HTTP %d)\n", numNodes, status);
+			
+			// Fall back to a fresh key for the write amplification measurements.
+			indexedKey = fallbackKey;
+			response = createClient()
+					.resource( server_root_uri + "keyindices/vertex/" + indexedKey )
+					.post( ClientResponse.class );
+			response.close();
+			awaitKeyIndex(indexedKey, INDEX_ONLINE_TIMEOUT);
+		} else {
+			double createTime = (endTime - startTime)/1e6;
+			double populateTime = awaitKeyIndex(indexedKey, INDEX_ONLINE_TIMEOUT);
+			if (populateTime >= 0)
+				System.out.printf("numNodes: %d total: %11.6f create: %11.6f populate: %11.6f\n", numNodes, createTime + populateTime, createTime, populateTime);
+			else
+				System.out.printf("numNodes: %d index did not come online\n", numNodes);
+		}
+		
+		// Create vertices with the indexed key
+		double[] timings = new double[numSamples];
+		SummaryStatistics indexedStats = new SummaryStatistics();
+		startMeasurement("benchmark15indexed", "numNodes=" + numNodes + "_numSamples=" + numSamples);
+		
+		for(int id = numNodes; id < numNodes + numSamples; id++) {
+			resource = createClient()
+					.resource( server_root_uri + "vertices?" + indexedKey + "=" + id );
+			
+			startTime = System.nanoTime();
+			response = resource.post( ClientResponse.class );
+			responseConsumption.consume(response);
+			endTime = System.nanoTime();
+			
+			timings[id - numNodes] = (endTime - startTime)/1e6; // Timings recorded in ms
+			indexedStats.addValue(timings[id - numNodes]);
+			recordSample(startTime, endTime, response);
+			
+			response.close();
+		}
+		
+		System.out.println("Timings statistics for create indexed node:");
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, indexedStats.getMin(), indexedStats.getMax(), indexedStats.getMean(), indexedStats.getStandardDeviation());
+		
+		dumpLatencyMeasurements();
+		
+		// Create vertices with an unindexed key
+		SummaryStatistics unindexedStats = new SummaryStatistics();
+		startMeasurement("benchmark15unindexed", "numNodes=" + numNodes + "_numSamples=" + numSamples);
+		
+		for(int id = numNodes; id < numNodes + numSamples; id++) {
+			resource = createClient()
+					.resource( server_root_uri + "vertices?unindexedName=" + id );
+			
+			startTime = System.nanoTime();
+			response = resource.post( ClientResponse.class );
+			responseConsumption.consume(response);
+			endTime = System.nanoTime();
+			
+			timings[id - numNodes] = (endTime - startTime)/1e6; // Timings recorded in ms
+			unindexedStats.addValue(timings[id - numNodes]);
+			recordSample(startTime, endTime, response);
+			
+			response.close();
+		}
+		
+		System.out.println("Timings statistics for create unindexed node:");
+		System.out.printf("numSamples: %d min: %11.6f max: %11.6f mean: %11.6f stdDev: %11.6f\n", numSamples, unindexedStats.getMin(), unindexedStats.getMax(), unindexedStats.getMean(), unindexedStats.getStandardDeviation());
+		
+		dumpLatencyMeasurements();
+		
+		System.out.printf("Index write amplification (indexed/unindexed mean create latency): %.3f\n", indexedStats.getMean()/unindexedStats.getMean());
 		
 		// Drop the index
 		// Seems like its not possible to do this via the REST API... will need to manually remove
 		
 		clearDatabase();
 	}
+	
+	/**
+	 * Measures writes under lock contention: concurrent updates to a small
+	 * set of hot nodes and concurrent edge creation to a single supernode,
+	 * at increasing numbers of threads and decreasing hot set sizes.
+	 * 
+	 * @param numSamples
+	 *            The number of writes each thread makes per configuration.
+	 */
+	public void run17(final int numSamples) {
+		System.out.println("Running Benchmark 17... Timing writes under contention");
+		System.out.println("\tnumSamples:\t" + numSamples);
+
+		ContentionBenchmarks contentionBenchmarks = new ContentionBenchmarks(graphClient(), reportingInterval);
+		contentionBenchmarks.run(numSamples);
+	}
+	
+	/**
+	 * Simulates many concurrent users, each issuing blocking node reads and
+	 * updates from its own thread, first on a bounded pool of platform
+	 * threads and then, on Java 21 and later, on one virtual thread per
+	 * user, reporting carrier thread pinning.
+	 * 
+	 * @param numUsers
+	 *            The number of simulated users.
+	 * @param numOps
+	 *            The number of requests each user makes.
+	 */
+	public void run18(final int numUsers, final int numOps) {
+		System.out.println("Running Benchmark 18... Timing many simulated users");
+		System.out.println("\tnumUsers:\t" + numUsers);
+		System.out.println("\tnumOps:\t" + numOps);
+
+		SimulatedUserBenchmarks simulatedUserBenchmarks = new SimulatedUserBenchmarks(graphClient(), reportingInterval);
+		simulatedUserBenchmarks.run(numUsers, numOps);
+	}	
+	/**
+	 * Simulates users running sessions of dependent requests with think time
+	 * in between: create a person, link friends, read the neighborhood and
+	 * update the profile. Reports per step and end-to-end session latency.
+	 * 
+	 * @param numUsers
+	 *            The number of concurrent users.
+	 * @param numSessions
+	 *            The number of sessions each user runs.
+	 */
+	public void run19(final int numUsers, final int numSessions) {
+		System.out.println("Running Benchmark 19... Timing user sessions");
+		System.out.println("\tnumUsers:\t" + numUsers);
+		System.out.println("\tnumSessions:\t" + numSessions);
+
+		SessionBenchmarks sessionBenchmarks = new SessionBenchmarks(graphClient(), reportingInterval);
+		sessionBenchmarks.run(numUsers, numSessions);
+	}	
+	/**
+	 * Measures reads and updates of a fixed set of vertices, chosen uniformly
+	 * and with a skewed distribution, without a cache and behind read-through
+	 * caches with increasing times to live, reporting hit rate, effective
+	 * read latency and the staleness of reads. See {@link CacheBenchmarks}.
+	 * 
+	 * @param numVertices
+	 *            The number of vertices to operate on.
+	 * @param numOps
+	 *            The number of operations per configuration.
+	 */
+	public void run21(final int numVertices, final int numOps) {
+		System.out.println("Running Benchmark 21... Timing reads through a client side cache");
+		System.out.println("\tnumVertices:\t" + numVertices);
+		System.out.println("\tnumOps:\t" + numOps);
+
+		CacheBenchmarks cacheBenchmarks = new CacheBenchmarks(new RexsterClient(server_root_uri), reportingInterval);
+		cacheBenchmarks.run(numVertices, numOps);
+	}
+	
+	/**
+	 * Measures single element creates and updates of vertices and edges from
+	 * many threads, sent one request per write and then coalesced into batch
+	 * requests with a range of batch sizes and flush deadlines, reporting
+	 * per-write latency against aggregate throughput. See
+	 * {@link CoalescingBenchmarks}.
+	 * 
+	 * @param numThreads
+	 *            The number of threads writing.
+	 * @param numWrites
+	 *            The number of writes per phase, over all threads.
+	 */
+	public void run22(final int numThreads, final int numWrites) {
+		System.out.println("Running Benchmark 22... Timing coalesced writes");
+		System.out.println("\tnumThreads:\t" + numThreads);
+		System.out.println("\tnumWrites:\t" + numWrites);
+
+		CoalescingBenchmarks coalescingBenchmarks = new CoalescingBenchmarks(new RexsterClient(server_root_uri), reportingInterval);
+		coalescingBenchmarks.run(numThreads, numWrites);
+	}
+	
+	/**
+	 * Measures the CRUD operations on a random sample of existing elements
+	 * as the graph is loaded to successive size tiers, from 10^3 vertices up
+	 * to maxSize, showing how latency degrades as the graph outgrows the
+	 * server's memory. See {@link ScalingBenchmarks}.
+	 * 
+	 * @param maxSize
+	 *            The largest graph size, in vertices.
+	 * @param numSamples
+	 *            The number of samples per operation at each tier.
+	 */
+	public void run23(final long maxSize, final int numSamples) {
+		System.out.println("Running Benchmark 23... Timing CRUD operations against graph size");
+		System.out.println("\tmaxSize:\t" + maxSize);
+		System.out.println("\tnumSamples:\t" + numSamples);
+
+		ScalingBenchmarks scalingBenchmarks = new ScalingBenchmarks(new RexsterClient(server_root_uri), reportingInterval);
+		scalingBenchmarks.run(maxSize, numSamples);
+	}
+	
+	/**
+	 * Measures first-touch latency after a restart against steady state
+	 * latency, and the time it takes to warm up, on a
+	 * {@link RexsterStandInServer}. Titan is not embedded in this project,
+	 * so this covers only the part of a cold start that is the client's and
+	 * the HTTP connection's own. See {@link ColdStartBenchmarks}.
+	 * 
+	 * @param numVertices
+	 *            The number of vertices to load.
+	 * @param workingSetSize
+	 *            The number of vertices the reads are spread over.
+	 * @param numTouches
+	 *            The number of cold reads, and of warm reads, per restart.
+	 * @param numRounds
+	 *            The number of restarts.
+	 */
+	public void run24(final int numVertices, final int workingSetSize, final int numTouches, final int numRounds) {
+		System.out.println("Running Benchmark 24... Timing first touches after a restart");
+		System.out.println("\tnumVertices:\t" + numVertices);
+		System.out.println("\tworkingSetSize:\t" + workingSetSize);
+		System.out.println("\tnumTouches:\t" + numTouches);
+		System.out.println("\tnumRounds:\t" + numRounds);
+
+		final RexsterStandInServer standIn = new RexsterStandInServer();
+		RestartableDatabase standInDatabase = new RestartableDatabase() {
+			@Override
+			public void start() throws IOException {
+				standIn.start();
+			}
+
+			@Override
+			public void stop() {
+				standIn.stop();
+			}
+
+			@Override
+			public boolean dropPageCache() {
+				return false;
+			}
+
+			@Override
+			public GraphClient newClient() {
+				return new RexsterClient(standIn.getRootUri());
+			}
+		};
+
+		try {
+			new ColdStartBenchmarks(standInDatabase, reportingInterval)
+					.run(numVertices, workingSetSize, numTouches, numRounds, false);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Measures the client overhead of the basic CRUD benchmarks (run01,
+	 * run02 and run05 to run10) by running their exact client code against a
+	 * {@link RexsterStandInServer}, which answers every request immediately. What is left is
+	 * the cost of Jersey, JSON handling, the harness and the loopback TCP
+	 * stack. Run this after the benchmarks themselves, so that the client
+	 * code has been JIT compiled, and then print the raw and corrected
+	 * results side by side with {@link #printReport()}.
+	 * 
+	 * @param numSamples
+	 *            The number of samples to take for each benchmark.
+	 */
+	public void calibrate(final int numSamples) {
+		System.out.println("Calibrating client overhead against a loopback stand-in server");
+		
+		RexsterStandInServer standIn = new RexsterStandInServer();
+		try {
+			standIn.start();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		
+		HttpClientBenchmarks calibration = new HttpClientBenchmarks(standIn.getRootUri());
+		calibration.calibrating = true;
+		calibration.reportingInterval = reportingInterval;
+		calibration.responseConsumption = responseConsumption;
+		calibration.errorRateThreshold = errorRateThreshold;
+		
+		// The stand-in has no server metrics to poll, and monitoring the JVM
+		// would add its own overhead to what is being measured.
+		LatencyMeasurement.setJvmMonitor(null, false);
+		LatencyMeasurement.setServerMetrics(null, serverMetricsInterval);
+		try {
+			calibration.run01(numSamples);
+			calibration.run02(numSamples);
+			calibration.run05(numSamples);
+			calibration.run06(numSamples);
+			calibration.run07(numSamples);
+			calibration.run08(numSamples);
+			calibration.run09(numSamples);
+			calibration.run10(numSamples);
+		} finally {
+			LatencyMeasurement.setJvmMonitor(jvmMonitor, excludeGcTainted);
+			LatencyMeasurement.setServerMetrics(serverMetrics, serverMetricsInterval);
+			standIn.stop();
+		}
+		
+		clientOverhead.putAll(calibration.results);
+	}
+	
+	/**
+	 * Prints a summary of every benchmark run so far. For benchmarks whose
+	 * client overhead has been measured by {@link #calibrate(int)}, the raw
+	 * latencies are followed by the client overhead and by the latencies
+	 * corrected for it. The overhead is treated as a constant shift, so
+	 * every corrected percentile is the raw percentile less the median
+	 * client overhead.
+	 */
+	public void printReport() {
+		System.out.println("Benchmark report (latencies in ms):");
+		System.out.printf("%-20s %10s %11s %11s %11s %11s %11s %11s %11s %11s\n", "benchmark", "numSamples",
+				"raw mean", "raw p50", "raw p99", "client mean", "client p50", "corr mean", "corr p50", "corr p99");
+		for (LatencyMeasurement.Summary raw : results.values()) {
+			System.out.printf("%-20s %10d %11.6f %11.6f %11.6f", raw.getBenchmarkName(), raw.getNumSamples(),
+					raw.getMean(), raw.getP50(), raw.getP99());
+			
+			LatencyMeasurement.Summary client = clientOverhead.get(raw.getBenchmarkName());
+			if (client == null) {
+				System.out.println();
+				continue;
+			}
+			double clientMedian = client.getP50();
+			System.out.printf(" %11.6f %11.6f %11.6f %11.6f %11.6f\n", client.getMean(), clientMedian,
+					raw.getMean() - client.getMean(), raw.getP50() - clientMedian,
+					raw.getP99() - clientMedian);
+		}
+		
+		if (jvmMonitor == null)
+			return;
+		System.out.println("Client JVM report:");
+		System.out.printf("%-20s %14s %14s %10s\n", "benchmark", "alloc/op mean", "alloc/op p99", "gcTainted");
+		for (LatencyMeasurement.Summary m : results.values()) {
+			System.out.printf("%-20s %12.0f B %12.0f B %10d\n", m.getBenchmarkName(), m.getAllocationMean(),
+					m.getAllocationP99(), m.getNumGcTainted());
+		}
+	}
 }
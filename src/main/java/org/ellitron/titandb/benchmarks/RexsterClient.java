@@ -0,0 +1,277 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.titandb.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+import org.ellitron.benchmarks.BatchGraphClient;
+import org.ellitron.benchmarks.GraphClient;
+import org.ellitron.benchmarks.GraphClientException;
+import org.ellitron.benchmarks.GraphWrite;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+
+/**
+ * RexsterClient implements {@link GraphClient} on top of the Rexster REST
+ * API in front of TitanDB ("/graphs/mygraph/vertices", ".../edges", ...).
+ * Properties are sent as JSON request bodies rather than query parameters,
+ * so that large values and arrays can be used. Batches of writes are sent
+ * as a single Gremlin script, which Rexster runs in a single transaction.
+ * Updates are POSTed to the element, which sets the given properties and
+ * leaves the others unchanged; a PUT would replace them all.
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class RexsterClient implements BatchGraphClient {
+	/**
+	 * Gremlin script applying a batch of writes, given as the "ops"
+	 * parameter. Returns the ID of each element created, or null. Updates
+	 * set each given property and leave the others unchanged, like
+	 * {@link #updateVertex(long, JSONObject)} and
+	 * {@link #updateEdge(String, JSONObject)}.
+	 */
+	private static final String BATCH_SCRIPT = "ops.collect { op -> "
+			+ "def e = null; "
+			+ "switch (op.op) { "
+			+ "case 'CREATE_VERTEX': e = g.addVertex(null); break; "
+			+ "case 'UPDATE_VERTEX': e = g.v(op.id); break; "
+			+ "case 'DELETE_VERTEX': g.removeVertex(g.v(op.id)); return null; "
+			+ "case 'CREATE_EDGE': e = g.addEdge(null, g.v(op.out), g.v(op.in), op.label); break; "
+			+ "case 'UPDATE_EDGE': e = g.e(op.id); break; "
+			+ "case 'DELETE_EDGE': g.removeEdge(g.e(op.id)); return null; "
+			+ "}; "
+			+ "op.p.each { k, v -> e.setProperty(k, v) }; "
+			+ "op.op.startsWith('CREATE') ? e.id.toString() : null }";
+
+	/**
+	 * Stores the root URI for all requests to the database.
+	 */
+	private final String server_root_uri;
+
+	/**
+	 * Jersey client shared by all requests (and threads).
+	 */
+	private final Client client;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param server_root_uri
+	 *            The root URI for all requests to the database (e.g.
+	 *            "http://192.168.1.1:8182/graphs/mygraph/").
+	 */
+	public RexsterClient(String server_root_uri) {
+		this.server_root_uri = server_root_uri;
+		this.client = Client.create();
+	}
+
+	/**
+	 * Throws a GraphClientException if the response reports an error.
+	 */
+	private static void checkStatus(ClientResponse response) {
+		if (response.getStatus() >= 400) {
+			String message = response.getEntity( String.class );
+			response.close();
+			throw new GraphClientException(response.getStatus(), message);
+		}
+	}
+
+	/**
+	 * Returns the "results" object of a Rexster response.
+	 */
+	private static JSONObject results(ClientResponse response) {
+		JSONObject queryRetVal = new JSONObject( response.getEntity( String.class ) );
+		response.close();
+		return queryRetVal.getJSONObject( "results" );
+	}
+
+	/**
+	 * Strips Rexster's element metadata (_id, _type, ...) from a results
+	 * object, leaving just the properties.
+	 */
+	private static JSONObject properties(JSONObject resultsObject) {
+		String[] keys = JSONObject.getNames(resultsObject);
+		if (keys != null)
+			for (String key : keys)
+				if (key.startsWith("_"))
+					resultsObject.remove(key);
+		return resultsObject;
+	}
+
+	@Override
+	public long createVertex(JSONObject properties) {
+		ClientResponse response = client.resource( server_root_uri + "vertices" )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( properties.toString() )
+				.post( ClientResponse.class );
+		checkStatus(response);
+
+		return results(response).getLong("_id");
+	}
+
+	@Override
+	public JSONObject readVertex(long vId) {
+		ClientResponse response = client.resource( server_root_uri + "vertices/" + vId )
+				.get( ClientResponse.class );
+		checkStatus(response);
+
+		return properties(results(response));
+	}
+
+	@Override
+	public void updateVertex(long vId, JSONObject properties) {
+		ClientResponse response = client.resource( server_root_uri + "vertices/" + vId )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( properties.toString() )
+				.post( ClientResponse.class );
+		checkStatus(response);
+		response.close();
+	}
+
+	@Override
+	public void deleteVertex(long vId) {
+		ClientResponse response = client.resource( server_root_uri + "vertices/" + vId )
+				.delete( ClientResponse.class );
+		checkStatus(response);
+		response.close();
+	}
+
+	@Override
+	public String createEdge(long outVId, long inVId, String label, JSONObject properties) {
+		String[] keys = JSONObject.getNames(properties);
+		JSONObject request = (keys == null) ? new JSONObject() : new JSONObject(properties, keys);
+		request.put("_outV", outVId);
+		request.put("_inV", inVId);
+		request.put("_label", label);
+
+		ClientResponse response = client.resource( server_root_uri + "edges" )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( request.toString() )
+				.post( ClientResponse.class );
+		checkStatus(response);
+
+		return results(response).getString("_id");
+	}
+
+	@Override
+	public JSONObject readEdge(String eId) {
+		ClientResponse response = client.resource( server_root_uri + "edges/" + eId )
+				.get( ClientResponse.class );
+		checkStatus(response);
+
+		return properties(results(response));
+	}
+
+	@Override
+	public void updateEdge(String eId, JSONObject properties) {
+		ClientResponse response = client.resource( server_root_uri + "edges/" + eId )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( properties.toString() )
+				.post( ClientResponse.class );
+		checkStatus(response);
+		response.close();
+	}
+
+	@Override
+	public void deleteEdge(String eId) {
+		ClientResponse response = client.resource( server_root_uri + "edges/" + eId )
+				.delete( ClientResponse.class );
+		checkStatus(response);
+		response.close();
+	}
+
+	@Override
+	public List<JSONObject> readNeighbors(long vId) {
+		ClientResponse response = client.resource( server_root_uri + "vertices/" + vId + "/both" )
+				.get( ClientResponse.class );
+		checkStatus(response);
+
+		JSONArray results = new JSONObject( response.getEntity( String.class ) ).getJSONArray("results");
+		response.close();
+
+		List<JSONObject> neighbors = new ArrayList<JSONObject>(results.length());
+		for (int i = 0; i < results.length(); i++)
+			neighbors.add(properties(results.getJSONObject(i)));
+		return neighbors;
+	}
+
+	@Override
+	public Object[] writeBatch(List<GraphWrite> writes) {
+		JSONArray ops = new JSONArray();
+		for (GraphWrite write : writes) {
+			JSONObject op = new JSONObject();
+			op.put("op", write.kind.name());
+			op.put("p", write.properties == null ? new JSONObject() : write.properties);
+			switch (write.kind) {
+			case UPDATE_VERTEX:
+			case DELETE_VERTEX:
+				op.put("id", write.vId);
+				break;
+			case CREATE_EDGE:
+				op.put("out", write.vId).put("in", write.inVId).put("label", write.label);
+				break;
+			case UPDATE_EDGE:
+			case DELETE_EDGE:
+				op.put("id", write.eId);
+				break;
+			default:
+				break;
+			}
+			ops.put(op);
+		}
+
+		JSONObject request = new JSONObject();
+		request.put("script", BATCH_SCRIPT);
+		request.put("params", new JSONObject().put("ops", ops));
+
+		ClientResponse response = client.resource( server_root_uri + "tp/gremlin" )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( request.toString() )
+				.post( ClientResponse.class );
+		checkStatus(response);
+
+		JSONArray results = new JSONObject( response.getEntity( String.class ) ).getJSONArray("results");
+		response.close();
+
+		Object[] ids = new Object[writes.size()];
+		for (int i = 0; i < ids.length; i++) {
+			GraphWrite.Kind kind = writes.get(i).kind;
+			if (kind == GraphWrite.Kind.CREATE_VERTEX)
+				ids[i] = Long.parseLong(results.getString(i));
+			else if (kind == GraphWrite.Kind.CREATE_EDGE)
+				ids[i] = results.getString(i);
+		}
+		return ids;
+	}
+
+	@Override
+	public void clearDatabase() {
+		String[] scripts = { "g.E.remove()", "g.V.remove()" };
+		for (String script : scripts) {
+			ClientResponse response = client.resource( server_root_uri + "tp/gremlin" )
+					.queryParam( "script", script )
+					.get( ClientResponse.class );
+			checkStatus(response);
+			response.close();
+		}
+	}
+}
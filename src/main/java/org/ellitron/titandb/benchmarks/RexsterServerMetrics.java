@@ -0,0 +1,120 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.titandb.benchmarks;
+
+import java.util.Arrays;
+
+import javax.ws.rs.core.MediaType;
+
+import org.ellitron.benchmarks.GraphClientException;
+import org.ellitron.benchmarks.ServerMetrics;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+
+/**
+ * RexsterServerMetrics reads {@link ServerMetrics} from a Rexster server.
+ * Rexster's status endpoints report little beyond the graph's name and
+ * uptime, and Titan keeps no cache statistics it would expose, so each poll:
+ * <ul>
+ * <li>times a request to the graph's status endpoint (statusMs), which shows
+ * when the server stops answering promptly, and</li>
+ * <li>runs a Gremlin script reading the server JVM's garbage collectors
+ * (count and time in ms, summed over collectors), heap usage in bytes and
+ * thread count. These are not reported if the Gremlin extension is
+ * disabled.</li>
+ * </ul>
+ *
+ * @author Jonathan Ellithorpe
+ */
+public class RexsterServerMetrics implements ServerMetrics {
+	private static final String[] NAMES = { "statusMs", "gcCount", "gcTimeMs", "heapUsed", "threads" };
+	private static final boolean[] COUNTERS = { false, true, true, false, false };
+
+	/**
+	 * Gremlin script returning the values of the JVM metrics, in order.
+	 */
+	private static final String JVM_SCRIPT = "def mf = java.lang.management.ManagementFactory; "
+			+ "def gcs = mf.garbageCollectorMXBeans; "
+			+ "[gcs.collect { it.collectionCount }.sum(), gcs.collect { it.collectionTime }.sum(), "
+			+ "mf.memoryMXBean.heapMemoryUsage.used, mf.threadMXBean.threadCount]";
+
+	/**
+	 * Stores the root URI of the graph.
+	 */
+	private final String server_root_uri;
+
+	private final Client client;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param server_root_uri
+	 *            The root URI of the graph (e.g.
+	 *            "http://192.168.1.1:8182/graphs/mygraph/").
+	 */
+	public RexsterServerMetrics(String server_root_uri) {
+		this.server_root_uri = server_root_uri;
+		this.client = Client.create();
+	}
+
+	@Override
+	public String[] getNames() {
+		return NAMES.clone();
+	}
+
+	@Override
+	public boolean isCounter(int metric) {
+		return COUNTERS[metric];
+	}
+
+	@Override
+	public double[] poll() {
+		double[] values = new double[NAMES.length];
+		Arrays.fill(values, Double.NaN);
+
+		long startTime = System.nanoTime();
+		ClientResponse response = client.resource( server_root_uri )
+				.accept( MediaType.APPLICATION_JSON )
+				.get( ClientResponse.class );
+		String status = response.getEntity( String.class );
+		long endTime = System.nanoTime();
+		response.close();
+		if (response.getStatus() >= 400)
+			throw new GraphClientException(response.getStatus(), status);
+		values[0] = (endTime - startTime)/1e6;
+
+		JSONObject request = new JSONObject();
+		request.put("script", JVM_SCRIPT);
+		response = client.resource( server_root_uri + "tp/gremlin" )
+				.accept( MediaType.APPLICATION_JSON )
+				.type( MediaType.APPLICATION_JSON )
+				.entity( request.toString() )
+				.post( ClientResponse.class );
+		if (response.getStatus() >= 400) {
+			// Gremlin extension disabled, leave the JVM metrics unreported.
+			response.close();
+			return values;
+		}
+		JSONArray results = new JSONObject( response.getEntity( String.class ) ).optJSONArray("results");
+		response.close();
+		for (int i = 0; results != null && i < results.length() && i + 1 < values.length; i++)
+			values[i + 1] = results.optDouble(i);
+		return values;
+	}
+}
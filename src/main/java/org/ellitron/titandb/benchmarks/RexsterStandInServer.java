@@ -0,0 +1,55 @@
+/* Copyright (c) 2014 Stanford University
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR(S) DISCLAIM ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL AUTHORS BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.ellitron.titandb.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ellitron.benchmarks.LoopbackServer;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * RexsterStandInServer answers the Rexster requests made by
+ * {@link HttpClientBenchmarks} with responses shaped like those of Rexster
+ * 2.4, for measuring client overhead (see {@link LoopbackServer}).
+ * 
+ * @author Jonathan Ellithorpe
+ */
+public class RexsterStandInServer extends LoopbackServer {
+	private final AtomicLong nextId = new AtomicLong();
+
+	public RexsterStandInServer() {
+		super("/graphs/mygraph/");
+	}
+
+	@Override
+	protected void respond(HttpExchange exchange, String method, String path) throws IOException {
+		String[] parts = path.split("/");
+		
+		if (method.equals("DELETE")) {
+			send(exchange, 200, "{\"version\":\"2.4.0\",\"queryTime\":0.1}");
+		} else if (parts[0].equals("vertices")) {
+			long id = parts.length > 1 ? Long.parseLong(parts[1]) : nextId.incrementAndGet();
+			send(exchange, 200, "{\"version\":\"2.4.0\",\"results\":{\"prop\":42,\"_id\":" + id + ",\"_type\":\"vertex\"},\"queryTime\":0.1}");
+		} else if (parts[0].equals("edges")) {
+			String id = parts.length > 1 ? parts[1] : Long.toString(nextId.incrementAndGet());
+			send(exchange, 200, "{\"version\":\"2.4.0\",\"results\":{\"prop\":42,\"_id\":\"" + id + "\",\"_type\":\"edge\",\"_outV\":1,\"_inV\":2,\"_label\":\"friend\"},\"queryTime\":0.1}");
+		} else {
+			send(exchange, 200, "{\"version\":\"2.4.0\",\"results\":[],\"success\":true,\"queryTime\":0.1}");
+		}
+	}
+}